@@ -29,28 +29,28 @@ public class Covid19Progression extends DiseaseProgression
     private static final long serialVersionUID = 1L;
 
     /** "S": Susceptible disease phase. This is the normal 'base' phase of every person. */
-    public static DiseasePhase susceptible;
+    public final DiseasePhase susceptible;
 
     /** "E": Exposed disease phase. Note: the exposure date is stored with the Person. Exposed means the person WILL get ill. */
-    public static DiseasePhase exposed;
+    public final DiseasePhase exposed;
 
     /** "I(A)": Infected-Asymptomatic disease phase. */
-    public static DiseasePhase infected_asymptomatic;
+    public final DiseasePhase infected_asymptomatic;
 
     /** "I(S)": Infected-Symptomatic disease phase. */
-    public static DiseasePhase infected_symptomatic;
+    public final DiseasePhase infected_symptomatic;
 
     /** "I(H)": Hospitalized disease phase. */
-    public static DiseasePhase hospitalized;
+    public final DiseasePhase hospitalized;
 
     /** "I(I)": ICU disease phase. */
-    public static DiseasePhase icu;
+    public final DiseasePhase icu;
 
     /** "R": Recovered disease phase. */
-    public static DiseasePhase recovered;
+    public final DiseasePhase recovered;
 
     /** "D": Dead disease phase. */
-    public static DiseasePhase dead;
+    public final DiseasePhase dead;
 
     /* ---------------------------- parameters for the progression model ---------------------------- */
 
@@ -127,14 +127,14 @@ public class Covid19Progression extends DiseaseProgression
     {
         super(model, "Covid19");
 
-        susceptible = addDiseasePhase("Susceptible", DiseaseState.SUSCEPTIBLE);
-        exposed = addDiseasePhase("Exposed", DiseaseState.ILL);
-        infected_asymptomatic = addDiseasePhase("Infected-Asymptomatic", DiseaseState.ILL);
-        infected_symptomatic = addDiseasePhase("Infected-Symptomatic", DiseaseState.ILL);
-        hospitalized = addDiseasePhase("Hospitalized", DiseaseState.ILL);
-        icu = addDiseasePhase("ICU", DiseaseState.ILL);
-        dead = addDiseasePhase("Dead", DiseaseState.DEAD);
-        recovered = addDiseasePhase("Recovered", DiseaseState.RECOVERED);
+        this.susceptible = addDiseasePhase("Susceptible", DiseaseState.SUSCEPTIBLE);
+        this.exposed = addDiseasePhase("Exposed", DiseaseState.ILL);
+        this.infected_asymptomatic = addDiseasePhase("Infected-Asymptomatic", DiseaseState.ILL);
+        this.infected_symptomatic = addDiseasePhase("Infected-Symptomatic", DiseaseState.ILL);
+        this.hospitalized = addDiseasePhase("Hospitalized", DiseaseState.ILL);
+        this.icu = addDiseasePhase("ICU", DiseaseState.ILL);
+        this.dead = addDiseasePhase("Dead", DiseaseState.DEAD);
+        this.recovered = addDiseasePhase("Recovered", DiseaseState.RECOVERED);
 
         // -------------------------------------------------------------
         // Progression model parameters/uncertainties
@@ -182,21 +182,21 @@ public class Covid19Progression extends DiseaseProgression
     public void expose(final Person exposedPerson, final DiseasePhase exposurePhase)
     {
         exposedPerson.getDiseasePhase().removePerson();
-        exposedPerson.setDiseasePhase(exposed);
-        exposed.addPerson();
+        exposedPerson.setDiseasePhase(this.exposed);
+        this.exposed.addPerson();
 
         // Split into asymptomatic and symptomatic
         if (this.model.getU01().draw() < this.fractionAsymptomatic.probability(exposedPerson))
         {
             double incubationPeriod = this.periodIncubationAsymptomatic.getDuration();
             this.model.getSimulator().scheduleEventRel(incubationPeriod, this, "changeDiseasePhase",
-                    new Object[] {exposedPerson, Covid19Progression.infected_asymptomatic});
+                    new Object[] {exposedPerson, this.infected_asymptomatic});
         }
         else
         {
             double incubationPeriod = this.periodIncubationSymptomatic.getDuration();
             this.model.getSimulator().scheduleEventRel(incubationPeriod, this, "changeDiseasePhase",
-                    new Object[] {exposedPerson, Covid19Progression.infected_symptomatic});
+                    new Object[] {exposedPerson, this.infected_symptomatic});
         }
     }
 
@@ -214,23 +214,23 @@ public class Covid19Progression extends DiseaseProgression
         // Exposed
         // -------------------------------------------------------------
 
-        if (nextPhase == exposed)
+        if (nextPhase == this.exposed)
         {
             System.err.println("Should have been handled with expose(...) method");
-            expose(person, exposed);
+            expose(person, this.exposed);
         }
 
         // -------------------------------------------------------------
         // Infected asymptomatic contagious
         // -------------------------------------------------------------
 
-        else if (nextPhase == infected_asymptomatic)
+        else if (nextPhase == this.infected_asymptomatic)
         {
-            person.setDiseasePhase(infected_asymptomatic);
-            infected_asymptomatic.addPerson();
+            person.setDiseasePhase(this.infected_asymptomatic);
+            this.infected_asymptomatic.addPerson();
 
             model.getSimulator().scheduleEventRel(this.periodAsymptomaticToRecovered.getDuration(), TimeUnit.HOUR, this,
-                    "changeDiseasePhase", new Object[] {person, recovered});
+                    "changeDiseasePhase", new Object[] {person, this.recovered});
             return;
         }
 
@@ -238,17 +238,17 @@ public class Covid19Progression extends DiseaseProgression
         // Infected symptomatic contagious
         // -------------------------------------------------------------
 
-        else if (nextPhase == infected_symptomatic)
+        else if (nextPhase == this.infected_symptomatic)
         {
-            person.setDiseasePhase(infected_symptomatic);
-            infected_symptomatic.addPerson();
+            person.setDiseasePhase(this.infected_symptomatic);
+            this.infected_symptomatic.addPerson();
 
             if (this.model.getU01().draw() < this.fractionSymptomaticToHospitalized.probability(person))
                 model.getSimulator().scheduleEventRel(this.periodSymptomaticToHospitalized.getDuration(), TimeUnit.HOUR, this,
-                        "changeDiseasePhase", new Object[] {person, hospitalized});
+                        "changeDiseasePhase", new Object[] {person, this.hospitalized});
             else
                 model.getSimulator().scheduleEventRel(this.periodSymptomaticToRecovered.getDuration(), TimeUnit.HOUR, this,
-                        "changeDiseasePhase", new Object[] {person, recovered});
+                        "changeDiseasePhase", new Object[] {person, this.recovered});
             return;
         }
 
@@ -256,16 +256,16 @@ public class Covid19Progression extends DiseaseProgression
         // Infected hospitalized
         // -------------------------------------------------------------
 
-        else if (nextPhase == hospitalized)
+        else if (nextPhase == this.hospitalized)
         {
-            person.setDiseasePhase(hospitalized);
-            hospitalized.addPerson();
+            person.setDiseasePhase(this.hospitalized);
+            this.hospitalized.addPerson();
 
             if (this.model.getU01().draw() < this.fractionHospitalizedToICU.probability(person))
             {
                 // Person goes to ICU
                 model.getSimulator().scheduleEventRel(this.periodHospitalizedToICU.getDuration(), TimeUnit.HOUR, this,
-                        "changeDiseasePhase", new Object[] {person, icu});
+                        "changeDiseasePhase", new Object[] {person, this.icu});
                 return;
             }
 
@@ -275,13 +275,13 @@ public class Covid19Progression extends DiseaseProgression
                 if (this.model.getU01().draw() < this.fractionHospitalizedToDead.probability(person))
                 {
                     model.getSimulator().scheduleEventRel(this.periodHospitalizedToDead.getDuration(), TimeUnit.HOUR, this,
-                            "changeDiseasePhase", new Object[] {person, dead});
+                            "changeDiseasePhase", new Object[] {person, this.dead});
                     return;
                 }
                 else
                 {
                     model.getSimulator().scheduleEventRel(this.periodHospitalizedToRecovered.getDuration(), TimeUnit.HOUR, this,
-                            "changeDiseasePhase", new Object[] {person, recovered});
+                            "changeDiseasePhase", new Object[] {person, this.recovered});
                     return;
                 }
             }
@@ -291,23 +291,23 @@ public class Covid19Progression extends DiseaseProgression
         // Infected ICU
         // -------------------------------------------------------------
 
-        else if (nextPhase == icu)
+        else if (nextPhase == this.icu)
         {
-            person.setDiseasePhase(icu);
-            icu.addPerson();
+            person.setDiseasePhase(this.icu);
+            this.icu.addPerson();
 
             // Recover or die at ICU
             if (this.model.getU01().draw() < this.fractionICUToDead.probability(person))
             {
                 model.getSimulator().scheduleEventRel(this.periodICUToDead.getDuration(), TimeUnit.HOUR, this,
-                        "changeDiseasePhase", new Object[] {person, dead});
+                        "changeDiseasePhase", new Object[] {person, this.dead});
                 return;
             }
 
             else
             {
                 model.getSimulator().scheduleEventRel(this.periodICUToRecovered.getDuration(), TimeUnit.HOUR, this,
-                        "changeDiseasePhase", new Object[] {person, recovered});
+                        "changeDiseasePhase", new Object[] {person, this.recovered});
                 return;
             }
         }
@@ -316,10 +316,10 @@ public class Covid19Progression extends DiseaseProgression
         // Recovered
         // -------------------------------------------------------------
 
-        else if (nextPhase == recovered)
+        else if (nextPhase == this.recovered)
         {
-            person.setDiseasePhase(recovered);
-            recovered.addPerson();
+            person.setDiseasePhase(this.recovered);
+            this.recovered.addPerson();
             return;
         }
 
@@ -327,11 +327,11 @@ public class Covid19Progression extends DiseaseProgression
         // Dead
         // -------------------------------------------------------------
 
-        else if (nextPhase == dead)
+        else if (nextPhase == this.dead)
         {
             this.model.getPersonMonitor().reportDeathPerson(person);
-            person.setDiseasePhase(dead);
-            dead.addPerson();
+            person.setDiseasePhase(this.dead);
+            this.dead.addPerson();
             return;
         }
 
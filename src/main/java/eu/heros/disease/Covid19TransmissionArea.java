@@ -1,7 +1,8 @@
 package eu.heros.disease;
 
+import eu.heros.model.HerosModel;
+import eu.heros.output.TransmissionLog;
 import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.TIntObjectMap;
 import gnu.trove.set.TIntSet;
 import nl.tudelft.simulation.medlabs.disease.DiseaseTransmission;
 import nl.tudelft.simulation.medlabs.disease.InfectionRecord;
@@ -132,7 +133,8 @@ public class Covid19TransmissionArea extends DiseaseTransmission
     @Override
     public InfectionRecord infectPeople(final Location location, final TIntSet personsInSublocation, final double duration)
     {
-        InfectionRecord infectionRecord = new InfectionRecord(Covid19Progression.exposed, location);
+        InfectionRecord infectionRecord = new InfectionRecord(
+                ((Covid19Progression) this.model.getDiseaseProgression()).exposed, location);
 
         // has contact been too short?
         if (duration < this.calculationThreshold)
@@ -143,8 +145,11 @@ public class Covid19TransmissionArea extends DiseaseTransmission
         LocationType lt = location.getLocationType();
         double area = location.getTotalSurfaceM2();
 
-        TIntObjectMap<Person> personMap = this.model.getPersonMap();
+        Person[] persons = ((HerosModel) this.model).getPersons();
         double now = this.model.getSimulator().getSimulatorTime().doubleValue();
+        TransmissionLog log = ((HerosModel) this.model).getTransmissionLog();
+        if (log != null)
+            log.startContact();
 
         if (lt.isInfectInSublocation() || location.getNumberOfSubLocations() < 2)
         {
@@ -161,7 +166,7 @@ public class Covid19TransmissionArea extends DiseaseTransmission
             double sumTij = 0.0;
             for (TIntIterator it = personsInSublocation.iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isIll())
                 {
                     double te = now - person.getExposureTime();
@@ -173,6 +178,8 @@ public class Covid19TransmissionArea extends DiseaseTransmission
                     // else the person is infected, but not yet or not anymore contagious
                     sumTij += contribution;
                     infectionRecord.addInfectiousPerson(person.getId());
+                    if (log != null)
+                        log.addCandidate(person.getId(), contribution);
                 }
             }
             if (sumTij == 0.0)
@@ -183,13 +190,15 @@ public class Covid19TransmissionArea extends DiseaseTransmission
             // check if we infect others
             for (TIntIterator it = personsInSublocation.iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isSusceptible())
                 {
                     // roll the dice
                     if (this.model.getU01().draw() < pInfection)
                     {
                         infectionRecord.addInfectedPerson(person.getId());
+                        if (log != null)
+                            log.logInfection(now, person.getId(), location, person.getCurrentSubLocationIndex());
                     }
                 }
             }
@@ -210,7 +219,7 @@ public class Covid19TransmissionArea extends DiseaseTransmission
             double sumTij = 0.0;
             for (TIntIterator it = location.getAllPersonIds().iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isIll())
                 {
                     double te = now - person.getExposureTime();
@@ -222,6 +231,8 @@ public class Covid19TransmissionArea extends DiseaseTransmission
                     // else the person is infected, but not contagious
                     sumTij += contribution;
                     infectionRecord.addInfectiousPerson(person.getId());
+                    if (log != null)
+                        log.addCandidate(person.getId(), contribution);
                 }
             }
             if (sumTij == 0.0)
@@ -233,13 +244,15 @@ public class Covid19TransmissionArea extends DiseaseTransmission
             // check if we infect others
             for (TIntIterator it = location.getAllPersonIds().iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isSusceptible())
                 {
                     // roll the dice
                     if (this.model.getU01().draw() < pInfection)
                     {
                         infectionRecord.addInfectedPerson(person.getId());
+                        if (log != null)
+                            log.logInfection(now, person.getId(), location, person.getCurrentSubLocationIndex());
                     }
                 }
             }
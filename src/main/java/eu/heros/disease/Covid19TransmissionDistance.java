@@ -1,7 +1,8 @@
 package eu.heros.disease;
 
+import eu.heros.model.HerosModel;
+import eu.heros.output.TransmissionLog;
 import gnu.trove.iterator.TIntIterator;
-import gnu.trove.map.TIntObjectMap;
 import gnu.trove.set.TIntSet;
 import nl.tudelft.simulation.medlabs.disease.DiseaseTransmission;
 import nl.tudelft.simulation.medlabs.disease.InfectionRecord;
@@ -114,7 +115,8 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
     @Override
     public InfectionRecord infectPeople(final Location location, final TIntSet personsInSublocation, final double duration)
     {
-        InfectionRecord infectionRecord = new InfectionRecord(Covid19Progression.exposed, location);
+        InfectionRecord infectionRecord = new InfectionRecord(
+                ((Covid19Progression) this.model.getDiseaseProgression()).exposed, location);
 
         // has contact been too short?
         if (duration < this.calculationThreshold)
@@ -125,8 +127,11 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
         LocationType lt = location.getLocationType();
         double area = location.getTotalSurfaceM2();
 
-        TIntObjectMap<Person> personMap = this.model.getPersonMap();
+        Person[] persons = ((HerosModel) this.model).getPersons();
         double now = this.model.getSimulator().getSimulatorTime().doubleValue();
+        TransmissionLog log = ((HerosModel) this.model).getTransmissionLog();
+        if (log != null)
+            log.startContact();
 
         if (lt.isInfectInSublocation() || location.getNumberOfSubLocations() < 2)
         {
@@ -148,7 +153,7 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
             double sum = 0.0;
             for (TIntIterator it = personsInSublocation.iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isIll())
                 {
                     double v_t = 0.0;
@@ -163,6 +168,8 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
                         double Pt = 1 / (1 + Math.exp(-this.r * (v_t - this.v_0)));
                         sum += factor * duration * Pt;
                         infectionRecord.addInfectiousPerson(person.getId());
+                        if (log != null)
+                            log.addCandidate(person.getId(), Pt);
                     }
                 }
             }
@@ -174,13 +181,15 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
             // check if we infect others
             for (TIntIterator it = personsInSublocation.iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isSusceptible())
                 {
                     // roll the dice
                     if (this.model.getU01().draw() < pInfection)
                     {
                         infectionRecord.addInfectedPerson(person.getId());
+                        if (log != null)
+                            log.logInfection(now, person.getId(), location, person.getCurrentSubLocationIndex());
                     }
                 }
             }
@@ -206,7 +215,7 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
             double sum = 0.0;
             for (TIntIterator it = location.getAllPersonIds().iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isIll())
                 {
                     double v_t = 0.0;
@@ -221,6 +230,8 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
                         double Pt = 1 / (1 + Math.exp(-this.r * (v_t - this.v_0)));
                         sum += factor * duration * Pt;
                         infectionRecord.addInfectiousPerson(person.getId());
+                        if (log != null)
+                            log.addCandidate(person.getId(), Pt);
                     }
                 }
             }
@@ -233,13 +244,15 @@ public class Covid19TransmissionDistance extends DiseaseTransmission
             // check if we infect others
             for (TIntIterator it = location.getAllPersonIds().iterator(); it.hasNext();)
             {
-                Person person = personMap.get(it.next());
+                Person person = persons[it.next()];
                 if (person.getDiseasePhase().isSusceptible())
                 {
                     // roll the dice
                     if (this.model.getU01().draw() < pInfection)
                     {
                         infectionRecord.addInfectedPerson(person.getId());
+                        if (log != null)
+                            log.logInfection(now, person.getId(), location, person.getCurrentSubLocationIndex());
                     }
                 }
             }
@@ -0,0 +1,533 @@
+package eu.heros.factory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.djutils.io.URLResource;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import nl.tudelft.simulation.medlabs.common.MedlabsException;
+
+/**
+ * ActivityTable contains the cell values of one sheet of the activity schedule workbook, for the columns A through Q. The sheet
+ * is read with a streaming (SAX) parser, so the DOM of the workbook is never built. The parsed table is stored in a compact
+ * binary cache file next to the workbook, which is reused as long as the length and the CRC32 checksum of the workbook are
+ * unchanged. A workbook on disk is opened read-only as a file, so it is not copied into memory.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ActivityTable
+{
+    /** the number of columns (A through Q) that are stored. */
+    public static final int NR_COLUMNS = 17;
+
+    /** the magic number at the start of the cache file ("HACT"). */
+    private static final int CACHE_MAGIC = 0x48414354;
+
+    /** the version of the cache file format. */
+    private static final int CACHE_VERSION = 1;
+
+    /** the (0-based) row numbers of the rows in the sheet. */
+    private final int[] rowNumbers;
+
+    /** the cell values per row, as indices into the strings array. */
+    private final int[][] cells;
+
+    /** the unique cell values; index 0 is the empty String for a missing cell. */
+    private final String[] strings;
+
+    /**
+     * Create the table.
+     * @param rowNumbers int[]; the (0-based) row numbers of the rows in the sheet
+     * @param cells int[][]; the cell values per row, as indices into the strings array
+     * @param strings String[]; the unique cell values; index 0 is the empty String
+     */
+    private ActivityTable(final int[] rowNumbers, final int[][] cells, final String[] strings)
+    {
+        this.rowNumbers = rowNumbers;
+        this.cells = cells;
+        this.strings = strings;
+    }
+
+    /**
+     * Read a sheet of the workbook, using the cache file next to the workbook when it is still valid. When the cache is
+     * missing or outdated, the sheet is parsed and a new cache file is written.
+     * @param workbook File; the xlsx file
+     * @param sheetName String; the name of the sheet to read
+     * @return ActivityTable; the cell values of the sheet
+     * @throws Exception on I/O error, or when the sheet cannot be found or parsed
+     */
+    public static ActivityTable read(final File workbook, final String sheetName) throws Exception
+    {
+        // a workbook on disk is opened as a file; a workbook that is a resource is read into memory
+        byte[] bytes = null;
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try (InputStream fis = workbook.isFile() ? new FileInputStream(workbook)
+                : URLResource.getResourceAsStream(workbook.getAbsolutePath()))
+        {
+            if (fis == null)
+                throw new MedlabsException("Activity file " + workbook.getAbsolutePath() + " could not be opened");
+            if (workbook.isFile())
+            {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = fis.read(buffer)) > 0)
+                {
+                    crc.update(buffer, 0, n);
+                    length += n;
+                }
+            }
+            else
+            {
+                bytes = fis.readAllBytes();
+                crc.update(bytes);
+                length = bytes.length;
+            }
+        }
+        long checksum = crc.getValue();
+
+        File cacheFile = new File(workbook.getAbsolutePath() + ".cache");
+        if (cacheFile.isFile())
+        {
+            try
+            {
+                ActivityTable table = readCache(cacheFile, sheetName, length, checksum);
+                if (table != null)
+                {
+                    System.out.println("Used cached activities " + cacheFile.getAbsolutePath());
+                    return table;
+                }
+            }
+            catch (IOException exception)
+            {
+                System.err.println("Could not read activity cache file " + cacheFile + ": " + exception.getMessage());
+            }
+        }
+
+        ActivityTable table = bytes == null ? parse(OPCPackage.open(workbook, PackageAccess.READ), sheetName)
+                : parse(OPCPackage.open(new ByteArrayInputStream(bytes)), sheetName);
+        if (workbook.isFile())
+        {
+            try
+            {
+                table.writeCache(cacheFile, sheetName, length, checksum);
+            }
+            catch (IOException exception)
+            {
+                System.err.println("Could not write activity cache file " + cacheFile + ": " + exception.getMessage());
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Parse a sheet of the workbook with a SAX parser, and close the package.
+     * @param pkg OPCPackage; the xlsx package, opened for reading
+     * @param sheetName String; the name of the sheet to read
+     * @return ActivityTable; the cell values of the sheet
+     * @throws Exception on I/O error, or when the sheet cannot be found or parsed
+     */
+    static ActivityTable parse(final OPCPackage pkg, final String sheetName) throws Exception
+    {
+        try
+        {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (it.hasNext())
+            {
+                try (InputStream sheetStream = it.next())
+                {
+                    if (it.getSheetName().equals(sheetName))
+                    {
+                        SheetHandler handler = new SheetHandler(sharedStrings);
+                        XMLReader xmlReader = XMLHelper.newXMLReader();
+                        xmlReader.setContentHandler(handler);
+                        xmlReader.parse(new InputSource(sheetStream));
+                        return handler.makeTable();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            // the package was opened for reading only; revert closes it without saving
+            pkg.revert();
+        }
+        throw new MedlabsException("Sheet " + sheetName + " not found in activity xlsx file");
+    }
+
+    /**
+     * Read the cache file.
+     * @param cacheFile File; the cache file
+     * @param sheetName String; the name of the sheet that should be in the cache
+     * @param length long; the length of the workbook
+     * @param checksum long; the CRC32 checksum of the workbook
+     * @return ActivityTable; the cached table, or null when the cache does not belong to the current workbook
+     * @throws IOException on I/O error or when the cache file is corrupt
+     */
+    private static ActivityTable readCache(final File cacheFile, final String sheetName, final long length, final long checksum)
+            throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile))))
+        {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION || in.readLong() != length
+                    || in.readLong() != checksum || !in.readUTF().equals(sheetName))
+                return null;
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = in.readUTF();
+            int nrRows = in.readInt();
+            int[] rowNumbers = new int[nrRows];
+            int[][] cells = new int[nrRows][NR_COLUMNS];
+            for (int r = 0; r < nrRows; r++)
+            {
+                rowNumbers[r] = readVarInt(in);
+                for (int c = 0; c < NR_COLUMNS; c++)
+                {
+                    int index = readVarInt(in);
+                    if (index < 0 || index >= strings.length)
+                        throw new IOException("corrupt cache file");
+                    cells[r][c] = index;
+                }
+            }
+            return new ActivityTable(rowNumbers, cells, strings);
+        }
+    }
+
+    /**
+     * Write the table to the cache file.
+     * @param cacheFile File; the cache file
+     * @param sheetName String; the name of the sheet
+     * @param length long; the length of the workbook
+     * @param checksum long; the CRC32 checksum of the workbook
+     * @throws IOException on I/O error
+     */
+    private void writeCache(final File cacheFile, final String sheetName, final long length, final long checksum)
+            throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile))))
+        {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeLong(length);
+            out.writeLong(checksum);
+            out.writeUTF(sheetName);
+            out.writeInt(this.strings.length);
+            for (String s : this.strings)
+                out.writeUTF(s);
+            out.writeInt(this.rowNumbers.length);
+            for (int r = 0; r < this.rowNumbers.length; r++)
+            {
+                writeVarInt(out, this.rowNumbers[r]);
+                for (int c = 0; c < NR_COLUMNS; c++)
+                    writeVarInt(out, this.cells[r][c]);
+            }
+        }
+    }
+
+    /**
+     * Write a non-negative int in 7-bit groups, so small values such as the string indices take one or two bytes.
+     * @param out DataOutputStream; the stream to write to
+     * @param value int; the non-negative value to write
+     * @throws IOException on I/O error
+     */
+    private static void writeVarInt(final DataOutputStream out, final int value) throws IOException
+    {
+        int v = value;
+        while ((v & ~0x7F) != 0)
+        {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Read a non-negative int that was written by writeVarInt.
+     * @param in DataInputStream; the stream to read from
+     * @return int; the value
+     * @throws IOException on I/O error
+     */
+    private static int readVarInt(final DataInputStream in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("corrupt cache file");
+    }
+
+    /**
+     * @return the number of rows in the table
+     */
+    public int size()
+    {
+        return this.rowNumbers.length;
+    }
+
+    /**
+     * @param row int; the index of the row in the table
+     * @return the (0-based) row number of the row in the sheet
+     */
+    public int getRowNum(final int row)
+    {
+        return this.rowNumbers[row];
+    }
+
+    /**
+     * Return the value of a cell as a String; a missing cell returns an empty String.
+     * @param row int; the index of the row in the table
+     * @param column String; the column letter, A through Q
+     * @return String; the value of the cell
+     */
+    public String getString(final int row, final String column)
+    {
+        return this.strings[this.cells[row][columnIndex(column)]];
+    }
+
+    /**
+     * Return the value of a cell as a double; a missing or empty cell returns 0.0.
+     * @param row int; the index of the row in the table
+     * @param column String; the column letter, A through Q
+     * @return double; the value of the cell
+     * @throws MedlabsException when the cell does not contain a number
+     */
+    public double getDouble(final int row, final String column) throws MedlabsException
+    {
+        String value = getString(row, column).trim();
+        if (value.isEmpty())
+            return 0.0;
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException exception)
+        {
+            throw new MedlabsException("Cell " + column + (this.rowNumbers[row] + 1) + " in activity xlsx file is not numeric: "
+                    + value);
+        }
+    }
+
+    /**
+     * Return the column index for a column letter.
+     * @param column String; the column letter, A through Q
+     * @return int; the 0-based column index
+     */
+    private static int columnIndex(final String column)
+    {
+        int index = column.charAt(0) - 'A';
+        if (column.length() != 1 || index < 0 || index >= NR_COLUMNS)
+            throw new IllegalArgumentException("column " + column + " not in range A-Q");
+        return index;
+    }
+
+    /**
+     * SAX handler for a worksheet. Cell values are stored as their text: shared and inline strings are resolved, and for
+     * formula cells the cached result is used.
+     */
+    private static class SheetHandler extends DefaultHandler
+    {
+        /** the shared strings of the workbook. */
+        private final ReadOnlySharedStringsTable sharedStrings;
+
+        /** the unique cell values, mapped to their index. */
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+
+        /** the unique cell values in order of their index. */
+        private final List<String> strings = new ArrayList<>();
+
+        /** the row numbers of the parsed rows. */
+        private final List<Integer> rowNumbers = new ArrayList<>();
+
+        /** the cell values of the parsed rows. */
+        private final List<int[]> rows = new ArrayList<>();
+
+        /** the cells of the current row. */
+        private int[] currentRow;
+
+        /** the 0-based column index of the current cell, also for cells outside columns A-Q. */
+        private int currentColumn;
+
+        /** the type attribute of the current cell. */
+        private String cellType;
+
+        /** whether text is being collected for the current cell. */
+        private boolean collecting;
+
+        /** the text of the current cell. */
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * @param sharedStrings ReadOnlySharedStringsTable; the shared strings of the workbook
+         */
+        SheetHandler(final ReadOnlySharedStringsTable sharedStrings)
+        {
+            this.sharedStrings = sharedStrings;
+            index("");
+        }
+
+        /**
+         * Return the index of a cell value, adding it when it is new.
+         * @param value String; the cell value
+         * @return int; the index of the value
+         */
+        private int index(final String value)
+        {
+            Integer index = this.stringIndex.get(value);
+            if (index == null)
+            {
+                index = this.strings.size();
+                this.strings.add(value);
+                this.stringIndex.put(value, index);
+            }
+            return index;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+        {
+            String name = localName.isEmpty() ? qName : localName;
+            switch (name)
+            {
+                case "row":
+                    this.currentRow = new int[NR_COLUMNS];
+                    this.currentColumn = -1;
+                    String r = attributes.getValue("r");
+                    int previous = this.rowNumbers.isEmpty() ? -1 : this.rowNumbers.get(this.rowNumbers.size() - 1);
+                    this.rowNumbers.add(r == null ? previous + 1 : Integer.parseInt(r) - 1);
+                    this.rows.add(this.currentRow);
+                    break;
+                case "c":
+                    // a cell without a reference follows the previous cell of the row
+                    String ref = attributes.getValue("r");
+                    this.currentColumn = ref == null ? this.currentColumn + 1 : column(ref);
+                    this.cellType = attributes.getValue("t");
+                    this.text.setLength(0);
+                    break;
+                case "v":
+                case "t":
+                    this.collecting = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void endElement(final String uri, final String localName, final String qName)
+        {
+            String name = localName.isEmpty() ? qName : localName;
+            switch (name)
+            {
+                case "v":
+                case "t":
+                    this.collecting = false;
+                    break;
+                case "c":
+                    if (this.currentColumn >= 0 && this.currentColumn < NR_COLUMNS && this.text.length() > 0)
+                        this.currentRow[this.currentColumn] = index(value());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void characters(final char[] ch, final int start, final int length)
+        {
+            if (this.collecting)
+                this.text.append(ch, start, length);
+        }
+
+        /**
+         * @return the value of the current cell, based on the collected text and the cell type
+         */
+        private String value()
+        {
+            String s = this.text.toString();
+            if ("s".equals(this.cellType))
+                return this.sharedStrings.getItemAt(Integer.parseInt(s.trim())).getString();
+            if ("b".equals(this.cellType))
+                return "1".equals(s) ? "TRUE" : "FALSE";
+            if (this.cellType == null || "n".equals(this.cellType))
+            {
+                // numbers are stored in their shortest form, e.g., 6 instead of 6.0
+                double d = Double.parseDouble(s);
+                if (d == Math.rint(d) && Math.abs(d) < 1E15)
+                    return Long.toString((long) d);
+                return Double.toString(d);
+            }
+            return s; // inlineStr, str (formula result), e (error)
+        }
+
+        /**
+         * Return the column index of a cell reference such as B12.
+         * @param ref String; the cell reference
+         * @return int; the 0-based column index
+         */
+        private int column(final String ref)
+        {
+            int column = 0;
+            int i = 0;
+            while (i < ref.length() && Character.isLetter(ref.charAt(i)))
+                column = 26 * column + (ref.charAt(i++) - 'A' + 1);
+            return column - 1;
+        }
+
+        /**
+         * @return the table with the parsed rows
+         */
+        ActivityTable makeTable()
+        {
+            int[] rowNrs = new int[this.rowNumbers.size()];
+            for (int i = 0; i < rowNrs.length; i++)
+                rowNrs[i] = this.rowNumbers.get(i);
+            return new ActivityTable(rowNrs, this.rows.toArray(new int[0][]), this.strings.toArray(new String[0]));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return "ActivityTable [rows=" + this.rowNumbers.length + ", strings=" + this.strings.length + "]";
+    }
+
+}
@@ -0,0 +1,105 @@
+package eu.heros.factory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ColumnarBenchmark compares the load times of the csv format and the columnar format of a person or location file. Both files
+ * are loaded into column buffers, which is the part of the model construction that depends on the input format. Each format is
+ * loaded a number of times after a warm-up round; the minimum and mean load times are reported. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.factory.ColumnarBenchmark persons|locations input.csv.gz input.hcol [repetitions]
+ * </pre>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class ColumnarBenchmark
+{
+    /** */
+    private ColumnarBenchmark()
+    {
+        // utility class
+    }
+
+    /**
+     * Load a file in the given format.
+     * @param persons boolean; true for a person file, false for a location file
+     * @param file File; the file to load
+     * @param columnar boolean; whether the file is in the columnar format
+     * @return int; the number of loaded records
+     * @throws Exception on I/O error or when the file is not valid
+     */
+    private static int load(final boolean persons, final File file, final boolean columnar) throws Exception
+    {
+        if (columnar)
+            return persons ? ColumnarFile.readPersons(file).size() : ColumnarFile.readLocations(file).size();
+        List<Integer> sizes = new ArrayList<>();
+        if (persons)
+            new PipelinedCsvReader(file).read(header ->
+            {
+                int[] columns = PersonColumns.mapHeader(header);
+                return chunk -> PersonColumns.parse(chunk, columns);
+            }, pc -> sizes.add(pc.size()));
+        else
+            new PipelinedCsvReader(file).read(header ->
+            {
+                int[] columns = LocationColumns.mapHeader(header);
+                return chunk -> LocationColumns.parse(chunk, columns);
+            }, lc -> sizes.add(lc.size()));
+        return sizes.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Time the loading of a file.
+     * @param persons boolean; true for a person file, false for a location file
+     * @param file File; the file to load
+     * @param columnar boolean; whether the file is in the columnar format
+     * @param repetitions int; the number of timed repetitions
+     * @throws Exception on I/O error or when the file is not valid
+     */
+    private static void time(final boolean persons, final File file, final boolean columnar, final int repetitions)
+            throws Exception
+    {
+        int records = load(persons, file, columnar); // warm-up
+        long min = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < repetitions; i++)
+        {
+            long start = System.nanoTime();
+            load(persons, file, columnar);
+            long duration = System.nanoTime() - start;
+            min = Math.min(min, duration);
+            total += duration;
+        }
+        System.out.println(String.format("%-9s %,12d bytes %,10d records  min %8.1f ms  mean %8.1f ms",
+                columnar ? "columnar" : "csv", file.length(), records, min / 1.0E6, total / 1.0E6 / repetitions));
+    }
+
+    /**
+     * @param args String[]; args[0]: persons or locations; args[1]: csv file; args[2]: columnar file; args[3]: number of
+     *            repetitions (optional, default 5)
+     * @throws Exception on I/O error or when a file is not valid
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: ColumnarBenchmark persons|locations input.csv[.gz] input.hcol [repetitions]");
+            System.exit(-1);
+        }
+        boolean persons = args[0].toLowerCase().startsWith("person");
+        int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        time(persons, new File(args[1]), false, repetitions);
+        time(persons, new File(args[2]), true, repetitions);
+    }
+
+}
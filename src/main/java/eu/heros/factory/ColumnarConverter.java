@@ -0,0 +1,100 @@
+package eu.heros.factory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ColumnarConverter converts a (gzipped) person or location csv file into the columnar format of {@link ColumnarFile}. The
+ * converted file can be used directly in generic.PersonFilePath or generic.LocationsFilePath; ConstructHerosModel recognizes
+ * the format by its magic number. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.factory.ColumnarConverter persons|locations input.csv.gz output.hcol
+ * </pre>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class ColumnarConverter
+{
+    /** */
+    private ColumnarConverter()
+    {
+        // utility class
+    }
+
+    /**
+     * Convert a person file.
+     * @param csvFile File; the (gzipped) person csv file
+     * @param columnarFile File; the columnar file to write
+     * @return int; the number of converted records
+     * @throws Exception on I/O error or when the csv file is not valid
+     */
+    public static int convertPersons(final File csvFile, final File columnarFile) throws Exception
+    {
+        List<PersonColumns> parts = new ArrayList<>();
+        new PipelinedCsvReader(csvFile).read(header ->
+        {
+            int[] columns = PersonColumns.mapHeader(header);
+            return chunk -> PersonColumns.parse(chunk, columns);
+        }, parts::add);
+        ColumnarFile.writePersons(columnarFile, parts);
+        return parts.stream().mapToInt(PersonColumns::size).sum();
+    }
+
+    /**
+     * Convert a location file.
+     * @param csvFile File; the (gzipped) location csv file
+     * @param columnarFile File; the columnar file to write
+     * @return int; the number of converted records
+     * @throws Exception on I/O error or when the csv file is not valid
+     */
+    public static int convertLocations(final File csvFile, final File columnarFile) throws Exception
+    {
+        List<LocationColumns> parts = new ArrayList<>();
+        new PipelinedCsvReader(csvFile).read(header ->
+        {
+            int[] columns = LocationColumns.mapHeader(header);
+            return chunk -> LocationColumns.parse(chunk, columns);
+        }, parts::add);
+        ColumnarFile.writeLocations(columnarFile, parts);
+        return parts.stream().mapToInt(LocationColumns::size).sum();
+    }
+
+    /**
+     * @param args String[]; args[0]: persons or locations; args[1]: input csv file; args[2]: output columnar file
+     * @throws Exception on I/O error or when the csv file is not valid
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length != 3)
+        {
+            System.err.println("Usage: ColumnarConverter persons|locations input.csv[.gz] output.hcol");
+            System.exit(-1);
+        }
+        File in = new File(args[1]);
+        File out = new File(args[2]);
+        long start = System.currentTimeMillis();
+        int records;
+        if (args[0].toLowerCase().startsWith("person"))
+            records = convertPersons(in, out);
+        else if (args[0].toLowerCase().startsWith("location"))
+            records = convertLocations(in, out);
+        else
+        {
+            System.err.println("First argument should be persons or locations, not " + args[0]);
+            System.exit(-1);
+            return;
+        }
+        System.out.println("Converted " + records + " records from " + in + " (" + in.length() + " bytes) to " + out + " ("
+                + out.length() + " bytes) in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+}
@@ -0,0 +1,580 @@
+package eu.heros.factory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import nl.tudelft.simulation.medlabs.common.MedlabsException;
+
+/**
+ * ColumnarFile reads and writes the person and location tables in a columnar binary format. Each column is stored as one typed,
+ * deflate-compressed block. Integer columns are delta-encoded before compression, since ids are mostly ascending; the
+ * location_category column is dictionary-encoded. The layout of the file is:
+ *
+ * <pre>
+ * int    magic "HCOL"
+ * int    version
+ * byte   kind (P = persons, L = locations)
+ * int    number of records
+ * int    number of columns
+ * per column:
+ *   UTF  column name
+ *   byte type (I = int, B = byte, S = short, F = float, D = dictionary-encoded String)
+ *   [type D only: int number of dictionary entries, followed by the entries as UTF]
+ *   int  compressed length of the block
+ *   byte[] compressed block
+ * </pre>
+ *
+ * Columns are found by name, so additional columns can be added to the file without breaking the reader.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class ColumnarFile
+{
+    /** the magic number at the start of a columnar file ("HCOL"). */
+    public static final int MAGIC = 0x48434F4C;
+
+    /** the version of the file format. */
+    public static final int VERSION = 1;
+
+    /** the kind of a file with persons. */
+    public static final byte KIND_PERSONS = 'P';
+
+    /** the kind of a file with locations. */
+    public static final byte KIND_LOCATIONS = 'L';
+
+    /** column type int. */
+    private static final byte TYPE_INT = 'I';
+
+    /** column type byte. */
+    private static final byte TYPE_BYTE = 'B';
+
+    /** column type short. */
+    private static final byte TYPE_SHORT = 'S';
+
+    /** column type float. */
+    private static final byte TYPE_FLOAT = 'F';
+
+    /** column type dictionary-encoded String. */
+    private static final byte TYPE_DICTIONARY = 'D';
+
+    /** */
+    private ColumnarFile()
+    {
+        // utility class
+    }
+
+    /**
+     * Return whether the file starts with the magic number of a columnar file.
+     * @param file File; the file to check
+     * @return boolean; whether the file is a columnar file
+     */
+    public static boolean isColumnar(final File file)
+    {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            return in.readInt() == MAGIC;
+        }
+        catch (IOException exception)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Read a columnar person file.
+     * @param file File; the file to read
+     * @return PersonColumns; the person records
+     * @throws IOException on I/O error
+     * @throws MedlabsException when the file is not a columnar person file, or when a column is missing
+     */
+    public static PersonColumns readPersons(final File file) throws IOException, MedlabsException
+    {
+        Map<String, Object> columns = new HashMap<>();
+        int size = read(file, KIND_PERSONS, columns);
+        return new PersonColumns(size, (int[]) column(columns, "person_id", int[].class, file),
+                (int[]) column(columns, "household_id", int[].class, file), (byte[]) column(columns, "age", byte[].class, file),
+                (int[]) column(columns, "home_id", int[].class, file),
+                (int[]) column(columns, "workplace_id", int[].class, file),
+                (int[]) column(columns, "social_role", int[].class, file));
+    }
+
+    /**
+     * Read a columnar location file.
+     * @param file File; the file to read
+     * @return LocationColumns; the location records
+     * @throws IOException on I/O error
+     * @throws MedlabsException when the file is not a columnar location file, or when a column is missing; the district
+     *             column is optional
+     */
+    public static LocationColumns readLocations(final File file) throws IOException, MedlabsException
+    {
+        Map<String, Object> columns = new HashMap<>();
+        int size = read(file, KIND_LOCATIONS, columns);
+        String[] district = (String[]) columns.get("district");
+        if (district == null)
+        {
+            district = new String[size];
+            Arrays.fill(district, "");
+        }
+        return new LocationColumns(size, (int[]) column(columns, "location_id", int[].class, file),
+                (float[]) column(columns, "lat", float[].class, file), (float[]) column(columns, "lon", float[].class, file),
+                (float[]) column(columns, "area", float[].class, file),
+                (short[]) column(columns, "nb_sublocations", short[].class, file),
+                (String[]) column(columns, "location_category", String[].class, file), district);
+    }
+
+    /**
+     * Write the person records to a columnar file.
+     * @param file File; the file to write
+     * @param parts List&lt;PersonColumns&gt;; the person records, e.g., the parsed chunks of a csv file, in order
+     * @throws IOException on I/O error
+     */
+    public static void writePersons(final File file, final List<PersonColumns> parts) throws IOException
+    {
+        int size = 0;
+        for (PersonColumns pc : parts)
+            size += pc.size();
+        int[] personId = new int[size];
+        int[] householdId = new int[size];
+        byte[] age = new byte[size];
+        int[] homeId = new int[size];
+        int[] workplaceId = new int[size];
+        int[] socialRole = new int[size];
+        int n = 0;
+        for (PersonColumns pc : parts)
+        {
+            for (int i = 0; i < pc.size(); i++, n++)
+            {
+                personId[n] = pc.getPersonId(i);
+                householdId[n] = pc.getHouseholdId(i);
+                age[n] = pc.getAge(i);
+                homeId[n] = pc.getHomeId(i);
+                workplaceId[n] = pc.getWorkplaceId(i);
+                socialRole[n] = pc.getSocialRole(i);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16)))
+        {
+            writeHeader(out, KIND_PERSONS, size, 6);
+            writeInts(out, "person_id", personId);
+            writeInts(out, "household_id", householdId);
+            writeBytes(out, "age", age);
+            writeInts(out, "home_id", homeId);
+            writeInts(out, "workplace_id", workplaceId);
+            writeInts(out, "social_role", socialRole);
+        }
+    }
+
+    /**
+     * Write the location records to a columnar file.
+     * @param file File; the file to write
+     * @param parts List&lt;LocationColumns&gt;; the location records, e.g., the parsed chunks of a csv file, in order
+     * @throws IOException on I/O error
+     */
+    public static void writeLocations(final File file, final List<LocationColumns> parts) throws IOException
+    {
+        int size = 0;
+        for (LocationColumns lc : parts)
+            size += lc.size();
+        int[] locationId = new int[size];
+        float[] lat = new float[size];
+        float[] lon = new float[size];
+        float[] area = new float[size];
+        short[] nbSublocations = new short[size];
+        String[] locationCategory = new String[size];
+        String[] district = new String[size];
+        int n = 0;
+        for (LocationColumns lc : parts)
+        {
+            for (int i = 0; i < lc.size(); i++, n++)
+            {
+                locationId[n] = lc.getLocationId(i);
+                lat[n] = lc.getLat(i);
+                lon[n] = lc.getLon(i);
+                area[n] = lc.getArea(i);
+                nbSublocations[n] = lc.getNbSublocations(i);
+                locationCategory[n] = lc.getLocationCategory(i);
+                district[n] = lc.getDistrict(i);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16)))
+        {
+            writeHeader(out, KIND_LOCATIONS, size, 7);
+            writeInts(out, "location_id", locationId);
+            writeFloats(out, "lat", lat);
+            writeFloats(out, "lon", lon);
+            writeFloats(out, "area", area);
+            writeShorts(out, "nb_sublocations", nbSublocations);
+            writeDictionary(out, "location_category", locationCategory);
+            writeDictionary(out, "district", district);
+        }
+    }
+
+    /**
+     * Read all columns of a columnar file into a map of column name to primitive array.
+     * @param file File; the file to read
+     * @param kind byte; the expected kind of the file
+     * @param columns Map&lt;String, Object&gt;; the map to store the columns in
+     * @return int; the number of records
+     * @throws IOException on I/O error
+     * @throws MedlabsException when the file is not a columnar file of the expected kind
+     */
+    private static int read(final File file, final byte kind, final Map<String, Object> columns)
+            throws IOException, MedlabsException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16)))
+        {
+            if (in.readInt() != MAGIC)
+                throw new MedlabsException("File " + file + " is not a columnar file");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new MedlabsException("File " + file + " has columnar version " + version + ", expected " + VERSION);
+            byte fileKind = in.readByte();
+            if (fileKind != kind)
+                throw new MedlabsException("File " + file + " has kind " + (char) fileKind + ", expected " + (char) kind
+                        + " (P=persons, L=locations)");
+            int size = in.readInt();
+            int nrColumns = in.readInt();
+            for (int c = 0; c < nrColumns; c++)
+            {
+                String name = in.readUTF();
+                byte type = in.readByte();
+                String[] dictionary = null;
+                if (type == TYPE_DICTIONARY)
+                {
+                    dictionary = new String[in.readInt()];
+                    for (int i = 0; i < dictionary.length; i++)
+                        dictionary[i] = in.readUTF();
+                }
+                byte[] compressed = new byte[in.readInt()];
+                in.readFully(compressed);
+                int length = size * width(type);
+                ByteBuffer block = ByteBuffer.wrap(inflate(compressed, length, file), 0, length);
+                columns.put(name, decode(block, type, size, dictionary));
+            }
+            return size;
+        }
+        catch (EOFException exception)
+        {
+            throw new MedlabsException("File " + file + " is truncated");
+        }
+    }
+
+    /**
+     * Retrieve a column from the map, checking its presence and type.
+     * @param columns Map&lt;String, Object&gt;; the columns that were read
+     * @param name String; the name of the column
+     * @param type Class&lt;?&gt;; the expected array type
+     * @param file File; the file, for the error message
+     * @return Object; the column array
+     * @throws MedlabsException when the column is missing or has the wrong type
+     */
+    private static Object column(final Map<String, Object> columns, final String name, final Class<?> type, final File file)
+            throws MedlabsException
+    {
+        Object column = columns.get(name);
+        if (column == null || !type.isInstance(column))
+            throw new MedlabsException("Columnar file " + file + " does not contain column " + name + " of type "
+                    + type.getComponentType().getSimpleName());
+        return column;
+    }
+
+    /**
+     * Return the number of bytes per value for a column type.
+     * @param type byte; the column type
+     * @return int; the number of bytes per value in the uncompressed block
+     * @throws IOException when the type is unknown
+     */
+    private static int width(final byte type) throws IOException
+    {
+        switch (type)
+        {
+            case TYPE_INT:
+            case TYPE_FLOAT:
+            case TYPE_DICTIONARY:
+                return 4;
+            case TYPE_SHORT:
+                return 2;
+            case TYPE_BYTE:
+                return 1;
+            default:
+                throw new IOException("unknown column type " + (char) type);
+        }
+    }
+
+    /**
+     * Decode an uncompressed block into a primitive array.
+     * @param block ByteBuffer; the uncompressed block
+     * @param type byte; the column type
+     * @param size int; the number of records
+     * @param dictionary String[]; the dictionary for a dictionary-encoded column, null otherwise
+     * @return Object; the column array
+     * @throws IOException when a dictionary code is out of range
+     */
+    private static Object decode(final ByteBuffer block, final byte type, final int size, final String[] dictionary)
+            throws IOException
+    {
+        switch (type)
+        {
+            case TYPE_INT:
+            {
+                int[] values = new int[size];
+                block.asIntBuffer().get(values);
+                for (int i = 1; i < size; i++)
+                    values[i] += values[i - 1];
+                return values;
+            }
+            case TYPE_FLOAT:
+            {
+                float[] values = new float[size];
+                block.asFloatBuffer().get(values);
+                return values;
+            }
+            case TYPE_SHORT:
+            {
+                short[] values = new short[size];
+                block.asShortBuffer().get(values);
+                return values;
+            }
+            case TYPE_BYTE:
+            {
+                byte[] values = new byte[size];
+                block.get(values);
+                return values;
+            }
+            case TYPE_DICTIONARY:
+            {
+                String[] values = new String[size];
+                for (int i = 0; i < size; i++)
+                {
+                    int code = block.getInt();
+                    if (code < 0 || code >= dictionary.length)
+                        throw new IOException("dictionary code " + code + " out of range");
+                    values[i] = dictionary[code];
+                }
+                return values;
+            }
+            default:
+                throw new IOException("unknown column type " + (char) type);
+        }
+    }
+
+    /**
+     * Write the file header.
+     * @param out DataOutputStream; the output stream
+     * @param kind byte; the kind of the file
+     * @param size int; the number of records
+     * @param nrColumns int; the number of columns
+     * @throws IOException on I/O error
+     */
+    private static void writeHeader(final DataOutputStream out, final byte kind, final int size, final int nrColumns)
+            throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(kind);
+        out.writeInt(size);
+        out.writeInt(nrColumns);
+    }
+
+    /**
+     * Write a delta-encoded int column.
+     * @param out DataOutputStream; the output stream
+     * @param name String; the column name
+     * @param values int[]; the values
+     * @throws IOException on I/O error
+     */
+    private static void writeInts(final DataOutputStream out, final String name, final int[] values) throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(4 * values.length);
+        int previous = 0;
+        for (int value : values)
+        {
+            block.putInt(value - previous);
+            previous = value;
+        }
+        writeBlock(out, name, TYPE_INT, block.array());
+    }
+
+    /**
+     * Write a float column.
+     * @param out DataOutputStream; the output stream
+     * @param name String; the column name
+     * @param values float[]; the values
+     * @throws IOException on I/O error
+     */
+    private static void writeFloats(final DataOutputStream out, final String name, final float[] values) throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(4 * values.length);
+        block.asFloatBuffer().put(values);
+        writeBlock(out, name, TYPE_FLOAT, block.array());
+    }
+
+    /**
+     * Write a short column.
+     * @param out DataOutputStream; the output stream
+     * @param name String; the column name
+     * @param values short[]; the values
+     * @throws IOException on I/O error
+     */
+    private static void writeShorts(final DataOutputStream out, final String name, final short[] values) throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(2 * values.length);
+        block.asShortBuffer().put(values);
+        writeBlock(out, name, TYPE_SHORT, block.array());
+    }
+
+    /**
+     * Write a byte column.
+     * @param out DataOutputStream; the output stream
+     * @param name String; the column name
+     * @param values byte[]; the values
+     * @throws IOException on I/O error
+     */
+    private static void writeBytes(final DataOutputStream out, final String name, final byte[] values) throws IOException
+    {
+        writeBlock(out, name, TYPE_BYTE, values);
+    }
+
+    /**
+     * Write a dictionary-encoded String column.
+     * @param out DataOutputStream; the output stream
+     * @param name String; the column name
+     * @param values String[]; the values
+     * @throws IOException on I/O error
+     */
+    private static void writeDictionary(final DataOutputStream out, final String name, final String[] values)
+            throws IOException
+    {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        ByteBuffer block = ByteBuffer.allocate(4 * values.length);
+        for (String value : values)
+        {
+            Integer code = codes.get(value);
+            if (code == null)
+            {
+                code = dictionary.size();
+                dictionary.add(value);
+                codes.put(value, code);
+            }
+            block.putInt(code);
+        }
+        out.writeUTF(name);
+        out.writeByte(TYPE_DICTIONARY);
+        out.writeInt(dictionary.size());
+        for (String entry : dictionary)
+            out.writeUTF(entry);
+        byte[] compressed = deflate(block.array());
+        out.writeInt(compressed.length);
+        out.write(compressed);
+    }
+
+    /**
+     * Write a column block.
+     * @param out DataOutputStream; the output stream
+     * @param name String; the column name
+     * @param type byte; the column type
+     * @param block byte[]; the uncompressed block
+     * @throws IOException on I/O error
+     */
+    private static void writeBlock(final DataOutputStream out, final String name, final byte type, final byte[] block)
+            throws IOException
+    {
+        out.writeUTF(name);
+        out.writeByte(type);
+        byte[] compressed = deflate(block);
+        out.writeInt(compressed.length);
+        out.write(compressed);
+    }
+
+    /**
+     * Compress a block.
+     * @param block byte[]; the uncompressed block
+     * @return byte[]; the compressed block
+     */
+    private static byte[] deflate(final byte[] block)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(block);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, block.length / 2)];
+            int length = 0;
+            while (!deflater.finished())
+            {
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress a block.
+     * @param compressed byte[]; the compressed block
+     * @param length int; the length of the uncompressed block
+     * @param file File; the file, for the error message
+     * @return byte[]; the uncompressed block in the first length bytes of the array; the array has one spare byte to detect
+     *         blocks that are too long
+     * @throws IOException when the block is corrupt or has the wrong length
+     */
+    private static byte[] inflate(final byte[] compressed, final int length, final File file) throws IOException
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(compressed);
+            byte[] block = new byte[length + 1];
+            int n = 0;
+            while (n <= length && !inflater.finished())
+            {
+                int read = inflater.inflate(block, n, block.length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                n += read;
+            }
+            if (n != length || !inflater.finished())
+                throw new IOException("corrupt column block in columnar file " + file);
+            return block;
+        }
+        catch (DataFormatException exception)
+        {
+            throw new IOException("corrupt column block in columnar file " + file, exception);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+}
@@ -2,8 +2,6 @@ package eu.heros.factory;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
@@ -14,11 +12,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.djutils.exceptions.Throw;
 import org.djutils.io.URLResource;
 
@@ -27,7 +27,11 @@ import de.siegmar.fastcsv.reader.CsvRow;
 import eu.heros.disease.Covid19Progression;
 import eu.heros.disease.Covid19TransmissionArea;
 import eu.heros.disease.Covid19TransmissionDistance;
+import eu.heros.location.HerosLocation;
+import eu.heros.location.HerosLocationProbBased;
+import eu.heros.model.FamilyIndex;
 import eu.heros.model.HerosModel;
+import eu.heros.model.IdMapping;
 import eu.heros.person.CollegeStudent;
 import eu.heros.person.EssentialWorker;
 import eu.heros.person.Infant;
@@ -46,12 +50,12 @@ import eu.heros.person.WorkerSatelliteToSatellite;
 import eu.heros.policy.DiseasePolicy;
 import eu.heros.policy.LocationPolicy;
 import gnu.trove.iterator.TIntObjectIterator;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.map.TLongShortMap;
+import gnu.trove.map.hash.TLongShortHashMap;
 import nl.tudelft.simulation.jstats.distributions.DistContinuous;
 import nl.tudelft.simulation.jstats.distributions.DistTriangular;
 import nl.tudelft.simulation.jstats.distributions.DistUniform;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
 import nl.tudelft.simulation.medlabs.activity.Activity;
 import nl.tudelft.simulation.medlabs.activity.FixedDurationActivity;
 import nl.tudelft.simulation.medlabs.activity.StochasticDurationActivity;
@@ -84,9 +88,7 @@ import nl.tudelft.simulation.medlabs.disease.DiseaseMonitor;
 import nl.tudelft.simulation.medlabs.disease.DiseasePhase;
 import nl.tudelft.simulation.medlabs.disease.DiseaseProgression;
 import nl.tudelft.simulation.medlabs.disease.DiseaseTransmission;
-import nl.tudelft.simulation.medlabs.excel.ExcelUtil;
 import nl.tudelft.simulation.medlabs.location.Location;
-import nl.tudelft.simulation.medlabs.location.LocationProbBased;
 import nl.tudelft.simulation.medlabs.location.LocationType;
 import nl.tudelft.simulation.medlabs.location.animation.LocationAnimation;
 import nl.tudelft.simulation.medlabs.output.ResultWriter;
@@ -94,6 +96,8 @@ import nl.tudelft.simulation.medlabs.person.Person;
 import nl.tudelft.simulation.medlabs.person.PersonMonitor;
 import nl.tudelft.simulation.medlabs.person.PersonType;
 import nl.tudelft.simulation.medlabs.person.index.IdxPerson;
+import nl.tudelft.simulation.medlabs.person.index.IdxStudent;
+import nl.tudelft.simulation.medlabs.person.index.IdxWorker;
 import nl.tudelft.simulation.medlabs.simulation.TimeUnit;
 
 /**
@@ -116,48 +120,202 @@ public class ConstructHerosModel
     /** temporary storage of the weekday patterns while building. */
     private Map<String, Map<String, DayPattern>> weekDayPattern = new HashMap<>();
 
-    /** map to allocate households to the right sublocation. The map maps homeId via householdId to sublocationIndex. */
-    private Map<Integer, Map<Integer, Short>> householdMap = new HashMap<>();
+    /**
+     * map to allocate households to the right sublocation. The map maps the combination of homeId (high 32 bits) and
+     * householdId (low 32 bits) to the sublocationIndex. Only used while reading the persons.
+     */
+    private TLongShortMap householdMap = new TLongShortHashMap(1 << 16, 0.5f, Long.MIN_VALUE, (short) -1);
+
+    /** the mapping of the original location and person ids to the dense ids that are used in the model. */
+    private final IdMapping idMapping = new IdMapping();
+
+    /**
+     * the number of households allocated so far per homeId, indexed by the dense location id of the home. Made when the first
+     * persons are created, since the number of locations is then known. Only used while reading the persons.
+     */
+    private short[] householdCount = null;
+
+    /** the selection of the persons to infect at t=0; persons and locations are registered while they are created. */
+    private InfectionSeeder infectionSeeder;
 
     /** map to temporarily store the probability-based infection locations. */
-    private Map<Integer, double[]> probBasedInfectLoc = new HashMap<>();
+    private Map<Integer, double[]> probBasedInfectLoc;
+
+    /** the disease progression of this model, with the disease phases of this model. */
+    private Covid19Progression covidProgression;
+
+    /** the cache with the parsed input files that are shared between models in the same JVM, or null. */
+    private final InputCache inputCache;
+
+    /** the fraction of the households that is kept in the model; 1.0 for the full population. */
+    private final double personSampleFraction;
+
+    /** the number of threads of the parser pool. */
+    private final int nrParsers = PipelinedCsvReader.defaultNumberOfParsers();
+
+    /** the pool of parser threads that is shared by the csv files that are read at the same time. */
+    private final ExecutorService parserPool = PipelinedCsvReader.newParserPool(this.nrParsers);
 
     /**
-     * Constructor of the model reader.
+     * Constructor of the model reader. The input files that do not depend on each other (infection rates, locations, activity
+     * workbook and persons) are read concurrently on a small pool of loader threads, and the csv files among them are parsed on
+     * one shared pool of parser threads. The model itself is only changed by one thread at a time and in the original order:
+     * location types, person types, locations, week patterns, persons, so the ids and the draws from the random streams do not
+     * change. The persons are created as soon as the locations and week patterns they refer to are available. When the model
+     * has an InputCache, the parsed input files are taken from the cache, and only parsed when no other model in the JVM did so
+     * before. A report with the time and heap use per step is printed at the end.
      * @param model the model
+     * @throws MedlabsRuntimeException when an input file or path cannot be found, or an input file contains errors; the
+     *             model is then not usable, and the caller decides whether to stop or to go on with other replications
      */
     public ConstructHerosModel(final HerosModel model)
     {
         this.model = model;
+        this.inputCache = model.getInputCache();
+        this.personSampleFraction = model.getParameterValueDouble("generic.PersonSampleFraction");
         File file = getPathFromParam("generic.InputPath", true);
         model.setBasePath(file.getAbsolutePath());
+        StartupReport report = new StartupReport();
+        ExecutorService loader = Executors.newFixedThreadPool(4, new ThreadFactory()
+        {
+            /** the number of the next thread. */
+            private int nr = 1;
+
+            @Override
+            public synchronized Thread newThread(final Runnable r)
+            {
+                Thread thread = new Thread(r, "input-loader-" + this.nr++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        CompletableFuture<Void> personPrerequisites = new CompletableFuture<>();
         try
         {
-            DiseaseProgression covidProgression = new Covid19Progression(this.model);
+            this.covidProgression = new Covid19Progression(this.model);
             DiseaseTransmission covidTransmission =
                     (this.model.getParameterValue("generic.diseasePropertiesModel").equals("area"))
                             ? new Covid19TransmissionArea(this.model) : new Covid19TransmissionDistance(this.model);
-            readLocationTypeTable();
-            makePersonTypes();
-            readProbabilityBasedInfectionLocations();
-            this.model.setDiseaseProgression(covidProgression);
+            this.infectionSeeder = new InfectionSeeder(this.model.getParameterValue("policies.SeedLocationTypes"),
+                    this.model.getParameterValue("policies.SeedDistricts"),
+                    this.model.getParameterValue("policies.SeedCluster"));
+
+            // start reading the independent input files
+            File infectionRateFile = getFileFromParam("generic.ProbRatioFilePath", "/infection_rates.csv");
+            File locationFile = getFileFromParam("generic.LocationsFilePath", "locations.csv.gz");
+            File activityFile = getFileFromParam("generic.ActivityFilePath", "activityschedules.xlsx");
+            File personFile = getFileFromParam("generic.PersonFilePath", "people.csv.gz");
+            CompletableFuture<Map<Integer, double[]>> infectionRates = submit(loader, report, "read infection rates",
+                    () -> cached("infection rates", infectionRateFile,
+                            () -> readProbabilityBasedInfectionLocations(infectionRateFile)));
+            CompletableFuture<List<LocationColumns>> locationColumns = submit(loader, report, "read locations",
+                    () -> cached("locations", locationFile, () -> readLocationColumns(locationFile)));
+            CompletableFuture<ActivityTable> activityTable = submit(loader, report, "read activity workbook",
+                    () -> cached("activities", activityFile, () -> ActivityTable.read(activityFile, "activityschedules")));
+            CompletableFuture<Void> persons = submit(loader, report, "read and make persons", () ->
+            {
+                readPersonTable(personFile, personPrerequisites);
+                return null;
+            });
+
+            // build the model in dependency order
+            report.run("read location types", () -> readLocationTypeTable());
+            report.run("make person types", () -> makePersonTypes());
+            this.probBasedInfectLoc = join(infectionRates);
+            this.model.setDiseaseProgression(this.covidProgression);
             this.model.setDiseaseTransmission(covidTransmission);
-            this.model.setDiseaseMonitor(new DiseaseMonitor(this.model, covidProgression, 0.5));
+            this.model.setDiseaseMonitor(new DiseaseMonitor(this.model, this.covidProgression, 0.5));
             this.model.setPersonMonitor(new PersonMonitor(this.model));
-            readLocationTable();
-            readWeekpatternData();
-            checkBasicWeekPatterns();
-            readPersonTable();
-            makeFamilies();
-            scheduleLocationPolicies();
-            scheduleDiseasePolicies();
-            infectPersons();
-            makeResultWriter();
+            report.run("make locations", () -> readLocationTable(join(locationColumns)));
+            report.run("make week patterns", () -> readWeekpatternData(join(activityTable)));
+            report.run("check week patterns", () -> checkBasicWeekPatterns());
+            personPrerequisites.complete(null);
+            join(persons);
+            report.run("index locations and persons", () ->
+            {
+                this.idMapping.trim();
+                this.model.setIdMapping(this.idMapping);
+                this.model.makeIndexArrays();
+            });
+            report.run("make families", () -> makeFamilies());
+            report.run("schedule policies", () -> schedulePolicies(this.model, Double.NEGATIVE_INFINITY));
+            report.run("infect persons", () -> infectPersons());
+            report.run("make result writer", () -> makeResultWriter());
+            report.print();
         }
         catch (Exception exception)
         {
-            exception.printStackTrace();
-            System.exit(0);
+            personPrerequisites.completeExceptionally(exception);
+            throw new MedlabsRuntimeException("error constructing the model: " + exception.getMessage(), exception);
+        }
+        finally
+        {
+            loader.shutdownNow();
+            this.parserPool.shutdownNow();
+            if (this.inputCache != null)
+                this.inputCache.modelConstructed();
+        }
+    }
+
+    /**
+     * Execute a reading step on the loader pool, recording it in the startup report.
+     * @param loader ExecutorService; the loader pool
+     * @param report StartupReport; the startup report
+     * @param name String; the name of the step
+     * @param step Callable&lt;T&gt;; the step
+     * @return CompletableFuture&lt;T&gt;; the future result of the step
+     * @param <T> the result type of the step
+     */
+    private static <T> CompletableFuture<T> submit(final ExecutorService loader, final StartupReport report, final String name,
+            final Callable<T> step)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        loader.execute(() ->
+        {
+            try
+            {
+                future.complete(report.time(name, step));
+            }
+            catch (Throwable throwable)
+            {
+                future.completeExceptionally(throwable);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Return the parsed contents of an input file from the input cache, or parse the file when the model has no input cache.
+     * @param kind String; the kind of contents, to distinguish different parses of the same file
+     * @param file File; the input file
+     * @param loader Callable&lt;T&gt;; the parser of the file
+     * @return T; the parsed contents
+     * @param <T> the type of the parsed contents
+     * @throws Exception when parsing the file failed
+     */
+    private <T> T cached(final String kind, final File file, final Callable<T> loader) throws Exception
+    {
+        return this.inputCache == null ? loader.call() : this.inputCache.get(kind, file, loader);
+    }
+
+    /**
+     * Wait for the result of a reading step, and rethrow its exception when it failed.
+     * @param future CompletableFuture&lt;T&gt;; the future result of the step
+     * @return T; the result of the step
+     * @param <T> the result type of the step
+     * @throws Exception when the step failed
+     */
+    private static <T> T join(final CompletableFuture<T> future) throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException exception)
+        {
+            if (exception.getCause() instanceof Exception)
+                throw (Exception) exception.getCause();
+            throw exception;
         }
     }
 
@@ -180,28 +338,40 @@ public class ConstructHerosModel
         }
         if (file == null || !file.exists())
         {
-            System.err.println("could not find path as specified in parameter " + param + " with value: " + paramValue);
-            System.exit(-1);
+            throw new MedlabsRuntimeException(
+                    "could not find path as specified in parameter " + param + " with value: " + paramValue);
         }
         if (file.isDirectory() && !dir)
         {
-            System.err.println(
+            throw new MedlabsRuntimeException(
                     "parameter " + param + " with value: " + paramValue + " should point to a file, but it is a directory");
-            System.exit(-1);
         }
         if (!file.isDirectory() && dir)
         {
-            System.err.println(
+            throw new MedlabsRuntimeException(
                     "parameter " + param + " with value: " + paramValue + " should point to a directory, but it is a file");
-            System.exit(-1);
         }
         return file;
     }
 
     private File getFileFromParam(final String param, final String defaultFileName)
     {
-        String paramValue = this.model.getParameterValue(param).trim();
-        String basePath = this.model.getBasePath();
+        return getFileFromParam(this.model, param, defaultFileName);
+    }
+
+    /**
+     * Find an input file, relative to the base path of the model or as given in the parameter, or the default file in the base
+     * path when the parameter is blank.
+     * @param model HerosModel; the model
+     * @param param String; the name of the parameter with the file name
+     * @param defaultFileName String; the file name relative to the base path when the parameter is blank
+     * @return File; the input file
+     * @throws RuntimeException when the file cannot be found
+     */
+    private static File getFileFromParam(final HerosModel model, final String param, final String defaultFileName)
+    {
+        String paramValue = model.getParameterValue(param).trim();
+        String basePath = model.getBasePath();
         if (paramValue.length() > 0)
         {
             File file = new File(basePath + "/" + paramValue);
@@ -269,11 +439,14 @@ public class ConstructHerosModel
     }
 
     /**
-     * Read the probability-based infection locations.
+     * Read the probability-based infection locations, without changing the model.
+     * @param path File; the infection rates file
+     * @return Map&lt;Integer, double[]&gt;; map of location id to {infectionRateFactor, infectionRate}
+     * @throws Exception on I/O error or when the file contains errors
      */
-    private void readProbabilityBasedInfectionLocations() throws Exception
+    private Map<Integer, double[]> readProbabilityBasedInfectionLocations(final File path) throws Exception
     {
-        File path = getFileFromParam("generic.ProbRatioFilePath", "/infection_rates.csv");
+        Map<Integer, double[]> infectionRates = new HashMap<>();
         Reader reader = new InputStreamReader(new FileInputStream(path));
         CsvReader csvReader = CsvReader.builder().fieldSeparator(',').quoteCharacter('"').build(reader);
         CsvRow row;
@@ -289,15 +462,42 @@ public class ConstructHerosModel
                 int locationId = Integer.parseInt(data.get(0));
                 double infectionRateFactor = Double.parseDouble(data.get(1));
                 double infectionRate = Double.parseDouble(data.get(2));
-                this.probBasedInfectLoc.put(locationId, new double[] {infectionRateFactor, infectionRate});
+                infectionRates.put(locationId, new double[] {infectionRateFactor, infectionRate});
             }
         }
+        return infectionRates;
     }
 
     /**
-     * @throws Exception
+     * Read the locations file into column buffers, without changing the model. The file is either a (gzipped) csv file, which
+     * is read with a pipelined reader, or a columnar file as written by ColumnarConverter. The columns are compacted right
+     * after parsing, so they do not keep the text of the file in memory until the locations have been made, or in the input
+     * cache.
+     * @param path File; the locations file
+     * @return List&lt;LocationColumns&gt;; the parsed records, in file order
+     * @throws Exception on I/O error or when the file contains errors
      */
-    private void readLocationTable() throws Exception
+    private List<LocationColumns> readLocationColumns(final File path) throws Exception
+    {
+        List<LocationColumns> parts = new ArrayList<>();
+        if (ColumnarFile.isColumnar(path))
+        {
+            parts.add(ColumnarFile.readLocations(path));
+            return parts;
+        }
+        new PipelinedCsvReader(path, this.parserPool, this.nrParsers).read(header ->
+        {
+            int[] columns = LocationColumns.mapHeader(header);
+            return chunk -> LocationColumns.parse(chunk, columns).compact();
+        }, parts::add);
+        return parts;
+    }
+
+    /**
+     * Create the locations from the parsed records of the locations file.
+     * @param parts List&lt;LocationColumns&gt;; the parsed records, in file order
+     */
+    private void readLocationTable(final List<LocationColumns> parts)
     {
         // reference groups for satellite workers
         Map<PersonType, PersonType> referenceGroupMap = new HashMap<>();
@@ -307,90 +507,62 @@ public class ConstructHerosModel
         referenceGroupMap.put(this.model.getPersonTypeClassMap().get(WorkerSatelliteToSatellite.class), workerPT);
         referenceGroupMap.put(this.model.getPersonTypeClassMap().get(WorkerCountryToCity.class), workerPT);
 
-        File path = getFileFromParam("generic.LocationsFilePath", "locations.csv.gz");
-        Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(path)));
-        CsvReader csvReader = CsvReader.builder().fieldSeparator(',').quoteCharacter('"').build(reader);
-        CsvRow row;
-        List<String> header;
-        List<String> data;
-        Iterator<CsvRow> it = csvReader.iterator();
-        if (it.hasNext())
+        for (LocationColumns lc : parts)
+            makeLocations(lc, referenceGroupMap);
+    }
+
+    /**
+     * Create the locations for one parsed chunk of the locations file. This method is called serially, in file order.
+     * @param lc LocationColumns; the parsed records
+     * @param referenceGroupMap Map&lt;PersonType, PersonType&gt;; reference groups for satellite workers
+     */
+    private void makeLocations(final LocationColumns lc, final Map<PersonType, PersonType> referenceGroupMap)
+    {
+        for (int i = 0; i < lc.size(); i++)
         {
-            row = it.next();
-            Throw.when(row == null, IOException.class, "file does not contain header row");
-            header = row.getFields();
-            int iLocationId = 0;
-            int iNbSublocations = 0;
-            int iLon = 0;
-            int iLat = 0;
-            int iArea = 0;
-            int iLocationCategory = 0;
-            int found = 0;
-            for (int i = 0; i < header.size(); i++)
+            int originalLocationId = lc.getLocationId(i);
+            float lon = lc.getLon(i);
+            float lat = lc.getLat(i);
+            short nbSublocations = lc.getNbSublocations(i);
+            float subArea = lc.getArea(i);
+            String locationCategory = lc.getLocationCategory(i);
+            if (locationCategory.trim().length() == 0 || locationCategory.contains("/"))
             {
-                found++;
-                if (header.get(i).toLowerCase().equals("location_id"))
-                    iLocationId = i;
-                else if (header.get(i).toLowerCase().equals("nb_sublocations"))
-                    iNbSublocations = i;
-                else if (header.get(i).toLowerCase().equals("location_category"))
-                    iLocationCategory = i;
-                else if (header.get(i).toLowerCase().equals("lat"))
-                    iLat = i;
-                else if (header.get(i).toLowerCase().equals("lon"))
-                    iLon = i;
-                else if (header.get(i).toLowerCase().equals("area"))
-                    iArea = i;
-                else
-                    found--;
+                System.err.println("\nIllegal location category (skipped) -- line " + lc.getLineNumber(i));
+                System.err.println("Row: " + lc.getRowText(i));
+                continue;
             }
-            if (found != 6)
-                throw new MedlabsException("Location csv-file header row did not contain all column headers");
-
-            // Read the data file records
-            while (it.hasNext())
+            LocationType locationType = this.model.getLocationTypeNameMap().get(locationCategory);
+            if (locationType == null)
             {
-                row = it.next();
-                data = row.getFields();
-                int locationId = Integer.parseInt(data.get(iLocationId));
-                float lon = Float.parseFloat(data.get(iLon));
-                float lat = Float.parseFloat(data.get(iLat));
-                short nbSublocations = (short) Integer.parseInt(data.get(iNbSublocations));
-                float subArea = Float.parseFloat(data.get(iArea));
-                String locationCategory = data.get(iLocationCategory);
-                if (locationCategory.trim().length() == 0 || locationCategory.contains("/"))
-                {
-                    System.err.println("\nIllegal location category (skipped) -- line " + row.getOriginalLineNumber());
-                    System.err.println("Row: " + row.toString());
-                    continue;
-                }
-                LocationType locationType = this.model.getLocationTypeNameMap().get(locationCategory);
-                if (locationType == null)
+                for (byte b = (byte) 0; b < 128; b++)
                 {
-                    for (byte b = (byte) 0; b < 128; b++)
+                    if (!this.model.getLocationTypeIndexMap().containsKey(b))
                     {
-                        if (!this.model.getLocationTypeIndexMap().containsKey(b))
-                        {
-                            System.err.println("Warning: LocationType added - " + locationCategory);
-                            locationType = new LocationType(this.model, b, locationCategory, Location.class, null, false, true,
-                                    1.0, false, 0.25, 1.0);
-                            break;
-                        }
+                        System.err.println("Warning: LocationType added - " + locationCategory);
+                        locationType = new LocationType(this.model, b, locationCategory, Location.class, null, false, true, 1.0,
+                                false, 0.25, 1.0);
+                        break;
                     }
                 }
-                float area = subArea * nbSublocations;
-                if (this.probBasedInfectLoc.containsKey(locationId))
-                {
-                    double infectionRateFactor = this.probBasedInfectLoc.get(locationId)[0];
-                    double infectionRate = this.probBasedInfectLoc.get(locationId)[1];
-                    new LocationProbBased(this.model, locationId, locationType, lat, lon, nbSublocations, area,
-                            infectionRateFactor, infectionRate, referenceGroupMap, Covid19Progression.exposed);
-                }
-                else
-                {
-                    new Location(this.model, locationId, locationType, lat, lon, nbSublocations, area);
-                }
             }
+            float area = subArea * nbSublocations;
+            int locationId = this.idMapping.addLocation(originalLocationId);
+            if (this.probBasedInfectLoc.containsKey(originalLocationId))
+            {
+                double infectionRateFactor = this.probBasedInfectLoc.get(originalLocationId)[0];
+                double infectionRate = this.probBasedInfectLoc.get(originalLocationId)[1];
+                new HerosLocationProbBased(this.model, locationId, locationType, lat, lon, nbSublocations, area,
+                        infectionRateFactor, infectionRate, referenceGroupMap, this.covidProgression.exposed);
+                if (infectionRate > 0.0)
+                    this.model.addFixedRateLocation();
+            }
+            else
+            {
+                new HerosLocation(this.model, locationId, locationType, lat, lon, nbSublocations, area);
+            }
+            this.idMapping.setDistrict(locationId, lc.getDistrict(i));
+            this.infectionSeeder.addLocation(locationId, locationCategory, lc.getDistrict(i), lat, lon);
         }
     }
 
@@ -444,350 +616,394 @@ public class ConstructHerosModel
     }
 
     /**
-     * @param maxNumberOfPersons
-     * @throws Exception
+     * Read the person file, and create the persons. The file is either a (gzipped) csv file, which is read with a pipelined
+     * reader, or a columnar file as written by ColumnarConverter. Parsing starts right away, but the persons are only created
+     * when the prerequisites (locations and week patterns) have been completed; until then, the pipelined reader parses ahead
+     * as far as its queue allows. With an input cache, the parsed records are taken from the cache or parsed completely before
+     * the persons are created, since the records are kept for the other models.
+     * @param path File; the person file
+     * @param prerequisites CompletableFuture&lt;Void&gt;; completes when the locations and week patterns are available
+     * @throws Exception on I/O error or when the file contains errors
      */
-    private void readPersonTable() throws Exception
+    private void readPersonTable(final File path, final CompletableFuture<Void> prerequisites) throws Exception
     {
-        File path = getFileFromParam("generic.PersonFilePath", "people.csv.gz");
-        Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(path)));
-        CsvReader csvReader = CsvReader.builder().fieldSeparator(',').quoteCharacter('"').build(reader);
-        CsvRow row;
-        List<String> header;
-        List<String> data;
-        Iterator<CsvRow> it = csvReader.iterator();
-        if (it.hasNext())
+        if (this.inputCache != null)
         {
-            row = it.next();
-            Throw.when(row == null, IOException.class, "file does not contain header row");
-            header = row.getFields();
-
-            int iPersonId = 0;
-            int iHouseholdId = 0;
-            int iAge = 0;
-            int iHomeId = 0;
-            int iWorkplaceId = 0;
-            int iSocialRole = 0;
-
-            int found = 0;
-            for (int i = 0; i < header.size(); i++)
+            List<PersonColumns> parts = this.inputCache.get("persons", path, () -> readPersonColumns(path));
+            join(prerequisites);
+            for (PersonColumns pc : parts)
+                makePersons(pc);
+        }
+        else if (ColumnarFile.isColumnar(path))
+        {
+            PersonColumns pc = ColumnarFile.readPersons(path);
+            join(prerequisites);
+            makePersons(pc);
+        }
+        else
+        {
+            new PipelinedCsvReader(path, this.parserPool, this.nrParsers).read(header ->
             {
-                found++;
-                if (header.get(i).toLowerCase().equals("person_id"))
-                    iPersonId = i;
-                else if (header.get(i).toLowerCase().equals("household_id"))
-                    iHouseholdId = i;
-                else if (header.get(i).toLowerCase().equals("age"))
-                    iAge = i;
-                else if (header.get(i).toLowerCase().equals("home_id"))
-                    iHomeId = i;
-                else if (header.get(i).toLowerCase().equals("workplace_id"))
-                    iWorkplaceId = i;
-                else if (header.get(i).toLowerCase().equals("social_role"))
-                    iSocialRole = i;
-                else
-                    found--;
+                int[] columns = PersonColumns.mapHeader(header);
+                return chunk -> PersonColumns.parse(chunk, columns);
+            }, personColumns ->
+            {
+                join(prerequisites);
+                makePersons(personColumns);
+            });
+        }
+
+        // the household allocation is not needed anymore after all persons have been placed
+        this.householdMap = null;
+        this.householdCount = null;
+
+        // Write how many we have per person type
+        System.out.println("\nNumber of persons per type:");
+        for (PersonType pt : this.model.getPersonTypeList())
+        {
+            System.out.println(pt.getName() + ": " + pt.getNumberPersons());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Return a number in [0, 1) for a household that only depends on its ids in the person file, so a sample of the
+     * population contains the same households for every seed, and a larger sample contains the households of a smaller one.
+     * The draw does not use the random streams of the model, so it does not change the other draws.
+     * @param originalHomeId int; the id of the home in the person file
+     * @param householdId int; the id of the household in the person file
+     * @return double; the draw for the household in [0, 1)
+     */
+    static double householdDraw(final int originalHomeId, final int householdId)
+    {
+        // the finalizer of SplitMix64
+        long z = (((long) originalHomeId << 32) | (householdId & 0xFFFFFFFFL)) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Read the person file into column buffers, without changing the model. The columns are compacted, since they are kept in
+     * the input cache for the other models; the row text in error messages is then made from the parsed fields.
+     * @param path File; the person file
+     * @return List&lt;PersonColumns&gt;; the parsed records, in file order
+     * @throws Exception on I/O error or when the file contains errors
+     */
+    private List<PersonColumns> readPersonColumns(final File path) throws Exception
+    {
+        List<PersonColumns> parts = new ArrayList<>();
+        if (ColumnarFile.isColumnar(path))
+        {
+            parts.add(ColumnarFile.readPersons(path));
+            return parts;
+        }
+        new PipelinedCsvReader(path, this.parserPool, this.nrParsers).read(header ->
+        {
+            int[] columns = PersonColumns.mapHeader(header);
+            return chunk -> PersonColumns.parse(chunk, columns).compact();
+        }, parts::add);
+        return parts;
+    }
+
+    /**
+     * Create the persons for one parsed chunk of the person file. This method is called serially, in file order, so the draws
+     * from the random stream happen in the same order as when the file is read sequentially.
+     * @param pc PersonColumns; the parsed records
+     * @throws MedlabsException when the social role of a person is not recognized
+     */
+    private void makePersons(final PersonColumns pc) throws MedlabsException
+    {
+        if (this.householdCount == null)
+            this.householdCount = new short[this.idMapping.getNumberOfLocations()];
+        for (int i = 0; i < pc.size(); i++)
+        {
+            int originalPersonId = pc.getPersonId(i);
+            int householdId = pc.getHouseholdId(i);
+            byte age = pc.getAge(i);
+            int originalHomeId = pc.getHomeId(i);
+            int originalWorkSchoolId = pc.getWorkplaceId(i);
+            int socialRole = pc.getSocialRole(i);
+            long line = pc.getLineNumber(i);
+
+            if (age < 0 || age > 120)
+            {
+                System.err.println(
+                        "Person " + originalPersonId + " has age " + age + " on row " + line + "\n" + pc.getRowText(i));
             }
-            if (found != 6)
-                throw new MedlabsException(
-                        "Person csv-file header row did not contain all column headers\n" + header.toString());
 
-            // Read the data file records
-            while (it.hasNext())
+            // map the ids of the file to the dense ids of the model; the person id is only claimed when the person is made
+            int personId = this.idMapping.getNumberOfPersons();
+            int homeId = this.idMapping.getLocationIndex(originalHomeId);
+            int workSchoolId = originalWorkSchoolId == -1 ? -1 : this.idMapping.getLocationIndex(originalWorkSchoolId);
+
+            // with a sample of the population, households are kept or skipped as a whole
+            if (this.personSampleFraction < 1.0
+                    && householdDraw(originalHomeId, householdId) >= this.personSampleFraction)
+                continue;
+
+            boolean genderFemale = this.model.getU01().draw() < 0.5;
+
+            // check homeId
+            if (homeId < 0)
             {
-                row = it.next();
-                data = row.getFields();
-                int personId = (int) Double.parseDouble(data.get(iPersonId));
-                int householdId = (int) Double.parseDouble(data.get(iHouseholdId));
-                byte age = (byte) (int) Double.parseDouble(data.get(iAge));
-                int homeId = (int) Double.parseDouble(data.get(iHomeId));
-                int workSchoolId = data.get(iWorkplaceId) == "" ? -1 : (int) Double.parseDouble(data.get(iWorkplaceId));
-                int socialRole = (int) Double.parseDouble(data.get(iSocialRole));
-
-                if (age < 0 || age > 120)
+                System.err.println("homeId " + originalHomeId + " not found in the location map on line "
+                        + line + "\n" + pc.getRowText(i));
+                continue;
+            }
+            // if (this.model.getLocationMap().get(homeId).getLocationTypeId() != this.model.getLocationTypeHouse()
+            // .getLocationTypeId())
+            // {
+            // System.err.println("homeId " + homeId + " not an Accommodation in the location map on line "
+            // + line + "\n" + pc.getRowText(i));
+            // continue;
+            // }
+
+            // create sublocationIndex for the home
+            long householdKey = ((long) homeId << 32) | (householdId & 0xFFFFFFFFL);
+            short homeSubLocationIndex = this.householdMap.get(householdKey);
+            if (homeSubLocationIndex < 0)
+            {
+                homeSubLocationIndex = this.householdCount[homeId]++;
+                if (homeSubLocationIndex + 1 > this.model.getLocationMap().get(homeId).getNumberOfSubLocations())
                 {
-                    System.err.println("Person " + personId + " has age " + age + " on row " + row.getOriginalLineNumber()
-                            + "\n" + row.toString());
+                    System.err.println("Person " + originalPersonId + ". The homeId " + originalHomeId + " with householdId "
+                            + householdId + " has more sublocations (" + (homeSubLocationIndex + 1) + ") than defined. Record"
+                            + " on row " + line + "\n" + pc.getRowText(i));
                 }
+                this.householdMap.put(householdKey, homeSubLocationIndex);
+            }
 
-                boolean genderFemale = this.model.getU01().draw() < 0.5;
-
-                // check homeId
-                if (!this.model.getLocationMap().containsKey(homeId))
+            if (socialRole >= 2 && socialRole <= 6)
+            {
+                if (workSchoolId < 0)
                 {
-                    System.err.println("homeId " + homeId + " not found in the location map on line "
-                            + row.getOriginalLineNumber() + "\n" + row.toString());
+                    System.err.println("No school location [" + originalWorkSchoolId + "] for Student on line "
+                            + line + "\n" + pc.getRowText(i));
                     continue;
                 }
-                // if (this.model.getLocationMap().get(homeId).getLocationTypeId() != this.model.getLocationTypeHouse()
-                // .getLocationTypeId())
-                // {
-                // System.err.println("homeId " + homeId + " not an Accommodation in the location map on line "
-                // + row.getOriginalLineNumber() + "\n" + row.toString());
-                // continue;
-                // }
-
-                // create sublocationIndex for the home
-                short homeSubLocationIndex;
-                Map<Integer, Short> householdSublocationMap = this.householdMap.get(homeId);
-                if (householdSublocationMap == null)
-                {
-                    householdSublocationMap = new HashMap<>();
-                    this.householdMap.put(homeId, householdSublocationMap);
-                }
-                if (householdSublocationMap.containsKey(householdId))
-                {
-                    homeSubLocationIndex = householdSublocationMap.get(householdId);
-                }
-                else
-                {
-                    homeSubLocationIndex = (short) householdSublocationMap.size();
-                    if (homeSubLocationIndex + 1 > this.model.getLocationMap().get(homeId).getNumberOfSubLocations())
+            }
+
+            IdxPerson person;
+            switch (socialRole)
+            {
+                case 1:
+                    person = new Infant(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_infant").getId());
+                    break;
+
+                case 2:
+                    if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
+                            .equals("kindergarten"))
                     {
-                        System.err.println("Person " + personId + ". The homeId " + homeId + " with householdId " + householdId
-                                + " has more sublocations (" + (homeSubLocationIndex + 1) + ") than defined. Record"
-                                + " on row " + row.getOriginalLineNumber() + "\n" + row.toString());
+                        System.err.println("workSchoolId " + originalWorkSchoolId + " not a Kindergarten"
+                                + " in the location map on line " + line + "\n" + pc.getRowText(i));
+                        continue;
                     }
-                    householdSublocationMap.put(householdId, homeSubLocationIndex);
-                }
-
-                if (socialRole >= 2 && socialRole <= 6)
-                {
-                    if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
+                    person = new KindergartenStudent(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_kindergarten student").getId(),
+                            workSchoolId);
+                    break;
+
+                case 3:
+                    if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
+                            .equals("primaryschool"))
                     {
-                        System.err.println("No school location [" + workSchoolId + "] for Student on line "
-                                + row.getOriginalLineNumber() + "\n" + row.toString());
+                        System.err.println(
+                                "workSchoolId " + originalWorkSchoolId + " not a primary school in the location map on line "
+                                        + line + "\n" + pc.getRowText(i));
                         continue;
                     }
-                }
-
-                IdxPerson person;
-                switch (socialRole)
-                {
-                    case 1:
-                        person = new Infant(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_infant").getId());
-                        break;
-
-                    case 2:
-                        if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
-                                .equals("kindergarten"))
-                        {
-                            System.err
-                                    .println("workSchoolId " + workSchoolId + " not a Kindergarten in the location map on line "
-                                            + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        person = new KindergartenStudent(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_kindergarten student").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 3:
-                        if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
-                                .equals("primaryschool"))
-                        {
-                            System.err.println(
-                                    "workSchoolId " + workSchoolId + " not a primary school in the location map on line "
-                                            + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        person = new PrimarySchoolStudent(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_primary school student").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 4:
-                        if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
-                                .equals("secondaryschool"))
-                        {
-                            System.err.println(
-                                    "workSchoolId " + workSchoolId + " not a secondary school in the location map on line "
-                                            + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        person = new SecondarySchoolStudent(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_secondary school student").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 5:
-                        if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
-                                .equals("college"))
-                        {
-                            System.err.println("workSchoolId " + workSchoolId + " not a College in the location map on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        person = new CollegeStudent(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_college student").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 6:
-                        if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
-                                .equals("university"))
-                        {
-                            System.err.println("workSchoolId " + workSchoolId + " not a University in the location map on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        person = new UniversityStudent(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_university student").getId(),
-                                workSchoolId);
-                        break;
-                    case 7:
-                        if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
-                        {
-                            System.err.println("No work location [" + workSchoolId + "] for Worker on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        // note: work location can be anything: school, retail, office, park, ...
-                        person = new Worker(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_worker").getId(), workSchoolId);
-                        break;
-
-                    case 8:
-                        person = new Pensioner(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_pensioner").getId());
-                        break;
-
-                    case 9:
-                        person = new Unemployed(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_unemployed job-seeker").getId());
-                        break;
-
-                    case 10:
-                        if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
-                        {
-                            System.err.println("No work location [" + workSchoolId + "] for WeekendWorker on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        // note: work location can be anything: school, retail, office, park, ...
-                        person = new WeekendWorker(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_weekend worker").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 11:
-                        if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
-                        {
-                            System.err.println("No work location [" + workSchoolId + "] for EssentialWorker on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        // note: work location can be anything: school, retail, office, park, ...
-                        person = new EssentialWorker(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_essential worker").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 12:
-                        if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
-                        {
-                            System.err.println("No work location [" + workSchoolId + "] for WorkerSatelliteToCity on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        // note: work location can be anything: school, retail, office, park, ...
-                        person = new WorkerSatelliteToCity(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_worker satellite to city").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 13:
-                        if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
-                        {
-                            System.err.println("No work location [" + workSchoolId + "] for WorkerCityToSatellite on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        // note: work location can be anything: school, retail, office, park, ...
-                        person = new WorkerCityToSatellite(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_worker city to satellite").getId(),
-                                workSchoolId);
-                        break;
-
-                    case 14:
-                        if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
-                        {
-                            System.err.println("No work location [" + workSchoolId + "] for WorkerSatelliteToSatellite on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        // note: work location can be anything: school, retail, office, park, ...
-                        person = new WorkerSatelliteToSatellite(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_worker satellite to satellite")
-                                        .getId(),
-                                workSchoolId);
-                        break;
-
-                    case 15:
-                        if (workSchoolId == -1 || !this.model.getLocationMap().containsKey(workSchoolId))
-                        {
-                            System.err.println("No work location [" + workSchoolId + "] for WorkerCountryToCity on line "
-                                    + row.getOriginalLineNumber() + "\n" + row.toString());
-                            continue;
-                        }
-                        // note: work location can be anything: school, retail, office, park, ...
-                        person = new WorkerCountryToCity(this.model, personId, genderFemale, age, homeId,
-                                (short) this.model.getWeekPatternMap().get("0_Susceptible_worker country to city").getId(),
-                                workSchoolId);
-                        break;
-
-                    default:
-                        throw new MedlabsException(
-                                "social role " + socialRole + " no recognized on row " + row.getOriginalLineNumber());
-                }
-                person.setHomeSubLocationIndex(homeSubLocationIndex);
-                person.setExposureTime(0.0f);
-                person.setDiseasePhase(Covid19Progression.susceptible);
-                Covid19Progression.susceptible.addPerson();
+                    person = new PrimarySchoolStudent(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_primary school student").getId(),
+                            workSchoolId);
+                    break;
+
+                case 4:
+                    if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
+                            .equals("secondaryschool"))
+                    {
+                        System.err.println(
+                                "workSchoolId " + originalWorkSchoolId + " not a secondary school in the location map on line "
+                                        + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    person = new SecondarySchoolStudent(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_secondary school student").getId(),
+                            workSchoolId);
+                    break;
+
+                case 5:
+                    if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
+                            .equals("college"))
+                    {
+                        System.err.println("workSchoolId " + originalWorkSchoolId + " not a College"
+                                + " in the location map on line " + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    person = new CollegeStudent(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_college student").getId(),
+                            workSchoolId);
+                    break;
+
+                case 6:
+                    if (!this.model.getLocationMap().get(workSchoolId).getLocationType().getName().toLowerCase()
+                            .equals("university"))
+                    {
+                        System.err.println("workSchoolId " + originalWorkSchoolId + " not a University"
+                                + " in the location map on line " + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    person = new UniversityStudent(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_university student").getId(),
+                            workSchoolId);
+                    break;
+                case 7:
+                    if (workSchoolId < 0)
+                    {
+                        System.err.println("No work location [" + originalWorkSchoolId + "] for Worker on line "
+                                + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    // note: work location can be anything: school, retail, office, park, ...
+                    person = new Worker(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_worker").getId(), workSchoolId);
+                    break;
+
+                case 8:
+                    person = new Pensioner(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_pensioner").getId());
+                    break;
+
+                case 9:
+                    person = new Unemployed(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_unemployed job-seeker").getId());
+                    break;
+
+                case 10:
+                    if (workSchoolId < 0)
+                    {
+                        System.err.println("No work location [" + originalWorkSchoolId + "] for WeekendWorker on line "
+                                + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    // note: work location can be anything: school, retail, office, park, ...
+                    person = new WeekendWorker(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_weekend worker").getId(),
+                            workSchoolId);
+                    break;
+
+                case 11:
+                    if (workSchoolId < 0)
+                    {
+                        System.err.println("No work location [" + originalWorkSchoolId + "] for EssentialWorker on line "
+                                + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    // note: work location can be anything: school, retail, office, park, ...
+                    person = new EssentialWorker(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_essential worker").getId(),
+                            workSchoolId);
+                    break;
+
+                case 12:
+                    if (workSchoolId < 0)
+                    {
+                        System.err.println("No work location [" + originalWorkSchoolId + "] for WorkerSatelliteToCity on line "
+                                + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    // note: work location can be anything: school, retail, office, park, ...
+                    person = new WorkerSatelliteToCity(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_worker satellite to city").getId(),
+                            workSchoolId);
+                    break;
+
+                case 13:
+                    if (workSchoolId < 0)
+                    {
+                        System.err.println("No work location [" + originalWorkSchoolId + "] for WorkerCityToSatellite on line "
+                                + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    // note: work location can be anything: school, retail, office, park, ...
+                    person = new WorkerCityToSatellite(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_worker city to satellite").getId(),
+                            workSchoolId);
+                    break;
+
+                case 14:
+                    if (workSchoolId < 0)
+                    {
+                        System.err.println("No work location [" + originalWorkSchoolId
+                                + "] for WorkerSatelliteToSatellite on line " + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    // note: work location can be anything: school, retail, office, park, ...
+                    person = new WorkerSatelliteToSatellite(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_worker satellite to satellite")
+                                    .getId(),
+                            workSchoolId);
+                    break;
+
+                case 15:
+                    if (workSchoolId < 0)
+                    {
+                        System.err.println("No work location [" + originalWorkSchoolId + "] for WorkerCountryToCity on line "
+                                + line + "\n" + pc.getRowText(i));
+                        continue;
+                    }
+                    // note: work location can be anything: school, retail, office, park, ...
+                    person = new WorkerCountryToCity(this.model, personId, genderFemale, age, homeId,
+                            (short) this.model.getWeekPatternMap().get("0_Susceptible_worker country to city").getId(),
+                            workSchoolId);
+                    break;
+
+                default:
+                    throw new MedlabsException(
+                            "social role " + socialRole + " no recognized on row " + line);
             }
+            person.setHomeSubLocationIndex(homeSubLocationIndex);
+            person.setExposureTime(0.0f);
+            person.setDiseasePhase(this.covidProgression.susceptible);
+            this.covidProgression.susceptible.addPerson();
+            this.idMapping.addPerson(originalPersonId);
+            this.infectionSeeder.addPerson(personId, age, homeId,
+                    (person instanceof IdxWorker || person instanceof IdxStudent) ? workSchoolId : -1);
         }
-
-        // Write how many we have per person type
-        System.out.println("\nNumber of persons per type:");
-        for (PersonType pt : this.model.getPersonTypeList())
-        {
-            System.out.println(pt.getName() + ": " + pt.getNumberPersons());
-        }
-        System.out.println();
     }
 
     /**
-     * @throws Exception
+     * Create the week patterns from the sheet "activityschedules" of the activity workbook. The sheet is read with a streaming
+     * parser, and cached in a compact form next to the workbook (see ActivityTable).
+     * @param table ActivityTable; the cell values of the sheet
+     * @throws Exception when the activity schedules are not valid
      */
-    private void readWeekpatternData() throws Exception
+    private void readWeekpatternData(final ActivityTable table) throws Exception
     {
-        File path = getFileFromParam("generic.ActivityFilePath", "activityschedules.xlsx");
-        InputStream fis = URLResource.getResourceAsStream(path.getAbsolutePath());
-        XSSFWorkbook wbST = new XSSFWorkbook(fis);
-        XSSFSheet sheet = wbST.getSheet("activityschedules");
-
-        for (Row row : sheet)
+        for (int r = 0; r < table.size(); r++)
         {
-            if (row.getRowNum() > 0)
+            int rowNum = table.getRowNum(r);
+            if (rowNum > 0)
             {
-                int policy = (int) ExcelUtil.cellValueDoubleNull(row, "A");
-                String epidemiologicalState = ExcelUtil.cellValue(row, "B");
-                String dayOfWeek = ExcelUtil.cellValue(row, "C");
-                String socialRole = ExcelUtil.cellValue(row, "D");
-                String activityString = ExcelUtil.cellValue(row, "E");
-                String activityType = ExcelUtil.cellValue(row, "F");
-                double untilHour = ExcelUtil.cellValueDoubleNull(row, "G");
-                String distributionString = ExcelUtil.cellValue(row, "H").trim();
-                double mode = ExcelUtil.cellValueDoubleNull(row, "I");
-                double min = ExcelUtil.cellValueDoubleNull(row, "J");
-                double max = ExcelUtil.cellValueDoubleNull(row, "K");
-                // double std = ExcelUtil.cellValueDoubleNull(row, "L");
-                String activityLocator = ExcelUtil.cellValue(row, "M");
-                String fromLocator = ExcelUtil.cellValue(row, "N");
-                String toLocator = ExcelUtil.cellValue(row, "O");
-                double maxDistance = ExcelUtil.cellValueDoubleNull(row, "P");
-                String locationType = ExcelUtil.cellValue(row, "Q");
+                int policy = (int) table.getDouble(r, "A");
+                String epidemiologicalState = table.getString(r, "B");
+                String dayOfWeek = table.getString(r, "C");
+                String socialRole = table.getString(r, "D");
+                String activityString = table.getString(r, "E");
+                String activityType = table.getString(r, "F");
+                double untilHour = table.getDouble(r, "G");
+                String distributionString = table.getString(r, "H").trim();
+                double mode = table.getDouble(r, "I");
+                double min = table.getDouble(r, "J");
+                double max = table.getDouble(r, "K");
+                // double std = table.getDouble(r, "L");
+                String activityLocator = table.getString(r, "M");
+                String fromLocator = table.getString(r, "N");
+                String toLocator = table.getString(r, "O");
+                double maxDistance = table.getDouble(r, "P");
+                String locationType = table.getString(r, "Q");
 
                 String weekPatternKey = policy + "_" + epidemiologicalState + "_" + socialRole;
                 Map<String, DayPattern> dayActivitiesMap = this.weekDayPattern.get(weekPatternKey);
@@ -807,7 +1023,7 @@ public class ConstructHerosModel
                 Activity activity = null;
                 DistContinuous durationDistribution = null;
                 double estimatedDuration = 0;
-                if (distributionString != "")
+                if (!distributionString.isEmpty())
                 {
                     switch (distributionString)
                     {
@@ -815,24 +1031,24 @@ public class ConstructHerosModel
                             if (min > mode)
                                 throw new MedlabsException(
                                         "triangular distribution with min > mode in activity xlsx file at row "
-                                                + (row.getRowNum() + 1));
+                                                + (rowNum + 1));
                             if (max < mode)
                                 throw new MedlabsException(
                                         "triangular distribution with max < mode in activity xlsx file at row "
-                                                + (row.getRowNum() + 1));
+                                                + (rowNum + 1));
                             durationDistribution = new DistTriangular(this.model.getRandomStream(), min, mode, max);
                             estimatedDuration = (min + mode + max) / 3.0;
                             break;
                         case "uniform":
                             if (min > max)
                                 throw new MedlabsException("uniform distribution with min > max in activity xlsx file at row "
-                                        + (row.getRowNum() + 1));
+                                        + (rowNum + 1));
                             durationDistribution = new DistUniform(this.model.getRandomStream(), min, max);
                             estimatedDuration = (min + max) / 2.0;
                             break;
                         default:
                             throw new MedlabsException("unknown distribution in activity xlsx file: " + distributionString
-                                    + " at row " + (row.getRowNum() + 1));
+                                    + " at row " + (rowNum + 1));
                     }
                 }
 
@@ -847,7 +1063,7 @@ public class ConstructHerosModel
                         if (durationDistribution == null)
                         {
                             throw new MedlabsException("missing duration distribution for stochastic activity"
-                                    + " in activity xlsx file at row " + (row.getRowNum() + 1));
+                                    + " in activity xlsx file at row " + (rowNum + 1));
                         }
                         activity = new StochasticDurationActivity(this.model, activityString,
                                 makeLocator(activityLocator, locationType, maxDistance), estimatedDuration,
@@ -1073,58 +1289,69 @@ public class ConstructHerosModel
 
     private void makeFamilies()
     {
-        TIntObjectMap<TIntSet> families = this.model.getFamilyMembersByHomeLocation();
+        int size = this.model.getPersonMap().size();
+        int[] homeIds = new int[size];
+        int[] personIds = new int[size];
+        int n = 0;
         for (TIntObjectIterator<Person> it = this.model.getPersonMap().iterator(); it.hasNext();)
         {
             it.advance();
             Person person = it.value();
-            TIntSet family = families.get(person.getHomeLocation().getId());
-            if (family == null)
-            {
-                family = new TIntHashSet();
-                families.put(person.getHomeLocation().getId(), family);
-            }
-            family.add(person.getId());
+            homeIds[n] = person.getHomeLocation().getId();
+            personIds[n] = person.getId();
+            n++;
         }
+        FamilyIndex families = new FamilyIndex(homeIds, personIds, n);
+        this.model.setFamilyIndex(families);
 
-        for (int homeLocationId : families.keys())
+        for (int homeLocationId : families.getHomeLocationIds())
         {
             Location homeLocation = this.model.getLocationMap().get(homeLocationId);
             int sub = homeLocation.getNumberOfSubLocations();
-            TIntSet family = families.get(homeLocationId);
-            if (family.size() == 0)
+            int familySize = families.size(homeLocationId);
+            if (familySize == 0)
                 System.out.println("Home Location " + homeLocation.getId() + ": family size 0");
-            else if (family.size() < sub)
-                System.out
-                        .println("Home Location " + homeLocation.getId() + ": family size " + family.size() + ", sub = " + sub);
-            else if (family.size() / sub > 7)
-                System.out.println("Home Location " + homeLocation.getId() + ": family size > 7: " + family.size() / sub);
+            else if (familySize < sub)
+                System.out.println("Home Location " + homeLocation.getId() + ": family size " + familySize + ", sub = " + sub);
+            else if (familySize / sub > 7)
+                System.out.println("Home Location " + homeLocation.getId() + ": family size > 7: " + familySize / sub);
 
         }
     }
 
     /**
-     * Infections based on the inputParameterMap.
+     * Infections based on the inputParameterMap. The persons are drawn without replacement by the InfectionSeeder from the
+     * persons in the age range [MinAgeInfected, MaxAgeInfected], optionally restricted by SeedLocationTypes, SeedDistricts and
+     * SeedCluster. When there are not enough eligible persons, all of them are infected and a warning is printed.
      */
     private void infectPersons()
     {
         int numberToInfect = this.model.getParameterValueInt("policies.NumberInfected");
         int ageMin = this.model.getParameterValueInt("policies.MinAgeInfected");
         int ageMax = this.model.getParameterValueInt("policies.MaxAgeInfected");
-        List<Person> persons = new ArrayList<>(this.model.getPersonMap().valueCollection());
-        int nrPersons = persons.size() - 1;
-        while (numberToInfect > 0)
+        if (this.infectionSeeder.hasLocationFilter())
+        {
+            System.out.println("Initial infections restricted to persons living, working or studying at "
+                    + this.infectionSeeder.getNumberOfSeedLocations() + " locations");
+        }
+        int[] selected = this.infectionSeeder.select(numberToInfect, ageMin, ageMax, this.model.getRandomStream());
+        int infected = 0;
+        for (int personId : selected)
         {
-            Person person = persons.get(this.model.getRandomStream().nextInt(0, nrPersons));
+            Person person = this.model.getPersonMap().get(personId);
             if (person.getDiseasePhase().isSusceptible())
             {
-                if (person.getAge() >= ageMin && person.getAge() <= ageMax)
-                {
-                    this.model.getDiseaseProgression().expose(person, Covid19Progression.exposed);
-                    numberToInfect--;
-                }
+                this.covidProgression.expose(person, this.covidProgression.exposed);
+                infected++;
             }
         }
+        if (infected < numberToInfect)
+        {
+            System.err.println("Warning: only " + infected + " of the " + numberToInfect
+                    + " initial infections could be placed; not enough susceptible persons with age in [" + ageMin + ", "
+                    + ageMax + "] that match the seeding location filter");
+        }
+        this.infectionSeeder = null;
     }
 
     /**
@@ -1139,14 +1366,30 @@ public class ConstructHerosModel
         }
     }
 
+    /**
+     * Read and schedule the location and disease policies of the policy files of the model. A model that is restored from a
+     * checkpoint only schedules the policies from the checkpoint time on; the earlier policies are part of the checkpoint.
+     * @param model HerosModel; the model
+     * @param fromTime double; the time in hours from which the policies are scheduled; earlier policies are skipped
+     * @throws Exception on I/O error or when a policy file contains errors
+     */
+    public static void schedulePolicies(final HerosModel model, final double fromTime) throws Exception
+    {
+        scheduleLocationPolicies(model, fromTime);
+        scheduleDiseasePolicies(model, fromTime);
+    }
+
     /**
      * Read and schedule the location policies.
+     * @param model HerosModel; the model
+     * @param fromTime double; the time in hours from which the policies are scheduled
+     * @throws Exception on I/O error or when the policy file contains errors
      */
-    private void scheduleLocationPolicies() throws Exception
+    private static void scheduleLocationPolicies(final HerosModel model, final double fromTime) throws Exception
     {
-        if (this.model.getParameterValue("policies.LocationPolicyFile").trim().length() == 0)
+        if (model.getParameterValue("policies.LocationPolicyFile").trim().length() == 0)
             return;
-        File path = getFileFromParam("policies.LocationPolicyFile", "");
+        File path = getFileFromParam(model, "policies.LocationPolicyFile", "");
         Reader reader = new InputStreamReader(new FileInputStream(path));
         CsvReader csvReader = CsvReader.builder().fieldSeparator(',').quoteCharacter('"').build(reader);
         CsvRow row;
@@ -1166,7 +1409,9 @@ public class ConstructHerosModel
                 double fractionActivities = Double.parseDouble(data.get(3));
                 String alternativeLocationName = data.get(4);
                 String reportAsLocationName = data.get(5);
-                new LocationPolicy(this.model, time, locationTypeName, fractionOpen, fractionActivities,
+                if (time < fromTime)
+                    continue;
+                new LocationPolicy(model, time, locationTypeName, fractionOpen, fractionActivities,
                         alternativeLocationName, reportAsLocationName);
             }
         }
@@ -1175,12 +1420,15 @@ public class ConstructHerosModel
 
     /**
      * Read and schedule the disease policies.
+     * @param model HerosModel; the model
+     * @param fromTime double; the time in hours from which the policies are scheduled
+     * @throws Exception on I/O error or when the policy file contains errors
      */
-    private void scheduleDiseasePolicies() throws Exception
+    private static void scheduleDiseasePolicies(final HerosModel model, final double fromTime) throws Exception
     {
-        if (this.model.getParameterValue("policies.DiseasePolicyFile").trim().length() == 0)
+        if (model.getParameterValue("policies.DiseasePolicyFile").trim().length() == 0)
             return;
-        File path = getFileFromParam("policies.DiseasePolicyFile", "");
+        File path = getFileFromParam(model, "policies.DiseasePolicyFile", "");
         Reader reader = new InputStreamReader(new FileInputStream(path));
         CsvReader csvReader = CsvReader.builder().fieldSeparator(',').quoteCharacter('"').build(reader);
         CsvRow row;
@@ -1197,7 +1445,9 @@ public class ConstructHerosModel
                 double time = 24.0 * Double.parseDouble(data.get(0));
                 String parameterName = data.get(1);
                 double value = Double.parseDouble(data.get(2));
-                new DiseasePolicy(this.model, time, parameterName, value);
+                if (time < fromTime)
+                    continue;
+                new DiseasePolicy(model, time, parameterName, value);
             }
         }
         csvReader.close();
@@ -0,0 +1,460 @@
+package eu.heros.factory;
+
+/**
+ * CsvChunk is a block of complete csv rows, cut from the decompressed character stream by the {@link PipelinedCsvReader}. A
+ * chunk always starts at the beginning of a row and ends directly after a row separator (or at the end of the file), so chunks
+ * can be parsed independently of each other. The {@link Cursor} splits the rows of the chunk into fields without creating
+ * Strings for the fields.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class CsvChunk
+{
+    /** the powers of ten that can be represented exactly as a double. */
+    static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+            1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /** the mask for the 29 bits of a double mantissa that are dropped when the double is rounded to a float. */
+    private static final long HALF_FLOAT_ULP_MASK = 0x1FFFFFFFL;
+
+    /** the dropped bits of a double that lies exactly halfway between two floats. */
+    private static final long HALF_FLOAT_ULP = 0x10000000L;
+
+    /** the characters of the chunk; only the first length characters are valid. */
+    private final char[] chars;
+
+    /** the number of valid characters in the chunk. */
+    private final int length;
+
+    /** the (1-based) line number in the file of the first row in the chunk. */
+    private final long firstLineNumber;
+
+    /**
+     * Create a chunk of complete csv rows.
+     * @param chars char[]; the characters of the chunk; only the first length characters are valid
+     * @param length int; the number of valid characters in the chunk
+     * @param firstLineNumber long; the (1-based) line number in the file of the first row in the chunk
+     */
+    public CsvChunk(final char[] chars, final int length, final long firstLineNumber)
+    {
+        this.chars = chars;
+        this.length = length;
+        this.firstLineNumber = firstLineNumber;
+    }
+
+    /**
+     * @return chars the characters of the chunk; only the first getLength() characters are valid
+     */
+    public char[] getChars()
+    {
+        return this.chars;
+    }
+
+    /**
+     * @return length the number of valid characters in the chunk
+     */
+    public int getLength()
+    {
+        return this.length;
+    }
+
+    /**
+     * @return firstLineNumber the (1-based) line number in the file of the first row in the chunk
+     */
+    public long getFirstLineNumber()
+    {
+        return this.firstLineNumber;
+    }
+
+    /**
+     * Return the text of a row, e.g., to report an error.
+     * @param start int; the start position of the row in the chunk
+     * @param end int; the end position (exclusive) of the row in the chunk
+     * @return String; the text of the row
+     */
+    public String getText(final int start, final int end)
+    {
+        return new String(this.chars, start, end - start);
+    }
+
+    /**
+     * Create a cursor to iterate over the rows of this chunk.
+     * @param maxFields int; the maximum number of fields per row that will be stored; additional fields are skipped
+     * @return Cursor; a cursor positioned before the first row of the chunk
+     */
+    public Cursor cursor(final int maxFields)
+    {
+        return new Cursor(maxFields);
+    }
+
+    /**
+     * Cursor over the rows of a chunk. The cursor splits each row into fields, using a comma as the field separator and a
+     * double quote as the quote character, in line with the CsvReader settings in ConstructHerosModel. For each field the
+     * start and end position in the chunk are stored; Strings are only created on request. Empty rows are skipped.
+     */
+    public final class Cursor
+    {
+        /** the start positions of the fields in the current row. */
+        private final int[] fieldStart;
+
+        /** the end positions (exclusive) of the fields in the current row. */
+        private final int[] fieldEnd;
+
+        /** whether a field contains escaped (doubled) quotes that have to be removed when creating a String. */
+        private final boolean[] fieldEscaped;
+
+        /** the number of fields in the current row. */
+        private int nrFields;
+
+        /** the start position of the current row. */
+        private int rowStart;
+
+        /** the end position (exclusive, without row separator) of the current row. */
+        private int rowEnd;
+
+        /** the position of the next row. */
+        private int position = 0;
+
+        /** the line number of the current row. */
+        private long lineNumber;
+
+        /** the line number of the next row. */
+        private long nextLineNumber = CsvChunk.this.firstLineNumber;
+
+        /**
+         * Create a cursor.
+         * @param maxFields int; the maximum number of fields per row that will be stored
+         */
+        Cursor(final int maxFields)
+        {
+            this.fieldStart = new int[maxFields];
+            this.fieldEnd = new int[maxFields];
+            this.fieldEscaped = new boolean[maxFields];
+        }
+
+        /**
+         * Advance the cursor to the next non-empty row.
+         * @return boolean; true if there is a next row; false if the end of the chunk was reached
+         */
+        public boolean next()
+        {
+            char[] c = CsvChunk.this.chars;
+            int len = CsvChunk.this.length;
+            while (this.position < len)
+            {
+                this.rowStart = this.position;
+                this.lineNumber = this.nextLineNumber;
+                this.nrFields = 0;
+                int pos = this.position;
+                int start = pos;
+                boolean quoted = false;
+                boolean escaped = false;
+                boolean inQuotes = false;
+                while (pos < len)
+                {
+                    char ch = c[pos];
+                    if (inQuotes)
+                    {
+                        if (ch == '"')
+                        {
+                            if (pos + 1 < len && c[pos + 1] == '"')
+                            {
+                                escaped = true;
+                                pos++;
+                            }
+                            else
+                            {
+                                inQuotes = false;
+                            }
+                        }
+                        else if (ch == '\n')
+                        {
+                            this.nextLineNumber++;
+                        }
+                    }
+                    else if (ch == '"' && pos == start)
+                    {
+                        inQuotes = true;
+                        quoted = true;
+                    }
+                    else if (ch == ',')
+                    {
+                        addField(start, pos, quoted, escaped);
+                        start = pos + 1;
+                        quoted = false;
+                        escaped = false;
+                    }
+                    else if (ch == '\n' || ch == '\r')
+                    {
+                        break;
+                    }
+                    pos++;
+                }
+                this.rowEnd = pos;
+                addField(start, pos, quoted, escaped);
+                // skip the row separator: \n, \r or \r\n
+                if (pos < len && c[pos] == '\r')
+                    pos++;
+                if (pos < len && c[pos] == '\n')
+                    pos++;
+                this.nextLineNumber++;
+                this.position = pos;
+                if (this.rowEnd > this.rowStart)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Store the boundaries of a field, removing the surrounding quotes of a quoted field.
+         * @param start int; start position of the field
+         * @param end int; end position (exclusive) of the field
+         * @param quoted boolean; whether the field was quoted
+         * @param escaped boolean; whether the field contains doubled quotes
+         */
+        private void addField(final int start, final int end, final boolean quoted, final boolean escaped)
+        {
+            if (this.nrFields < this.fieldStart.length)
+            {
+                int s = start;
+                int e = end;
+                if (quoted)
+                {
+                    s++;
+                    if (e > s && CsvChunk.this.chars[e - 1] == '"')
+                        e--;
+                }
+                this.fieldStart[this.nrFields] = s;
+                this.fieldEnd[this.nrFields] = e;
+                this.fieldEscaped[this.nrFields] = escaped;
+            }
+            this.nrFields++;
+        }
+
+        /**
+         * @return the number of fields in the current row
+         */
+        public int getNrFields()
+        {
+            return this.nrFields;
+        }
+
+        /**
+         * @param field int; the field index
+         * @return the start position of the field in the chunk
+         */
+        public int getFieldStart(final int field)
+        {
+            return this.fieldStart[field];
+        }
+
+        /**
+         * @param field int; the field index
+         * @return the end position (exclusive) of the field in the chunk
+         */
+        public int getFieldEnd(final int field)
+        {
+            return this.fieldEnd[field];
+        }
+
+        /**
+         * Return the field as a String; a missing field returns an empty String.
+         * @param field int; the field index
+         * @return String; the value of the field
+         */
+        public String getString(final int field)
+        {
+            if (field >= this.nrFields || field >= this.fieldStart.length)
+                return "";
+            String s = new String(CsvChunk.this.chars, this.fieldStart[field], this.fieldEnd[field] - this.fieldStart[field]);
+            return this.fieldEscaped[field] ? s.replace("\"\"", "\"") : s;
+        }
+
+        /**
+         * Return whether the field is empty or missing.
+         * @param field int; the field index
+         * @return boolean; whether the field is empty or missing
+         */
+        public boolean isEmpty(final int field)
+        {
+            return field >= this.nrFields || field >= this.fieldStart.length
+                    || this.fieldEnd[field] == this.fieldStart[field];
+        }
+
+        /**
+         * Return whether the field has exactly the same characters as the given String, without creating a String for the
+         * field.
+         * @param field int; the field index
+         * @param s String; the String to compare with
+         * @return boolean; whether the field equals the String
+         */
+        public boolean fieldEquals(final int field, final String s)
+        {
+            if (field >= this.nrFields || field >= this.fieldStart.length)
+                return s.isEmpty();
+            int start = this.fieldStart[field];
+            int len = this.fieldEnd[field] - start;
+            if (len != s.length() || this.fieldEscaped[field])
+                return false;
+            char[] c = CsvChunk.this.chars;
+            for (int i = 0; i < len; i++)
+            {
+                if (c[start + i] != s.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Parse the field as an integer directly from the character buffer, without creating a String. Values with a decimal
+         * part such as 12.0 are accepted and truncated towards zero, which gives the same result as
+         * <code>(int) Double.parseDouble(field)</code>. Values in another notation (e.g., with an exponent) are delegated to
+         * Double.parseDouble.
+         * @param field int; the field index
+         * @param emptyValue int; the value to return when the field is empty or missing
+         * @return int; the parsed value
+         * @throws NumberFormatException when the field is not a number
+         */
+        public int getInt(final int field, final int emptyValue)
+        {
+            if (isEmpty(field))
+                return emptyValue;
+            char[] c = CsvChunk.this.chars;
+            int pos = this.fieldStart[field];
+            int end = this.fieldEnd[field];
+            while (pos < end && c[pos] == ' ')
+                pos++;
+            while (end > pos && c[end - 1] == ' ')
+                end--;
+            boolean negative = false;
+            if (pos < end && (c[pos] == '-' || c[pos] == '+'))
+            {
+                negative = c[pos] == '-';
+                pos++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (pos < end && c[pos] >= '0' && c[pos] <= '9')
+            {
+                value = 10 * value + (c[pos++] - '0');
+                if (++digits > 10)
+                    return (int) Double.parseDouble(getString(field));
+            }
+            if (pos < end && c[pos] == '.')
+            {
+                pos++;
+                while (pos < end && c[pos] >= '0' && c[pos] <= '9')
+                {
+                    pos++;
+                    digits++;
+                }
+            }
+            if (pos != end || digits == 0)
+                return (int) Double.parseDouble(getString(field));
+            value = negative ? -value : value;
+            return value > Integer.MAX_VALUE ? Integer.MAX_VALUE : value < Integer.MIN_VALUE ? Integer.MIN_VALUE : (int) value;
+        }
+
+        /**
+         * Parse the field as a float directly from the character buffer, without creating a String. The value is parsed as a
+         * double (see getDouble), which is correctly rounded, and then rounded to a float. Rounding twice only gives another
+         * result than Float.parseFloat when the double lies exactly halfway between two floats; such values, and values that
+         * are too small for a normalized float, are parsed again with Float.parseFloat.
+         * @param field int; the field index
+         * @return float; the parsed value
+         * @throws NumberFormatException when the field is empty or not a number
+         */
+        public float getFloat(final int field)
+        {
+            double value = getDouble(field);
+            float rounded = (float) value;
+            if ((Double.doubleToRawLongBits(value) & HALF_FLOAT_ULP_MASK) == HALF_FLOAT_ULP
+                    || (value != 0.0 && Math.abs(value) < Float.MIN_NORMAL))
+                return Float.parseFloat(getString(field));
+            return rounded;
+        }
+
+        /**
+         * Parse the field as a double directly from the character buffer, without creating a String. Decimal values with a
+         * mantissa below 2^53 and up to 22 decimals are converted exactly (mantissa and power of ten are both exact doubles, so
+         * the division is correctly rounded); other values, e.g., with an exponent, are delegated to Double.parseDouble.
+         * @param field int; the field index
+         * @return double; the parsed value
+         * @throws NumberFormatException when the field is empty or not a number
+         */
+        public double getDouble(final int field)
+        {
+            if (isEmpty(field))
+                return Double.parseDouble(getString(field));
+            char[] c = CsvChunk.this.chars;
+            int pos = this.fieldStart[field];
+            int end = this.fieldEnd[field];
+            boolean negative = false;
+            if (c[pos] == '-' || c[pos] == '+')
+            {
+                negative = c[pos] == '-';
+                pos++;
+            }
+            long mantissa = 0;
+            int significant = 0;
+            int decimals = 0;
+            boolean point = false;
+            boolean digit = false;
+            for (; pos < end; pos++)
+            {
+                char ch = c[pos];
+                if (ch >= '0' && ch <= '9')
+                {
+                    digit = true;
+                    if (mantissa != 0 || ch != '0')
+                        significant++;
+                    mantissa = 10 * mantissa + (ch - '0');
+                    if (point)
+                        decimals++;
+                }
+                else if (ch == '.' && !point)
+                    point = true;
+                else
+                    break;
+            }
+            if (pos != end || !digit || significant > 18 || mantissa > (1L << 53) || decimals > 22)
+                return Double.parseDouble(getString(field));
+            double value = decimals == 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -value : value;
+        }
+
+        /**
+         * @return the start position of the current row in the chunk
+         */
+        public int getRowStart()
+        {
+            return this.rowStart;
+        }
+
+        /**
+         * @return the end position (exclusive) of the current row in the chunk
+         */
+        public int getRowEnd()
+        {
+            return this.rowEnd;
+        }
+
+        /**
+         * @return the line number of the current row in the file
+         */
+        public long getLineNumber()
+        {
+            return this.lineNumber;
+        }
+    }
+
+}
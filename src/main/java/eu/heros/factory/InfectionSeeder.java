@@ -0,0 +1,265 @@
+package eu.heros.factory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import nl.tudelft.simulation.jstats.streams.StreamInterface;
+import nl.tudelft.simulation.medlabs.common.MedlabsException;
+
+/**
+ * InfectionSeeder selects the persons that are infected at t=0. While the persons are created, their id, age, home location and
+ * work or school location are registered. At the first selection, the persons are indexed by age in one counting-sort pass, so
+ * the persons in an age range form one contiguous slice of the index; the index is kept for the next selections of the same
+ * model. From that slice, the persons to infect are drawn without replacement with a partial Fisher-Yates shuffle, where the
+ * swapped positions are kept in a small map instead of in a copy of the slice. Drawing k persons therefore costs O(k),
+ * independent of the width of the age range, and the selection always terminates.
+ * <p>
+ * Optionally, the selection is restricted to persons whose home location or work/school location matches a location filter:
+ * a set of location types, a set of districts, and/or a spatial cluster (a circle around a point). The locations that match
+ * the filter are registered while the locations are created. With a location filter, the age slice is filtered in one pass
+ * before drawing.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class InfectionSeeder
+{
+    /** the number of age classes in the index (ages 0-127). */
+    private static final int NR_AGES = 128;
+
+    /** meters per degree latitude, in line with the scale of the animation. */
+    private static final double METERS_PER_DEGREE = 111319.24;
+
+    /** the location types for the location filter (lower case); empty when not filtered on location type. */
+    private final Set<String> seedLocationTypes = new HashSet<>();
+
+    /** the districts for the location filter; empty when not filtered on district. */
+    private final Set<String> seedDistricts = new HashSet<>();
+
+    /** the cluster for the location filter as {lat, lon, radius in m}; null when not filtered on a cluster. */
+    private final double[] seedCluster;
+
+    /** the ids of the locations that match the location filter. */
+    private final TIntSet seedLocations = new TIntHashSet();
+
+    /** the number of registered persons. */
+    private int size = 0;
+
+    /** the person ids of the registered persons. */
+    private int[] personId = new int[1024];
+
+    /** the ages of the registered persons. */
+    private byte[] age = new byte[1024];
+
+    /** the home location ids of the registered persons. */
+    private int[] homeId = new int[1024];
+
+    /** the work or school location ids of the registered persons, -1 when they have none. */
+    private int[] workSchoolId = new int[1024];
+
+    /** the positions of the registered persons, ordered by age; null when not yet built for the registered persons. */
+    private int[] index = null;
+
+    /** the start of the slice in the index for each age, and the end of the index at position NR_AGES. */
+    private int[] offset = null;
+
+    /**
+     * Create a seeder with a location filter. Empty Strings mean that the persons are not filtered on that aspect.
+     * @param locationTypes String; comma-separated names of location types
+     * @param districts String; comma-separated district codes
+     * @param cluster String; lat,lon,radius of a circle, with the radius in meters
+     * @throws MedlabsException when the cluster specification is not valid
+     */
+    public InfectionSeeder(final String locationTypes, final String districts, final String cluster) throws MedlabsException
+    {
+        for (String lt : locationTypes.split(","))
+        {
+            if (lt.trim().length() > 0)
+                this.seedLocationTypes.add(lt.trim().replace("LocationType.", "").toLowerCase());
+        }
+        for (String district : districts.split(","))
+        {
+            if (district.trim().length() > 0)
+                this.seedDistricts.add(district.trim());
+        }
+        if (cluster.trim().length() == 0)
+            this.seedCluster = null;
+        else
+        {
+            String[] parts = cluster.split(",");
+            if (parts.length != 3)
+                throw new MedlabsException("SeedCluster should be specified as lat,lon,radius, not " + cluster);
+            try
+            {
+                this.seedCluster = new double[] {Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                        Double.parseDouble(parts[2].trim())};
+            }
+            catch (NumberFormatException exception)
+            {
+                throw new MedlabsException("SeedCluster should be specified as lat,lon,radius, not " + cluster);
+            }
+        }
+    }
+
+    /**
+     * @return whether the seeder has a location filter
+     */
+    public boolean hasLocationFilter()
+    {
+        return !this.seedLocationTypes.isEmpty() || !this.seedDistricts.isEmpty() || this.seedCluster != null;
+    }
+
+    /**
+     * Register a location, and remember it when it matches all aspects of the location filter.
+     * @param locationId int; the location id
+     * @param locationType String; the name of the location type
+     * @param district String; the district, empty when not known
+     * @param lat double; the latitude
+     * @param lon double; the longitude
+     */
+    public void addLocation(final int locationId, final String locationType, final String district, final double lat,
+            final double lon)
+    {
+        if (!hasLocationFilter())
+            return;
+        if (!this.seedLocationTypes.isEmpty() && !this.seedLocationTypes.contains(locationType.toLowerCase()))
+            return;
+        if (!this.seedDistricts.isEmpty() && !this.seedDistricts.contains(district))
+            return;
+        if (this.seedCluster != null)
+        {
+            double dy = (lat - this.seedCluster[0]) * METERS_PER_DEGREE;
+            double dx = (lon - this.seedCluster[1]) * METERS_PER_DEGREE * Math.cos(Math.toRadians(this.seedCluster[0]));
+            if (dx * dx + dy * dy > this.seedCluster[2] * this.seedCluster[2])
+                return;
+        }
+        this.seedLocations.add(locationId);
+    }
+
+    /**
+     * Register a person.
+     * @param id int; the person id
+     * @param personAge byte; the age
+     * @param home int; the home location id
+     * @param workSchool int; the work or school location id, or -1 when the person has none
+     */
+    public void addPerson(final int id, final byte personAge, final int home, final int workSchool)
+    {
+        if (this.size == this.personId.length)
+        {
+            int n = 2 * this.size;
+            this.personId = Arrays.copyOf(this.personId, n);
+            this.age = Arrays.copyOf(this.age, n);
+            this.homeId = Arrays.copyOf(this.homeId, n);
+            this.workSchoolId = Arrays.copyOf(this.workSchoolId, n);
+        }
+        this.personId[this.size] = id;
+        this.age[this.size] = personAge;
+        this.homeId[this.size] = home;
+        this.workSchoolId[this.size] = workSchool;
+        this.size++;
+        this.index = null;
+    }
+
+    /**
+     * Index the registered persons by age, in registration order within an age (counting sort).
+     */
+    private void buildIndex()
+    {
+        this.offset = new int[NR_AGES + 1];
+        for (int i = 0; i < this.size; i++)
+            this.offset[ageClass(this.age[i]) + 1]++;
+        for (int a = 0; a < NR_AGES; a++)
+            this.offset[a + 1] += this.offset[a];
+        this.index = new int[this.size];
+        int[] next = Arrays.copyOf(this.offset, NR_AGES);
+        for (int i = 0; i < this.size; i++)
+            this.index[next[ageClass(this.age[i])]++] = i;
+    }
+
+    /**
+     * Select the persons to infect.
+     * @param number int; the number of persons to infect
+     * @param ageMin int; the lowest age (inclusive)
+     * @param ageMax int; the highest age (inclusive)
+     * @param stream StreamInterface; the random stream to draw from
+     * @return int[]; the ids of the selected persons, in the order of drawing; fewer than number when not enough persons
+     *         match the age range and the location filter
+     */
+    public int[] select(final int number, final int ageMin, final int ageMax, final StreamInterface stream)
+    {
+        if (this.index == null)
+            buildIndex();
+
+        // the candidates form the slice [from, to) of the index, optionally filtered on location
+        int from = this.offset[Math.max(0, Math.min(NR_AGES, ageMin))];
+        int to = this.offset[Math.max(0, Math.min(NR_AGES, ageMax + 1))];
+        int[] candidates = this.index;
+        if (hasLocationFilter())
+        {
+            candidates = new int[Math.max(0, to - from)];
+            int n = 0;
+            for (int c = from; c < to; c++)
+            {
+                int i = this.index[c];
+                if (this.seedLocations.contains(this.homeId[i])
+                        || (this.workSchoolId[i] >= 0 && this.seedLocations.contains(this.workSchoolId[i])))
+                    candidates[n++] = i;
+            }
+            from = 0;
+            to = n;
+        }
+
+        // partial Fisher-Yates shuffle over the virtual array candidates[from..to), recording swapped positions only
+        int n = Math.max(0, to - from);
+        int k = Math.min(number, n);
+        int[] selected = new int[k];
+        TIntIntMap swapped = new TIntIntHashMap(2 * k + 1, 0.5f, -1, -1);
+        for (int s = 0; s < k; s++)
+        {
+            int j = n - 1 - s > 0 ? s + stream.nextInt(0, n - 1 - s) : s;
+            int valueS = swapped.containsKey(s) ? swapped.get(s) : candidates[from + s];
+            int valueJ = swapped.containsKey(j) ? swapped.get(j) : candidates[from + j];
+            swapped.put(j, valueS);
+            selected[s] = this.personId[valueJ];
+        }
+        return selected;
+    }
+
+    /**
+     * @param personAge byte; the age of a person
+     * @return the age class in the index, 0-127
+     */
+    private static int ageClass(final byte personAge)
+    {
+        return Math.max(0, personAge);
+    }
+
+    /**
+     * @return the number of registered persons
+     */
+    public int getNumberOfPersons()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the number of registered locations that match the location filter
+     */
+    public int getNumberOfSeedLocations()
+    {
+        return this.seedLocations.size();
+    }
+
+}
@@ -0,0 +1,155 @@
+package eu.heros.factory;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * InputCache keeps the parsed input files of a model, so replications that run in the same JVM parse every input file only
+ * once. Only the parsed records are shared (location and person columns, the activity table, the infection rates); they are
+ * not changed after parsing. The model objects themselves (locations, persons, week patterns) hold the state of one
+ * replication, and are still made per model from the shared records. An entry is identified by its kind, the absolute path of
+ * the file, and the modification time of the file. When several models ask for the same entry at the same time, the first one
+ * parses the file and the others wait for the result; a failed parse is not kept, so the next request tries again. When the
+ * number of models is known in advance, the cache forgets the parsed contents as soon as the last model has been constructed.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class InputCache
+{
+    /** the (future) parsed contents per key. */
+    private final Map<String, CompletableFuture<Object>> entries = new HashMap<>();
+
+    /** the number of files that have been parsed. */
+    private int nrLoads = 0;
+
+    /** the number of requests that were served from the cache. */
+    private int nrHits = 0;
+
+    /** the number of models that will still be constructed with the cache; negative when not known. */
+    private int nrModelsToConstruct = -1;
+
+    /**
+     * Return the parsed contents of a file, and parse the file with the loader when it has not been parsed before.
+     * @param kind String; the kind of contents, to distinguish different parses of the same file
+     * @param file File; the input file
+     * @param loader Callable&lt;T&gt;; the parser of the file
+     * @return T; the parsed contents
+     * @param <T> the type of the parsed contents
+     * @throws Exception when parsing the file failed
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String kind, final File file, final Callable<T> loader) throws Exception
+    {
+        String key = kind + "|" + file.getAbsolutePath() + "|" + file.lastModified();
+        CompletableFuture<Object> future;
+        boolean load = false;
+        synchronized (this)
+        {
+            future = this.entries.get(key);
+            if (future == null)
+            {
+                future = new CompletableFuture<>();
+                this.entries.put(key, future);
+                this.nrLoads++;
+                load = true;
+            }
+            else
+            {
+                this.nrHits++;
+            }
+        }
+        if (load)
+        {
+            try
+            {
+                T contents = loader.call();
+                future.complete(contents);
+                return contents;
+            }
+            catch (Exception exception)
+            {
+                synchronized (this)
+                {
+                    this.entries.remove(key);
+                }
+                future.completeExceptionally(exception);
+                throw exception;
+            }
+        }
+        try
+        {
+            return (T) future.get();
+        }
+        catch (ExecutionException exception)
+        {
+            if (exception.getCause() instanceof Exception)
+                throw (Exception) exception.getCause();
+            throw exception;
+        }
+    }
+
+    /**
+     * Forget all parsed contents, e.g., to free the memory after the last replication has been constructed.
+     */
+    public synchronized void clear()
+    {
+        this.entries.clear();
+    }
+
+    /**
+     * Set the number of models that will be constructed with the cache, so the parsed contents can be forgotten when the last
+     * of these models has been constructed.
+     * @param nrModels int; the number of models that will be constructed with the cache
+     */
+    public synchronized void setNumberOfModels(final int nrModels)
+    {
+        this.nrModelsToConstruct = nrModels;
+        if (nrModels == 0)
+            clear();
+    }
+
+    /**
+     * Register that a model has been constructed with the cache, or failed to be constructed. When the number of models was
+     * set, and this was the last model, all parsed contents are forgotten.
+     */
+    public synchronized void modelConstructed()
+    {
+        if (this.nrModelsToConstruct > 0 && --this.nrModelsToConstruct == 0)
+            clear();
+    }
+
+    /**
+     * @return the number of files that have been parsed
+     */
+    public synchronized int getNumberOfLoads()
+    {
+        return this.nrLoads;
+    }
+
+    /**
+     * @return the number of requests that were served from the cache
+     */
+    public synchronized int getNumberOfHits()
+    {
+        return this.nrHits;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString()
+    {
+        return "InputCache [entries=" + this.entries.size() + ", loads=" + this.nrLoads + ", hits=" + this.nrHits + "]";
+    }
+
+}
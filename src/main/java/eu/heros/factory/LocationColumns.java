@@ -0,0 +1,432 @@
+package eu.heros.factory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.tudelft.simulation.medlabs.common.MedlabsException;
+
+/**
+ * LocationColumns stores the parsed records of one chunk of the locations file in primitive column buffers. The columns are
+ * filled by a parser thread of the {@link PipelinedCsvReader}, and read by the thread that constructs the locations.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class LocationColumns
+{
+    /** the column names of the locations file that are used, in the order of the column indices of mapHeader. */
+    private static final String[] HEADER = {"location_id", "nb_sublocations", "lon", "lat", "area", "location_category"};
+
+    /** the accepted names of the optional district column, in order of preference. */
+    private static final String[] DISTRICT_HEADER = {"district", "WK_CODE"};
+
+    /** the number of records. */
+    private int size = 0;
+
+    /** the location ids. */
+    private int[] locationId;
+
+    /** the latitudes. */
+    private float[] lat;
+
+    /** the longitudes. */
+    private float[] lon;
+
+    /** the areas of the sublocations. */
+    private float[] area;
+
+    /** the number of sublocations. */
+    private short[] nbSublocations;
+
+    /** the location categories (location type names); equal names share one String instance. */
+    private String[] locationCategory;
+
+    /** the districts (e.g., the WK_CODE of the location); empty when not provided; equal names share one String instance. */
+    private String[] district;
+
+    /** the line numbers of the records in the file; null when the records are on consecutive lines from firstLine. */
+    private long[] lineNumber;
+
+    /** the line number of the first record when the records are on consecutive lines. */
+    private long firstLine = 1;
+
+    /** the start positions of the records in the chunk, to retrieve the row text for error messages. */
+    private int[] rowStart;
+
+    /** the end positions of the records in the chunk, to retrieve the row text for error messages. */
+    private int[] rowEnd;
+
+    /** the chunk from which the records were parsed; null when the columns were not read from a csv file, or compacted. */
+    private CsvChunk chunk;
+
+    /**
+     * Create empty column buffers.
+     * @param capacity int; the initial capacity
+     * @param chunk CsvChunk; the chunk from which the records are parsed; can be null
+     */
+    public LocationColumns(final int capacity, final CsvChunk chunk)
+    {
+        this.chunk = chunk;
+        this.locationId = new int[capacity];
+        this.lat = new float[capacity];
+        this.lon = new float[capacity];
+        this.area = new float[capacity];
+        this.nbSublocations = new short[capacity];
+        this.locationCategory = new String[capacity];
+        this.district = new String[capacity];
+        this.lineNumber = new long[capacity];
+        this.rowStart = new int[capacity];
+        this.rowEnd = new int[capacity];
+    }
+
+    /**
+     * Create the columns from complete column arrays, e.g., as read from a columnar file. The line number of a record is its
+     * 1-based record number.
+     * @param size int; the number of records
+     * @param locationId int[]; the location ids
+     * @param lat float[]; the latitudes
+     * @param lon float[]; the longitudes
+     * @param area float[]; the areas of the sublocations
+     * @param nbSublocations short[]; the number of sublocations
+     * @param locationCategory String[]; the location categories
+     * @param district String[]; the districts, empty Strings when not provided
+     */
+    LocationColumns(final int size, final int[] locationId, final float[] lat, final float[] lon, final float[] area,
+            final short[] nbSublocations, final String[] locationCategory, final String[] district)
+    {
+        this.chunk = null;
+        this.size = size;
+        this.locationId = locationId;
+        this.lat = lat;
+        this.lon = lon;
+        this.area = area;
+        this.nbSublocations = nbSublocations;
+        this.locationCategory = locationCategory;
+        this.district = district;
+    }
+
+    /**
+     * Map the header of the locations file onto the column indices of the fields location_id, nb_sublocations, lon, lat, area
+     * and location_category (in that order), followed by the optional district column (district or WK_CODE), which is -1
+     * when the file does not have a district column.
+     * @param header List&lt;String&gt;; the header row of the file
+     * @return int[]; the column indices of the six fields and the district
+     * @throws MedlabsException when not all column headers are present
+     */
+    public static int[] mapHeader(final List<String> header) throws MedlabsException
+    {
+        int[] columns = PersonColumns.mapColumns(header, HEADER);
+        if (columns == null)
+            throw new MedlabsException("Location csv-file header row did not contain all column headers");
+        columns = Arrays.copyOf(columns, HEADER.length + 1);
+        columns[HEADER.length] = -1;
+        for (String name : DISTRICT_HEADER)
+        {
+            int[] district = PersonColumns.mapColumns(header, new String[] {name});
+            if (district != null)
+            {
+                columns[HEADER.length] = district[0];
+                break;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Parse the records of a chunk of the locations file. This method is called concurrently by the parser threads. The
+     * numeric fields are parsed directly from the character buffer of the chunk; the location category is matched against the
+     * categories seen earlier in the chunk, so a String is only created for the first occurrence of each category.
+     * @param chunk CsvChunk; the chunk to parse
+     * @param columns int[]; the column indices as returned by mapHeader
+     * @return LocationColumns; the parsed records of the chunk
+     * @throws MedlabsException when a required field is empty or not a number
+     */
+    public static LocationColumns parse(final CsvChunk chunk, final int[] columns) throws MedlabsException
+    {
+        int maxColumn = 0;
+        for (int c : columns)
+            maxColumn = Math.max(maxColumn, c);
+        LocationColumns lc = new LocationColumns(Math.max(16, chunk.getLength() / 48), chunk);
+        List<String> categories = new ArrayList<>();
+        String lastCategory = null;
+        List<String> districts = new ArrayList<>();
+        int districtColumn = columns.length > HEADER.length ? columns[HEADER.length] : -1;
+        CsvChunk.Cursor cursor = chunk.cursor(maxColumn + 1);
+        while (cursor.next())
+        {
+            int locationId = getRequiredInt(chunk, cursor, columns, 0);
+            short nbSublocations = (short) getRequiredInt(chunk, cursor, columns, 1);
+            float lon = getRequiredFloat(chunk, cursor, columns, 2);
+            float lat = getRequiredFloat(chunk, cursor, columns, 3);
+            float subArea = getRequiredFloat(chunk, cursor, columns, 4);
+            String category = lastCategory != null && cursor.fieldEquals(columns[5], lastCategory) ? lastCategory
+                    : lookup(cursor, columns[5], categories);
+            lastCategory = category;
+            String district = districtColumn < 0 ? "" : lookup(cursor, districtColumn, districts);
+            lc.add(locationId, lat, lon, subArea, nbSublocations, category, district, cursor.getLineNumber(),
+                    cursor.getRowStart(), cursor.getRowEnd());
+        }
+        return lc;
+    }
+
+    /**
+     * Parse a field of the current row of the cursor that should contain an integer.
+     * @param chunk CsvChunk; the chunk that is parsed
+     * @param cursor CsvChunk.Cursor; the cursor, positioned on the row
+     * @param columns int[]; the column indices as returned by mapHeader
+     * @param field int; the index of the field in the HEADER
+     * @return int; the parsed value
+     * @throws MedlabsException when the field is empty or not a number
+     */
+    private static int getRequiredInt(final CsvChunk chunk, final CsvChunk.Cursor cursor, final int[] columns,
+            final int field) throws MedlabsException
+    {
+        if (cursor.isEmpty(columns[field]))
+            throw fieldError(chunk, cursor, field, "is empty");
+        try
+        {
+            return cursor.getInt(columns[field], 0);
+        }
+        catch (NumberFormatException exception)
+        {
+            throw fieldError(chunk, cursor, field, "is not a number");
+        }
+    }
+
+    /**
+     * Parse a field of the current row of the cursor that should contain a floating point number.
+     * @param chunk CsvChunk; the chunk that is parsed
+     * @param cursor CsvChunk.Cursor; the cursor, positioned on the row
+     * @param columns int[]; the column indices as returned by mapHeader
+     * @param field int; the index of the field in the HEADER
+     * @return float; the parsed value
+     * @throws MedlabsException when the field is empty or not a number
+     */
+    private static float getRequiredFloat(final CsvChunk chunk, final CsvChunk.Cursor cursor, final int[] columns,
+            final int field) throws MedlabsException
+    {
+        if (cursor.isEmpty(columns[field]))
+            throw fieldError(chunk, cursor, field, "is empty");
+        try
+        {
+            return cursor.getFloat(columns[field]);
+        }
+        catch (NumberFormatException exception)
+        {
+            throw fieldError(chunk, cursor, field, "is not a number");
+        }
+    }
+
+    /**
+     * Make the exception for a field of the current row that cannot be parsed, with the line number and the text of the row.
+     * @param chunk CsvChunk; the chunk that is parsed
+     * @param cursor CsvChunk.Cursor; the cursor, positioned on the row
+     * @param field int; the index of the field in the HEADER
+     * @param problem String; what is wrong with the field
+     * @return MedlabsException; the exception to throw
+     */
+    private static MedlabsException fieldError(final CsvChunk chunk, final CsvChunk.Cursor cursor, final int field,
+            final String problem)
+    {
+        return new MedlabsException("Location field " + HEADER[field] + " " + problem + " on row " + cursor.getLineNumber()
+                + "\n" + chunk.getText(cursor.getRowStart(), cursor.getRowEnd()));
+    }
+
+    /**
+     * Return the String for a field that has few distinct values, such as the location category. The field is compared with
+     * the values that were seen before, so a new String is only created for the first occurrence of a value.
+     * @param cursor CsvChunk.Cursor; the cursor, positioned on a row
+     * @param field int; the field index
+     * @param values List&lt;String&gt;; the values seen before; a new value is added to the list
+     * @return String; the shared String instance for the value of the field
+     */
+    private static String lookup(final CsvChunk.Cursor cursor, final int field, final List<String> values)
+    {
+        for (String value : values)
+        {
+            if (cursor.fieldEquals(field, value))
+                return value;
+        }
+        String value = cursor.getString(field);
+        values.add(value);
+        return value;
+    }
+
+    /**
+     * Add a record to the columns.
+     * @param id int; location id
+     * @param la float; latitude
+     * @param lo float; longitude
+     * @param subArea float; area of one sublocation
+     * @param nbSub short; number of sublocations
+     * @param category String; location category
+     * @param dist String; district, empty when not provided
+     * @param line long; line number in the file
+     * @param start int; start position of the row in the chunk
+     * @param end int; end position of the row in the chunk
+     */
+    public void add(final int id, final float la, final float lo, final float subArea, final short nbSub, final String category,
+            final String dist, final long line, final int start, final int end)
+    {
+        if (this.size == this.locationId.length)
+            grow();
+        this.locationId[this.size] = id;
+        this.lat[this.size] = la;
+        this.lon[this.size] = lo;
+        this.area[this.size] = subArea;
+        this.nbSublocations[this.size] = nbSub;
+        this.locationCategory[this.size] = category;
+        this.district[this.size] = dist;
+        this.lineNumber[this.size] = line;
+        this.rowStart[this.size] = start;
+        this.rowEnd[this.size] = end;
+        this.size++;
+    }
+
+    /** Double the capacity of the column buffers. */
+    private void grow()
+    {
+        int n = 2 * this.locationId.length;
+        this.locationId = Arrays.copyOf(this.locationId, n);
+        this.lat = Arrays.copyOf(this.lat, n);
+        this.lon = Arrays.copyOf(this.lon, n);
+        this.area = Arrays.copyOf(this.area, n);
+        this.nbSublocations = Arrays.copyOf(this.nbSublocations, n);
+        this.locationCategory = Arrays.copyOf(this.locationCategory, n);
+        this.district = Arrays.copyOf(this.district, n);
+        this.lineNumber = Arrays.copyOf(this.lineNumber, n);
+        this.rowStart = Arrays.copyOf(this.rowStart, n);
+        this.rowEnd = Arrays.copyOf(this.rowEnd, n);
+    }
+
+    /**
+     * Release the memory that is only needed while the records are parsed and checked: the column buffers are trimmed to the
+     * number of records, and the reference to the chunk with the text of the file and the positions of the rows in the chunk
+     * are dropped. The line numbers are only kept when the records are not on consecutive lines. After compaction, the row
+     * text for error messages is made from the parsed fields. Records cannot be added anymore after compaction.
+     * @return LocationColumns; this object, for method chaining
+     */
+    public LocationColumns compact()
+    {
+        this.locationId = Arrays.copyOf(this.locationId, this.size);
+        this.lat = Arrays.copyOf(this.lat, this.size);
+        this.lon = Arrays.copyOf(this.lon, this.size);
+        this.area = Arrays.copyOf(this.area, this.size);
+        this.nbSublocations = Arrays.copyOf(this.nbSublocations, this.size);
+        this.locationCategory = Arrays.copyOf(this.locationCategory, this.size);
+        this.district = Arrays.copyOf(this.district, this.size);
+        if (this.lineNumber != null)
+        {
+            this.firstLine = this.size == 0 ? 1 : this.lineNumber[0];
+            boolean consecutive = true;
+            for (int i = 1; i < this.size && consecutive; i++)
+                consecutive = this.lineNumber[i] == this.firstLine + i;
+            this.lineNumber = consecutive ? null : Arrays.copyOf(this.lineNumber, this.size);
+        }
+        this.rowStart = null;
+        this.rowEnd = null;
+        this.chunk = null;
+        return this;
+    }
+
+    /**
+     * @return the number of records
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param i int; record index
+     * @return the location id of record i
+     */
+    public int getLocationId(final int i)
+    {
+        return this.locationId[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the latitude of record i
+     */
+    public float getLat(final int i)
+    {
+        return this.lat[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the longitude of record i
+     */
+    public float getLon(final int i)
+    {
+        return this.lon[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the area of one sublocation of record i
+     */
+    public float getArea(final int i)
+    {
+        return this.area[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the number of sublocations of record i
+     */
+    public short getNbSublocations(final int i)
+    {
+        return this.nbSublocations[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the location category of record i
+     */
+    public String getLocationCategory(final int i)
+    {
+        return this.locationCategory[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the district of record i, or an empty String when the file has no district column
+     */
+    public String getDistrict(final int i)
+    {
+        return this.district[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the line number in the file of record i
+     */
+    public long getLineNumber(final int i)
+    {
+        return this.lineNumber == null ? this.firstLine + i : this.lineNumber[i];
+    }
+
+    /**
+     * Return the text of the record, to be used in error messages.
+     * @param i int; record index
+     * @return String; the text of record i
+     */
+    public String getRowText(final int i)
+    {
+        if (this.chunk == null)
+            return "[" + this.locationId[i] + "," + this.lat[i] + "," + this.lon[i] + "," + this.area[i] + ","
+                    + this.nbSublocations[i] + "," + this.locationCategory[i] + "]";
+        return this.chunk.getText(this.rowStart[i], this.rowEnd[i]);
+    }
+
+}
@@ -0,0 +1,383 @@
+package eu.heros.factory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import nl.tudelft.simulation.medlabs.common.MedlabsException;
+
+/**
+ * PersonColumns stores the parsed records of one chunk of the person file in primitive column buffers. The columns are filled
+ * by a parser thread of the {@link PipelinedCsvReader}, and read by the thread that constructs the persons.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class PersonColumns
+{
+    /** the column names of the person file that are used, in the order of the column indices of mapHeader. */
+    private static final String[] HEADER =
+            {"person_id", "household_id", "age", "home_id", "workplace_id", "social_role"};
+
+    /** the number of records. */
+    private int size = 0;
+
+    /** the person ids. */
+    private int[] personId;
+
+    /** the household ids. */
+    private int[] householdId;
+
+    /** the ages. */
+    private byte[] age;
+
+    /** the home location ids. */
+    private int[] homeId;
+
+    /** the work or school location ids; -1 when the field is empty. */
+    private int[] workplaceId;
+
+    /** the social roles. */
+    private int[] socialRole;
+
+    /** the line numbers of the records in the file; null when the records are on consecutive lines from firstLine. */
+    private long[] lineNumber;
+
+    /** the line number of the first record when the records are on consecutive lines. */
+    private long firstLine = 1;
+
+    /** the start positions of the records in the chunk, to retrieve the row text for error messages. */
+    private int[] rowStart;
+
+    /** the end positions of the records in the chunk, to retrieve the row text for error messages. */
+    private int[] rowEnd;
+
+    /** the chunk from which the records were parsed; null when the columns were not read from a csv file, or compacted. */
+    private CsvChunk chunk;
+
+    /**
+     * Create empty column buffers.
+     * @param capacity int; the initial capacity
+     * @param chunk CsvChunk; the chunk from which the records are parsed; can be null
+     */
+    public PersonColumns(final int capacity, final CsvChunk chunk)
+    {
+        this.chunk = chunk;
+        this.personId = new int[capacity];
+        this.householdId = new int[capacity];
+        this.age = new byte[capacity];
+        this.homeId = new int[capacity];
+        this.workplaceId = new int[capacity];
+        this.socialRole = new int[capacity];
+        this.lineNumber = new long[capacity];
+        this.rowStart = new int[capacity];
+        this.rowEnd = new int[capacity];
+    }
+
+    /**
+     * Create the columns from complete column arrays, e.g., as read from a columnar file. The line number of a record is its
+     * 1-based record number.
+     * @param size int; the number of records
+     * @param personId int[]; the person ids
+     * @param householdId int[]; the household ids
+     * @param age byte[]; the ages
+     * @param homeId int[]; the home location ids
+     * @param workplaceId int[]; the work or school location ids, -1 when not provided
+     * @param socialRole int[]; the social roles
+     */
+    PersonColumns(final int size, final int[] personId, final int[] householdId, final byte[] age, final int[] homeId,
+            final int[] workplaceId, final int[] socialRole)
+    {
+        this.chunk = null;
+        this.size = size;
+        this.personId = personId;
+        this.householdId = householdId;
+        this.age = age;
+        this.homeId = homeId;
+        this.workplaceId = workplaceId;
+        this.socialRole = socialRole;
+    }
+
+    /**
+     * Map the header of the person file onto the column indices of the fields person_id, household_id, age, home_id,
+     * workplace_id and social_role (in that order).
+     * @param header List&lt;String&gt;; the header row of the file
+     * @return int[]; the column indices of the six fields
+     * @throws MedlabsException when not all column headers are present
+     */
+    public static int[] mapHeader(final List<String> header) throws MedlabsException
+    {
+        int[] columns = mapColumns(header, HEADER);
+        if (columns == null)
+            throw new MedlabsException("Person csv-file header row did not contain all column headers\n" + header.toString());
+        return columns;
+    }
+
+    /**
+     * Map the header of a csv file onto the column indices of the given field names; the header is scanned once, and the names
+     * are compared case-insensitively.
+     * @param header List&lt;String&gt;; the header row of the file
+     * @param names String[]; the field names to look up
+     * @return int[]; the column indices of the fields in the order of the names, or null when not all fields are present
+     */
+    static int[] mapColumns(final List<String> header, final String[] names)
+    {
+        int[] columns = new int[names.length];
+        Arrays.fill(columns, -1);
+        int found = 0;
+        for (int i = 0; i < header.size(); i++)
+        {
+            String column = header.get(i).trim();
+            for (int j = 0; j < names.length; j++)
+            {
+                if (columns[j] < 0 && names[j].equalsIgnoreCase(column))
+                {
+                    columns[j] = i;
+                    found++;
+                    break;
+                }
+            }
+        }
+        return found == names.length ? columns : null;
+    }
+
+    /**
+     * Parse the records of a chunk of the person file. This method is called concurrently by the parser threads. The numeric
+     * fields are parsed directly from the character buffer of the chunk, so no Strings are created per field. Only the
+     * workplace_id field can be empty; it is stored as -1.
+     * @param chunk CsvChunk; the chunk to parse
+     * @param columns int[]; the column indices as returned by mapHeader
+     * @return PersonColumns; the parsed records of the chunk
+     * @throws MedlabsException when one of the other fields is empty or not a number; the message contains the row
+     */
+    public static PersonColumns parse(final CsvChunk chunk, final int[] columns) throws MedlabsException
+    {
+        int maxColumn = 0;
+        for (int c : columns)
+            maxColumn = Math.max(maxColumn, c);
+        PersonColumns pc = new PersonColumns(Math.max(16, chunk.getLength() / 32), chunk);
+        CsvChunk.Cursor cursor = chunk.cursor(maxColumn + 1);
+        while (cursor.next())
+        {
+            int personId = getRequiredInt(chunk, cursor, columns, 0);
+            int householdId = getRequiredInt(chunk, cursor, columns, 1);
+            byte age = (byte) getRequiredInt(chunk, cursor, columns, 2);
+            int homeId = getRequiredInt(chunk, cursor, columns, 3);
+            int workplaceId;
+            try
+            {
+                workplaceId = cursor.getInt(columns[4], -1);
+            }
+            catch (NumberFormatException exception)
+            {
+                throw fieldError(chunk, cursor, 4, "is not a number");
+            }
+            int socialRole = getRequiredInt(chunk, cursor, columns, 5);
+            pc.add(personId, householdId, age, homeId, workplaceId, socialRole, cursor.getLineNumber(), cursor.getRowStart(),
+                    cursor.getRowEnd());
+        }
+        return pc;
+    }
+
+    /**
+     * Parse a field of the current row of the cursor that should contain an integer.
+     * @param chunk CsvChunk; the chunk that is parsed
+     * @param cursor CsvChunk.Cursor; the cursor, positioned on the row
+     * @param columns int[]; the column indices as returned by mapHeader
+     * @param field int; the index of the field in the HEADER
+     * @return int; the parsed value
+     * @throws MedlabsException when the field is empty or not a number
+     */
+    private static int getRequiredInt(final CsvChunk chunk, final CsvChunk.Cursor cursor, final int[] columns,
+            final int field) throws MedlabsException
+    {
+        if (cursor.isEmpty(columns[field]))
+            throw fieldError(chunk, cursor, field, "is empty");
+        try
+        {
+            return cursor.getInt(columns[field], 0);
+        }
+        catch (NumberFormatException exception)
+        {
+            throw fieldError(chunk, cursor, field, "is not a number");
+        }
+    }
+
+    /**
+     * Make the exception for a field of the current row that cannot be parsed, with the line number and the text of the row.
+     * @param chunk CsvChunk; the chunk that is parsed
+     * @param cursor CsvChunk.Cursor; the cursor, positioned on the row
+     * @param field int; the index of the field in the HEADER
+     * @param problem String; what is wrong with the field
+     * @return MedlabsException; the exception to throw
+     */
+    private static MedlabsException fieldError(final CsvChunk chunk, final CsvChunk.Cursor cursor, final int field,
+            final String problem)
+    {
+        return new MedlabsException("Person field " + HEADER[field] + " " + problem + " on row " + cursor.getLineNumber()
+                + "\n" + chunk.getText(cursor.getRowStart(), cursor.getRowEnd()));
+    }
+
+    /**
+     * Add a record to the columns.
+     * @param pId int; person id
+     * @param hhId int; household id
+     * @param a byte; age
+     * @param hId int; home location id
+     * @param wId int; work or school location id, or -1
+     * @param role int; social role
+     * @param line long; line number in the file
+     * @param start int; start position of the row in the chunk
+     * @param end int; end position of the row in the chunk
+     */
+    public void add(final int pId, final int hhId, final byte a, final int hId, final int wId, final int role, final long line,
+            final int start, final int end)
+    {
+        if (this.size == this.personId.length)
+            grow();
+        this.personId[this.size] = pId;
+        this.householdId[this.size] = hhId;
+        this.age[this.size] = a;
+        this.homeId[this.size] = hId;
+        this.workplaceId[this.size] = wId;
+        this.socialRole[this.size] = role;
+        this.lineNumber[this.size] = line;
+        this.rowStart[this.size] = start;
+        this.rowEnd[this.size] = end;
+        this.size++;
+    }
+
+    /** Double the capacity of the column buffers. */
+    private void grow()
+    {
+        int n = 2 * this.personId.length;
+        this.personId = Arrays.copyOf(this.personId, n);
+        this.householdId = Arrays.copyOf(this.householdId, n);
+        this.age = Arrays.copyOf(this.age, n);
+        this.homeId = Arrays.copyOf(this.homeId, n);
+        this.workplaceId = Arrays.copyOf(this.workplaceId, n);
+        this.socialRole = Arrays.copyOf(this.socialRole, n);
+        this.lineNumber = Arrays.copyOf(this.lineNumber, n);
+        this.rowStart = Arrays.copyOf(this.rowStart, n);
+        this.rowEnd = Arrays.copyOf(this.rowEnd, n);
+    }
+
+    /**
+     * Release the memory that is only needed while the records are parsed and checked: the column buffers are trimmed to the
+     * number of records, and the reference to the chunk with the text of the file and the positions of the rows in the chunk
+     * are dropped. The line numbers are only kept when the records are not on consecutive lines. After compaction, the row
+     * text for error messages is made from the parsed fields. Records cannot be added anymore after compaction.
+     * @return PersonColumns; this object, for method chaining
+     */
+    public PersonColumns compact()
+    {
+        this.personId = Arrays.copyOf(this.personId, this.size);
+        this.householdId = Arrays.copyOf(this.householdId, this.size);
+        this.age = Arrays.copyOf(this.age, this.size);
+        this.homeId = Arrays.copyOf(this.homeId, this.size);
+        this.workplaceId = Arrays.copyOf(this.workplaceId, this.size);
+        this.socialRole = Arrays.copyOf(this.socialRole, this.size);
+        if (this.lineNumber != null)
+        {
+            this.firstLine = this.size == 0 ? 1 : this.lineNumber[0];
+            boolean consecutive = true;
+            for (int i = 1; i < this.size && consecutive; i++)
+                consecutive = this.lineNumber[i] == this.firstLine + i;
+            this.lineNumber = consecutive ? null : Arrays.copyOf(this.lineNumber, this.size);
+        }
+        this.rowStart = null;
+        this.rowEnd = null;
+        this.chunk = null;
+        return this;
+    }
+
+    /**
+     * @return the number of records
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param i int; record index
+     * @return the person id of record i
+     */
+    public int getPersonId(final int i)
+    {
+        return this.personId[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the household id of record i
+     */
+    public int getHouseholdId(final int i)
+    {
+        return this.householdId[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the age of record i
+     */
+    public byte getAge(final int i)
+    {
+        return this.age[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the home location id of record i
+     */
+    public int getHomeId(final int i)
+    {
+        return this.homeId[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the work or school location id of record i, or -1 when not provided
+     */
+    public int getWorkplaceId(final int i)
+    {
+        return this.workplaceId[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the social role of record i
+     */
+    public int getSocialRole(final int i)
+    {
+        return this.socialRole[i];
+    }
+
+    /**
+     * @param i int; record index
+     * @return the line number in the file of record i
+     */
+    public long getLineNumber(final int i)
+    {
+        return this.lineNumber == null ? this.firstLine + i : this.lineNumber[i];
+    }
+
+    /**
+     * Return the text of the record, to be used in error messages.
+     * @param i int; record index
+     * @return String; the text of record i
+     */
+    public String getRowText(final int i)
+    {
+        if (this.chunk == null)
+            return "[" + this.personId[i] + "," + this.householdId[i] + "," + this.age[i] + "," + this.homeId[i] + ","
+                    + this.workplaceId[i] + "," + this.socialRole[i] + "]";
+        return this.chunk.getText(this.rowStart[i], this.rowEnd[i]);
+    }
+
+}
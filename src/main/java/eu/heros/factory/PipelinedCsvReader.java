@@ -0,0 +1,361 @@
+package eu.heros.factory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * PipelinedCsvReader reads a (gzipped) csv file in three pipelined stages. One thread decompresses the file and cuts the
+ * character stream into chunks of complete rows; a pool of worker threads parses the chunks in parallel into column buffers;
+ * the calling thread consumes the parsed chunks serially and in file order. Object construction in the consumer therefore
+ * happens in exactly the same order as with a sequential reader, which keeps id assignment and random number draws identical.
+ * Readers of files that are read at the same time can share one pool of parser threads, so the parsers together do not use
+ * more threads than there are processors.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class PipelinedCsvReader
+{
+    /** the default number of characters per chunk. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    /** marker for the end of the chunk stream. */
+    private static final Future<Object> END = CompletableFuture.completedFuture(null);
+
+    /** the csv file to read. */
+    private final File file;
+
+    /** the (minimum) number of characters per chunk. */
+    private final int chunkSize;
+
+    /** the number of parser threads. */
+    private final int nrThreads;
+
+    /** the shared pool of parser threads; null when the reader makes its own pool for every read. */
+    private final ExecutorService sharedPool;
+
+    /**
+     * Create a pipelined reader for a csv file with the default chunk size, and one parser thread less than the number of
+     * available processors (the decompression thread takes the remaining one).
+     * @param file File; the csv file to read; when the name ends with .gz the file is decompressed while reading
+     */
+    public PipelinedCsvReader(final File file)
+    {
+        this(file, DEFAULT_CHUNK_SIZE, defaultNumberOfParsers());
+    }
+
+    /**
+     * Create a pipelined reader for a csv file with the default chunk size, that parses on a shared pool of parser threads.
+     * The pool is not shut down by the reader.
+     * @param file File; the csv file to read; when the name ends with .gz the file is decompressed while reading
+     * @param sharedPool ExecutorService; the pool of parser threads, e.g., made with newParserPool
+     * @param nrThreads int; the number of threads of the pool
+     */
+    public PipelinedCsvReader(final File file, final ExecutorService sharedPool, final int nrThreads)
+    {
+        this.file = file;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+        this.nrThreads = nrThreads;
+        this.sharedPool = sharedPool;
+    }
+
+    /**
+     * Create a pipelined reader for a csv file.
+     * @param file File; the csv file to read; when the name ends with .gz the file is decompressed while reading
+     * @param chunkSize int; the (minimum) number of characters per chunk
+     * @param nrThreads int; the number of parser threads
+     */
+    public PipelinedCsvReader(final File file, final int chunkSize, final int nrThreads)
+    {
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.nrThreads = nrThreads;
+        this.sharedPool = null;
+    }
+
+    /**
+     * @return the default number of parser threads: one less than the number of available processors, since the
+     *         decompression thread takes the remaining one
+     */
+    public static int defaultNumberOfParsers()
+    {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * Make a pool of daemon parser threads, which can be shared by the readers of files that are read at the same time.
+     * @param nrThreads int; the number of parser threads
+     * @return ExecutorService; the pool; the caller shuts it down after the last read
+     */
+    public static ExecutorService newParserPool(final int nrThreads)
+    {
+        return Executors.newFixedThreadPool(nrThreads, r ->
+        {
+            Thread thread = new Thread(r, "csv-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Read the file. The header row is read on the calling thread and handed to the parserFactory to create the chunk parser
+     * (e.g., after mapping the column names onto column indices). Chunks are then parsed in parallel, and handed to the
+     * consumer on the calling thread in file order.
+     * @param parserFactory ParserFactory&lt;C&gt;; creates the chunk parser based on the header row
+     * @param consumer ChunkConsumer&lt;C&gt;; consumes the parsed chunks, serially and in file order
+     * @param <C> the type of the parsed chunk, e.g., a set of column buffers
+     * @throws Exception on I/O error, or when the parser or the consumer throws an exception
+     */
+    @SuppressWarnings("unchecked")
+    public <C> void read(final ParserFactory<C> parserFactory, final ChunkConsumer<C> consumer) throws Exception
+    {
+        ExecutorService pool = this.sharedPool != null ? this.sharedPool : newParserPool(this.nrThreads);
+        BlockingQueue<Future<C>> queue = new ArrayBlockingQueue<>(2 * this.nrThreads + 2);
+        Thread decompressor = null;
+        try (Reader reader = makeReader())
+        {
+            ChunkParser<C> parser = parserFactory.create(readHeader(reader));
+            decompressor = new Thread(() -> cutChunks(reader, parser, pool, queue), "csv-decompressor");
+            decompressor.setDaemon(true);
+            decompressor.start();
+            while (true)
+            {
+                Future<C> future = queue.take();
+                if (future == END)
+                    break;
+                try
+                {
+                    consumer.accept(future.get());
+                }
+                catch (ExecutionException exception)
+                {
+                    if (exception.getCause() instanceof Exception)
+                        throw (Exception) exception.getCause();
+                    throw exception;
+                }
+            }
+            decompressor.join();
+        }
+        finally
+        {
+            if (decompressor != null)
+                decompressor.interrupt();
+            if (this.sharedPool == null)
+                pool.shutdownNow();
+            else
+            {
+                // after an error, the parse tasks of this file should not keep the shared pool busy
+                for (Future<C> future : queue)
+                    future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Open the file, decompressing it when the name ends with .gz.
+     * @return Reader; a reader for the file
+     * @throws IOException on I/O error
+     */
+    private Reader makeReader() throws IOException
+    {
+        if (this.file.getName().toLowerCase().endsWith(".gz"))
+            return new InputStreamReader(new GZIPInputStream(new FileInputStream(this.file), 64 * 1024),
+                    StandardCharsets.UTF_8);
+        return new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the header row (the first row of the file) from the reader.
+     * @param reader Reader; the reader, positioned at the start of the file
+     * @return List&lt;String&gt;; the fields of the header row
+     * @throws IOException on I/O error or when the file is empty
+     */
+    private List<String> readHeader(final Reader reader) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        int ch = reader.read();
+        if (ch == 0xFEFF) // skip byte order mark
+            ch = reader.read();
+        while (ch != -1 && ch != '\n')
+        {
+            if (ch != '\r')
+                sb.append((char) ch);
+            ch = reader.read();
+        }
+        if (sb.length() == 0)
+            throw new IOException("file " + this.file + " does not contain header row");
+        char[] headerChars = sb.toString().toCharArray();
+        CsvChunk.Cursor cursor = new CsvChunk(headerChars, headerChars.length, 1).cursor(1024);
+        List<String> header = new ArrayList<>();
+        if (cursor.next())
+        {
+            for (int i = 0; i < Math.min(1024, cursor.getNrFields()); i++)
+                header.add(cursor.getString(i));
+        }
+        return header;
+    }
+
+    /**
+     * Cut the character stream into chunks of complete rows and submit them to the parser pool. This method runs on the
+     * decompression thread. The futures of the parse tasks are queued in file order; the end of the stream (or an error) is
+     * signaled through the queue as well.
+     * @param reader Reader; the reader, positioned after the header row
+     * @param parser ChunkParser&lt;C&gt;; the parser for the chunks
+     * @param pool ExecutorService; the pool of parser threads
+     * @param queue BlockingQueue&lt;Future&lt;C&gt;&gt;; the queue of parse results, in file order
+     * @param <C> the type of the parsed chunk
+     */
+    @SuppressWarnings("unchecked")
+    private <C> void cutChunks(final Reader reader, final ChunkParser<C> parser, final ExecutorService pool,
+            final BlockingQueue<Future<C>> queue)
+    {
+        try
+        {
+            long lineNumber = 2; // the header is line 1
+            char[] buf = new char[this.chunkSize];
+            int len = 0;
+            boolean eof = false;
+            while (!eof)
+            {
+                // fill the buffer
+                while (len < buf.length)
+                {
+                    int n = reader.read(buf, len, buf.length - len);
+                    if (n < 0)
+                    {
+                        eof = true;
+                        break;
+                    }
+                    len += n;
+                }
+
+                // find the end of the last complete row, and count the lines in the chunk
+                int end = eof ? len : -1;
+                int lines = 0;
+                int linesAtEnd = 0;
+                boolean inQuotes = false;
+                for (int i = 0; i < len; i++)
+                {
+                    char ch = buf[i];
+                    if (ch == '"')
+                        inQuotes = !inQuotes;
+                    else if (ch == '\n')
+                    {
+                        lines++;
+                        if (!inQuotes && !eof)
+                        {
+                            end = i + 1;
+                            linesAtEnd = lines;
+                        }
+                    }
+                }
+                if (eof)
+                    linesAtEnd = lines;
+                if (end < 0)
+                {
+                    // a single row does not fit in the buffer; enlarge it and read on
+                    char[] larger = new char[2 * buf.length];
+                    System.arraycopy(buf, 0, larger, 0, len);
+                    buf = larger;
+                    continue;
+                }
+
+                // hand over the chunk, and carry the incomplete last row over to the next buffer
+                if (end > 0)
+                {
+                    final CsvChunk chunk = new CsvChunk(buf, end, lineNumber);
+                    queue.put(pool.submit(() -> parser.parse(chunk)));
+                }
+                lineNumber += linesAtEnd;
+                char[] next = new char[Math.max(this.chunkSize, 2 * (len - end))];
+                System.arraycopy(buf, end, next, 0, len - end);
+                len = len - end;
+                buf = next;
+            }
+            queue.put((Future<C>) END);
+        }
+        catch (InterruptedException exception)
+        {
+            // reading was aborted by the consumer
+        }
+        catch (Exception exception)
+        {
+            CompletableFuture<C> failed = new CompletableFuture<>();
+            failed.completeExceptionally(exception);
+            try
+            {
+                queue.put(failed);
+                queue.put((Future<C>) END);
+            }
+            catch (InterruptedException ie)
+            {
+                // reading was aborted by the consumer
+            }
+        }
+    }
+
+    /**
+     * Creates the chunk parser, based on the header row of the file.
+     * @param <C> the type of the parsed chunk
+     */
+    @FunctionalInterface
+    public interface ParserFactory<C>
+    {
+        /**
+         * @param header List&lt;String&gt;; the fields of the header row
+         * @return ChunkParser&lt;C&gt;; the parser for the chunks of the file
+         * @throws Exception when the header is not valid
+         */
+        ChunkParser<C> create(List<String> header) throws Exception;
+    }
+
+    /**
+     * Parses one chunk of rows. Parsers are called concurrently from multiple threads.
+     * @param <C> the type of the parsed chunk
+     */
+    @FunctionalInterface
+    public interface ChunkParser<C>
+    {
+        /**
+         * @param chunk CsvChunk; the chunk to parse
+         * @return C; the parsed chunk
+         * @throws Exception on parse error
+         */
+        C parse(CsvChunk chunk) throws Exception;
+    }
+
+    /**
+     * Consumes the parsed chunks on the calling thread of the reader, in file order.
+     * @param <C> the type of the parsed chunk
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer<C>
+    {
+        /**
+         * @param parsedChunk C; the parsed chunk
+         * @throws Exception on error
+         */
+        void accept(C parsedChunk) throws Exception;
+    }
+
+}
@@ -0,0 +1,163 @@
+package eu.heros.factory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * StartupReport records the duration and the heap use of the steps of the model construction, and prints them as a table at
+ * the end of the construction. Steps can run on different threads; the table shows the thread, the start time relative to
+ * the creation of the report, the duration, and the used heap at the end of the step. The heap use is measured without forcing
+ * a garbage collection, so it is an indication rather than an exact figure. The peak heap of the whole construction is taken
+ * from the memory pools of the JVM.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class StartupReport
+{
+    /** the start time of the report in ns. */
+    private final long startNanos = System.nanoTime();
+
+    /** the recorded steps. */
+    private final List<Step> steps = new ArrayList<>();
+
+    /**
+     * Create a report, and reset the peak usage of the heap memory pools, so the reported peak belongs to the construction.
+     */
+    public StartupReport()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * Execute a step, and record its duration and the heap use at its end.
+     * @param name String; the name of the step
+     * @param step Callable&lt;T&gt;; the step to execute
+     * @return T; the result of the step
+     * @param <T> the result type of the step
+     * @throws Exception when the step throws an exception
+     */
+    public <T> T time(final String name, final Callable<T> step) throws Exception
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return step.call();
+        }
+        finally
+        {
+            long end = System.nanoTime();
+            Runtime runtime = Runtime.getRuntime();
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+            synchronized (this.steps)
+            {
+                this.steps.add(new Step(name, Thread.currentThread().getName(), start - this.startNanos, end - start, heap));
+            }
+        }
+    }
+
+    /**
+     * Execute a step without a result, and record its duration and the heap use at its end.
+     * @param name String; the name of the step
+     * @param step Action; the step to execute
+     * @throws Exception when the step throws an exception
+     */
+    public void run(final String name, final Action step) throws Exception
+    {
+        time(name, () ->
+        {
+            step.run();
+            return null;
+        });
+    }
+
+    /**
+     * Print the recorded steps in order of their start time, followed by the total time and the peak heap use.
+     */
+    public void print()
+    {
+        List<Step> sorted;
+        synchronized (this.steps)
+        {
+            sorted = new ArrayList<>(this.steps);
+        }
+        sorted.sort((a, b) -> Long.compare(a.start, b.start));
+        System.out.println("\nModel construction steps:");
+        System.out.println(
+                String.format("%-36s %-16s %10s %10s %10s", "step", "thread", "start [ms]", "time [ms]", "heap [MB]"));
+        for (Step step : sorted)
+        {
+            System.out.println(String.format("%-36s %-16s %10.0f %10.0f %10.0f", step.name, step.thread, step.start / 1.0E6,
+                    step.duration / 1.0E6, step.heap / 1048576.0));
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.println(String.format("Total construction time %.0f ms, peak heap %.0f MB (sum of pool peaks)\n",
+                (System.nanoTime() - this.startNanos) / 1.0E6, peak / 1048576.0));
+    }
+
+    /** A step of the construction without a result. */
+    @FunctionalInterface
+    public interface Action
+    {
+        /**
+         * Execute the step.
+         * @throws Exception when the step fails
+         */
+        void run() throws Exception;
+    }
+
+    /** The record of one step. */
+    private static class Step
+    {
+        /** the name of the step. */
+        private final String name;
+
+        /** the name of the thread that executed the step. */
+        private final String thread;
+
+        /** the start time relative to the start of the report in ns. */
+        private final long start;
+
+        /** the duration in ns. */
+        private final long duration;
+
+        /** the used heap at the end of the step in bytes. */
+        private final long heap;
+
+        /**
+         * @param name String; the name of the step
+         * @param thread String; the name of the thread that executed the step
+         * @param start long; the start time relative to the start of the report in ns
+         * @param duration long; the duration in ns
+         * @param heap long; the used heap at the end of the step in bytes
+         */
+        Step(final String name, final String thread, final long start, final long duration, final long heap)
+        {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.duration = duration;
+            this.heap = heap;
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package eu.heros.location;
+
+import java.util.Map;
+
+import eu.heros.model.HerosModel;
+import eu.heros.model.OccupancyCounters;
+import nl.tudelft.simulation.medlabs.disease.DiseasePhase;
+import nl.tudelft.simulation.medlabs.location.LocationProbBased;
+import nl.tudelft.simulation.medlabs.location.LocationType;
+import nl.tudelft.simulation.medlabs.person.Person;
+import nl.tudelft.simulation.medlabs.person.PersonType;
+
+/**
+ * HerosLocationProbBased is a location with a fixed infection rate that keeps the occupancy counters of the model up to date,
+ * in the same way as HerosLocation.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class HerosLocationProbBased extends LocationProbBased
+{
+    /** */
+    private static final long serialVersionUID = 20240601L;
+
+    /** the occupancy counters of the model. */
+    private final OccupancyCounters occupancyCounters;
+
+    /**
+     * Create a location with a fixed infection rate and register it in the occupancy counters of the model.
+     * @param model HerosModel; the model
+     * @param locationId int; the (dense) id of the location
+     * @param locationType LocationType; the location type
+     * @param lat float; the latitude
+     * @param lon float; the longitude
+     * @param numberOfSubLocations short; the number of sublocations
+     * @param totalSurfaceM2 float; the total surface of the location in m2
+     * @param infectionRateFactor double; the factor for the infection rate
+     * @param infectionRate double; the fixed infection rate
+     * @param referenceGroupMap Map&lt;PersonType, PersonType&gt;; the reference groups for the infection rate
+     * @param exposedPhase DiseasePhase; the disease phase for an infected person
+     */
+    public HerosLocationProbBased(final HerosModel model, final int locationId, final LocationType locationType,
+            final float lat, final float lon, final short numberOfSubLocations, final float totalSurfaceM2,
+            final double infectionRateFactor, final double infectionRate, final Map<PersonType, PersonType> referenceGroupMap,
+            final DiseasePhase exposedPhase)
+    {
+        super(model, locationId, locationType, lat, lon, numberOfSubLocations, totalSurfaceM2, infectionRateFactor,
+                infectionRate, referenceGroupMap, exposedPhase);
+        this.occupancyCounters = model.getOccupancyCounters();
+        this.occupancyCounters.addLocation(locationId, numberOfSubLocations);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean addPerson(final Person person, final short subLocationIndex)
+    {
+        boolean added = super.addPerson(person, subLocationIndex);
+        if (added)
+            this.occupancyCounters.enter(getId(), person.getId(), subLocationIndex);
+        return added;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean removePerson(final Person person)
+    {
+        boolean removed = super.removePerson(person);
+        if (removed)
+            this.occupancyCounters.leave(getId(), person.getId());
+        return removed;
+    }
+
+}
@@ -0,0 +1,419 @@
+package eu.heros.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import eu.heros.factory.ConstructHerosModel;
+import eu.heros.output.ParallelGzipOutputStream;
+import eu.heros.policy.DiseasePolicy;
+import eu.heros.policy.LocationPolicy;
+import nl.tudelft.simulation.dsol.SimRuntimeException;
+import nl.tudelft.simulation.dsol.formalisms.eventscheduling.SimEvent;
+import nl.tudelft.simulation.dsol.formalisms.eventscheduling.SimEventInterface;
+import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterMap;
+import nl.tudelft.simulation.dsol.simulators.SimulatorInterface;
+import nl.tudelft.simulation.jstats.streams.StreamException;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
+import nl.tudelft.simulation.medlabs.output.ResultWriter;
+import nl.tudelft.simulation.medlabs.simulation.SimpleDevsSimulatorInterface;
+
+/**
+ * Checkpoint holds the complete state of a running simulation at one point in time: the model with its persons, locations,
+ * occupancy, disease phases and random streams, and the pending events of the simulator, such as the disease progression,
+ * activity and policy events. A checkpoint is made with Java serialization, in memory or in a file, and can be restored any
+ * number of times, each time as a separate model on a new simulator. Since variants of a scenario that only differ in their
+ * policies are identical until the first policy change, the variants can be forked from one checkpoint at that time instead
+ * of being simulated from the start.
+ * <p>
+ * The simulator itself and the medlabs ResultWriter are not part of the checkpoint. Every reference to the simulator, in the
+ * model or in any other object of the checkpoint, is written as a placeholder, and is replaced by the new simulator when the
+ * checkpoint is read; the events of the simulator itself (warmup, end of replication) are made again when the restored model
+ * is initialized. References to the ResultWriter are written as null, and the output files are opened anew in the output
+ * path of the restored model. When the policy files of the restored model differ from those of the checkpoint, the pending
+ * policy events are replaced by the policies of the new files from the checkpoint time on.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class Checkpoint implements Serializable
+{
+    /** */
+    private static final long serialVersionUID = 20241019L;
+
+    /** the extension of checkpoint files. */
+    public static final String EXTENSION = ".hckp";
+
+    /** the stack size of the thread that (de)serializes a checkpoint; the object graph of a model is deep. */
+    private static final long STACK_SIZE = 1L << 30;
+
+    /** the simulation time of the checkpoint in hours. */
+    private final double time;
+
+    /** the seed of the replication. */
+    private final long seed;
+
+    /** the model. */
+    private final HerosModel model;
+
+    /** the pending events of the simulator, in order of execution. */
+    private final List<SimEventInterface<Double>> events;
+
+    /** the state of the random stream of the model. */
+    private final byte[] randomStreamState;
+
+    /** the state of the default stream of the model. */
+    private final byte[] defaultStreamState;
+
+    /** the location policy file of the model at the time of the checkpoint. */
+    private final String locationPolicyFile;
+
+    /** the disease policy file of the model at the time of the checkpoint. */
+    private final String diseasePolicyFile;
+
+    /** the simulator of the restored model, which replaces the simulator of the checkpoint; set when the checkpoint is read. */
+    private transient SimpleDevsSimulatorInterface simulator;
+
+    /**
+     * Take the state of the model and the pending events of its simulator.
+     * @param model HerosModel; the model
+     * @throws StreamException when the state of a random stream cannot be saved
+     */
+    private Checkpoint(final HerosModel model) throws StreamException
+    {
+        this.time = model.getSimulator().getSimulatorTime();
+        this.seed = model.getParameterValueLong("generic.Seed");
+        this.model = model;
+        this.events = new ArrayList<>(model.getSimulator().getEventList().size());
+        for (SimEventInterface<Double> event : model.getSimulator().getEventList())
+            this.events.add(event);
+        this.randomStreamState = model.getRandomStream().saveState();
+        this.defaultStreamState = model.getDefaultStream().saveState();
+        this.locationPolicyFile = model.getParameterValue("policies.LocationPolicyFile").trim();
+        this.diseasePolicyFile = model.getParameterValue("policies.DiseasePolicyFile").trim();
+    }
+
+    /**
+     * Make a checkpoint of a model in memory. The simulator should not execute events while the checkpoint is made, so this
+     * method is called from a simulation event, or when the simulator has been stopped.
+     * @param model HerosModel; the model
+     * @return byte[]; the serialized checkpoint
+     * @throws IOException on error serializing the model
+     */
+    public static byte[] toBytes(final HerosModel model) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024 * 1024);
+        write(model, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Make a checkpoint of a model in a gzipped file. The simulator should not execute events while the checkpoint is made, so
+     * this method is called from a simulation event, or when the simulator has been stopped.
+     * @param model HerosModel; the model
+     * @param file File; the checkpoint file
+     * @throws IOException on error serializing the model or writing the file
+     */
+    public static void write(final HerosModel model, final File file) throws IOException
+    {
+        try (OutputStream out = ParallelGzipOutputStream.create(new BufferedOutputStream(new FileOutputStream(file)),
+                model.getGzipThreads(), model.getGzipBlockSize()))
+        {
+            write(model, out);
+        }
+    }
+
+    /**
+     * Serialize a checkpoint of the model to a stream.
+     * @param model HerosModel; the model
+     * @param out OutputStream; the stream
+     * @throws IOException on error serializing the model
+     */
+    private static void write(final HerosModel model, final OutputStream out) throws IOException
+    {
+        Checkpoint checkpoint;
+        try
+        {
+            checkpoint = new Checkpoint(model);
+        }
+        catch (StreamException exception)
+        {
+            throw new IOException("cannot save the state of the random streams", exception);
+        }
+        runWithLargeStack(() ->
+        {
+            ObjectOutputStream oos = new CheckpointOutputStream(out);
+            oos.writeObject(checkpoint);
+            oos.flush();
+            return null;
+        });
+    }
+
+    /**
+     * Read a checkpoint from memory.
+     * @param bytes byte[]; the serialized checkpoint
+     * @param simulator SimpleDevsSimulatorInterface; the simulator of the restored model, for the references to the simulator
+     * @return Checkpoint; the checkpoint, with a new copy of the model
+     * @throws IOException on error deserializing the checkpoint
+     */
+    public static Checkpoint read(final byte[] bytes, final SimpleDevsSimulatorInterface simulator) throws IOException
+    {
+        return read(new ByteArrayInputStream(bytes), simulator);
+    }
+
+    /**
+     * Read a checkpoint from a gzipped file.
+     * @param file File; the checkpoint file
+     * @param simulator SimpleDevsSimulatorInterface; the simulator of the restored model, for the references to the simulator
+     * @return Checkpoint; the checkpoint, with a new copy of the model
+     * @throws IOException on error reading the file or deserializing the checkpoint
+     */
+    public static Checkpoint read(final File file, final SimpleDevsSimulatorInterface simulator) throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)), 64 * 1024))
+        {
+            return read(in, simulator);
+        }
+    }
+
+    /**
+     * Deserialize a checkpoint from a stream.
+     * @param in InputStream; the stream
+     * @param simulator SimpleDevsSimulatorInterface; the simulator of the restored model, for the references to the simulator
+     * @return Checkpoint; the checkpoint
+     * @throws IOException on error deserializing the checkpoint
+     */
+    private static Checkpoint read(final InputStream in, final SimpleDevsSimulatorInterface simulator) throws IOException
+    {
+        Checkpoint checkpoint = runWithLargeStack(() ->
+        {
+            ObjectInputStream ois = new CheckpointInputStream(in, simulator);
+            return (Checkpoint) ois.readObject();
+        });
+        checkpoint.simulator = simulator;
+        return checkpoint;
+    }
+
+    /**
+     * Restore the model of the checkpoint on the simulator for which the checkpoint was read, and initialize the simulator at
+     * the time of the checkpoint; the simulator can then be started. A checkpoint that has been read can be restored once;
+     * read the checkpoint again, with a new simulator, for another restored copy.
+     * @param parameters InputParameterMap; the parameters of the restored model, e.g., with other policy files and another
+     *            output path, or null to keep the parameters of the checkpoint
+     * @return HerosModel; the restored model
+     * @throws SimRuntimeException when the simulator cannot be initialized
+     */
+    public HerosModel restore(final InputParameterMap parameters)
+    {
+        this.model.prepareRestore(this.simulator, parameters, this);
+        double endTime = 24.0 * this.model.getParameterValueInt("generic.RunLength");
+        if (endTime <= this.time)
+            throw new MedlabsRuntimeException("run length of " + endTime + " hours ends before the checkpoint at " + this.time);
+        this.simulator.initialize(this.time, 0.0, endTime - this.time, this.model, this.seed);
+        try
+        {
+            // the random streams continue where they were, also when initialize has reset them
+            this.model.getRandomStream().restoreState(this.randomStreamState);
+            this.model.getDefaultStream().restoreState(this.defaultStreamState);
+        }
+        catch (StreamException exception)
+        {
+            throw new MedlabsRuntimeException(exception);
+        }
+        return this.model;
+    }
+
+    /**
+     * Schedule the pending events of the checkpoint on the simulator of the restored model. This method is called by the model
+     * when it is constructed on the new simulator. Events of the simulator itself and of the old ResultWriter are skipped.
+     * When the policy files of the restored model differ from the checkpoint, the pending policy events are skipped and the
+     * policies of the new files are scheduled from the checkpoint time on.
+     * @param restoredModel HerosModel; the restored model
+     * @throws Exception on error reading the policy files
+     */
+    void scheduleEvents(final HerosModel restoredModel) throws Exception
+    {
+        boolean newPolicies =
+                !this.locationPolicyFile.equals(restoredModel.getParameterValue("policies.LocationPolicyFile").trim())
+                        || !this.diseasePolicyFile.equals(restoredModel.getParameterValue("policies.DiseasePolicyFile").trim());
+        int nrSkipped = 0;
+        for (SimEventInterface<Double> event : this.events)
+        {
+            if (event instanceof SimEvent)
+            {
+                Object target = ((SimEvent<Double>) event).getTarget();
+                if (target == null || target == this.simulator
+                        || (newPolicies && (target instanceof LocationPolicy || target instanceof DiseasePolicy)))
+                {
+                    nrSkipped++;
+                    continue;
+                }
+            }
+            restoredModel.getSimulator().scheduleEvent(event);
+        }
+        if (newPolicies)
+            ConstructHerosModel.schedulePolicies(restoredModel, this.time);
+        System.out.println("Restored checkpoint at t=" + this.time + " with " + (this.events.size() - nrSkipped)
+                + " pending events" + (newPolicies ? "; policies rescheduled from the new policy files" : ""));
+    }
+
+    /**
+     * @return the simulation time of the checkpoint in hours
+     */
+    public double getTime()
+    {
+        return this.time;
+    }
+
+    /**
+     * @return the seed of the replication of the checkpoint
+     */
+    public long getSeed()
+    {
+        return this.seed;
+    }
+
+    /**
+     * @return the model of the checkpoint
+     */
+    public HerosModel getModel()
+    {
+        return this.model;
+    }
+
+    /**
+     * Run a serialization task on a thread with a large stack, since Java serialization recurses into the object graph.
+     * @param task SerializationTask&lt;T&gt;; the task
+     * @return T; the result of the task
+     * @param <T> the result type of the task
+     * @throws IOException on error in the task
+     */
+    private static <T> T runWithLargeStack(final SerializationTask<T> task) throws IOException
+    {
+        List<T> result = new ArrayList<>(1);
+        Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(null, () ->
+        {
+            try
+            {
+                result.add(task.run());
+            }
+            catch (Throwable throwable)
+            {
+                error[0] = throwable;
+            }
+        }, "checkpoint", STACK_SIZE);
+        thread.start();
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("interrupted while waiting for the checkpoint");
+        }
+        if (error[0] instanceof IOException)
+            throw (IOException) error[0];
+        if (error[0] != null)
+            throw new IOException("checkpoint failed", error[0]);
+        return result.get(0);
+    }
+
+    /**
+     * A serialization task that can throw an exception.
+     * @param <T> the result type of the task
+     */
+    private interface SerializationTask<T>
+    {
+        /**
+         * @return T; the result of the task
+         * @throws Exception on error
+         */
+        T run() throws Exception;
+    }
+
+    /** The placeholder for the references to the simulator in a checkpoint. */
+    private enum SimulatorPlaceholder
+    {
+        /** the simulator of the model. */
+        SIMULATOR;
+    }
+
+    /**
+     * An ObjectOutputStream that leaves the simulator and the ResultWriter out of the checkpoint; references to the simulator
+     * are written as a placeholder, and references to the ResultWriter as null.
+     */
+    private static class CheckpointOutputStream extends ObjectOutputStream
+    {
+        /**
+         * @param out OutputStream; the underlying stream
+         * @throws IOException on error writing the stream header
+         */
+        CheckpointOutputStream(final OutputStream out) throws IOException
+        {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected Object replaceObject(final Object object)
+        {
+            if (object instanceof SimulatorInterface)
+                return SimulatorPlaceholder.SIMULATOR;
+            if (object instanceof ResultWriter)
+                return null;
+            return object;
+        }
+    }
+
+    /**
+     * An ObjectInputStream that replaces the placeholders of the simulator in a checkpoint by the simulator of the restored
+     * model, so every object that kept a reference to the simulator of the checkpoint refers to the new simulator.
+     */
+    private static class CheckpointInputStream extends ObjectInputStream
+    {
+        /** the simulator of the restored model. */
+        private final SimpleDevsSimulatorInterface simulator;
+
+        /**
+         * @param in InputStream; the underlying stream
+         * @param simulator SimpleDevsSimulatorInterface; the simulator of the restored model
+         * @throws IOException on error reading the stream header
+         */
+        CheckpointInputStream(final InputStream in, final SimpleDevsSimulatorInterface simulator) throws IOException
+        {
+            super(in);
+            this.simulator = simulator;
+            enableResolveObject(true);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected Object resolveObject(final Object object)
+        {
+            return object == SimulatorPlaceholder.SIMULATOR ? this.simulator : object;
+        }
+    }
+
+}
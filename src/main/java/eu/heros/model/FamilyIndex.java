@@ -0,0 +1,211 @@
+package eu.heros.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * FamilyIndex stores the members of the families per home location in a compressed sparse row layout: a sorted array with the
+ * ids of the home locations that have at least one member, an offsets array with one entry per home location in that array,
+ * and one flat array with the person ids of all members. The members of the home location at position k are members[offsets[k]]
+ * to members[offsets[k + 1] - 1], sorted on person id; the position of a home location is found with a binary search. Compared
+ * to one hash set per home location, this takes one int per person plus two ints per home location, and the members of a
+ * family are adjacent in memory.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FamilyIndex implements Serializable
+{
+    /** */
+    private static final long serialVersionUID = 20241019L;
+
+    /** the ids of the home locations with at least one member, in ascending order. */
+    private final int[] homes;
+
+    /** the start of the members of the home location at each position of the homes array; length is number of homes + 1. */
+    private final int[] offsets;
+
+    /** the person ids of the members of all families, grouped per home location and sorted within a home location. */
+    private final int[] members;
+
+    /**
+     * Build the index from the home location ids and the person ids of the persons. The persons are sorted on home location
+     * and person id in one pass, so the size of the index only depends on the number of persons and homes, and not on the
+     * values of the home location ids.
+     * @param homeIds int[]; the home location id of each person; ids should be 0 or larger
+     * @param personIds int[]; the person id of each person; ids should be 0 or larger
+     * @param size int; the number of persons in the arrays
+     * @throws IllegalArgumentException when a home location id or a person id is negative
+     */
+    public FamilyIndex(final int[] homeIds, final int[] personIds, final int size)
+    {
+        // sort the persons on (home location id, person id)
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++)
+        {
+            if (homeIds[i] < 0)
+                throw new IllegalArgumentException("FamilyIndex: negative home location id " + homeIds[i]);
+            if (personIds[i] < 0)
+                throw new IllegalArgumentException("FamilyIndex: negative person id " + personIds[i]);
+            keys[i] = ((long) homeIds[i] << 32) | personIds[i];
+        }
+        Arrays.sort(keys);
+
+        // the distinct home locations, the start of their members, and the members in order
+        int nrHomes = 0;
+        for (int i = 0; i < size; i++)
+        {
+            if (i == 0 || (keys[i] >>> 32) != (keys[i - 1] >>> 32))
+                nrHomes++;
+        }
+        this.homes = new int[nrHomes];
+        this.offsets = new int[nrHomes + 1];
+        this.members = new int[size];
+        int k = -1;
+        for (int i = 0; i < size; i++)
+        {
+            if (i == 0 || (keys[i] >>> 32) != (keys[i - 1] >>> 32))
+            {
+                k++;
+                this.homes[k] = (int) (keys[i] >>> 32);
+                this.offsets[k] = i;
+            }
+            this.members[i] = (int) keys[i];
+        }
+        this.offsets[nrHomes] = size;
+    }
+
+    /**
+     * @param homeLocationId int; the id of the home location
+     * @return the position of the home location in the homes array, or a negative number when it has no members
+     */
+    private int position(final int homeLocationId)
+    {
+        return Arrays.binarySearch(this.homes, homeLocationId);
+    }
+
+    /**
+     * @param homeLocationId int; the id of the home location
+     * @return the number of family members living at the home location, 0 for an unknown home location
+     */
+    public int size(final int homeLocationId)
+    {
+        int k = position(homeLocationId);
+        return k < 0 ? 0 : this.offsets[k + 1] - this.offsets[k];
+    }
+
+    /**
+     * @param homeLocationId int; the id of the home location
+     * @param index int; the index of the member within the family, 0 to size(homeLocationId) - 1
+     * @return the person id of the family member with the given index
+     * @throws IndexOutOfBoundsException when the index is outside the family
+     */
+    public int get(final int homeLocationId, final int index)
+    {
+        int k = position(homeLocationId);
+        int size = k < 0 ? 0 : this.offsets[k + 1] - this.offsets[k];
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("FamilyIndex: member " + index + " of home location " + homeLocationId
+                    + " with " + size + " members");
+        return this.members[this.offsets[k] + index];
+    }
+
+    /**
+     * @param homeLocationId int; the id of the home location
+     * @param personId int; the id of the person
+     * @return whether the person is a family member living at the home location
+     */
+    public boolean contains(final int homeLocationId, final int personId)
+    {
+        int k = position(homeLocationId);
+        if (k < 0)
+            return false;
+        return Arrays.binarySearch(this.members, this.offsets[k], this.offsets[k + 1], personId) >= 0;
+    }
+
+    /**
+     * Execute a procedure for the family members living at the home location, in order of person id.
+     * @param homeLocationId int; the id of the home location
+     * @param procedure TIntProcedure; the procedure to execute for each person id; iteration stops when it returns false
+     * @return false when the procedure returned false for a member, true otherwise
+     */
+    public boolean forEachMember(final int homeLocationId, final TIntProcedure procedure)
+    {
+        int k = position(homeLocationId);
+        if (k < 0)
+            return true;
+        for (int m = this.offsets[k]; m < this.offsets[k + 1]; m++)
+        {
+            if (!procedure.execute(this.members[m]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param homeLocationId int; the id of the home location
+     * @return a copy of the person ids of the family members living at the home location, sorted on person id
+     */
+    public int[] getMembers(final int homeLocationId)
+    {
+        int k = position(homeLocationId);
+        if (k < 0)
+            return new int[0];
+        return Arrays.copyOfRange(this.members, this.offsets[k], this.offsets[k + 1]);
+    }
+
+    /**
+     * @return the ids of the home locations with at least one family member, in ascending order
+     */
+    public int[] getHomeLocationIds()
+    {
+        return this.homes.clone();
+    }
+
+    /**
+     * @return the number of home locations with at least one family member
+     */
+    public int getNumberOfHomes()
+    {
+        return this.homes.length;
+    }
+
+    /**
+     * @return the total number of family members over all home locations
+     */
+    public int getNumberOfMembers()
+    {
+        return this.members.length;
+    }
+
+    /**
+     * Build the family map in the layout of the medlabs model: one TIntSet with the members per home location. This is only
+     * meant for code that needs the legacy representation, as it takes far more memory than the index itself.
+     * @return TIntObjectMap&lt;TIntSet&gt;; a new map from home location id to the set of person ids of the family members
+     */
+    public TIntObjectMap<TIntSet> toFamilyMap()
+    {
+        TIntObjectMap<TIntSet> families = new TIntObjectHashMap<>(this.homes.length);
+        for (int k = 0; k < this.homes.length; k++)
+        {
+            TIntSet family = new TIntHashSet(this.offsets[k + 1] - this.offsets[k]);
+            for (int m = this.offsets[k]; m < this.offsets[k + 1]; m++)
+                family.add(this.members[m]);
+            families.put(this.homes[k], family);
+        }
+        return families;
+    }
+
+}
@@ -0,0 +1,450 @@
+package eu.heros.model;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.djutils.stats.DistNormalTable;
+
+import eu.heros.factory.InputCache;
+import eu.heros.output.ReplicationSeries;
+import eu.heros.output.ReplicationStatistics;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
+
+/**
+ * HerosAdaptiveRunner runs replications of one or more scenarios until the outputs have converged, instead of a fixed number
+ * of seeds per scenario. After minReps replications of a scenario, the 95% confidence interval of every chosen metric is
+ * computed from the running statistics over the replications; the scenario is done when the half width of the interval,
+ * relative to the mean, is at most relWidth for all metrics, or when maxReps replications have been started. The metrics are
+ * the names of the outputs of HerosModel.getReplicationOutputs, e.g., peak:Hospitalized, final:Dead or attackRate. At most
+ * nrThreads replications run at the same time; a free thread goes to the scenario with the widest interval relative to its
+ * target, taking into account the replications of the scenario that are still running, so the replications go to the
+ * scenarios with the highest variance. The seeds of a scenario are firstSeed, firstSeed + 1, ..., the same for all
+ * scenarios, so the scenarios are compared with common random numbers. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.model.HerosAdaptiveRunner report.csv nrThreads firstSeed minReps maxReps relWidth metrics
+ *         scenario.properties [scenario.properties ...] [name=value ...]
+ * </pre>
+ *
+ * where metrics is a comma-separated list of output names, and the arguments of the form name=value override the
+ * parameters of all scenarios. The report lists, per scenario and metric, the number of replications, the mean, the standard
+ * deviation, and the absolute and relative half width of the confidence interval. The output of a replication goes to the
+ * output path with the suffix "-seed-[seed]", as for a batch run.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class HerosAdaptiveRunner
+{
+    /** the confidence level of the intervals. */
+    public static final double CONFIDENCE = 0.95;
+
+    /** the scenarios. */
+    private final List<Scenario> scenarios = new ArrayList<>();
+
+    /** the names of the metrics. */
+    private final List<String> metrics;
+
+    /** the command line arguments, for the parameters that override the properties files. */
+    private final String[] args;
+
+    /** the first seed of every scenario. */
+    private final long firstSeed;
+
+    /** the number of replications of a scenario before the stopping rule is applied. */
+    private final int minReps;
+
+    /** the maximum number of replications of a scenario. */
+    private final int maxReps;
+
+    /** the target half width of the confidence intervals, relative to the mean. */
+    private final double relWidth;
+
+    /** the parsed input files that are shared by the replications. */
+    private final InputCache inputCache = new InputCache();
+
+    /**
+     * Create a controller for the replications of the scenarios.
+     * @param propertyFilenames List&lt;String&gt;; the properties files of the scenarios
+     * @param metrics List&lt;String&gt;; the names of the metrics
+     * @param args String[]; the command line arguments; arguments of the form name=value override the properties
+     * @param firstSeed long; the first seed of every scenario
+     * @param minReps int; the number of replications of a scenario before the stopping rule is applied, at least 2
+     * @param maxReps int; the maximum number of replications of a scenario
+     * @param relWidth double; the target half width of the confidence intervals, relative to the mean
+     */
+    public HerosAdaptiveRunner(final List<String> propertyFilenames, final List<String> metrics, final String[] args,
+            final long firstSeed, final int minReps, final int maxReps, final double relWidth)
+    {
+        if (minReps < 2 || maxReps < minReps || relWidth <= 0.0)
+            throw new IllegalArgumentException("need 2 <= minReps <= maxReps and relWidth > 0");
+        for (String propertyFilename : propertyFilenames)
+            this.scenarios.add(new Scenario(propertyFilename));
+        this.metrics = metrics;
+        this.args = args;
+        this.firstSeed = firstSeed;
+        this.minReps = minReps;
+        this.maxReps = maxReps;
+        this.relWidth = relWidth;
+    }
+
+    /**
+     * Run replications until every scenario is done, and write the report.
+     * @param nrThreads int; the maximum number of replications that run at the same time
+     * @param reportFile File; the report file
+     * @return int; the number of replications that failed
+     * @throws InterruptedException when the thread is interrupted while waiting for the replications
+     * @throws IOException on error writing the report
+     */
+    public int run(final int nrThreads, final File reportFile) throws InterruptedException, IOException
+    {
+        long start = System.currentTimeMillis();
+        int threads = Math.max(1, nrThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<Run> completion = new ExecutorCompletionService<>(pool);
+        int nrRunning = 0;
+        int nrFailed = 0;
+        try
+        {
+            while (true)
+            {
+                Scenario next;
+                while (nrRunning < threads && (next = nextScenario()) != null)
+                {
+                    Scenario scenario = next;
+                    long seed = this.firstSeed + scenario.nrStarted++;
+                    scenario.nrRunning++;
+                    nrRunning++;
+                    completion.submit(() -> runReplication(scenario, seed));
+                }
+                if (nrRunning == 0)
+                    break;
+                Run run = completion.take().get();
+                nrRunning--;
+                run.scenario.nrRunning--;
+                if (run.exception == null)
+                {
+                    run.scenario.add(run.seed, run.outputs);
+                    System.out.println("\n" + run.scenario.report());
+                }
+                else
+                {
+                    System.err.println(
+                            "Replication of " + run.scenario.propertyFilename + " with seed " + run.seed + " failed");
+                    run.exception.printStackTrace();
+                    run.scenario.nrFailed++;
+                    nrFailed++;
+                }
+            }
+        }
+        catch (ExecutionException exception)
+        {
+            throw new MedlabsRuntimeException(exception.getCause());
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        this.inputCache.clear();
+        writeReport(reportFile);
+        System.out.println("\nAdaptive run completed in " + (System.currentTimeMillis() - start) / 1000 + " s; "
+                + this.inputCache + "; report in " + reportFile);
+        return nrFailed;
+    }
+
+    /**
+     * Run one replication of a scenario.
+     * @param scenario Scenario; the scenario
+     * @param seed long; the seed of the replication
+     * @return Run; the outputs of the replication, or the exception when the replication failed
+     */
+    private Run runReplication(final Scenario scenario, final long seed)
+    {
+        try
+        {
+            HerosModel model =
+                    HerosBatchRunner.runReplication(scenario.propertyFilename, this.args, seed, this.inputCache, true);
+            return new Run(scenario, seed, model.getReplicationOutputs(), null);
+        }
+        catch (Exception exception)
+        {
+            return new Run(scenario, seed, null, exception);
+        }
+    }
+
+    /**
+     * Select the scenario for the next replication. Scenarios with less than minReps started replications come first. After
+     * that, the scenario with the largest projected relative half width, divided by the target, is chosen; the projection
+     * assumes that the running replications of the scenario shrink the interval with the square root of the number of
+     * replications. A scenario of which the projected interval already meets the target waits for its running replications.
+     * @return Scenario; the scenario for the next replication, or null when no scenario needs a replication now
+     */
+    private Scenario nextScenario()
+    {
+        Scenario best = null;
+        double bestPriority = 1.0;
+        for (Scenario scenario : this.scenarios)
+        {
+            if (scenario.nrStarted >= this.maxReps)
+                continue;
+            if (scenario.nrStarted < this.minReps)
+            {
+                if (best == null || best.nrStarted >= this.minReps || scenario.nrStarted < best.nrStarted)
+                {
+                    best = scenario;
+                    bestPriority = Double.POSITIVE_INFINITY;
+                }
+                continue;
+            }
+            int n = scenario.statistics.getNumberOfReplications();
+            if (n < 2 || bestPriority == Double.POSITIVE_INFINITY)
+                continue;
+            double priority =
+                    scenario.getMaxRelativeHalfWidth() / this.relWidth * Math.sqrt(n / (double) (n + scenario.nrRunning));
+            if (priority > bestPriority)
+            {
+                best = scenario;
+                bestPriority = priority;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Write the report with the statistics per scenario and metric.
+     * @param reportFile File; the report file
+     * @throws IOException on error writing the file
+     */
+    private void writeReport(final File reportFile) throws IOException
+    {
+        try (Writer writer = new FileWriter(reportFile))
+        {
+            writer.write("\"Scenario\",\"Metric\",\"N\",\"Failed\",\"Mean\",\"StdDev\",\"HalfWidth\",\"RelHalfWidth\","
+                    + "\"Converged\"\n");
+            for (Scenario scenario : this.scenarios)
+            {
+                for (String metric : this.metrics)
+                {
+                    double halfWidth = scenario.getHalfWidth(metric);
+                    double rel = scenario.getRelativeHalfWidth(metric);
+                    writer.write(String.format(Locale.US, "\"%s\",\"%s\",%d,%d,%.4f,%.4f,%.4f,%.4f,%s\n",
+                            scenario.propertyFilename, metric, scenario.statistics.getNumberOfReplications(),
+                            scenario.nrFailed, scenario.statistics.getMean(metric, 0),
+                            scenario.statistics.getStdDev(metric, 0), halfWidth, rel, rel <= this.relWidth));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the quantile of Student's t distribution for a two-sided confidence interval. For 1 and 2 degrees of freedom the
+     * quantile has a closed form, and for 3 degrees of freedom the closed-form distribution function is inverted by bisection.
+     * For more degrees of freedom the Cornish-Fisher expansion around the normal quantile is used; its error is below 0.01 for
+     * 4 or more degrees of freedom.
+     * @param confidence double; the confidence level, e.g., 0.95
+     * @param df int; the degrees of freedom, at least 1
+     * @return double; the t quantile
+     */
+    static double tQuantile(final double confidence, final int df)
+    {
+        double p = 1.0 - (1.0 - confidence) / 2.0;
+        if (df == 1)
+            return Math.tan(Math.PI * (p - 0.5));
+        if (df == 2)
+            return (2.0 * p - 1.0) / Math.sqrt(2.0 * p * (1.0 - p));
+        if (df == 3)
+        {
+            // F(t) = 1/2 + (t / (sqrt(3) (1 + t^2 / 3)) + atan(t / sqrt(3))) / pi, and the quantile is below that for df = 2
+            double low = 0.0;
+            double high = tQuantile(confidence, 2);
+            for (int i = 0; i < 100; i++)
+            {
+                double t = (low + high) / 2.0;
+                double u = t / Math.sqrt(3.0);
+                if (0.5 + (u / (1.0 + u * u) + Math.atan(u)) / Math.PI < p)
+                    low = t;
+                else
+                    high = t;
+            }
+            return (low + high) / 2.0;
+        }
+        double z = DistNormalTable.getInverseCumulativeProbability(0.0, 1.0, p);
+        double z2 = z * z;
+        double g1 = z * (z2 + 1.0) / 4.0;
+        double g2 = z * ((5.0 * z2 + 16.0) * z2 + 3.0) / 96.0;
+        double g3 = z * (((3.0 * z2 + 19.0) * z2 + 17.0) * z2 - 15.0) / 384.0;
+        double g4 = z * ((((79.0 * z2 + 776.0) * z2 + 1482.0) * z2 - 1920.0) * z2 - 945.0) / 92160.0;
+        return z + g1 / df + g2 / (df * df) + g3 / Math.pow(df, 3) + g4 / Math.pow(df, 4);
+    }
+
+    /** The outcome of one replication. */
+    private static class Run
+    {
+        /** the scenario. */
+        private final Scenario scenario;
+
+        /** the seed of the replication. */
+        private final long seed;
+
+        /** the outputs of the replication; null when it failed. */
+        private final Map<String, Double> outputs;
+
+        /** the exception when the replication failed; null when it completed. */
+        private final Exception exception;
+
+        /**
+         * @param scenario Scenario; the scenario
+         * @param seed long; the seed of the replication
+         * @param outputs Map&lt;String, Double&gt;; the outputs of the replication; null when it failed
+         * @param exception Exception; the exception when the replication failed; null when it completed
+         */
+        Run(final Scenario scenario, final long seed, final Map<String, Double> outputs, final Exception exception)
+        {
+            this.scenario = scenario;
+            this.seed = seed;
+            this.outputs = outputs;
+            this.exception = exception;
+        }
+    }
+
+    /** The replications and the running statistics of the metrics of one scenario. */
+    private final class Scenario
+    {
+        /** the properties file of the scenario. */
+        private final String propertyFilename;
+
+        /** the running statistics of the metrics, as a single sample per replication. */
+        private final ReplicationStatistics statistics = new ReplicationStatistics();
+
+        /** the number of replications that have been started. */
+        private int nrStarted = 0;
+
+        /** the number of replications that are running. */
+        private int nrRunning = 0;
+
+        /** the number of replications that failed. */
+        private int nrFailed = 0;
+
+        /**
+         * @param propertyFilename String; the properties file of the scenario
+         */
+        Scenario(final String propertyFilename)
+        {
+            this.propertyFilename = propertyFilename;
+        }
+
+        /**
+         * Add the metrics of a replication to the running statistics.
+         * @param seed long; the seed of the replication
+         * @param outputs Map&lt;String, Double&gt;; the outputs of the replication
+         * @throws IOException when the statistics refuse the sample; all samples are at t=0, so this does not happen
+         */
+        void add(final long seed, final Map<String, Double> outputs) throws IOException
+        {
+            ReplicationSeries series = new ReplicationSeries(seed);
+            series.startSample(0.0);
+            for (String metric : HerosAdaptiveRunner.this.metrics)
+            {
+                if (!outputs.containsKey(metric))
+                    throw new IllegalArgumentException("metric " + metric + " is not an output; outputs are "
+                            + outputs.keySet());
+                series.set(metric, outputs.get(metric));
+            }
+            this.statistics.add(series);
+        }
+
+        /**
+         * @param metric String; the name of the metric
+         * @return the half width of the confidence interval of the metric, or infinity for less than 2 replications
+         */
+        double getHalfWidth(final String metric)
+        {
+            int n = this.statistics.getCount(metric, 0);
+            if (n < 2)
+                return Double.POSITIVE_INFINITY;
+            return tQuantile(CONFIDENCE, n - 1) * this.statistics.getStdDev(metric, 0) / Math.sqrt(n);
+        }
+
+        /**
+         * @param metric String; the name of the metric
+         * @return the half width of the confidence interval of the metric relative to the absolute mean; 0 when the metric is
+         *         always 0
+         */
+        double getRelativeHalfWidth(final String metric)
+        {
+            double halfWidth = getHalfWidth(metric);
+            double mean = Math.abs(this.statistics.getMean(metric, 0));
+            if (halfWidth == 0.0)
+                return 0.0;
+            return mean == 0.0 ? Double.POSITIVE_INFINITY : halfWidth / mean;
+        }
+
+        /**
+         * @return the largest relative half width over the metrics
+         */
+        double getMaxRelativeHalfWidth()
+        {
+            double max = 0.0;
+            for (String metric : HerosAdaptiveRunner.this.metrics)
+                max = Math.max(max, getRelativeHalfWidth(metric));
+            return max;
+        }
+
+        /**
+         * @return a line with the state of the stopping rule of the scenario
+         */
+        String report()
+        {
+            StringBuilder line = new StringBuilder();
+            line.append(this.propertyFilename).append(": n=").append(this.statistics.getNumberOfReplications());
+            for (String metric : HerosAdaptiveRunner.this.metrics)
+                line.append(String.format(Locale.US, "; %s=%.2f +/- %.2f", metric, this.statistics.getMean(metric, 0),
+                        getHalfWidth(metric)));
+            return line.toString();
+        }
+    }
+
+    /**
+     * @param args String[]; the report file, the number of threads, the first seed, minReps, maxReps, relWidth, the metrics,
+     *            the scenarios, and optional name=value parameters
+     * @throws Exception on an error in the arguments
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        List<String> scenarios = new ArrayList<>();
+        for (int i = 7; i < args.length; i++)
+        {
+            if (!args[i].contains("="))
+                scenarios.add(args[i]);
+        }
+        if (scenarios.isEmpty())
+        {
+            System.err.println("Usage: HerosAdaptiveRunner report.csv nrThreads firstSeed minReps maxReps relWidth metrics "
+                    + "scenario.properties [...] [name=value ...]");
+            System.exit(-1);
+        }
+        HerosAdaptiveRunner runner = new HerosAdaptiveRunner(scenarios, Arrays.asList(args[6].split(",")), args,
+                Long.parseLong(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), Double.parseDouble(args[5]));
+        int nrFailed = runner.run(Integer.parseInt(args[1]), new File(args[0]));
+        System.exit(nrFailed == 0 ? 0 : 1);
+    }
+
+}
@@ -24,6 +24,7 @@ import nl.tudelft.simulation.dsol.swing.gui.animation.DsolAnimationTab;
 import nl.tudelft.simulation.dsol.swing.gui.control.RealTimeControlPanel;
 import nl.tudelft.simulation.dsol.swing.gui.inputparameters.TabbedParameterDialog;
 import nl.tudelft.simulation.language.DsolException;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
 import nl.tudelft.simulation.medlabs.common.MedlabsException;
 import nl.tudelft.simulation.medlabs.location.Location;
 import nl.tudelft.simulation.medlabs.simulation.SimpleAnimator;
@@ -87,34 +88,12 @@ public class HerosApplication extends DsolAnimationApplication
         {
             model = new HerosModel(new SimpleAnimator("SimHERoS"), propertyFilename);
             model.setInteractive(true);
-            ReadInputParameters.loadfromProperties(propertyFilename, model.getInputParameterMap());
-            ReadInputParameters.loadFromArgs(args, true, model.getInputParameterMap());
-            // get the disease model
-            String diseaseFilename = model.getParameterValue("generic.diseasePropertiesFile");
-            ReadInputParameters.loadfromProperties(diseaseFilename, model.getInputParameterMap());
-            setInputParametersDefaults(model.getInputParameterMap());
-            InputParameterMap generic = (InputParameterMap) model.getInputParameterMap().get("generic");
-            if (model.getParameterValue("generic.diseasePropertiesModel").equals("area"))
-                model.getInputParameterMap().remove("covidT_dist");
-            else
-                model.getInputParameterMap().remove("covidT_area");
+            loadInputParameters(model, propertyFilename, args);
             if (TabbedParameterDialog.process(model.getInputParameterMap()))
             {
                 double runLengthDays = (double) model.getParameterValueInt("generic.RunLength");
-                if (seed == -1)
-                    seed = model.getParameterValueLong("generic.Seed");
-                else
-                {
-                    InputParameter<?, ?> ip = generic.get("OutputPath");
-                    generic.remove("OutputPath");
-                    generic.add(new InputParameterString("OutputPath", ip.getShortName(), ip.getDescription(),
-                            ip.getValue().toString() + "-seed-" + seed, ip.getDisplayPriority()));
-                    InputParameter<?, ?> sp = generic.get("Seed");
-                    generic.remove("Seed");
-                    generic.add(new InputParameterLong("Seed", sp.getShortName(), sp.getDescription(),
-                            seed, sp.getDisplayPriority()));
-                }
-                model.getSimulator().initialize(0.0, 0.0, runLengthDays * 24.0, model, seed);
+                seed = applySeed(model, seed);
+                initializeOrExit(model, runLengthDays, seed);
                 Bounds2d mapBounds = /* model.getExtent(); */ new Bounds2d(4.202, 4.482, 52.011, 52.133);
                 // DsolAnimationGisTab gisTab =
                 // new DSOLAnimationGisTab(mapBounds, (SileAnimator) modempl.getSimulator());
@@ -143,35 +122,91 @@ public class HerosApplication extends DsolAnimationApplication
         {
             model = new HerosModel(new SimpleDevsSimulator("SimHERoS"), propertyFilename);
             model.setInteractive(false);
-            ReadInputParameters.loadfromProperties(propertyFilename, model.getInputParameterMap());
-            ReadInputParameters.loadFromArgs(args, true, model.getInputParameterMap());
-            String diseaseFilename = model.getParameterValue("generic.diseasePropertiesFile");
-            ReadInputParameters.loadfromProperties(diseaseFilename, model.getInputParameterMap());
-            setInputParametersDefaults(model.getInputParameterMap());
-            InputParameterMap generic = (InputParameterMap) model.getInputParameterMap().get("generic");
-            if (model.getParameterValue("generic.diseasePropertiesModel").equals("area"))
-                model.getInputParameterMap().remove("covidT_dist");
-            else
-                model.getInputParameterMap().remove("covidT_area");
+            loadInputParameters(model, propertyFilename, args);
             double runLengthDays = (double) model.getParameterValueInt("generic.RunLength");
-            if (seed == -1)
-                seed = model.getParameterValueLong("generic.Seed");
-            else
-            {
-                InputParameter<?, ?> ip = generic.get("OutputPath");
-                generic.remove("OutputPath");
-                generic.add(new InputParameterString("OutputPath", ip.getShortName(), ip.getDescription(),
-                        ip.getValue().toString() + "-seed-" + seed, ip.getDisplayPriority()));
-                InputParameter<?, ?> sp = generic.get("Seed");
-                generic.remove("Seed");
-                generic.add(new InputParameterLong("Seed", sp.getShortName(), sp.getDescription(),
-                        seed, sp.getDisplayPriority()));
-            }
-            model.getSimulator().initialize(0.0, 0.0, runLengthDays * 24.0, model, seed);
+            seed = applySeed(model, seed);
+            initializeOrExit(model, runLengthDays, seed);
             model.getSimulator().start();
         }
     }
 
+    /**
+     * Initialize the simulator with the model, and stop the application when the model cannot be constructed, e.g., because an
+     * input file is missing or contains errors. The runners for multiple replications let the exception end only the
+     * replication instead.
+     * @param model HerosModel; the model
+     * @param runLengthDays double; the run length in days
+     * @param seed long; the seed of the replication
+     * @throws SimRuntimeException on an error in the simulator
+     * @throws NamingException on an error in the context of the simulator
+     * @throws RemoteException on network error
+     */
+    private static void initializeOrExit(final HerosModel model, final double runLengthDays, final long seed)
+            throws SimRuntimeException, NamingException, RemoteException
+    {
+        try
+        {
+            model.getSimulator().initialize(0.0, 0.0, runLengthDays * 24.0, model, seed);
+        }
+        catch (MedlabsRuntimeException exception)
+        {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Load the input parameters of the model from the properties file, the command line, and the disease properties file, in
+     * that order; the command line also overrides the parameters of the disease properties file. The loaded values become the
+     * defaults of the parameters, and the parameters of the transmission model that is not used are removed.
+     * @param model HerosModel; the model
+     * @param propertyFilename String; the path of the properties file
+     * @param args String[]; the command line arguments; arguments of the form name=value override the properties
+     * @throws InputParameterException on an error in the parameters
+     * @throws IOException on error reading a properties file
+     * @throws URISyntaxException on an error in the path of a properties file
+     */
+    public static void loadInputParameters(final HerosModel model, final String propertyFilename, final String[] args)
+            throws InputParameterException, IOException, URISyntaxException
+    {
+        ReadInputParameters.loadfromProperties(propertyFilename, model.getInputParameterMap());
+        ReadInputParameters.loadFromArgs(args, true, model.getInputParameterMap());
+        // get the disease model
+        String diseaseFilename = model.getParameterValue("generic.diseasePropertiesFile");
+        ReadInputParameters.loadfromProperties(diseaseFilename, model.getInputParameterMap());
+        // the command line overrides the disease properties as well
+        ReadInputParameters.loadFromArgs(args, true, model.getInputParameterMap());
+        setInputParametersDefaults(model.getInputParameterMap());
+        if (model.getParameterValue("generic.diseasePropertiesModel").equals("area"))
+            model.getInputParameterMap().remove("covidT_dist");
+        else
+            model.getInputParameterMap().remove("covidT_area");
+    }
+
+    /**
+     * Set the seed of the replication. When a seed is given, it replaces the seed of the parameters, and the suffix
+     * "-seed-[seed]" is added to the output path, so replications with different seeds do not overwrite each other's output.
+     * @param model HerosModel; the model, of which the parameters have been loaded
+     * @param seed long; the seed to use, or -1 to use the seed of the parameters
+     * @return long; the seed of the replication
+     * @throws InputParameterException on an error in the parameters
+     */
+    public static long applySeed(final HerosModel model, final long seed) throws InputParameterException
+    {
+        if (seed == -1)
+            return model.getParameterValueLong("generic.Seed");
+        InputParameterMap generic = (InputParameterMap) model.getInputParameterMap().get("generic");
+        InputParameter<?, ?> ip = generic.get("OutputPath");
+        generic.remove("OutputPath");
+        generic.add(new InputParameterString("OutputPath", ip.getShortName(), ip.getDescription(),
+                ip.getValue().toString() + "-seed-" + seed, ip.getDisplayPriority()));
+        InputParameter<?, ?> sp = generic.get("Seed");
+        generic.remove("Seed");
+        generic.add(new InputParameterLong("Seed", sp.getShortName(), sp.getDescription(),
+                seed, sp.getDisplayPriority()));
+        return seed;
+    }
+
     /**
      * Update the defaults for the parameters to be displayed to the loaded values from the properties file and the command
      * line. This ensures that the editing takes place on the basis of the provided information in the properties file and the
@@ -0,0 +1,233 @@
+package eu.heros.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import eu.heros.factory.InputCache;
+import gnu.trove.list.array.TLongArrayList;
+import nl.tudelft.simulation.dsol.simulators.ErrorStrategy;
+import nl.tudelft.simulation.medlabs.simulation.SimpleDevsSimulator;
+
+/**
+ * HerosBatchRunner runs the replications of a scenario for a list of seeds in one JVM, instead of one JVM per seed. The input
+ * files are parsed once and shared by all replications through an InputCache; every replication has its own model and
+ * simulator, and thereby its own persons, locations, occupancy, disease phases and random streams. At most nrThreads
+ * replications run at the same time; the other replications wait for a free thread. The output of every replication goes to
+ * the output path with the suffix "-seed-[seed]", as for a batch run of HerosApplication with a seed. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.model.HerosBatchRunner file.properties nrThreads seeds [seeds ...] [name=value ...]
+ * </pre>
+ *
+ * where seeds is a seed (e.g., 111), or an inclusive range of seeds (e.g., 111-120). Arguments of the form name=value override
+ * the parameters of the properties file, as for HerosApplication. An exception in an event of a replication ends that
+ * replication, which is then reported as failed; the simulator does not pause on the error, as it does in the interactive
+ * application.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class HerosBatchRunner
+{
+    /** the properties file of the scenario. */
+    private final String propertyFilename;
+
+    /** the command line arguments, for the parameters that override the properties file. */
+    private final String[] args;
+
+    /** the parsed input files that are shared by the replications. */
+    private final InputCache inputCache = new InputCache();
+
+    /**
+     * Create a runner for the replications of a scenario.
+     * @param propertyFilename String; the properties file of the scenario
+     * @param args String[]; the command line arguments; arguments of the form name=value override the properties
+     */
+    public HerosBatchRunner(final String propertyFilename, final String[] args)
+    {
+        this.propertyFilename = propertyFilename;
+        this.args = args;
+    }
+
+    /**
+     * Run the replications for the seeds on a pool of threads, and wait until all replications have ended. A replication that
+     * fails is reported, and does not stop the other replications. The parsed input files are released when the last model
+     * has been constructed.
+     * @param seeds long[]; the seeds of the replications
+     * @param nrThreads int; the maximum number of replications that run at the same time
+     * @return int; the number of replications that failed
+     * @throws InterruptedException when the thread is interrupted while waiting for the replications
+     */
+    public int run(final long[] seeds, final int nrThreads) throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(nrThreads, seeds.length)));
+        this.inputCache.setNumberOfModels(seeds.length);
+        List<Future<?>> replications = new ArrayList<>();
+        for (long seed : seeds)
+        {
+            replications.add(pool.submit(() ->
+            {
+                runReplication(seed);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        int nrFailed = 0;
+        for (int i = 0; i < seeds.length; i++)
+        {
+            try
+            {
+                replications.get(i).get();
+            }
+            catch (ExecutionException exception)
+            {
+                System.err.println("Replication with seed " + seeds[i] + " failed");
+                exception.getCause().printStackTrace();
+                nrFailed++;
+            }
+        }
+        this.inputCache.clear();
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println("\n" + (seeds.length - nrFailed) + " of " + seeds.length + " replications completed in "
+                + (System.currentTimeMillis() - start) / 1000 + " s; " + this.inputCache + "; heap in use "
+                + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + " MB");
+        return nrFailed;
+    }
+
+    /**
+     * Build the model for one seed, run the replication, and wait until it has ended and its output files have been closed.
+     * @param seed long; the seed of the replication
+     * @throws Exception on an error in the parameters, when the replication cannot be started, or when the replication was
+     *             ended by an exception in one of its events
+     */
+    private void runReplication(final long seed) throws Exception
+    {
+        runReplication(this.propertyFilename, this.args, seed, this.inputCache, false);
+    }
+
+    /**
+     * Build the model for one seed, run the replication, and wait until it has ended and its output files have been closed.
+     * @param propertyFilename String; the properties file of the scenario
+     * @param args String[]; the command line arguments; arguments of the form name=value override the properties
+     * @param seed long; the seed of the replication
+     * @param inputCache InputCache; the parsed input files that are shared by the replications
+     * @param collectReplicationSeries boolean; whether to collect the time series for the summary without a summary path
+     * @return HerosModel; the model at the end of the replication
+     * @throws Exception on an error in the parameters, when the replication cannot be started, or when the replication was
+     *             ended by an exception in one of its events
+     */
+    static HerosModel runReplication(final String propertyFilename, final String[] args, final long seed,
+            final InputCache inputCache, final boolean collectReplicationSeries) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        HerosModel model = new HerosModel(newSimulator("SimHERoS-" + seed), propertyFilename);
+        model.setInteractive(false);
+        model.setInputCache(inputCache);
+        model.setCollectReplicationSeries(collectReplicationSeries);
+        HerosApplication.loadInputParameters(model, propertyFilename, args);
+        HerosApplication.applySeed(model, seed);
+        double runLengthDays = (double) model.getParameterValueInt("generic.RunLength");
+        model.getSimulator().initialize(0.0, 0.0, runLengthDays * 24.0, model, seed);
+        model.getSimulator().start();
+        model.awaitEndOfReplication();
+        System.out.println("\nReplication with seed " + seed + " completed in " + (System.currentTimeMillis() - start) / 1000
+                + " s");
+        return model;
+    }
+
+    /**
+     * Create a simulator for a replication that runs without a user interface: an exception in an event ends the replication
+     * instead of pausing the simulator, and releases the threads that wait for the end of the replication with the exception.
+     * @param id String; the id of the simulator
+     * @return SimpleDevsSimulator; the simulator
+     */
+    static SimpleDevsSimulator newSimulator(final String id)
+    {
+        SimpleDevsSimulator simulator = new ReplicationSimulator(id);
+        simulator.setErrorStrategy(ErrorStrategy.WARN_AND_END);
+        return simulator;
+    }
+
+    /**
+     * Parse the seeds of the command line; a seed is a number, or an inclusive range such as 111-120.
+     * @param seedArgs List&lt;String&gt;; the seed arguments
+     * @return long[]; the seeds
+     * @throws NumberFormatException when an argument is not a seed or a range of seeds
+     */
+    static long[] parseSeeds(final List<String> seedArgs)
+    {
+        TLongArrayList seeds = new TLongArrayList();
+        for (String arg : seedArgs)
+        {
+            int dash = arg.indexOf('-', 1);
+            if (dash < 0)
+            {
+                seeds.add(Long.parseLong(arg));
+                continue;
+            }
+            long first = Long.parseLong(arg.substring(0, dash));
+            long last = Long.parseLong(arg.substring(dash + 1));
+            for (long seed = first; seed <= last; seed++)
+                seeds.add(seed);
+        }
+        return seeds.toArray();
+    }
+
+    /**
+     * @param args String[]; the properties file, the number of threads, the seeds, and optional name=value parameters
+     * @throws Exception on an error in the arguments
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        List<String> seedArgs = new ArrayList<>();
+        for (int i = 2; i < args.length; i++)
+        {
+            if (!args[i].contains("="))
+                seedArgs.add(args[i]);
+        }
+        if (args.length < 3 || seedArgs.isEmpty())
+        {
+            System.err.println("Usage: HerosBatchRunner file.properties nrThreads seeds [seeds ...] [name=value ...]");
+            System.exit(-1);
+        }
+        long[] seeds = parseSeeds(seedArgs);
+        int nrFailed = new HerosBatchRunner(args[0], args).run(seeds, Integer.parseInt(args[1]));
+        System.exit(nrFailed == 0 ? 0 : 1);
+    }
+
+    /** Simulator that tells its HerosModel when an exception in an event has ended the replication. */
+    private static class ReplicationSimulator extends SimpleDevsSimulator
+    {
+        /** */
+        private static final long serialVersionUID = 20241019L;
+
+        /**
+         * @param id String; the id of the simulator
+         */
+        ReplicationSimulator(final String id)
+        {
+            super(id);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void handleSimulationException(final Exception exception)
+        {
+            super.handleSimulationException(exception);
+            if (getErrorStrategy().equals(ErrorStrategy.WARN_AND_END) && getModel() instanceof HerosModel)
+                ((HerosModel) getModel()).replicationFailed(exception);
+        }
+    }
+
+}
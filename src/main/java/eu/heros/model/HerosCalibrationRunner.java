@@ -0,0 +1,615 @@
+package eu.heros.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.siegmar.fastcsv.reader.CsvReader;
+import de.siegmar.fastcsv.reader.CsvRow;
+import eu.heros.factory.InputCache;
+import eu.heros.output.ReplicationSeries;
+import gnu.trove.list.array.TDoubleArrayList;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
+import nl.tudelft.simulation.medlabs.simulation.SimpleDevsSimulator;
+
+/**
+ * HerosCalibrationRunner calibrates parameters of the transmission model, such as covidT_dist.alpha, psi, r and v_0, against
+ * an observed time series, e.g., the number of hospitalized persons per day. The parameters are searched with the
+ * Nelder-Mead simplex method within their ranges. Every evaluation of a parameter set runs the same seeds (common random
+ * numbers), so the differences between parameter sets are not hidden by the differences between seeds; the seeds of an
+ * evaluation run in parallel, as do the evaluations of the initial simplex. The runs stop at the last day of the target, and
+ * can use a sample of the households of the population to make them shorter still. The calibration is specified in a
+ * properties file:
+ *
+ * <pre>
+ * calibration.BaseProperties = /data/alpha-distance.properties
+ * calibration.TargetFile = /data/hospitalized.csv
+ * calibration.TargetSeries = phase:Hospitalized
+ * calibration.Seeds = 111-113
+ * calibration.Threads = 0
+ * calibration.OutputPath = /data/calibration-alpha
+ * calibration.PersonSampleFraction = 0.25
+ * calibration.MaxEvaluations = 100
+ * calibration.Tolerance = 0.01
+ * covidT_dist.alpha = 0.5 .. 2.0, 1.0
+ * covidT_dist.psi = 0.3 .. 1.0
+ * </pre>
+ *
+ * A parameter has a range "min .. max" and an optional start value, by default the middle of the range. The target file is a
+ * csv file with a header, the day in the first column, and the observed value in the second column. The target series is a
+ * series of the cross-replication summary, usually "phase:[disease phase]"; the score of a parameter set is the root mean
+ * squared error between the target and the mean of the series over the seeds, linearly interpolated at the days of the
+ * target. With a sample of the population, the simulated numbers are divided by the fraction, and policies.NumberInfected
+ * is multiplied by it. The search stops after MaxEvaluations evaluations, or when all vertices of the simplex are within
+ * Tolerance of the best vertex, in parameter ranges as unit. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.model.HerosCalibrationRunner calibration.properties [name=value ...]
+ * </pre>
+ *
+ * where the arguments of the form name=value override the parameters of the base properties file for all runs. Every
+ * evaluation is added to calibration-history.csv in the output path, with the parameter values and the score. When the
+ * calibration is started again with the same output path, specification and name=value arguments, the search is replayed,
+ * taking the scores of the evaluations in the history instead of running them again, so it continues where it was
+ * interrupted.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class HerosCalibrationRunner
+{
+    /** the name of the copy of the specification in the output path. */
+    public static final String SPECIFICATION_FILE = "calibration.properties";
+
+    /** the name of the history in the output path. */
+    public static final String HISTORY_FILE = "calibration-history.csv";
+
+    /** the key under which the name=value arguments of the command line are stored in the copy of the specification. */
+    public static final String ARGUMENTS_KEY = "calibration.Arguments";
+
+    /** the parameter maps of which the parameters can be calibrated. */
+    private static final String[] CALIBRATION_PREFIXES = {"covidT_dist.", "covidT_area.", "covidP.", "policies."};
+
+    /** the properties file of the base scenario. */
+    private final String basePropertyFilename;
+
+    /** the arguments of the form name=value for all runs. */
+    private final List<String> baseArgs = new ArrayList<>();
+
+    /** the directory for the history and the output of the runs. */
+    private final File outputPath;
+
+    /** the names of the calibrated parameters. */
+    private final List<String> parameterNames = new ArrayList<>();
+
+    /** the lower bound per parameter. */
+    private final TDoubleArrayList min = new TDoubleArrayList();
+
+    /** the upper bound per parameter. */
+    private final TDoubleArrayList max = new TDoubleArrayList();
+
+    /** the start point in unit coordinates. */
+    private final double[] start;
+
+    /** the days of the target. */
+    private final TDoubleArrayList targetDays = new TDoubleArrayList();
+
+    /** the observed values of the target. */
+    private final TDoubleArrayList targetValues = new TDoubleArrayList();
+
+    /** the name of the simulated series that is compared with the target. */
+    private final String targetSeries;
+
+    /** the seeds of every evaluation. */
+    private final long[] seeds;
+
+    /** the fraction of the households in the runs. */
+    private final double personSampleFraction;
+
+    /** the scores of the evaluations so far, by the formatted parameter values. */
+    private final Map<String, Double> history = new HashMap<>();
+
+    /** the number of evaluations so far, including the evaluations of the history. */
+    private int nrEvaluations = 0;
+
+    /** the parsed input files that are shared by the runs. */
+    private final InputCache inputCache = new InputCache();
+
+    /** the threads for the runs. */
+    private final ExecutorService pool;
+
+    /**
+     * Create a calibration. The history in the output path is read when the calibration has been started before with the same
+     * specification.
+     * @param calibration Properties; the specification of the calibration
+     * @param args String[]; the command line arguments; arguments of the form name=value override the base properties
+     * @throws Exception on an error in the specification or the target file, or when the output path holds a calibration
+     *             with another specification
+     */
+    public HerosCalibrationRunner(final Properties calibration, final String[] args) throws Exception
+    {
+        this.basePropertyFilename = calibration.getProperty("calibration.BaseProperties", "").trim();
+        if (this.basePropertyFilename.length() == 0)
+            throw new IllegalArgumentException("calibration.BaseProperties not specified");
+        this.outputPath = new File(calibration.getProperty("calibration.OutputPath", "calibration").trim());
+        this.targetSeries = calibration.getProperty("calibration.TargetSeries", "phase:Hospitalized").trim();
+        this.seeds = HerosBatchRunner
+                .parseSeeds(Arrays.asList(calibration.getProperty("calibration.Seeds", "1").trim().split("\\s+")));
+        this.personSampleFraction =
+                Double.parseDouble(calibration.getProperty("calibration.PersonSampleFraction", "1.0").trim());
+        int nrThreads = Integer.parseInt(calibration.getProperty("calibration.Threads", "0").trim());
+        this.pool = Executors.newFixedThreadPool(nrThreads > 0 ? nrThreads : Runtime.getRuntime().availableProcessors());
+
+        Map<String, String> ranges = new TreeMap<>();
+        for (String key : calibration.stringPropertyNames())
+        {
+            if (key.startsWith("calibration."))
+                continue;
+            if (Arrays.stream(CALIBRATION_PREFIXES).noneMatch(prefix -> key.startsWith(prefix)))
+                throw new IllegalArgumentException("parameter " + key + " cannot be calibrated; allowed are "
+                        + Arrays.toString(CALIBRATION_PREFIXES));
+            ranges.put(key, calibration.getProperty(key).trim());
+        }
+        if (ranges.isEmpty())
+            throw new IllegalArgumentException("no parameters to calibrate in the specification");
+        this.start = new double[ranges.size()];
+        for (Map.Entry<String, String> entry : ranges.entrySet())
+        {
+            String[] rangeStart = entry.getValue().split(",");
+            String[] range = rangeStart[0].split("\\.\\.");
+            if (range.length != 2)
+                throw new IllegalArgumentException("parameter " + entry.getKey() + " should have a range min .. max");
+            int p = this.parameterNames.size();
+            this.parameterNames.add(entry.getKey());
+            this.min.add(Double.parseDouble(range[0].trim()));
+            this.max.add(Double.parseDouble(range[1].trim()));
+            double value = rangeStart.length > 1 ? Double.parseDouble(rangeStart[1].trim())
+                    : (this.min.get(p) + this.max.get(p)) / 2.0;
+            this.start[p] = clamp((value - this.min.get(p)) / (this.max.get(p) - this.min.get(p)));
+        }
+        readTarget(new File(calibration.getProperty("calibration.TargetFile", "").trim()));
+
+        List<String> overrides = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].contains("="))
+                overrides.add(args[i]);
+        }
+        this.baseArgs.addAll(overrides);
+        int runLength = (int) Math.ceil(this.targetDays.get(this.targetDays.size() - 1));
+        this.baseArgs.add("generic.RunLength=" + Math.max(1, runLength));
+
+        // a model that is not constructed only serves to check the parameters and to read the base number of infected persons
+        HerosModel baseModel = new HerosModel(new SimpleDevsSimulator("SimHERoS-calibration"), this.basePropertyFilename);
+        HerosApplication.loadInputParameters(baseModel, this.basePropertyFilename, args);
+        for (String name : this.parameterNames)
+            baseModel.getInputParameterMap().get(name);
+        if (this.personSampleFraction < 1.0)
+        {
+            int nrInfected = baseModel.getParameterValueInt("policies.NumberInfected");
+            this.baseArgs.add("generic.PersonSampleFraction=" + this.personSampleFraction);
+            this.baseArgs.add("policies.NumberInfected="
+                    + (nrInfected == 0 ? 0 : Math.max(1, Math.round(nrInfected * this.personSampleFraction))));
+        }
+        Properties specification = new Properties();
+        specification.putAll(calibration);
+        specification.setProperty(ARGUMENTS_KEY, String.join(" ", overrides));
+        readHistory(specification);
+    }
+
+    /**
+     * Read the target time series.
+     * @param targetFile File; the csv file with a header, the day in the first column and the value in the second column
+     * @throws IOException on error reading the file, or when the file has no values
+     */
+    private void readTarget(final File targetFile) throws IOException
+    {
+        try (Reader reader = new InputStreamReader(new FileInputStream(targetFile)))
+        {
+            CsvReader csvReader = CsvReader.builder().fieldSeparator(',').quoteCharacter('"').build(reader);
+            Iterator<CsvRow> it = csvReader.iterator();
+            if (it.hasNext())
+                it.next(); // skip header
+            while (it.hasNext())
+            {
+                List<String> data = it.next().getFields();
+                if (data.size() < 2 || data.get(0).trim().length() == 0)
+                    continue;
+                this.targetDays.add(Double.parseDouble(data.get(0).trim()));
+                this.targetValues.add(Double.parseDouble(data.get(1).trim()));
+            }
+        }
+        if (this.targetDays.isEmpty())
+            throw new IOException("target file " + targetFile + " has no values");
+    }
+
+    /**
+     * Check the specification against the copy in the output path, and read the history of a calibration that has been
+     * started before. For a new calibration, the copy of the specification and the header of the history are written.
+     * @param calibration Properties; the specification of the calibration, with the name=value arguments of the command line
+     *            under ARGUMENTS_KEY, since they change the runs as well
+     * @throws IOException on error reading or writing the files, or when the output path holds another calibration
+     */
+    private void readHistory(final Properties calibration) throws IOException
+    {
+        this.outputPath.mkdirs();
+        File specificationFile = new File(this.outputPath, SPECIFICATION_FILE);
+        File historyFile = new File(this.outputPath, HISTORY_FILE);
+        if (!specificationFile.exists())
+        {
+            try (OutputStream stream = new FileOutputStream(specificationFile))
+            {
+                calibration.store(stream, "specification of the calibration in " + this.outputPath);
+            }
+            try (Writer writer = new FileWriter(historyFile))
+            {
+                writer.write("\"Evaluation\"");
+                for (String name : this.parameterNames)
+                    writer.write(",\"" + name + "\"");
+                writer.write(",\"Score\"\n");
+            }
+            return;
+        }
+        Properties previous = new Properties();
+        try (InputStream stream = new FileInputStream(specificationFile))
+        {
+            previous.load(stream);
+        }
+        if (!previous.equals(calibration))
+            throw new IOException("output path " + this.outputPath + " holds a calibration with another specification");
+        try (BufferedReader reader = new BufferedReader(new FileReader(historyFile)))
+        {
+            String line = reader.readLine(); // skip header
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(",");
+                if (fields.length != this.parameterNames.size() + 2)
+                    continue;
+                String key = String.join(",", Arrays.copyOfRange(fields, 1, fields.length - 1));
+                this.history.put(key, Double.parseDouble(fields[fields.length - 1]));
+            }
+        }
+        System.out.println("Calibration resumed with " + this.history.size() + " evaluations from " + historyFile);
+    }
+
+    /**
+     * Search the parameters with the Nelder-Mead simplex method, within the parameter ranges.
+     * @param maxEvaluations int; the maximum number of evaluations
+     * @param tolerance double; the size of the simplex, in parameter ranges as unit, at which the search stops
+     * @return double[]; the best parameter values found
+     * @throws Exception when a run fails
+     */
+    public double[] run(final int maxEvaluations, final double tolerance) throws Exception
+    {
+        int n = this.start.length;
+        List<double[]> simplex = new ArrayList<>();
+        simplex.add(this.start.clone());
+        for (int p = 0; p < n; p++)
+        {
+            double[] vertex = this.start.clone();
+            vertex[p] = vertex[p] + 0.25 <= 1.0 ? vertex[p] + 0.25 : vertex[p] - 0.25;
+            simplex.add(vertex);
+        }
+        double[] scores;
+        try
+        {
+            scores = evaluate(simplex);
+            while (this.nrEvaluations < maxEvaluations)
+            {
+                // order the vertices from best to worst
+                Integer[] order = new Integer[n + 1];
+                for (int i = 0; i <= n; i++)
+                    order[i] = i;
+                final double[] s = scores;
+                Arrays.sort(order, Comparator.comparingDouble(i -> s[i]));
+                List<double[]> sorted = new ArrayList<>();
+                double[] sortedScores = new double[n + 1];
+                for (int i = 0; i <= n; i++)
+                {
+                    sorted.add(simplex.get(order[i]));
+                    sortedScores[i] = scores[order[i]];
+                }
+                simplex = sorted;
+                scores = sortedScores;
+                System.out.println(String.format(Locale.US, "\nCalibration: %d evaluations; best score %.4f at %s",
+                        this.nrEvaluations, scores[0], format(simplex.get(0))));
+                if (size(simplex) <= tolerance)
+                    break;
+
+                double[] centroid = new double[n];
+                for (int i = 0; i < n; i++)
+                    for (int p = 0; p < n; p++)
+                        centroid[p] += simplex.get(i)[p] / n;
+                double[] worst = simplex.get(n);
+                double[] reflected = move(centroid, worst, -1.0);
+                double reflectedScore = evaluate(reflected);
+                if (reflectedScore < scores[0])
+                {
+                    double[] expanded = move(centroid, worst, -2.0);
+                    double expandedScore = evaluate(expanded);
+                    boolean expand = expandedScore < reflectedScore;
+                    simplex.set(n, expand ? expanded : reflected);
+                    scores[n] = expand ? expandedScore : reflectedScore;
+                }
+                else if (reflectedScore < scores[n - 1])
+                {
+                    simplex.set(n, reflected);
+                    scores[n] = reflectedScore;
+                }
+                else
+                {
+                    boolean outside = reflectedScore < scores[n];
+                    double[] contracted = move(centroid, worst, outside ? -0.5 : 0.5);
+                    double contractedScore = evaluate(contracted);
+                    if (contractedScore < Math.min(reflectedScore, scores[n]))
+                    {
+                        simplex.set(n, contracted);
+                        scores[n] = contractedScore;
+                    }
+                    else
+                    {
+                        // shrink towards the best vertex; the new vertices are evaluated in parallel
+                        List<double[]> shrunk = new ArrayList<>();
+                        for (int i = 1; i <= n; i++)
+                            shrunk.add(move(simplex.get(0), simplex.get(i), 0.5));
+                        double[] shrunkScores = evaluate(shrunk);
+                        for (int i = 1; i <= n; i++)
+                        {
+                            simplex.set(i, shrunk.get(i - 1));
+                            scores[i] = shrunkScores[i - 1];
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            this.pool.shutdown();
+            this.inputCache.clear();
+        }
+        int best = 0;
+        for (int i = 1; i <= n; i++)
+            best = scores[i] < scores[best] ? i : best;
+        double[] values = toValues(simplex.get(best));
+        System.out.println(String.format(Locale.US, "\nCalibration ended after %d evaluations; best score %.4f at %s; %s",
+                this.nrEvaluations, scores[best], format(simplex.get(best)), this.inputCache));
+        return values;
+    }
+
+    /**
+     * Return the point c + factor * (x - c), clamped to the unit cube.
+     * @param c double[]; the reference point
+     * @param x double[]; the point to move
+     * @param factor double; the factor
+     * @return double[]; the moved point
+     */
+    private static double[] move(final double[] c, final double[] x, final double factor)
+    {
+        double[] result = new double[c.length];
+        for (int p = 0; p < c.length; p++)
+            result[p] = clamp(c[p] + factor * (x[p] - c[p]));
+        return result;
+    }
+
+    /**
+     * @param value double; a unit coordinate
+     * @return the coordinate, clamped to [0, 1]
+     */
+    private static double clamp(final double value)
+    {
+        return Math.max(0.0, Math.min(1.0, value));
+    }
+
+    /**
+     * @param simplex List&lt;double[]&gt;; the vertices, best first
+     * @return the largest distance of a vertex to the best vertex, in unit coordinates
+     */
+    private static double size(final List<double[]> simplex)
+    {
+        double size = 0.0;
+        for (int i = 1; i < simplex.size(); i++)
+        {
+            double d2 = 0.0;
+            for (int p = 0; p < simplex.get(0).length; p++)
+                d2 += (simplex.get(i)[p] - simplex.get(0)[p]) * (simplex.get(i)[p] - simplex.get(0)[p]);
+            size = Math.max(size, Math.sqrt(d2));
+        }
+        return size;
+    }
+
+    /**
+     * @param unit double[]; a point in unit coordinates
+     * @return the parameter values of the point
+     */
+    private double[] toValues(final double[] unit)
+    {
+        double[] values = new double[unit.length];
+        for (int p = 0; p < unit.length; p++)
+            values[p] = this.min.get(p) + unit[p] * (this.max.get(p) - this.min.get(p));
+        return values;
+    }
+
+    /**
+     * Format the parameter values of a point; the formatted values identify the point in the history, and are the values
+     * that the runs use.
+     * @param unit double[]; a point in unit coordinates
+     * @return String; the comma-separated parameter values
+     */
+    private String format(final double[] unit)
+    {
+        double[] values = toValues(unit);
+        StringBuilder s = new StringBuilder();
+        for (int p = 0; p < values.length; p++)
+            s.append(p == 0 ? "" : ",").append(String.format(Locale.US, "%.8g", values[p]));
+        return s.toString();
+    }
+
+    /**
+     * Evaluate one point.
+     * @param unit double[]; the point in unit coordinates
+     * @return double; the score of the point
+     * @throws Exception when a run fails
+     */
+    private double evaluate(final double[] unit) throws Exception
+    {
+        return evaluate(List.of(unit))[0];
+    }
+
+    /**
+     * Evaluate points; the runs of all points that are not in the history are started at the same time.
+     * @param points List&lt;double[]&gt;; the points in unit coordinates
+     * @return double[]; the scores of the points
+     * @throws Exception when a run fails
+     */
+    private double[] evaluate(final List<double[]> points) throws Exception
+    {
+        double[] scores = new double[points.size()];
+        Map<String, List<Future<ReplicationSeries>>> runs = new HashMap<>();
+        for (double[] unit : points)
+        {
+            String key = format(unit);
+            if (this.history.containsKey(key) || runs.containsKey(key))
+                continue;
+            List<Future<ReplicationSeries>> futures = new ArrayList<>();
+            for (long seed : this.seeds)
+            {
+                List<String> args = new ArrayList<>(this.baseArgs);
+                String[] values = key.split(",");
+                for (int p = 0; p < values.length; p++)
+                    args.add(this.parameterNames.get(p) + "=" + values[p]);
+                args.add("generic.OutputPath="
+                        + new File(this.outputPath, String.format("evaluation-%04d", this.nrEvaluations)).getPath());
+                futures.add(this.pool.submit(() -> HerosBatchRunner
+                        .runReplication(this.basePropertyFilename, args.toArray(new String[0]), seed, this.inputCache, true)
+                        .getReplicationSeries()));
+            }
+            runs.put(key, futures);
+            this.nrEvaluations++;
+        }
+        for (int i = 0; i < points.size(); i++)
+        {
+            String key = format(points.get(i));
+            if (!this.history.containsKey(key))
+            {
+                List<ReplicationSeries> series = new ArrayList<>();
+                try
+                {
+                    for (Future<ReplicationSeries> future : runs.get(key))
+                        series.add(future.get());
+                }
+                catch (ExecutionException exception)
+                {
+                    throw new MedlabsRuntimeException("run for " + key + " failed", exception.getCause());
+                }
+                double score = score(series);
+                this.history.put(key, score);
+                try (Writer writer = new FileWriter(new File(this.outputPath, HISTORY_FILE), true))
+                {
+                    writer.write(this.history.size() + "," + key + "," + String.format(Locale.US, "%.6f", score) + "\n");
+                }
+            }
+            else if (!runs.containsKey(key))
+            {
+                this.nrEvaluations++;
+            }
+            scores[i] = this.history.get(key);
+        }
+        return scores;
+    }
+
+    /**
+     * Return the root mean squared error between the target and the mean of the simulated series over the seeds, at the days
+     * of the target. With a sample of the population, the simulated numbers are scaled up to the full population.
+     * @param series List&lt;ReplicationSeries&gt;; the series of the runs of the seeds
+     * @return double; the score, lower is better
+     */
+    private double score(final List<ReplicationSeries> series)
+    {
+        double sum = 0.0;
+        for (int d = 0; d < this.targetDays.size(); d++)
+        {
+            double simulated = 0.0;
+            for (ReplicationSeries replication : series)
+                simulated += interpolate(replication, 24.0 * this.targetDays.get(d));
+            simulated /= series.size() * this.personSampleFraction;
+            double error = simulated - this.targetValues.get(d);
+            sum += error * error;
+        }
+        return Math.sqrt(sum / this.targetDays.size());
+    }
+
+    /**
+     * Return the value of the target series of a run at a time, linearly interpolated between the samples.
+     * @param replication ReplicationSeries; the series of the run
+     * @param time double; the time in hours
+     * @return double; the interpolated value
+     */
+    private double interpolate(final ReplicationSeries replication, final double time)
+    {
+        int nrSamples = replication.getNumberOfSamples();
+        if (nrSamples == 0 || Double.isNaN(replication.getValue(this.targetSeries, 0)))
+            throw new MedlabsRuntimeException("series " + this.targetSeries + " not in the output of the runs");
+        int k = 0;
+        while (k < nrSamples - 1 && replication.getTime(k + 1) <= time)
+            k++;
+        if (k == nrSamples - 1 || replication.getTime(k) >= time)
+            return replication.getValue(this.targetSeries, k);
+        double t0 = replication.getTime(k);
+        double t1 = replication.getTime(k + 1);
+        double v0 = replication.getValue(this.targetSeries, k);
+        double v1 = replication.getValue(this.targetSeries, k + 1);
+        return v0 + (v1 - v0) * (time - t0) / (t1 - t0);
+    }
+
+    /**
+     * @param args String[]; the calibration specification, and optional name=value parameters
+     * @throws Exception on an error in the specification or the arguments, or when a run fails
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length < 1 || args[0].contains("="))
+        {
+            System.err.println("Usage: HerosCalibrationRunner calibration.properties [name=value ...]");
+            System.exit(-1);
+        }
+        Properties calibration = new Properties();
+        try (InputStream stream = new FileInputStream(args[0]))
+        {
+            calibration.load(stream);
+        }
+        HerosCalibrationRunner runner = new HerosCalibrationRunner(calibration, args);
+        runner.run(Integer.parseInt(calibration.getProperty("calibration.MaxEvaluations", "100").trim()),
+                Double.parseDouble(calibration.getProperty("calibration.Tolerance", "0.01").trim()));
+        System.exit(0);
+    }
+
+}
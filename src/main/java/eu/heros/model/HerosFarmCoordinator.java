@@ -0,0 +1,462 @@
+package eu.heros.model;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import eu.heros.output.ReplicationSeries;
+import eu.heros.output.ReplicationStatistics;
+
+/**
+ * HerosFarmCoordinator distributes the replications of one or more scenarios over worker JVMs, so the number of replications
+ * that run at the same time is not limited by the heap of one JVM. The workers (see HerosFarmWorker) connect to the
+ * coordinator over a socket, on the same machine or on other machines, and ask for jobs: a scenario and a seed. A worker
+ * keeps the parsed input files of a scenario between its jobs, and sends the time series and the key outputs of every
+ * replication (see HerosModel.getReplicationOutputs) back to the coordinator. The coordinator merges the series into the
+ * cross-replication summary [OutputPath]/[scenario]/summary, and adds a row per replication to [OutputPath]/farm-results.csv.
+ * When a worker fails, its connection is lost, or it does not return the result of its job within the job timeout, the job is
+ * given to another worker, up to maxAttempts times. The connections only accept the classes of the jobs and the results; the
+ * coordinator should still only listen on a network where every host that can connect is trusted. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.model.HerosFarmCoordinator host:port nrLocalWorkers outputPath seeds scenario.properties [...]
+ * </pre>
+ *
+ * where host is the address to listen on (localhost for local workers only, 0.0.0.0 to accept workers from other machines),
+ * nrLocalWorkers is the number of worker JVMs that the coordinator starts itself with the same java executable and class path,
+ * and seeds is a seed or a range of seeds (e.g., 111-120), or a comma-separated list of them. The output of a replication
+ * goes to [outputPath]/[scenario]-seed-[seed] on the machine of the worker. The system property heros.farm.maxAttempts sets
+ * the number of attempts per job (default 3), heros.farm.jobTimeoutHours the time a worker gets for a job (default 24), and
+ * heros.farm.workerArgs holds extra JVM arguments for the local workers, e.g., "-Xmx16g".
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class HerosFarmCoordinator
+{
+    /** the name of the result table in the output path. */
+    public static final String RESULT_FILE = "farm-results.csv";
+
+    /**
+     * The classes that can be read from the connections between the coordinator and the workers: the jobs, the results with
+     * their series and outputs, and the JDK and Trove classes they are made of. All other classes are rejected before they
+     * are instantiated, so a host that connects to the farm cannot make it deserialize arbitrary objects.
+     */
+    static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter("maxdepth=16;maxarray=100000;"
+            + Job.class.getName() + ";" + Result.class.getName() + ";" + ReplicationSeries.class.getName()
+            + ";gnu.trove.list.array.TDoubleArrayList;java.lang.String;java.lang.Number;java.lang.Double;java.util.HashMap;"
+            + "java.util.LinkedHashMap;java.util.Map$Entry;!*");
+
+    /** the directory for the summaries and the result table. */
+    private final File outputPath;
+
+    /** the maximum number of attempts per job. */
+    private final int maxAttempts;
+
+    /** the time in seconds that a worker gets to return the result of a job. */
+    private final int jobTimeout;
+
+    /** the jobs that wait for a worker. */
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+
+    /** counted down when a job has completed or has failed for the last time. */
+    private final CountDownLatch remaining;
+
+    /** the number of jobs that failed for the last time. */
+    private int nrFailed = 0;
+
+    /** the names of the outputs in the result table; null until the header of the table has been written. */
+    private List<String> outputNames = null;
+
+    /** the socket on which the workers connect. */
+    private ServerSocket serverSocket;
+
+    /** the worker JVMs that the coordinator has started. */
+    private final List<Process> localWorkers = new ArrayList<>();
+
+    /**
+     * Create a coordinator for the replications of the scenarios.
+     * @param outputPath File; the directory for the summaries and the result table
+     * @param scenarios List&lt;String&gt;; the properties files of the scenarios
+     * @param seeds long[]; the seeds of the replications of every scenario
+     * @param maxAttempts int; the maximum number of attempts per job
+     * @param jobTimeout int; the time in seconds that a worker gets to return the result of a job
+     */
+    public HerosFarmCoordinator(final File outputPath, final List<String> scenarios, final long[] seeds,
+            final int maxAttempts, final int jobTimeout)
+    {
+        this.outputPath = outputPath;
+        this.maxAttempts = maxAttempts;
+        this.jobTimeout = jobTimeout;
+        for (String scenario : scenarios)
+        {
+            String name = scenarioName(scenario);
+            String[] args = new String[] {"generic.OutputPath=" + new File(outputPath, name).getPath()};
+            for (long seed : seeds)
+                this.queue.add(new Job(this.queue.size(), name, scenario, seed, args, 1));
+        }
+        this.remaining = new CountDownLatch(this.queue.size());
+    }
+
+    /**
+     * @param scenario String; the properties file of a scenario
+     * @return the name of the scenario: the file name without the extension
+     */
+    private static String scenarioName(final String scenario)
+    {
+        String name = new File(scenario).getName();
+        return name.endsWith(".properties") ? name.substring(0, name.length() - ".properties".length()) : name;
+    }
+
+    /**
+     * Listen for workers, start the local workers, and wait until all jobs have completed or have failed for the last time.
+     * @param address InetSocketAddress; the address to listen on
+     * @param nrLocalWorkers int; the number of worker JVMs to start on this machine
+     * @return int; the number of jobs that failed
+     * @throws IOException when the coordinator cannot listen on the address, or a local worker cannot be started
+     * @throws InterruptedException when the thread is interrupted while waiting for the jobs
+     */
+    public int run(final InetSocketAddress address, final int nrLocalWorkers) throws IOException, InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        int nrJobs = this.queue.size();
+        this.outputPath.mkdirs();
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(address);
+        System.out.println("Farm: " + nrJobs + " jobs; listening on " + this.serverSocket.getLocalSocketAddress());
+        Thread acceptor = new Thread(() -> acceptWorkers(), "farm-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        String host = address.getAddress().isAnyLocalAddress() ? InetAddress.getLoopbackAddress().getHostAddress()
+                : address.getAddress().getHostAddress();
+        String hostPort = host + ":" + this.serverSocket.getLocalPort();
+        for (int i = 0; i < nrLocalWorkers; i++)
+            this.localWorkers.add(startLocalWorker(hostPort, i));
+
+        // a local worker that has died is started again, so the farm does not run out of workers
+        int nrRestarts = 0;
+        while (!this.remaining.await(10, TimeUnit.SECONDS))
+        {
+            for (int i = 0; i < this.localWorkers.size(); i++)
+            {
+                Process process = this.localWorkers.get(i);
+                if (!process.isAlive() && nrRestarts < this.maxAttempts * nrLocalWorkers)
+                {
+                    System.err.println("Farm: local worker " + i + " ended with exit code " + process.exitValue()
+                            + "; restarting");
+                    this.localWorkers.set(i, startLocalWorker(hostPort, i));
+                    nrRestarts++;
+                }
+            }
+        }
+        this.serverSocket.close();
+        for (Process process : this.localWorkers)
+        {
+            if (!process.waitFor(60, TimeUnit.SECONDS))
+                process.destroy();
+        }
+        System.out.println("\nFarm: " + (nrJobs - this.nrFailed) + " of " + nrJobs + " jobs completed in "
+                + (System.currentTimeMillis() - start) / 1000 + " s; results in " + new File(this.outputPath, RESULT_FILE));
+        return this.nrFailed;
+    }
+
+    /**
+     * Start a worker JVM on this machine, with the java executable and the class path of the coordinator.
+     * @param hostPort String; the address of the coordinator for the worker
+     * @param index int; the index of the local worker
+     * @return Process; the worker process
+     * @throws IOException when the worker cannot be started
+     */
+    private Process startLocalWorker(final String hostPort, final int index) throws IOException
+    {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        String workerArgs = System.getProperty("heros.farm.workerArgs", "").trim();
+        if (workerArgs.length() > 0)
+            command.addAll(Arrays.asList(workerArgs.split("\\s+")));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(HerosFarmWorker.class.getName());
+        command.add(hostPort);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(Redirect.appendTo(new File(this.outputPath, "worker-" + index + ".log")));
+        return builder.start();
+    }
+
+    /**
+     * Accept the connections of the workers until the server socket is closed; every worker is served on its own thread.
+     */
+    private void acceptWorkers()
+    {
+        while (!this.serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = this.serverSocket.accept();
+                Thread thread = new Thread(() -> serveWorker(socket), "farm-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (SocketException exception)
+            {
+                // the server socket has been closed
+            }
+            catch (IOException exception)
+            {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Give jobs to a worker, one at a time, until there are no jobs left. When the connection is lost, or the worker does not
+     * return the result within the job timeout, the job of the worker is put back in the queue and the connection is closed.
+     * @param socket Socket; the connection with the worker
+     */
+    private void serveWorker(final Socket socket)
+    {
+        String worker = socket.getRemoteSocketAddress().toString();
+        System.out.println("Farm: worker " + worker + " connected");
+        Job job = null;
+        try (Socket s = socket; ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream()))
+        {
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(1000 * this.jobTimeout);
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            in.setObjectInputFilter(FILTER);
+            while (this.remaining.getCount() > 0)
+            {
+                job = this.queue.poll(1, TimeUnit.SECONDS);
+                if (job == null)
+                    continue;
+                out.writeObject(job);
+                out.flush();
+                out.reset();
+                Result result = (Result) in.readObject();
+                if (result.error == null)
+                    complete(job, result, worker);
+                else
+                    retry(job, worker + " reported\n" + result.error);
+                job = null;
+            }
+            out.writeObject(null);
+            out.flush();
+        }
+        catch (SocketTimeoutException exception)
+        {
+            if (job != null)
+                retry(job, "no result from worker " + worker + " within " + this.jobTimeout + " s");
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException exception)
+        {
+            if (job != null)
+                retry(job, "connection with worker " + worker + " lost: " + exception.getMessage());
+        }
+        catch (InterruptedException exception)
+        {
+            if (job != null)
+                this.queue.add(job);
+        }
+    }
+
+    /**
+     * Put a job back in the queue for another attempt, or count it as failed after the last attempt.
+     * @param job Job; the job that did not complete
+     * @param reason String; the reason, for the log
+     */
+    private void retry(final Job job, final String reason)
+    {
+        if (job.attempt < this.maxAttempts)
+        {
+            System.err.println("Farm: attempt " + job.attempt + " of " + job + " failed, retrying; " + reason);
+            this.queue.add(new Job(job.id, job.scenarioName, job.propertyFilename, job.seed, job.args, job.attempt + 1));
+            return;
+        }
+        System.err.println("Farm: " + job + " failed after " + job.attempt + " attempts; " + reason);
+        synchronized (this)
+        {
+            this.nrFailed++;
+        }
+        this.remaining.countDown();
+    }
+
+    /**
+     * Merge the series of a completed job into the summary of its scenario, and add its outputs to the result table.
+     * @param job Job; the completed job
+     * @param result Result; the result of the job
+     * @param worker String; the address of the worker, for the result table
+     */
+    private synchronized void complete(final Job job, final Result result, final String worker)
+    {
+        try
+        {
+            if (result.series != null)
+                ReplicationStatistics.merge(new File(new File(this.outputPath, job.scenarioName), "summary").getPath(),
+                        result.series);
+            try (Writer writer = new FileWriter(new File(this.outputPath, RESULT_FILE), this.outputNames != null))
+            {
+                if (this.outputNames == null)
+                {
+                    this.outputNames = new ArrayList<>(result.outputs.keySet());
+                    writer.write("\"Scenario\",\"Seed\",\"Worker\",\"Attempt\",\"Time(s)\"");
+                    for (String name : this.outputNames)
+                        writer.write(",\"" + name + "\"");
+                    writer.write("\n");
+                }
+                StringBuilder row = new StringBuilder();
+                row.append("\"").append(job.scenarioName).append("\",").append(job.seed).append(",\"").append(worker)
+                        .append("\",").append(job.attempt).append(",").append(result.runTime / 1000);
+                for (String name : this.outputNames)
+                {
+                    Double value = result.outputs.get(name);
+                    row.append(",").append(value == null ? "" : String.format(Locale.US, "%.4f", value));
+                }
+                writer.write(row.append("\n").toString());
+            }
+        }
+        catch (IOException exception)
+        {
+            exception.printStackTrace();
+        }
+        System.out.println("Farm: " + job + " completed by " + worker + "; " + (this.remaining.getCount() - 1) + " to go");
+        this.remaining.countDown();
+    }
+
+    /**
+     * @param args String[]; host:port, the number of local workers, the output path, the seeds, and the scenarios
+     * @throws Exception on an error in the arguments, or when the coordinator cannot listen on the address
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length < 5)
+        {
+            System.err.println(
+                    "Usage: HerosFarmCoordinator host:port nrLocalWorkers outputPath seeds scenario.properties [...]");
+            System.exit(-1);
+        }
+        String[] hostPort = args[0].split(":");
+        InetSocketAddress address = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+        long[] seeds = HerosBatchRunner.parseSeeds(Arrays.asList(args[3].split(",")));
+        int maxAttempts = Integer.parseInt(System.getProperty("heros.farm.maxAttempts", "3"));
+        int jobTimeout = 3600 * Integer.parseInt(System.getProperty("heros.farm.jobTimeoutHours", "24"));
+        HerosFarmCoordinator coordinator = new HerosFarmCoordinator(new File(args[2]),
+                Arrays.asList(args).subList(4, args.length), seeds, maxAttempts, jobTimeout);
+        int nrFailed = coordinator.run(address, Integer.parseInt(args[1]));
+        System.exit(nrFailed == 0 ? 0 : 1);
+    }
+
+    /** A job for a worker: one replication of a scenario. */
+    static class Job implements Serializable
+    {
+        /** */
+        private static final long serialVersionUID = 20241019L;
+
+        /** the number of the job. */
+        final int id;
+
+        /** the name of the scenario. */
+        final String scenarioName;
+
+        /** the properties file of the scenario, as seen from the worker. */
+        final String propertyFilename;
+
+        /** the seed of the replication. */
+        final long seed;
+
+        /** the name=value arguments that override the properties of the scenario. */
+        final String[] args;
+
+        /** the attempt, starting at 1. */
+        final int attempt;
+
+        /**
+         * @param id int; the number of the job
+         * @param scenarioName String; the name of the scenario
+         * @param propertyFilename String; the properties file of the scenario, as seen from the worker
+         * @param seed long; the seed of the replication
+         * @param args String[]; the name=value arguments that override the properties of the scenario
+         * @param attempt int; the attempt, starting at 1
+         */
+        Job(final int id, final String scenarioName, final String propertyFilename, final long seed, final String[] args,
+                final int attempt)
+        {
+            this.id = id;
+            this.scenarioName = scenarioName;
+            this.propertyFilename = propertyFilename;
+            this.seed = seed;
+            this.args = args;
+            this.attempt = attempt;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString()
+        {
+            return "job " + this.id + " (" + this.scenarioName + ", seed " + this.seed + ")";
+        }
+    }
+
+    /** The result of a job, as sent back by the worker. */
+    static class Result implements Serializable
+    {
+        /** */
+        private static final long serialVersionUID = 20241019L;
+
+        /** the time series of the replication for the summary; null when the job failed. */
+        final ReplicationSeries series;
+
+        /** the outputs of the replication for the result table, in column order. */
+        final LinkedHashMap<String, Double> outputs;
+
+        /** the run time of the replication in ms. */
+        final long runTime;
+
+        /** the stack trace of the error when the job failed; null when the job completed. */
+        final String error;
+
+        /**
+         * @param series ReplicationSeries; the time series of the replication for the summary; null when the job failed
+         * @param outputs Map&lt;String, Double&gt;; the outputs of the replication for the result table
+         * @param runTime long; the run time of the replication in ms
+         * @param error String; the stack trace of the error when the job failed; null when the job completed
+         */
+        Result(final ReplicationSeries series, final Map<String, Double> outputs, final long runTime, final String error)
+        {
+            this.series = series;
+            this.outputs = new LinkedHashMap<>(outputs);
+            this.runTime = runTime;
+            this.error = error;
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package eu.heros.model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import eu.heros.factory.InputCache;
+import eu.heros.model.HerosFarmCoordinator.Job;
+import eu.heros.model.HerosFarmCoordinator.Result;
+
+/**
+ * HerosFarmWorker carries out the jobs of a HerosFarmCoordinator: it connects to the coordinator, runs the replication of
+ * every job it receives, and sends the time series and the key outputs of the replication back. The parsed input files are
+ * kept in an InputCache for the lifetime of the worker, so only the first job of a scenario parses the input. A worker can
+ * run several jobs at the same time, with one connection per slot; the slots share the parsed input. The worker ends when the
+ * coordinator has no jobs left. The connection only accepts the classes of the jobs. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.model.HerosFarmWorker host:port [nrSlots]
+ * </pre>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class HerosFarmWorker
+{
+    /** the number of seconds to keep trying to connect to a coordinator that is not listening yet. */
+    private static final int CONNECT_SECONDS = 60;
+
+    /** the host of the coordinator. */
+    private final String host;
+
+    /** the port of the coordinator. */
+    private final int port;
+
+    /** the parsed input files that are shared by the jobs of this worker. */
+    private final InputCache inputCache = new InputCache();
+
+    /**
+     * Create a worker for a coordinator.
+     * @param host String; the host of the coordinator
+     * @param port int; the port of the coordinator
+     */
+    public HerosFarmWorker(final String host, final int port)
+    {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Connect to the coordinator, and carry out jobs until the coordinator has no jobs left.
+     * @throws IOException when the connection with the coordinator cannot be made or is lost
+     * @throws InterruptedException when the thread is interrupted while waiting for the coordinator
+     */
+    public void serve() throws IOException, InterruptedException
+    {
+        try (Socket socket = connect(); ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream()))
+        {
+            socket.setKeepAlive(true);
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            in.setObjectInputFilter(HerosFarmCoordinator.FILTER);
+            while (true)
+            {
+                Job job;
+                try
+                {
+                    job = (Job) in.readObject();
+                }
+                catch (ClassNotFoundException exception)
+                {
+                    throw new IOException(exception);
+                }
+                if (job == null)
+                    return;
+                System.out.println("Worker: starting " + job + ", attempt " + job.attempt);
+                out.writeObject(runJob(job));
+                out.flush();
+                out.reset();
+            }
+        }
+    }
+
+    /**
+     * Connect to the coordinator, and retry for a while when the coordinator is not listening yet.
+     * @return Socket; the connection with the coordinator
+     * @throws IOException when the connection cannot be made
+     * @throws InterruptedException when the thread is interrupted while waiting for the coordinator
+     */
+    private Socket connect() throws IOException, InterruptedException
+    {
+        for (int attempt = 1;; attempt++)
+        {
+            try
+            {
+                return new Socket(this.host, this.port);
+            }
+            catch (ConnectException exception)
+            {
+                if (attempt >= CONNECT_SECONDS)
+                    throw exception;
+                Thread.sleep(1000);
+            }
+        }
+    }
+
+    /**
+     * Run the replication of a job.
+     * @param job Job; the job
+     * @return Result; the series and the outputs of the replication, or the stack trace when the replication failed
+     */
+    private Result runJob(final Job job)
+    {
+        long start = System.currentTimeMillis();
+        try
+        {
+            HerosModel model =
+                    HerosBatchRunner.runReplication(job.propertyFilename, job.args, job.seed, this.inputCache, true);
+            return new Result(model.getReplicationSeries(), model.getReplicationOutputs(), System.currentTimeMillis() - start,
+                    null);
+        }
+        catch (Exception exception)
+        {
+            StringWriter stackTrace = new StringWriter();
+            exception.printStackTrace(new PrintWriter(stackTrace));
+            System.err.println(stackTrace);
+            return new Result(null, new LinkedHashMap<>(), System.currentTimeMillis() - start, stackTrace.toString());
+        }
+    }
+
+    /**
+     * @param args String[]; host:port of the coordinator, and optionally the number of slots
+     * @throws Exception when the worker cannot be started
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length < 1 || !args[0].contains(":"))
+        {
+            System.err.println("Usage: HerosFarmWorker host:port [nrSlots]");
+            System.exit(-1);
+        }
+        String[] hostPort = args[0].split(":");
+        HerosFarmWorker worker = new HerosFarmWorker(hostPort[0], Integer.parseInt(hostPort[1]));
+        int nrSlots = args.length < 2 ? 1 : Integer.parseInt(args[1]);
+        List<Thread> slots = new ArrayList<>();
+        for (int i = 0; i < nrSlots; i++)
+        {
+            Thread slot = new Thread(() ->
+            {
+                try
+                {
+                    worker.serve();
+                }
+                catch (IOException | InterruptedException exception)
+                {
+                    exception.printStackTrace();
+                }
+            }, "worker-slot-" + i);
+            slot.start();
+            slots.add(slot);
+        }
+        for (Thread slot : slots)
+            slot.join();
+        System.out.println("Worker: no jobs left; " + worker.inputCache);
+        System.exit(0);
+    }
+
+}
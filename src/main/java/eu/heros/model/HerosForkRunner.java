@@ -0,0 +1,115 @@
+package eu.heros.model;
+
+import java.io.File;
+
+import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterInteger;
+import nl.tudelft.simulation.medlabs.simulation.SimpleDevsSimulator;
+
+/**
+ * HerosForkRunner runs policy variants of a scenario from a common checkpoint, so the days before the branch point are only
+ * simulated once. The checkpoint is either made in memory, by running the base scenario up to the branch day, or read from a
+ * checkpoint file that a run with the generic.CheckpointDay parameter has written. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.model.HerosForkRunner base.properties seed branchDay variant.properties [variant.properties ...]
+ * java -cp heros.jar eu.heros.model.HerosForkRunner checkpoint.hckp variant.properties [variant.properties ...]
+ * </pre>
+ *
+ * Every variant is restored from the checkpoint with the parameters of its own properties file, and runs until the end of its
+ * run length. The parameters that take effect after the branch point are the policy files, the output path and output
+ * settings, and the run length; the population, the activity patterns and the disease model are those of the checkpoint. The
+ * output of a variant starts at the branch point; with an in-memory checkpoint, the output up to the branch point is in the
+ * output path of the base scenario. As for a batch run with a seed, the suffix "-seed-[seed]" is added to the output paths.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class HerosForkRunner
+{
+    /** the serialized checkpoint of the base scenario when it is made in memory. */
+    private byte[] checkpointBytes = null;
+
+    /**
+     * Run the base scenario up to the branch day, and keep the checkpoint in memory.
+     * @param propertyFilename String; the properties file of the base scenario
+     * @param seed long; the seed of the replication
+     * @param branchDay int; the day of the checkpoint
+     * @return byte[]; the serialized checkpoint
+     * @throws Exception on an error in the parameters, or when the base scenario cannot be run
+     */
+    public byte[] runToBranchPoint(final String propertyFilename, final long seed, final int branchDay) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        HerosModel model = new HerosModel(HerosBatchRunner.newSimulator("SimHERoS-base"), propertyFilename);
+        model.setInteractive(false);
+        HerosApplication.loadInputParameters(model, propertyFilename, new String[0]);
+        HerosApplication.applySeed(model, seed);
+        ((InputParameterInteger) model.getInputParameterMap().get("generic.CheckpointDay")).setIntValue(branchDay);
+        model.setCheckpointConsumer((bytes) -> this.checkpointBytes = bytes);
+        double runLengthDays = (double) model.getParameterValueInt("generic.RunLength");
+        model.getSimulator().initialize(0.0, 0.0, runLengthDays * 24.0, model, seed);
+        model.getSimulator().start();
+        model.awaitEndOfReplication();
+        if (this.checkpointBytes == null)
+            throw new IllegalStateException("base scenario ended before the branch day " + branchDay);
+        System.out.println("\nCheckpoint of day " + branchDay + " made in " + (System.currentTimeMillis() - start) / 1000
+                + " s; " + this.checkpointBytes.length / (1024 * 1024) + " MB");
+        return this.checkpointBytes;
+    }
+
+    /**
+     * Restore a variant from the checkpoint, and run it to the end of its run length.
+     * @param checkpoint Checkpoint; a freshly read checkpoint, read with a new simulator
+     * @param propertyFilename String; the properties file of the variant
+     * @throws Exception on an error in the parameters, or when the variant cannot be run
+     */
+    public void runVariant(final Checkpoint checkpoint, final String propertyFilename) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        long seed = checkpoint.getSeed();
+
+        // a model that is not constructed only serves to load the parameters of the variant
+        HerosModel parameterModel = new HerosModel(new SimpleDevsSimulator("SimHERoS-parameters"), propertyFilename);
+        HerosApplication.loadInputParameters(parameterModel, propertyFilename, new String[0]);
+        HerosApplication.applySeed(parameterModel, seed);
+        HerosModel model = checkpoint.restore(parameterModel.getInputParameterMap());
+        model.setInteractive(false);
+        model.getSimulator().start();
+        model.awaitEndOfReplication();
+        System.out.println("\nVariant " + propertyFilename + " completed in " + (System.currentTimeMillis() - start) / 1000
+                + " s");
+    }
+
+    /**
+     * @param args String[]; base.properties seed branchDay variant.properties [...], or checkpoint.hckp
+     *            variant.properties [...]
+     * @throws Exception on an error in the arguments, or when a scenario cannot be run
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        boolean fromFile = args.length >= 2 && args[0].endsWith(Checkpoint.EXTENSION);
+        if (!fromFile && args.length < 4)
+        {
+            System.err.println("Usage: HerosForkRunner base.properties seed branchDay variant.properties [...]");
+            System.err.println("   or: HerosForkRunner checkpoint.hckp variant.properties [...]");
+            System.exit(-1);
+        }
+        HerosForkRunner runner = new HerosForkRunner();
+        byte[] bytes = fromFile ? null : runner.runToBranchPoint(args[0], Long.parseLong(args[1]), Integer.parseInt(args[2]));
+        for (int i = fromFile ? 1 : 3; i < args.length; i++)
+        {
+            SimpleDevsSimulator simulator = HerosBatchRunner.newSimulator("SimHERoS-" + new File(args[i]).getName());
+            Checkpoint checkpoint =
+                    fromFile ? Checkpoint.read(new File(args[0]), simulator) : Checkpoint.read(bytes, simulator);
+            runner.runVariant(checkpoint, args[i]);
+        }
+        System.exit(0);
+    }
+
+}
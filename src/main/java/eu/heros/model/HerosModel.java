@@ -1,24 +1,36 @@
 package eu.heros.model;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.net.URL;
 import java.rmi.RemoteException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
 
 import org.djutils.draw.bounds.Bounds2d;
 import org.djutils.event.Event;
 import org.djutils.event.EventListener;
 import org.djutils.io.URLResource;
 
+import eu.heros.disease.Covid19Progression;
 import eu.heros.factory.ConstructHerosModel;
+import eu.heros.factory.InputCache;
+import eu.heros.output.AsyncOccupancyWriter;
+import eu.heros.output.BinaryOccupancyWriter;
+import eu.heros.output.CsvOccupancyWriter;
+import eu.heros.output.OccupancyAggregator;
+import eu.heros.output.OccupancyLayout;
+import eu.heros.output.OccupancyWriter;
+import eu.heros.output.PersonSnapshotWriter;
+import eu.heros.output.ReplicationSeries;
+import eu.heros.output.ReplicationStatistics;
+import eu.heros.output.TransmissionLog;
 import eu.heros.person.CollegeStudent;
 import eu.heros.person.EssentialWorker;
 import eu.heros.person.Infant;
@@ -34,20 +46,27 @@ import eu.heros.person.WorkerCityToSatellite;
 import eu.heros.person.WorkerCountryToCity;
 import eu.heros.person.WorkerSatelliteToCity;
 import eu.heros.person.WorkerSatelliteToSatellite;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.set.TIntSet;
 import nl.tudelft.simulation.dsol.SimRuntimeException;
 import nl.tudelft.simulation.dsol.animation.gis.GisRenderable2d;
 import nl.tudelft.simulation.dsol.animation.gis.osm.OsmFileCsvParser;
 import nl.tudelft.simulation.dsol.animation.gis.osm.OsmRenderable2d;
 import nl.tudelft.simulation.dsol.experiment.Replication;
+import nl.tudelft.simulation.dsol.formalisms.eventscheduling.SimEvent;
+import nl.tudelft.simulation.dsol.formalisms.eventscheduling.SimEventInterface;
+import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterBoolean;
 import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterDouble;
 import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterException;
 import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterInteger;
 import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterMap;
 import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterString;
 import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
+import nl.tudelft.simulation.medlabs.disease.DiseasePhase;
 import nl.tudelft.simulation.medlabs.location.Location;
 import nl.tudelft.simulation.medlabs.location.LocationType;
 import nl.tudelft.simulation.medlabs.model.AbstractMedlabsModel;
+import nl.tudelft.simulation.medlabs.output.ResultWriter;
 import nl.tudelft.simulation.medlabs.person.Person;
 import nl.tudelft.simulation.medlabs.person.index.IdxPerson;
 import nl.tudelft.simulation.medlabs.properties.Properties;
@@ -70,14 +89,17 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
     /** */
     private static final long serialVersionUID = 20200919L;
 
+    /** the sublocation counts for the aggregated occupancy dumps, which only use the location counts. */
+    private static final int[] NO_SUBLOCATION_COUNTS = new int[0];
+
     /** the base path for the input files. */
     private String basePath;
 
     /** the GIS map. */
-    private GisRenderable2d gisMap;
+    private transient GisRenderable2d gisMap;
 
     /** the cached extent. */
-    private Bounds2d extent = null;
+    private transient Bounds2d extent = null;
 
     /** the extra person properties. */
     private Properties properties;
@@ -85,11 +107,71 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
     /** the types of persons for the week pattern change. */
     private Map<Class<? extends Person>, String> personTypes = new HashMap<>();
 
-    /** The file with nr of persons per location. */
-    private BufferedWriter locationNrWriter;
+    /** the order of the locations and sublocations in the occupancy dump. */
+    private transient OccupancyLayout occupancyLayout;
+
+    /** the writer for the number of persons per location and sublocation. */
+    private transient OccupancyWriter occupancyWriter;
+
+    /** the writer for the occupancy per location type and/or grid cell; null when not aggregated. */
+    private transient OccupancyWriter occupancyAggregator;
+
+    /** the number of persons per location and sublocation, kept up to date by the locations. */
+    private OccupancyCounters occupancyCounters;
+
+    /** the number of persons per location in the order of the layout, reused for every dump. */
+    private transient int[] locationCounts;
+
+    /** the number of persons per sublocation in the order of the layout, reused for every dump. */
+    private transient int[] subLocationCounts;
+
+    /** the log of the infection events; null when the transmission log is off. */
+    private transient TransmissionLog transmissionLog = null;
+
+    /** the writer for the binary person snapshots; made at the first snapshot. */
+    private transient PersonSnapshotWriter personSnapshotWriter = null;
+
+    /** whether the id maps have been written to the output path of this run. */
+    private transient boolean idMapsWritten = false;
+
+    /** the time series of this replication for the cross-replication summary; null when no summary is made. */
+    private ReplicationSeries replicationSeries = null;
+
+    /** the family members per home location in a compact layout. */
+    private FamilyIndex familyIndex;
 
-    /** The file with nr of persons per sublocation. */
-    private BufferedWriter sublocationNrWriter;
+    /** the family map in the medlabs layout, only built when asked for. */
+    private transient TIntObjectMap<TIntSet> familyMap = null;
+
+    /** the mapping between the ids in the input files and the dense ids of the locations and persons in the model. */
+    private IdMapping idMapping;
+
+    /** the locations, indexed by their (dense) id; null for an unused id. */
+    private Location[] locations = new Location[0];
+
+    /** the persons, indexed by their (dense) id; null for an unused id. */
+    private Person[] persons = new Person[0];
+
+    /** the number of probability-based locations that infect their visitors at a fixed rate, also when nobody is ill. */
+    private int nrFixedRateLocations = 0;
+
+    /** the parsed input files that are shared with the other models in the JVM; null when the model reads its own input. */
+    private transient InputCache inputCache = null;
+
+    /** released when the output files of the replication have been closed, also when the replication failed. */
+    private transient CountDownLatch replicationEnded = new CountDownLatch(1);
+
+    /** the exception that ended the replication; null when the replication has not failed. */
+    private transient volatile Exception replicationError = null;
+
+    /** the checkpoint from which the model is restored when it is constructed; null for a model built from the input. */
+    private transient Checkpoint restoreCheckpoint = null;
+
+    /** receives the checkpoint in memory instead of the checkpoint file; null to write the checkpoint file. */
+    private transient Consumer<byte[]> checkpointConsumer = null;
+
+    /** whether the time series for the summary are collected when there is no summary path, e.g., for a remote summary. */
+    private transient boolean collectReplicationSeries = false;
 
     /**
      * Construct the model.
@@ -157,8 +239,32 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
     @Override
     public void constructModel() throws SimRuntimeException
     {
+        if (this.restoreCheckpoint != null)
+        {
+            constructFromCheckpoint();
+            return;
+        }
         super.constructModel();
         getSimulator().scheduleEventNow(this, "scheduleLocationDump", null);
+        openTransmissionLog();
+        if (getParameterValueInt("generic.CheckpointDay") > 0)
+            getSimulator().scheduleEvent(new SimEvent<Double>(24.0 * getParameterValueInt("generic.CheckpointDay"),
+                    SimEventInterface.MAX_PRIORITY, this, "checkpoint", null));
+        if (getParameterValueBoolean("generic.WriteOutput") && getParameterValueInt("generic.PersonSnapshotIntervalDays") > 0)
+            getSimulator().scheduleEventNow(this, "personSnapshot", null);
+        if (getParameterValue("generic.SummaryPath").trim().length() > 0 || this.collectReplicationSeries)
+        {
+            this.replicationSeries = new ReplicationSeries(getParameterValueLong("generic.Seed"));
+            getSimulator().scheduleEventNow(this, "collectStatistics", null);
+        }
+        if (getParameterValueBoolean("generic.StopOnExtinction"))
+        {
+            if (this.nrFixedRateLocations > 0)
+                System.err.println("StopOnExtinction ignored: " + this.nrFixedRateLocations
+                        + " locations infect their visitors at a fixed rate, so the epidemic cannot become extinct");
+            else
+                getSimulator().scheduleEventRel(1.0, this, "checkExtinction", null);
+        }
         makePersonTypes();
 
         if (isInteractive())
@@ -210,6 +316,144 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
         }
     }
 
+    /**
+     * Open the transmission log in the output path when it is switched on.
+     * @throws SimRuntimeException on error creating the log file
+     */
+    private void openTransmissionLog()
+    {
+        if (getParameterValueBoolean("generic.TransmissionLog"))
+        {
+            String outputPath = getParameterValue("generic.OutputPath");
+            new File(outputPath).mkdirs();
+            try
+            {
+                this.transmissionLog = new TransmissionLog(outputPath, this.locationTypeList);
+                writeIdMaps(outputPath);
+            }
+            catch (IOException ioe)
+            {
+                throw new SimRuntimeException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Write the id maps to the output path, once per run. The maps are needed to translate the ids in the occupancy dump and
+     * in the transmission log back to the ids of the input files.
+     * @param outputPath String; the directory to write the maps to
+     * @throws IOException on error writing the maps
+     */
+    private void writeIdMaps(final String outputPath) throws IOException
+    {
+        if (!this.idMapsWritten)
+        {
+            this.idMapping.write(outputPath, getGzipThreads(), getGzipBlockSize());
+            this.idMapsWritten = true;
+        }
+    }
+
+    /**
+     * Prepare a model that has been read from a checkpoint for construction on a new simulator. Called by the checkpoint
+     * before the simulator is initialized with this model.
+     * @param newSimulator SimpleDevsSimulatorInterface; the new simulator
+     * @param parameters InputParameterMap; the parameters for the restored model, or null to keep the parameters of the
+     *            checkpoint
+     * @param checkpoint Checkpoint; the checkpoint with the pending events
+     */
+    void prepareRestore(final SimpleDevsSimulatorInterface newSimulator, final InputParameterMap parameters,
+            final Checkpoint checkpoint)
+    {
+        this.simulator = newSimulator;
+        if (parameters != null)
+            this.inputParameterMap = parameters;
+        this.restoreCheckpoint = checkpoint;
+        this.replicationEnded = new CountDownLatch(1);
+        this.replicationError = null;
+    }
+
+    /**
+     * Construct the model from a checkpoint instead of from the input files: the state of the model is already there, so only
+     * the pending events are scheduled on the new simulator and the output files are opened in the output path.
+     * @throws SimRuntimeException on error opening the output files or scheduling the events
+     */
+    private void constructFromCheckpoint()
+    {
+        Checkpoint checkpoint = this.restoreCheckpoint;
+        this.restoreCheckpoint = null;
+        if (getParameterValueBoolean("generic.WriteOutput"))
+        {
+            String outputPath = getParameterValue("generic.OutputPath");
+            new File(outputPath).mkdirs();
+            // the medlabs ResultWriter stays on the simulation thread: it samples the model in simulation events that it
+            // schedules itself (see Checkpoint.scheduleEvents), and its output streams are internal to medlabs; HERoS only
+            // constructs it (here, and in AbstractMedlabsModel.constructModel for a normal run) and calls closeFiles. Only the
+            // HERoS output uses the writer thread and the parallel compression.
+            setResultWriter(new ResultWriter(this, outputPath));
+            openLocationDump();
+        }
+        openTransmissionLog();
+        try
+        {
+            checkpoint.scheduleEvents(this);
+            this.simulator.addListener(this, Replication.END_REPLICATION_EVENT);
+        }
+        catch (Exception exception)
+        {
+            throw new SimRuntimeException(exception);
+        }
+    }
+
+    /**
+     * Let the checkpoint be handed over in memory instead of being written to the checkpoint file. The replication ends after
+     * the checkpoint has been made, since the rest of the run is simulated by the models that are restored from it.
+     * @param checkpointConsumer Consumer&lt;byte[]&gt;; receives the serialized checkpoint, or null to write the checkpoint
+     *            file
+     */
+    public void setCheckpointConsumer(final Consumer<byte[]> checkpointConsumer)
+    {
+        this.checkpointConsumer = checkpointConsumer;
+    }
+
+    /**
+     * Write a checkpoint of the simulation to the checkpoint file, and go on with the simulation; or hand the checkpoint to the
+     * checkpoint consumer, and end the replication. The checkpoint event has the highest priority, so the checkpoint is made
+     * before the other events at the same time, such as the policies that start at the checkpoint day.
+     */
+    protected void checkpoint()
+    {
+        if (this.checkpointConsumer != null)
+        {
+            try
+            {
+                this.checkpointConsumer.accept(Checkpoint.toBytes(this));
+            }
+            catch (IOException ioe)
+            {
+                throw new MedlabsRuntimeException(ioe);
+            }
+            getSimulator().endReplication();
+            return;
+        }
+        String fileName = getParameterValue("generic.CheckpointFile").trim();
+        int day = (int) Math.round(getSimulator().getSimulatorTime() / 24.0);
+        File file = fileName.length() > 0 ? new File(fileName) : new File(getParameterValue("generic.OutputPath"),
+                String.format("checkpoint-day%03d%s", day, Checkpoint.EXTENSION));
+        long start = System.currentTimeMillis();
+        try
+        {
+            if (file.getAbsoluteFile().getParentFile() != null)
+                file.getAbsoluteFile().getParentFile().mkdirs();
+            Checkpoint.write(this, file);
+        }
+        catch (IOException ioe)
+        {
+            throw new MedlabsRuntimeException(ioe);
+        }
+        System.out.println("\nCheckpoint of day " + day + " written to " + file + " in " + (System.currentTimeMillis() - start)
+                + " ms");
+    }
+
     /**
      * @return gisMap
      */
@@ -236,60 +480,230 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
     {
         if (getParameterValueBoolean("generic.WriteOutput"))
         {
-            String outputPath = getParameterValue("generic.OutputPath");
+            openLocationDump();
+            locationDump();
+        }
+    }
 
-            try
+    /**
+     * Open the writers of the occupancy dump in the output path. Called at the start of the run, and when the model is
+     * restored from a checkpoint.
+     */
+    private void openLocationDump()
+    {
+        String outputPath = getParameterValue("generic.OutputPath");
+        String format = getParameterValue("generic.LocationDumpFormat").trim().toLowerCase();
+        int keyframeInterval = getParameterValueInt("generic.LocationDumpKeyframeInterval");
+        Set<String> levels = parseNames(getParameterValue("generic.LocationDumpAggregation"));
+        for (String level : levels)
+        {
+            if (!level.equals("location") && !level.equals("type") && !level.equals("district") && !level.equals("grid"))
+                throw new MedlabsRuntimeException(
+                        "generic.LocationDumpAggregation should contain location, type, district and/or grid, not " + level);
+        }
+        int nrBuffers = getParameterValueInt("generic.OutputBufferHours");
+
+        try
+        {
+            if (levels.contains("type") || levels.contains("district") || levels.contains("grid"))
             {
-                FileOutputStream fos1 = new FileOutputStream(new File(outputPath + "/locationNrPersons.csv.gz"));
-                BufferedOutputStream bos1 = new BufferedOutputStream(fos1, 128 * 1024);
-                GZIPOutputStream gos1 = new GZIPOutputStream(bos1);
-                OutputStreamWriter osw1 = new OutputStreamWriter(gos1, "UTF-8");
-                this.locationNrWriter = new BufferedWriter(osw1, 128 * 1024);
-                this.locationNrWriter.write("\"Time(h)\",\"LocationNr\",\"NrPersons\"\n");
-                this.locationNrWriter.flush();
-
-                FileOutputStream fos2 = new FileOutputStream(new File(outputPath + "/sublocationNrPersons.csv.gz"));
-                BufferedOutputStream bos2 = new BufferedOutputStream(fos2, 128 * 1024);
-                GZIPOutputStream gos2 = new GZIPOutputStream(bos2);
-                OutputStreamWriter osw2 = new OutputStreamWriter(gos2, "UTF-8");
-                this.sublocationNrWriter = new BufferedWriter(osw2, 128 * 1024);
-                this.sublocationNrWriter.write("\"Time(h)\",\"LocationNr\",\"SubLocationNr\",\"NrPersons\"\n");
-                this.sublocationNrWriter.flush();
+                boolean perDistrict = levels.contains("district");
+                double gridSize = levels.contains("grid") ? getParameterValueDouble("generic.LocationDumpGridSize") : 0.0;
+                this.occupancyAggregator = new OccupancyAggregator(outputPath, this.locations, levels.contains("type"),
+                        perDistrict ? this.idMapping.getDistrictIndices() : null,
+                        perDistrict ? this.idMapping.getDistrictNames() : null, gridSize, getGzipThreads(),
+                        getGzipBlockSize());
+                if (nrBuffers > 0)
+                    this.occupancyAggregator =
+                            new AsyncOccupancyWriter(this.occupancyAggregator, this.locations.length, 0, nrBuffers);
             }
-            catch (IOException ioe)
+            writeIdMaps(outputPath);
+        }
+        catch (IOException ioe)
+        {
+            throw new MedlabsRuntimeException(ioe);
+        }
+        if (!levels.contains("location"))
+            return;
+
+        Set<String> types = parseNames(getParameterValue("generic.LocationDumpTypes"));
+        this.occupancyLayout =
+                new OccupancyLayout(this.locationTypeList, types, (id) -> this.idMapping.getOriginalLocationId(id));
+        this.locationCounts = new int[this.occupancyLayout.getNumberOfLocations()];
+        this.subLocationCounts = new int[this.occupancyLayout.getTotalSubLocations()];
+        try
+        {
+            if (format.equals("csv"))
+                this.occupancyWriter = new CsvOccupancyWriter(outputPath, this.occupancyLayout, keyframeInterval,
+                        getGzipThreads(), getGzipBlockSize());
+            else if (format.equals("binary"))
+                this.occupancyWriter = new BinaryOccupancyWriter(outputPath, this.occupancyLayout, keyframeInterval);
+            else
+                throw new MedlabsRuntimeException("generic.LocationDumpFormat should be csv or binary, not " + format);
+            if (nrBuffers > 0)
+                this.occupancyWriter = new AsyncOccupancyWriter(this.occupancyWriter, this.occupancyLayout, nrBuffers);
+        }
+        catch (IOException ioe)
+        {
+            throw new MedlabsRuntimeException(ioe);
+        }
+    }
+
+    /**
+     * @return the log of the infection events, or null when the transmission log is off
+     */
+    public TransmissionLog getTransmissionLog()
+    {
+        return this.transmissionLog;
+    }
+
+    /**
+     * Write a binary snapshot of the state of all persons, and schedule the next snapshot.
+     */
+    protected void personSnapshot()
+    {
+        if (this.personSnapshotWriter == null)
+            this.personSnapshotWriter =
+                    new PersonSnapshotWriter(getDiseaseProgression().getDiseasePhases(), getWeekPatternList(), this.idMapping);
+        double time = getSimulator().getSimulatorTime();
+        File file = new File(getParameterValue("generic.OutputPath"),
+                String.format("personSnapshot-day%03d.hsnp", (int) Math.round(time / 24.0)));
+        try
+        {
+            this.personSnapshotWriter.write(file, time, this.persons);
+        }
+        catch (IOException ioe)
+        {
+            throw new MedlabsRuntimeException(ioe);
+        }
+        getSimulator().scheduleEventRel(24.0 * getParameterValueInt("generic.PersonSnapshotIntervalDays"), this,
+                "personSnapshot", null);
+    }
+
+    /**
+     * Add a sample with the number of persons per disease phase and per location type to the series of this replication.
+     */
+    protected void collectStatistics()
+    {
+        this.replicationSeries.startSample(getSimulator().getSimulatorTime());
+        for (DiseasePhase phase : getDiseaseProgression().getDiseasePhases())
+            this.replicationSeries.set("phase:" + phase.getName(), phase.getNumberOfPersons());
+        OccupancyCounters counters = getOccupancyCounters();
+        for (LocationType locationType : this.locationTypeList)
+        {
+            int nrPersons = 0;
+            for (Location location : locationType.getLocationMap().valueCollection())
             {
-                throw new MedlabsRuntimeException(ioe);
+                if (location.getId() >= 0)
+                    nrPersons += counters.getLocationCount(location.getId());
             }
+            this.replicationSeries.set("occupancy:" + locationType.getName(), nrPersons);
+        }
+        getSimulator().scheduleEventRel(getParameterValueInt("generic.SummaryIntervalHours"), this, "collectStatistics",
+                null);
+    }
 
-            locationDump();
+    /**
+     * End the replication when the epidemic is extinct: no person is in an ill disease phase, and no disease progression event
+     * is pending, e.g., for an exposed person at the end of the incubation period. Without ill persons, only the locations
+     * that infect at a fixed rate could infect others; the check is not scheduled for a model with such locations. So the
+     * disease phases do not change anymore, and the rest of the run would only move persons between their activities. The
+     * summary series of the disease phases are continued up to the run length with the current numbers, so the replication
+     * still counts in the cross-replication summary; the occupancy series, the occupancy dumps and the result files end at
+     * the time of extinction. When the epidemic is not extinct, the check is repeated after an hour.
+     */
+    protected void checkExtinction()
+    {
+        if (this.nrFixedRateLocations > 0 || !isExtinct())
+        {
+            getSimulator().scheduleEventRel(1.0, this, "checkExtinction", null);
+            return;
         }
+        double time = getSimulator().getSimulatorTime();
+        double endTime = 24.0 * getParameterValueInt("generic.RunLength");
+        System.out.println("\nEpidemic extinct at day " + (int) (time / 24.0) + "; replication ended "
+                + (int) ((endTime - time) / 24.0) + " days early");
+        if (this.replicationSeries != null && this.replicationSeries.getNumberOfSamples() > 0)
+        {
+            double interval = getParameterValueInt("generic.SummaryIntervalHours");
+            double sampleTime = this.replicationSeries.getTime(this.replicationSeries.getNumberOfSamples() - 1) + interval;
+            for (; sampleTime <= endTime; sampleTime += interval)
+            {
+                this.replicationSeries.startSample(sampleTime);
+                for (DiseasePhase phase : getDiseaseProgression().getDiseasePhases())
+                    this.replicationSeries.set("phase:" + phase.getName(), phase.getNumberOfPersons());
+            }
+        }
+        getSimulator().endReplication();
+    }
+
+    /**
+     * Return whether no person is ill and no disease progression event is pending. The event list is only scanned when nobody
+     * is ill, which is rare before the epidemic is extinct.
+     * @return boolean; whether no person is ill and no disease progression event is pending
+     */
+    boolean isExtinct()
+    {
+        for (DiseasePhase phase : getDiseaseProgression().getDiseasePhases())
+        {
+            if (phase.isIll() && phase.getNumberOfPersons() > 0)
+                return false;
+        }
+        for (SimEventInterface<Double> event : getSimulator().getEventList())
+        {
+            if (event instanceof SimEvent && ((SimEvent<Double>) event).getTarget() == getDiseaseProgression())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a comma-separated list of names.
+     * @param names String; comma-separated names
+     * @return Set&lt;String&gt;; the trimmed, lower-case names; empty when there are no names
+     */
+    private static Set<String> parseNames(final String names)
+    {
+        Set<String> set = new LinkedHashSet<>();
+        for (String name : names.split(","))
+        {
+            if (name.trim().length() > 0)
+                set.add(name.trim().toLowerCase());
+        }
+        return set;
     }
 
     protected void locationDump()
     {
         double time = getSimulator().getSimulatorTime();
-        try
+        OccupancyCounters counters = getOccupancyCounters();
+        if (this.occupancyAggregator != null)
         {
-            for (LocationType locationType : this.locationTypeList)
+            try
             {
-                for (Location location : locationType.getLocationMap().valueCollection())
-                {
-                    if (location.getId() >= 0)
-                    {
-                        this.locationNrWriter
-                                .write(time + "," + location.getId() + "," + location.getAllPersonIds().size() + "\n");
-                        for (int subLocationIndex = 1; subLocationIndex < location
-                                .getNumberOfSubLocations(); subLocationIndex++)
-                        {
-                            int nrSub = this.diseaseTransmission.getNrPersonsInSublocation(location, (short) subLocationIndex);
-                            this.sublocationNrWriter
-                                    .write(time + "," + location.getId() + "," + subLocationIndex + "," + nrSub + "\n");
-                        }
-                    }
-                }
+                this.occupancyAggregator.write(time, counters.getLocationCounts(), NO_SUBLOCATION_COUNTS);
             }
-            this.locationNrWriter.flush();
-            this.sublocationNrWriter.flush();
+            catch (IOException ioe)
+            {
+                throw new MedlabsRuntimeException(ioe);
+            }
+        }
+        if (this.occupancyWriter == null)
+        {
+            getSimulator().scheduleEventRel(1.0, this, "locationDump", null);
+            return;
+        }
+        int s = 0;
+        for (int i = 0; i < this.occupancyLayout.getNumberOfLocations(); i++)
+        {
+            int locationId = this.occupancyLayout.getLocation(i).getId();
+            this.locationCounts[i] = counters.getLocationCount(locationId);
+            for (int subLocationIndex = 1; subLocationIndex <= this.occupancyLayout.getNrSubLocations(i); subLocationIndex++)
+                this.subLocationCounts[s++] = counters.getSubLocationCount(locationId, subLocationIndex);
+        }
+        try
+        {
+            this.occupancyWriter.write(time, this.locationCounts, this.subLocationCounts);
         }
         catch (IOException ioe)
         {
@@ -384,6 +798,43 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
                 "[R/O] has to match file, value = {area, distance}", "area", 1.7));
         genericMap.add(new InputParameterString("diseasePropertiesFile", "path and name for the disease properties file",
                 "[R/O] can be resource, absolute or relative", "/alpha.properties", 1.8));
+        genericMap.add(new InputParameterString("LocationDumpFormat", "format of the location and sublocation occupancy dumps",
+                "csv (locationNrPersons.csv.gz) or binary (occupancy.hocc)", "csv", 1.9));
+        genericMap.add(new InputParameterInteger("LocationDumpKeyframeInterval", "hours between full occupancy dumps",
+                "0 = always full; n > 0 = only changes, with a full dump every n hours", 0, 0, 100000, "%d", 1.95));
+        genericMap.add(new InputParameterInteger("OutputBufferHours", "hourly dumps buffered for the output thread",
+                "0 = write on the simulation thread; n > 0 = separate output thread", 4, 0, 1000, "%d", 1.96));
+        genericMap.add(new InputParameterString("LocationDumpAggregation", "aggregation levels of the occupancy dumps",
+                "comma-separated: location (per location), type (per location type), district (per district), "
+                        + "grid (per grid cell)",
+                "location", 1.97));
+        genericMap.add(new InputParameterString("LocationDumpTypes", "location types for the per-location occupancy dump",
+                "comma-separated location type names (blank means all)", "", 1.98));
+        genericMap.add(new InputParameterDouble("LocationDumpGridSize", "grid cell size for the grid occupancy dump (m)",
+                "size of the square grid cells in meters", 1000.0, 10.0, 100000.0, true, true, "%f", 1.99));
+        genericMap.add(new InputParameterString("SummaryPath", "path and name of the cross-replication summary",
+                "without extension; replications are merged into .stats and .csv.gz (blank means no summary)", "", 1.991));
+        genericMap.add(new InputParameterInteger("SummaryIntervalHours", "hours between samples for the summary",
+                "disease phases and occupancy per location type are sampled every n hours", 24, 1, 10000, "%d", 1.992));
+        genericMap.add(new InputParameterInteger("GzipThreads", "threads for the compression of the .csv.gz output",
+                "0 = standard single-threaded gzip; n > 0 = blocks compressed in parallel", 0, 0, 256, "%d", 1.993));
+        genericMap.add(new InputParameterInteger("GzipBlockSizeKB", "block size for parallel gzip compression (kB)",
+                "every block is a separate gzip member", 1024, 64, 65536, "%d", 1.994));
+        genericMap.add(new InputParameterInteger("PersonSnapshotIntervalDays", "days between binary person snapshots",
+                "0 = no snapshots; n > 0 = personSnapshot-dayNNN.hsnp every n days", 0, 0, 10000, "%d", 1.995));
+        genericMap.add(new InputParameterBoolean("TransmissionLog", "log of the infection events",
+                "infectee, location, time and candidate infectors in transmission.htrn", false, 1.996));
+        genericMap.add(new InputParameterInteger("CheckpointDay", "day at which a checkpoint of the simulation is written",
+                "0 = no checkpoint; policy variants can be forked from the checkpoint", 0, 0, 10000, "%d", 1.997));
+        genericMap.add(new InputParameterString("CheckpointFile", "path and name of the checkpoint file",
+                "blank means checkpoint-dayNNN.hckp in the output path", "", 1.998));
+        genericMap.add(new InputParameterBoolean("StopOnExtinction",
+                "end the replication when nobody is ill or exposed anymore",
+                "ignored with locations that infect at a fixed rate; the summary series are continued as constants", false,
+                1.999));
+        genericMap.add(new InputParameterDouble("PersonSampleFraction", "fraction of the households in the model",
+                "1.0 = full population; households are kept or skipped as a whole", 1.0, 0.0, 1.0, false, true, "%f",
+                1.9995));
 
         InputParameterMap policyMap = (InputParameterMap) root.get("policies");
         policyMap.add(new InputParameterInteger("NumberInfected", "number of people infected at t=0", "(can be 0)", 0, 1.0));
@@ -391,6 +842,12 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
                 0, 0, 100, "%d", 2.0));
         policyMap.add(new InputParameterInteger("MaxAgeInfected", "highest age of people infected at t=0", "between 0 and 100.",
                 100, 0, 100, "%d", 3.0));
+        policyMap.add(new InputParameterString("SeedLocationTypes", "location types for the people infected at t=0",
+                "comma-separated; home, work or school location (blank means all)", "", 3.1));
+        policyMap.add(new InputParameterString("SeedDistricts", "districts for the people infected at t=0",
+                "comma-separated district or WK_CODE values (blank means all)", "", 3.2));
+        policyMap.add(new InputParameterString("SeedCluster", "spatial cluster for the people infected at t=0",
+                "lat,lon,radius [m] of home, work or school (blank means all)", "", 3.3));
         policyMap.add(new InputParameterString("LocationPolicyFile", "path and name for the location policies file",
                 "(blank means no policies)", "", 4.0));
         policyMap.add(new InputParameterString("DiseasePolicyFile", "path and name for the disease policies file",
@@ -510,6 +967,241 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
         return this.locationTypeIdMap.get((byte) 0);
     }
 
+    /**
+     * Fill the arrays of locations and persons, indexed by their dense id, from the location map and person map. This method
+     * is called after all locations and persons have been made.
+     */
+    public void makeIndexArrays()
+    {
+        this.locations = new Location[this.idMapping.getNumberOfLocations()];
+        for (Location location : getLocationMap().valueCollection())
+        {
+            if (location.getId() >= 0)
+                this.locations[location.getId()] = location;
+        }
+        this.persons = new Person[this.idMapping.getNumberOfPersons()];
+        for (Person person : getPersonMap().valueCollection())
+            this.persons[person.getId()] = person;
+    }
+
+    /**
+     * Return the number of persons per location and sublocation. The counters are updated by the HERoS locations when persons
+     * enter or leave them, so they always hold the occupancy at the current simulation time.
+     * @return the occupancy counters of the model
+     */
+    public OccupancyCounters getOccupancyCounters()
+    {
+        if (this.occupancyCounters == null)
+            this.occupancyCounters = new OccupancyCounters();
+        return this.occupancyCounters;
+    }
+
+    /**
+     * @param id int; the (dense) id of the location; negative ids of special locations are not in the array
+     * @return the location with the given id, or null when the id is not used
+     */
+    public Location getLocation(final int id)
+    {
+        return this.locations[id];
+    }
+
+    /**
+     * @param id int; the (dense) id of the person
+     * @return the person with the given id
+     */
+    public Person getPerson(final int id)
+    {
+        return this.persons[id];
+    }
+
+    /**
+     * Return the array of persons indexed by their id, for fast lookups in the inner loops of the model. The array should not
+     * be changed.
+     * @return the persons, indexed by their (dense) id
+     */
+    public Person[] getPersons()
+    {
+        return this.persons;
+    }
+
+    /**
+     * @return the mapping between the ids in the input files and the ids of the locations and persons in the model
+     */
+    public IdMapping getIdMapping()
+    {
+        return this.idMapping;
+    }
+
+    /**
+     * @param idMapping IdMapping; the mapping between the ids in the input files and the ids in the model
+     */
+    public void setIdMapping(final IdMapping idMapping)
+    {
+        this.idMapping = idMapping;
+    }
+
+    /**
+     * @return the family members per home location
+     */
+    public FamilyIndex getFamilyIndex()
+    {
+        return this.familyIndex;
+    }
+
+    /**
+     * @param familyIndex FamilyIndex; the family members per home location
+     */
+    public void setFamilyIndex(final FamilyIndex familyIndex)
+    {
+        this.familyIndex = familyIndex;
+        this.familyMap = null;
+    }
+
+    /**
+     * Return the family members per home location in the layout of the medlabs model. HERoS keeps the families in the
+     * FamilyIndex; the map with one set per home location is only built on first use, for code that still needs it.
+     * {@inheritDoc}
+     */
+    @Override
+    public TIntObjectMap<TIntSet> getFamilyMembersByHomeLocation()
+    {
+        if (this.familyIndex == null)
+            return super.getFamilyMembersByHomeLocation();
+        if (this.familyMap == null)
+            this.familyMap = this.familyIndex.toFamilyMap();
+        return this.familyMap;
+    }
+
+    /**
+     * Register a probability-based location that infects its visitors at a fixed rate, also when nobody is ill. The epidemic
+     * in a model with such locations cannot become extinct.
+     */
+    public void addFixedRateLocation()
+    {
+        this.nrFixedRateLocations++;
+    }
+
+    /**
+     * @return the number of probability-based locations that infect their visitors at a fixed rate
+     */
+    public int getNumberOfFixedRateLocations()
+    {
+        return this.nrFixedRateLocations;
+    }
+
+    /**
+     * @return the parsed input files that are shared with the other models in the JVM, or null when the model reads its own
+     *         input
+     */
+    public InputCache getInputCache()
+    {
+        return this.inputCache;
+    }
+
+    /**
+     * Set the cache with the parsed input files, to share the input with the other models in the JVM. Should be called before
+     * the model is constructed.
+     * @param inputCache InputCache; the cache with the parsed input files, or null to let the model read its own input
+     */
+    public void setInputCache(final InputCache inputCache)
+    {
+        this.inputCache = inputCache;
+    }
+
+    /**
+     * @return the number of threads to compress the gzipped output files of this model; 0 for standard gzip
+     */
+    public int getGzipThreads()
+    {
+        return getParameterValueInt("generic.GzipThreads");
+    }
+
+    /**
+     * @return the block size in bytes to compress the gzipped output files of this model in parallel
+     */
+    public int getGzipBlockSize()
+    {
+        return 1024 * getParameterValueInt("generic.GzipBlockSizeKB");
+    }
+
+    /**
+     * @return the time series of this replication for the cross-replication summary, or null when no summary is made
+     */
+    public ReplicationSeries getReplicationSeries()
+    {
+        return this.replicationSeries;
+    }
+
+    /**
+     * Return the key outputs of the replication, for the result tables of the batch tools: the number of persons per disease
+     * phase ("final:[phase]"), the attack rate as the fraction of the persons that is no longer susceptible ("attackRate"),
+     * and, when the summary series are collected, the peak number of persons per disease phase over the samples
+     * ("peak:[phase]") and the time of the peak in hours ("peakTime(h):[phase]"). Called at the end of the replication, the
+     * outputs are final.
+     * @return Map&lt;String, Double&gt;; the outputs by name, in a fixed order
+     */
+    public Map<String, Double> getReplicationOutputs()
+    {
+        Map<String, Double> outputs = new LinkedHashMap<>();
+        for (DiseasePhase phase : getDiseaseProgression().getDiseasePhases())
+            outputs.put("final:" + phase.getName(), (double) phase.getNumberOfPersons());
+        double nrSusceptible = ((Covid19Progression) getDiseaseProgression()).susceptible.getNumberOfPersons();
+        outputs.put("attackRate", 1.0 - nrSusceptible / Math.max(1, getPersonMap().size()));
+        if (this.replicationSeries != null)
+        {
+            for (String name : this.replicationSeries.getSeriesNames())
+            {
+                if (!name.startsWith("phase:"))
+                    continue;
+                int peak = 0;
+                for (int sample = 1; sample < this.replicationSeries.getNumberOfSamples(); sample++)
+                {
+                    if (this.replicationSeries.getValue(name, sample) > this.replicationSeries.getValue(name, peak))
+                        peak = sample;
+                }
+                outputs.put("peak:" + name.substring(6), this.replicationSeries.getValue(name, peak));
+                outputs.put("peakTime(h):" + name.substring(6), this.replicationSeries.getTime(peak));
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Let the model collect the time series for the cross-replication summary, also when it has no summary path. Without a
+     * summary path, the series are not merged into a summary file, but are left to the caller. Should be called before the
+     * model is constructed.
+     * @param collectReplicationSeries boolean; whether to collect the time series without a summary path
+     */
+    public void setCollectReplicationSeries(final boolean collectReplicationSeries)
+    {
+        this.collectReplicationSeries = collectReplicationSeries;
+    }
+
+    /**
+     * Wait until the replication has ended and the output files of the model have been closed.
+     * @throws InterruptedException when the thread is interrupted while waiting
+     * @throws SimRuntimeException when the replication was ended by an exception in one of its events
+     */
+    public void awaitEndOfReplication() throws InterruptedException
+    {
+        this.replicationEnded.await();
+        if (this.replicationError != null)
+            throw new SimRuntimeException("replication failed: " + this.replicationError.getMessage(), this.replicationError);
+    }
+
+    /**
+     * End a replication that failed with an exception in one of its events. The simulator has already been cleaned up, and
+     * thereby does not fire the END_REPLICATION_EVENT; the output files are closed here, the series of the replication are not
+     * merged into the summary, and the threads that wait for the end of the replication are released with the exception.
+     * @param exception Exception; the exception that ended the replication
+     */
+    void replicationFailed(final Exception exception)
+    {
+        this.replicationError = exception;
+        closeOutputFiles();
+        this.replicationEnded.countDown();
+    }
+
     /**
      * @return the basePath
      */
@@ -532,20 +1224,65 @@ public class HerosModel extends AbstractMedlabsModel implements EventListener
     {
         if (event.getType().equals(Replication.END_REPLICATION_EVENT))
         {
+            closeOutputFiles();
+
+            if (this.replicationSeries != null && getParameterValue("generic.SummaryPath").trim().length() > 0)
+            {
+                try
+                {
+                    String summaryPath = getParameterValue("generic.SummaryPath").trim();
+                    ReplicationStatistics statistics = ReplicationStatistics.merge(summaryPath, this.replicationSeries);
+                    System.out.println("Summary " + summaryPath + ReplicationStatistics.SUMMARY_EXTENSION + " now has "
+                            + statistics.getNumberOfReplications() + " replications");
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+
+            this.replicationEnded.countDown();
+        }
+    }
+
+    /**
+     * Close the output files of the replication.
+     */
+    private void closeOutputFiles()
+    {
+        if (getResultWriter() != null)
             getResultWriter().closeFiles();
 
+        if (this.occupancyWriter != null)
+        {
             try
             {
-                this.locationNrWriter.close();
+                this.occupancyWriter.close();
             }
             catch (IOException e)
             {
                 e.printStackTrace();
             }
+        }
 
+        if (this.occupancyAggregator != null)
+        {
+            try
+            {
+                this.occupancyAggregator.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        if (this.transmissionLog != null)
+        {
             try
             {
-                this.sublocationNrWriter.close();
+                this.transmissionLog.close();
+                System.out.println("Transmission log: " + this.transmissionLog.getNumberOfInfections() + " infections");
             }
             catch (IOException e)
             {
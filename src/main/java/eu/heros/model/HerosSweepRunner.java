@@ -0,0 +1,566 @@
+package eu.heros.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import eu.heros.factory.InputCache;
+import nl.tudelft.simulation.dsol.model.inputparameters.InputParameter;
+import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterInteger;
+import nl.tudelft.simulation.dsol.model.inputparameters.InputParameterLong;
+import nl.tudelft.simulation.jstats.streams.MersenneTwister;
+import nl.tudelft.simulation.jstats.streams.StreamInterface;
+import nl.tudelft.simulation.medlabs.simulation.SimpleDevsSimulator;
+
+/**
+ * HerosSweepRunner runs a parameter study of a scenario: a set of design points, each with values for some of the
+ * covidT_dist, covidT_area, covidP and policies parameters, and every design point for a list of seeds. The runs share the
+ * parsed input files, as in the HerosBatchRunner, and run on a pool of threads. The sweep is specified in a properties file:
+ *
+ * <pre>
+ * sweep.BaseProperties = /data/alpha-distance.properties
+ * sweep.Design = grid
+ * sweep.Seeds = 111-115
+ * sweep.Threads = 0
+ * sweep.OutputPath = /data/sweep-alpha
+ * covidT_dist.alpha = 0.5, 1.0, 1.5
+ * covidT_dist.psi = 0.6, 0.8
+ * </pre>
+ *
+ * The design is one of:
+ * <ul>
+ * <li>grid: every combination of the comma-separated values of the parameters;</li>
+ * <li>list: point i takes the i-th value of every parameter, so all parameters have the same number of values;</li>
+ * <li>lhs: a Latin hypercube of sweep.Samples points, where every parameter has a range "min .. max", and the points are drawn
+ * with the seed sweep.DesignSeed.</li>
+ * </ul>
+ * sweep.Threads is the number of runs at the same time, where 0 means one run per core; note that every run keeps its own
+ * population in memory. The output of a run goes to [OutputPath]/point-[nnn]-seed-[seed], and the cross-replication summary
+ * of a design point to [OutputPath]/point-[nnn]/summary. The design is written to sweep-design.csv, and the key outputs of
+ * every run are added to sweep-results.csv: the final number of persons per disease phase, the attack rate, and, sampled
+ * every generic.SummaryIntervalHours, the peak number of persons per disease phase and the time of the peak. A run that has
+ * completed is recorded in the journal sweep-journal.txt. A copy of the specification and the name=value arguments is kept
+ * in sweep.properties. When the sweep is started again with the same output path, specification and arguments, the design
+ * is read from sweep-design.csv, and only the runs that are not in the journal are carried out; a sweep that is started
+ * again with another specification or other arguments is refused. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.model.HerosSweepRunner sweep.properties [name=value ...]
+ * </pre>
+ *
+ * where the arguments of the form name=value override the parameters of the base properties file for all runs.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class HerosSweepRunner
+{
+    /** the name of the design file in the output path. */
+    public static final String DESIGN_FILE = "sweep-design.csv";
+
+    /** the name of the copy of the specification in the output path. */
+    public static final String SPECIFICATION_FILE = "sweep.properties";
+
+    /** the key under which the name=value arguments of the command line are stored in the copy of the specification. */
+    public static final String ARGUMENTS_KEY = "sweep.Arguments";
+
+    /** the name of the result table in the output path. */
+    public static final String RESULT_FILE = "sweep-results.csv";
+
+    /** the name of the completion journal in the output path. */
+    public static final String JOURNAL_FILE = "sweep-journal.txt";
+
+    /** the parameter maps of which the parameters can be varied. */
+    private static final String[] SWEEP_PREFIXES = {"covidT_dist.", "covidT_area.", "covidP.", "policies."};
+
+    /** the properties file of the base scenario. */
+    private final String basePropertyFilename;
+
+    /** the command line arguments, for the parameters that override the base properties file. */
+    private final String[] args;
+
+    /** the directory for the design, the results, the journal and the output of the runs. */
+    private final File outputPath;
+
+    /** the names of the varied parameters. */
+    private final List<String> parameterNames = new ArrayList<>();
+
+    /** the values of the varied parameters per design point. */
+    private final List<String[]> points = new ArrayList<>();
+
+    /** the runs that have completed, as "point,seed". */
+    private final Set<String> completed = new HashSet<>();
+
+    /** the names of the outputs in the result table; null until the header of the table is known. */
+    private List<String> outputNames = null;
+
+    /** the parsed input files that are shared by the runs. */
+    private final InputCache inputCache = new InputCache();
+
+    /**
+     * Create a runner for a sweep. The design is read from the design file in the output path when the sweep has been started
+     * before, and made from the sweep specification otherwise.
+     * @param sweep Properties; the sweep specification
+     * @param args String[]; the command line arguments; arguments of the form name=value override the base properties
+     * @throws Exception on an error in the specification, or when the design cannot be read or written
+     */
+    public HerosSweepRunner(final Properties sweep, final String[] args) throws Exception
+    {
+        this.basePropertyFilename = sweep.getProperty("sweep.BaseProperties", "").trim();
+        if (this.basePropertyFilename.length() == 0)
+            throw new IllegalArgumentException("sweep.BaseProperties not specified");
+        this.args = args;
+        this.outputPath = new File(sweep.getProperty("sweep.OutputPath", "sweep").trim());
+        this.outputPath.mkdirs();
+        File designFile = new File(this.outputPath, DESIGN_FILE);
+        checkSpecification(sweep, designFile.exists());
+        if (designFile.exists())
+        {
+            readDesign(designFile);
+            System.out.println("Sweep resumed with the design of " + designFile);
+        }
+        else
+        {
+            makeDesign(sweep);
+            writeDesign(designFile);
+        }
+        readJournal();
+    }
+
+    /**
+     * Check the specification against the copy in the output path, together with the name=value arguments of the command
+     * line, since they change the runs as well. For a new sweep, the copy of the specification is written.
+     * @param sweep Properties; the sweep specification
+     * @param resume boolean; whether the output path holds the design of a sweep that has been started before
+     * @throws IOException on error reading or writing the copy, or when the output path holds another sweep
+     */
+    private void checkSpecification(final Properties sweep, final boolean resume) throws IOException
+    {
+        Properties specification = new Properties();
+        specification.putAll(sweep);
+        List<String> overrides = new ArrayList<>();
+        for (String arg : this.args)
+        {
+            if (arg.contains("="))
+                overrides.add(arg);
+        }
+        specification.setProperty(ARGUMENTS_KEY, String.join(" ", overrides));
+        File specificationFile = new File(this.outputPath, SPECIFICATION_FILE);
+        if (!resume)
+        {
+            try (OutputStream stream = new FileOutputStream(specificationFile))
+            {
+                specification.store(stream, "specification of the sweep in " + this.outputPath);
+            }
+            return;
+        }
+        if (!specificationFile.exists())
+            throw new IOException("output path " + this.outputPath + " holds a sweep without a copy of its specification");
+        Properties previous = new Properties();
+        try (InputStream stream = new FileInputStream(specificationFile))
+        {
+            previous.load(stream);
+        }
+        if (!previous.equals(specification))
+            throw new IOException("output path " + this.outputPath + " holds a sweep with another specification");
+    }
+
+    /**
+     * Make the design points from the sweep specification.
+     * @param sweep Properties; the sweep specification
+     * @throws Exception on an error in the specification, or when a parameter does not exist in the base scenario
+     */
+    private void makeDesign(final Properties sweep) throws Exception
+    {
+        Map<String, String> values = new TreeMap<>();
+        for (String key : sweep.stringPropertyNames())
+        {
+            if (key.startsWith("sweep."))
+                continue;
+            if (Arrays.stream(SWEEP_PREFIXES).noneMatch(prefix -> key.startsWith(prefix)))
+                throw new IllegalArgumentException("parameter " + key + " cannot be varied in a sweep; allowed are "
+                        + Arrays.toString(SWEEP_PREFIXES));
+            values.put(key, sweep.getProperty(key).trim());
+        }
+        if (values.isEmpty())
+            throw new IllegalArgumentException("no parameters to vary in the sweep specification");
+        this.parameterNames.addAll(values.keySet());
+
+        // a model that is not constructed only serves to check the parameters of the base scenario
+        HerosModel baseModel = new HerosModel(new SimpleDevsSimulator("SimHERoS-sweep"), this.basePropertyFilename);
+        HerosApplication.loadInputParameters(baseModel, this.basePropertyFilename, this.args);
+        List<InputParameter<?, ?>> parameters = new ArrayList<>();
+        for (String name : this.parameterNames)
+            parameters.add(baseModel.getInputParameterMap().get(name));
+
+        String design = sweep.getProperty("sweep.Design", "grid").trim().toLowerCase();
+        int n = this.parameterNames.size();
+        if (design.equals("grid"))
+        {
+            List<String[]> lists = new ArrayList<>();
+            for (String name : this.parameterNames)
+                lists.add(splitValues(values.get(name)));
+            int[] index = new int[n];
+            while (true)
+            {
+                String[] point = new String[n];
+                for (int p = 0; p < n; p++)
+                    point[p] = lists.get(p)[index[p]];
+                this.points.add(point);
+                int p = n - 1;
+                while (p >= 0 && ++index[p] == lists.get(p).length)
+                    index[p--] = 0;
+                if (p < 0)
+                    break;
+            }
+        }
+        else if (design.equals("list"))
+        {
+            int nrPoints = -1;
+            List<String[]> lists = new ArrayList<>();
+            for (String name : this.parameterNames)
+            {
+                String[] list = splitValues(values.get(name));
+                if (nrPoints >= 0 && list.length != nrPoints)
+                    throw new IllegalArgumentException("list design: parameter " + name + " has " + list.length
+                            + " values instead of " + nrPoints);
+                nrPoints = list.length;
+                lists.add(list);
+            }
+            for (int i = 0; i < nrPoints; i++)
+            {
+                String[] point = new String[n];
+                for (int p = 0; p < n; p++)
+                    point[p] = lists.get(p)[i];
+                this.points.add(point);
+            }
+        }
+        else if (design.equals("lhs"))
+        {
+            int nrPoints = Integer.parseInt(sweep.getProperty("sweep.Samples", "10").trim());
+            StreamInterface stream = new MersenneTwister(Long.parseLong(sweep.getProperty("sweep.DesignSeed", "1").trim()));
+            for (int i = 0; i < nrPoints; i++)
+                this.points.add(new String[n]);
+            for (int p = 0; p < n; p++)
+            {
+                String[] range = values.get(this.parameterNames.get(p)).split("\\.\\.");
+                if (range.length != 2)
+                    throw new IllegalArgumentException("lhs design: parameter " + this.parameterNames.get(p)
+                            + " should have a range min .. max");
+                double min = Double.parseDouble(range[0].trim());
+                double max = Double.parseDouble(range[1].trim());
+                boolean integer = parameters.get(p) instanceof InputParameterInteger
+                        || parameters.get(p) instanceof InputParameterLong;
+                // one value per stratum of the range, with the strata assigned to the points in random order
+                int[] strata = new int[nrPoints];
+                for (int i = 0; i < nrPoints; i++)
+                    strata[i] = i;
+                for (int i = nrPoints - 1; i > 0; i--)
+                {
+                    int j = stream.nextInt(0, i);
+                    int swap = strata[i];
+                    strata[i] = strata[j];
+                    strata[j] = swap;
+                }
+                for (int i = 0; i < nrPoints; i++)
+                {
+                    double value = min + (strata[i] + stream.nextDouble()) / nrPoints * (max - min);
+                    this.points.get(i)[p] =
+                            integer ? Long.toString(Math.round(value)) : String.format(Locale.US, "%.6f", value);
+                }
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("sweep.Design " + design + " unknown; use grid, list or lhs");
+        }
+    }
+
+    /**
+     * Split a comma-separated list of values.
+     * @param list String; the comma-separated values
+     * @return String[]; the trimmed values
+     */
+    private static String[] splitValues(final String list)
+    {
+        String[] values = list.split(",");
+        for (int i = 0; i < values.length; i++)
+            values[i] = values[i].trim();
+        return values;
+    }
+
+    /**
+     * Write the design points, with a header of the parameter names.
+     * @param designFile File; the design file
+     * @throws IOException on error writing the file
+     */
+    private void writeDesign(final File designFile) throws IOException
+    {
+        try (Writer writer = new FileWriter(designFile))
+        {
+            writer.write("\"Point\"");
+            for (String name : this.parameterNames)
+                writer.write(",\"" + name + "\"");
+            writer.write("\n");
+            for (int i = 0; i < this.points.size(); i++)
+            {
+                writer.write(Integer.toString(i));
+                for (String value : this.points.get(i))
+                    writer.write(",\"" + value + "\"");
+                writer.write("\n");
+            }
+        }
+    }
+
+    /**
+     * Read the design points of a sweep that has been started before.
+     * @param designFile File; the design file
+     * @throws IOException on error reading the file
+     */
+    private void readDesign(final File designFile) throws IOException
+    {
+        try (BufferedReader reader = new BufferedReader(new FileReader(designFile)))
+        {
+            String[] header = splitCsv(reader.readLine());
+            for (int p = 1; p < header.length; p++)
+                this.parameterNames.add(header[p]);
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.trim().length() > 0)
+                    this.points.add(Arrays.copyOfRange(splitCsv(line), 1, header.length));
+            }
+        }
+    }
+
+    /**
+     * Read the journal of the completed runs, and remove the rows of the result table of runs that are not in the journal,
+     * e.g., a row of which the writing was interrupted.
+     * @throws IOException on error reading or writing the files
+     */
+    private void readJournal() throws IOException
+    {
+        File journalFile = new File(this.outputPath, JOURNAL_FILE);
+        if (journalFile.exists())
+        {
+            try (BufferedReader reader = new BufferedReader(new FileReader(journalFile)))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    if (line.trim().length() > 0)
+                        this.completed.add(line.trim());
+                }
+            }
+        }
+        File resultFile = new File(this.outputPath, RESULT_FILE);
+        if (!resultFile.exists())
+            return;
+        List<String> rows = new ArrayList<>();
+        Set<String> kept = new HashSet<>();
+        String header;
+        try (BufferedReader reader = new BufferedReader(new FileReader(resultFile)))
+        {
+            header = reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(",", 3);
+                String run = fields.length < 3 ? "" : fields[0] + "," + fields[1];
+                if (this.completed.contains(run) && kept.add(run))
+                    rows.add(line);
+            }
+        }
+        if (header == null)
+            return;
+        String[] columns = splitCsv(header);
+        this.outputNames = new ArrayList<>(Arrays.asList(columns).subList(2 + this.parameterNames.size(), columns.length));
+        try (Writer writer = new FileWriter(resultFile))
+        {
+            writer.write(header + "\n");
+            for (String row : rows)
+                writer.write(row + "\n");
+        }
+    }
+
+    /**
+     * Split a line of a csv file that this class has written; the values do not contain commas.
+     * @param line String; the line
+     * @return String[]; the values without quotes
+     */
+    private static String[] splitCsv(final String line)
+    {
+        String[] values = line.split(",", -1);
+        for (int i = 0; i < values.length; i++)
+            values[i] = values[i].trim().replace("\"", "");
+        return values;
+    }
+
+    /**
+     * Carry out the runs that are not in the journal on a pool of threads, and wait until they have ended. A run that fails is
+     * reported, and does not stop the other runs; it is carried out again when the sweep is resumed.
+     * @param seeds long[]; the seeds of the runs of every design point
+     * @param nrThreads int; the maximum number of runs at the same time, or 0 for one run per core
+     * @return int; the number of runs that failed
+     * @throws InterruptedException when the thread is interrupted while waiting for the runs
+     */
+    public int run(final long[] seeds, final int nrThreads) throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        List<int[]> runs = new ArrayList<>();
+        for (int point = 0; point < this.points.size(); point++)
+        {
+            for (int s = 0; s < seeds.length; s++)
+            {
+                if (!this.completed.contains(point + "," + seeds[s]))
+                    runs.add(new int[] {point, s});
+            }
+        }
+        int total = this.points.size() * seeds.length;
+        System.out.println("Sweep: " + this.points.size() + " design points x " + seeds.length + " seeds; "
+                + (total - runs.size()) + " runs completed before, " + runs.size() + " runs to go");
+        int threads = nrThreads > 0 ? nrThreads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, runs.size())));
+        this.inputCache.setNumberOfModels(runs.size());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int[] run : runs)
+        {
+            futures.add(pool.submit(() ->
+            {
+                runPoint(run[0], seeds[run[1]]);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        int nrFailed = 0;
+        for (int i = 0; i < runs.size(); i++)
+        {
+            try
+            {
+                futures.get(i).get();
+            }
+            catch (ExecutionException exception)
+            {
+                System.err.println("Run of point " + runs.get(i)[0] + " with seed " + seeds[runs.get(i)[1]] + " failed");
+                exception.getCause().printStackTrace();
+                nrFailed++;
+            }
+        }
+        this.inputCache.clear();
+        System.out.println("\nSweep: " + (runs.size() - nrFailed) + " of " + runs.size() + " runs completed in "
+                + (System.currentTimeMillis() - start) / 1000 + " s; " + this.inputCache + "; results in "
+                + new File(this.outputPath, RESULT_FILE));
+        return nrFailed;
+    }
+
+    /**
+     * Carry out one run of a design point, and add its outputs to the result table and the journal.
+     * @param point int; the index of the design point
+     * @param seed long; the seed of the run
+     * @throws Exception on an error in the parameters, or when the run cannot be carried out
+     */
+    private void runPoint(final int point, final long seed) throws Exception
+    {
+        String pointPath = new File(this.outputPath, String.format("point-%03d", point)).getPath();
+        List<String> runArgs = new ArrayList<>(Arrays.asList(this.args));
+        runArgs.add("generic.OutputPath=" + pointPath);
+        runArgs.add("generic.SummaryPath=" + new File(pointPath, "summary").getPath());
+        for (int p = 0; p < this.parameterNames.size(); p++)
+            runArgs.add(this.parameterNames.get(p) + "=" + this.points.get(point)[p]);
+        HerosModel model = HerosBatchRunner.runReplication(this.basePropertyFilename, runArgs.toArray(new String[0]), seed,
+                this.inputCache, false);
+
+        writeResult(point, seed, model.getReplicationOutputs());
+    }
+
+    /**
+     * Add the outputs of a run to the result table, and then record the run in the journal. The header of the result table is
+     * written with the outputs of the first run.
+     * @param point int; the index of the design point
+     * @param seed long; the seed of the run
+     * @param outputs Map&lt;String, Double&gt;; the outputs of the run
+     * @throws IOException on error writing the files
+     */
+    private synchronized void writeResult(final int point, final long seed, final Map<String, Double> outputs)
+            throws IOException
+    {
+        File resultFile = new File(this.outputPath, RESULT_FILE);
+        try (Writer writer = new FileWriter(resultFile, true))
+        {
+            if (this.outputNames == null)
+            {
+                this.outputNames = new ArrayList<>(outputs.keySet());
+                writer.write("\"Point\",\"Seed\"");
+                for (String name : this.parameterNames)
+                    writer.write(",\"" + name + "\"");
+                for (String name : this.outputNames)
+                    writer.write(",\"" + name + "\"");
+                writer.write("\n");
+            }
+            StringBuilder row = new StringBuilder();
+            row.append(point).append(",").append(seed);
+            for (String value : this.points.get(point))
+                row.append(",\"").append(value).append("\"");
+            for (String name : this.outputNames)
+            {
+                Double value = outputs.get(name);
+                row.append(",").append(value == null ? "" : String.format(Locale.US, "%.4f", value));
+            }
+            writer.write(row.append("\n").toString());
+        }
+        try (Writer writer = new FileWriter(new File(this.outputPath, JOURNAL_FILE), true))
+        {
+            writer.write(point + "," + seed + "\n");
+        }
+        this.completed.add(point + "," + seed);
+    }
+
+    /**
+     * @param args String[]; the sweep specification, and optional name=value parameters
+     * @throws Exception on an error in the specification or the arguments
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length < 1 || args[0].contains("="))
+        {
+            System.err.println("Usage: HerosSweepRunner sweep.properties [name=value ...]");
+            System.exit(-1);
+        }
+        Properties sweep = new Properties();
+        try (InputStream stream = new FileInputStream(args[0]))
+        {
+            sweep.load(stream);
+        }
+        HerosSweepRunner runner = new HerosSweepRunner(sweep, args);
+        long[] seeds = HerosBatchRunner.parseSeeds(Arrays.asList(sweep.getProperty("sweep.Seeds", "1").trim().split("\\s+")));
+        int nrFailed = runner.run(seeds, Integer.parseInt(sweep.getProperty("sweep.Threads", "0").trim()));
+        System.exit(nrFailed == 0 ? 0 : 1);
+    }
+
+}
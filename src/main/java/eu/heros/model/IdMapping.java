@@ -0,0 +1,299 @@
+package eu.heros.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import eu.heros.output.ParallelGzipOutputStream;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * IdMapping maps the original ids of the locations and persons in the input files to dense indices 0..n-1. During the
+ * construction of the model, the locations and persons get their index as their id, so the model can use plain arrays instead
+ * of maps for its lookups. The original ids are only used for input and output: the input files refer to the original location
+ * ids, and the dumps, snapshots and transmission trees of HERoS write the original ids. The files of the medlabs ResultWriter
+ * contain the ids of the model; they can be translated with the locationIdMap.csv.gz and personIdMap.csv.gz files that are
+ * written next to them. Negative ids are used by medlabs for special locations (such as the travel locations); these are not
+ * mapped and keep their id. Next to the original id, the mapping keeps the district of every location index, since the medlabs
+ * locations have no field for it.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class IdMapping implements Serializable
+{
+    /** */
+    private static final long serialVersionUID = 20240601L;
+
+    /** the original location id for each location index. */
+    private int[] originalLocationIds = new int[1024];
+
+    /** the number of mapped locations. */
+    private int numberOfLocations = 0;
+
+    /** the location index for each original location id. */
+    private final TIntIntMap locationIndexMap = new TIntIntHashMap(1 << 16, 0.5f, Integer.MIN_VALUE, -1);
+
+    /** the district index for each location index, -1 for a location without a district. */
+    private int[] districtIndices = new int[1024];
+
+    /** the district names, in order of the district index. */
+    private final List<String> districtNames = new ArrayList<>();
+
+    /** the district index for each district name. */
+    private final Map<String, Integer> districtIndexMap = new HashMap<>();
+
+    /** the original person id for each person index. */
+    private int[] originalPersonIds = new int[1024];
+
+    /** the number of mapped persons. */
+    private int numberOfPersons = 0;
+
+    /**
+     * Map an original location id to a location index. When the original id was mapped before, the existing index is returned,
+     * so a location that is defined twice replaces the earlier definition, as it does in the location map of the model.
+     * @param originalId int; the location id in the input file
+     * @return the location index to use as the id of the location
+     */
+    public int addLocation(final int originalId)
+    {
+        int index = this.locationIndexMap.get(originalId);
+        if (index >= 0)
+            return index;
+        if (this.numberOfLocations == this.originalLocationIds.length)
+        {
+            this.originalLocationIds = Arrays.copyOf(this.originalLocationIds, 2 * this.numberOfLocations);
+            this.districtIndices = Arrays.copyOf(this.districtIndices, 2 * this.numberOfLocations);
+        }
+        index = this.numberOfLocations++;
+        this.originalLocationIds[index] = originalId;
+        this.districtIndices[index] = -1;
+        this.locationIndexMap.put(originalId, index);
+        return index;
+    }
+
+    /**
+     * @param originalId int; the location id in the input file
+     * @return the location index, or -1 when the location id is not known
+     */
+    public int getLocationIndex(final int originalId)
+    {
+        return this.locationIndexMap.get(originalId);
+    }
+
+    /**
+     * @param index int; the location index (the id of the location in the model)
+     * @return the location id in the input file; negative ids of special locations are returned unchanged
+     */
+    public int getOriginalLocationId(final int index)
+    {
+        return index < 0 ? index : this.originalLocationIds[index];
+    }
+
+    /**
+     * Set the district of a location. Districts get an index in order of first occurrence.
+     * @param index int; the location index
+     * @param district String; the district (e.g., the WK_CODE of the location); empty when not known
+     */
+    public void setDistrict(final int index, final String district)
+    {
+        if (district.isEmpty())
+        {
+            this.districtIndices[index] = -1;
+            return;
+        }
+        Integer districtIndex = this.districtIndexMap.get(district);
+        if (districtIndex == null)
+        {
+            districtIndex = this.districtNames.size();
+            this.districtNames.add(district);
+            this.districtIndexMap.put(district, districtIndex);
+        }
+        this.districtIndices[index] = districtIndex;
+    }
+
+    /**
+     * @return the district index for each location index, -1 for a location without a district; the array should not be
+     *         changed, and can be longer than the number of locations until the mapping has been trimmed
+     */
+    public int[] getDistrictIndices()
+    {
+        return this.districtIndices;
+    }
+
+    /**
+     * @return the district names, in order of the district index
+     */
+    public String[] getDistrictNames()
+    {
+        return this.districtNames.toArray(new String[this.districtNames.size()]);
+    }
+
+    /**
+     * Map an original person id to the next person index. This method should only be called when the person is actually
+     * created.
+     * @param originalId int; the person id in the input file
+     * @return the person index to use as the id of the person
+     */
+    public int addPerson(final int originalId)
+    {
+        if (this.numberOfPersons == this.originalPersonIds.length)
+            this.originalPersonIds = Arrays.copyOf(this.originalPersonIds, 2 * this.numberOfPersons);
+        this.originalPersonIds[this.numberOfPersons] = originalId;
+        return this.numberOfPersons++;
+    }
+
+    /**
+     * @param index int; the person index (the id of the person in the model)
+     * @return the person id in the input file
+     */
+    public int getOriginalPersonId(final int index)
+    {
+        return this.originalPersonIds[index];
+    }
+
+    /**
+     * @return the number of mapped locations; the location indices are 0 to this number - 1
+     */
+    public int getNumberOfLocations()
+    {
+        return this.numberOfLocations;
+    }
+
+    /**
+     * @return the number of mapped persons; the person indices are 0 to this number - 1, and the next person gets this index
+     */
+    public int getNumberOfPersons()
+    {
+        return this.numberOfPersons;
+    }
+
+    /**
+     * Trim the arrays to their final size after the construction of the model.
+     */
+    public void trim()
+    {
+        this.originalLocationIds = Arrays.copyOf(this.originalLocationIds, this.numberOfLocations);
+        this.districtIndices = Arrays.copyOf(this.districtIndices, this.numberOfLocations);
+        this.originalPersonIds = Arrays.copyOf(this.originalPersonIds, this.numberOfPersons);
+    }
+
+    /**
+     * Write the mapping to locationIdMap.csv.gz and personIdMap.csv.gz in the output path, so output that contains the ids of
+     * the model can be translated back to the ids of the input files.
+     * @param outputPath String; the directory to write the files to
+     * @param gzipThreads int; the number of compression threads; 0 for standard gzip
+     * @param gzipBlockSize int; the block size in bytes for parallel compression
+     * @throws IOException on error writing the files
+     */
+    public void write(final String outputPath, final int gzipThreads, final int gzipBlockSize) throws IOException
+    {
+        write(new File(outputPath + "/locationIdMap.csv.gz"), "\"LocationNr\",\"OriginalLocationId\"\n",
+                this.originalLocationIds, this.numberOfLocations, gzipThreads, gzipBlockSize);
+        write(new File(outputPath + "/personIdMap.csv.gz"), "\"PersonNr\",\"OriginalPersonId\"\n", this.originalPersonIds,
+                this.numberOfPersons, gzipThreads, gzipBlockSize);
+    }
+
+    /**
+     * Read the mapping from the locationIdMap.csv.gz and personIdMap.csv.gz files that were written by a run of the model.
+     * @param outputPath String; the directory with the files
+     * @return IdMapping; the mapping of the run
+     * @throws IOException on error reading the files, or when a file is not an id map
+     */
+    public static IdMapping read(final String outputPath) throws IOException
+    {
+        IdMapping idMapping = new IdMapping();
+        for (int originalId : read(new File(outputPath + "/locationIdMap.csv.gz")))
+            idMapping.addLocation(originalId);
+        for (int originalId : read(new File(outputPath + "/personIdMap.csv.gz")))
+            idMapping.addPerson(originalId);
+        idMapping.trim();
+        return idMapping;
+    }
+
+    /**
+     * Read one mapping from a gzipped csv file. The indices in the file should be 0, 1, 2, etc.
+     * @param file File; the file to read
+     * @return int[]; the original ids per index
+     * @throws IOException on error reading the file, or when the file is not an id map
+     */
+    private static int[] read(final File file) throws IOException
+    {
+        int[] originalIds = new int[1024];
+        int size = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 128 * 1024)), "UTF-8"), 128 * 1024))
+        {
+            String line = reader.readLine(); // header
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                    continue;
+                int comma = line.indexOf(',');
+                try
+                {
+                    if (comma < 0 || Integer.parseInt(line.substring(0, comma)) != size)
+                        throw new IOException("id map " + file + " has no index " + size + " on line " + (size + 2));
+                    if (size == originalIds.length)
+                        originalIds = Arrays.copyOf(originalIds, 2 * size);
+                    originalIds[size++] = Integer.parseInt(line.substring(comma + 1));
+                }
+                catch (NumberFormatException nfe)
+                {
+                    throw new IOException("id map " + file + " has a wrong number on line " + (size + 2) + ": " + line);
+                }
+            }
+        }
+        return Arrays.copyOf(originalIds, size);
+    }
+
+    /**
+     * Write one mapping as a gzipped csv file.
+     * @param file File; the file to write
+     * @param header String; the header line
+     * @param originalIds int[]; the original ids per index
+     * @param size int; the number of indices
+     * @param gzipThreads int; the number of compression threads; 0 for standard gzip
+     * @param gzipBlockSize int; the block size in bytes for parallel compression
+     * @throws IOException on error writing the file
+     */
+    private static void write(final File file, final String header, final int[] originalIds, final int size,
+            final int gzipThreads, final int gzipBlockSize) throws IOException
+    {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(ParallelGzipOutputStream
+                .create(new BufferedOutputStream(new FileOutputStream(file), 128 * 1024), gzipThreads, gzipBlockSize), "UTF-8"),
+                128 * 1024))
+        {
+            writer.write(header);
+            for (int i = 0; i < size; i++)
+            {
+                writer.write(Integer.toString(i));
+                writer.write(',');
+                writer.write(Integer.toString(originalIds[i]));
+                writer.write('\n');
+            }
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package eu.heros.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * OccupancyCounters keeps the number of persons per location and per sublocation in flat int arrays, indexed by the (dense)
+ * location id. The sublocation counts of location id are stored at subLocationCounts[subLocationOffsets[id] + index]. The
+ * counts are kept up to date incrementally: the HERoS locations call enter and leave when a person is added to or removed
+ * from them, so reading the occupancy is an array lookup instead of a pass over the persons or over the person sets of every
+ * location. The occupancy dump and live statistics read the arrays directly. Special locations with a negative id (such as the
+ * travel locations of medlabs) are not counted.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class OccupancyCounters implements Serializable
+{
+    /** */
+    private static final long serialVersionUID = 20240601L;
+
+    /** the number of persons per location id. */
+    private int[] locationCounts = new int[1024];
+
+    /** the start of the sublocations of each location id in subLocationCounts. */
+    private int[] subLocationOffsets = new int[1024];
+
+    /** the number of counted sublocations per location id; 0 for an id that is not registered. */
+    private short[] nrSubLocations = new short[1024];
+
+    /** the number of persons per sublocation. */
+    private int[] subLocationCounts = new int[4096];
+
+    /** the number of used entries in subLocationCounts. */
+    private int totalSubLocations = 0;
+
+    /** the location id per person id where the person is counted, -1 when the person is not counted in a location. */
+    private int[] personLocations = new int[0];
+
+    /** the sublocation index per person id where the person is counted, -1 when only the location is counted. */
+    private short[] personSubLocations = new short[0];
+
+    /**
+     * Register a location, so persons can be counted in it. A location that is registered again (a location that is defined
+     * twice in the input) gets new sublocation counters, and its counts are reset.
+     * @param locationId int; the (dense) id of the location
+     * @param numberOfSubLocations short; the number of sublocations of the location
+     */
+    public void addLocation(final int locationId, final short numberOfSubLocations)
+    {
+        if (locationId < 0)
+            return;
+        if (locationId >= this.locationCounts.length)
+        {
+            int size = Math.max(locationId + 1, 2 * this.locationCounts.length);
+            this.locationCounts = Arrays.copyOf(this.locationCounts, size);
+            this.subLocationOffsets = Arrays.copyOf(this.subLocationOffsets, size);
+            this.nrSubLocations = Arrays.copyOf(this.nrSubLocations, size);
+        }
+        short nrSub = (short) Math.max(1, numberOfSubLocations);
+        if (this.totalSubLocations + nrSub > this.subLocationCounts.length)
+        {
+            int size = Math.max(this.totalSubLocations + nrSub, 2 * this.subLocationCounts.length);
+            this.subLocationCounts = Arrays.copyOf(this.subLocationCounts, size);
+        }
+        this.locationCounts[locationId] = 0;
+        this.subLocationOffsets[locationId] = this.totalSubLocations;
+        this.nrSubLocations[locationId] = nrSub;
+        this.totalSubLocations += nrSub;
+    }
+
+    /**
+     * Count a person that entered a location. When the person is still counted in another location (because the person was
+     * added to the new location before it was removed from the old one), the person is first removed from the old location.
+     * @param locationId int; the (dense) id of the location
+     * @param personId int; the (dense) id of the person
+     * @param subLocationIndex short; the index of the sublocation that the person entered
+     */
+    public void enter(final int locationId, final int personId, final short subLocationIndex)
+    {
+        if (locationId < 0 || locationId >= this.nrSubLocations.length || this.nrSubLocations[locationId] == 0)
+            return;
+        if (personId >= this.personLocations.length)
+        {
+            int size = Math.max(personId + 1, 2 * this.personLocations.length);
+            int oldSize = this.personLocations.length;
+            this.personLocations = Arrays.copyOf(this.personLocations, size);
+            this.personSubLocations = Arrays.copyOf(this.personSubLocations, size);
+            Arrays.fill(this.personLocations, oldSize, size, -1);
+        }
+        if (this.personLocations[personId] >= 0)
+            leave(this.personLocations[personId], personId);
+        this.locationCounts[locationId]++;
+        if (subLocationIndex >= 0 && subLocationIndex < this.nrSubLocations[locationId])
+        {
+            this.subLocationCounts[this.subLocationOffsets[locationId] + subLocationIndex]++;
+            this.personSubLocations[personId] = subLocationIndex;
+        }
+        else
+            this.personSubLocations[personId] = -1;
+        this.personLocations[personId] = locationId;
+    }
+
+    /**
+     * Stop counting a person that left a location. Nothing happens when the person is not counted in the location.
+     * @param locationId int; the (dense) id of the location
+     * @param personId int; the (dense) id of the person
+     */
+    public void leave(final int locationId, final int personId)
+    {
+        if (personId >= this.personLocations.length || this.personLocations[personId] != locationId || locationId < 0)
+            return;
+        this.locationCounts[locationId]--;
+        short subLocationIndex = this.personSubLocations[personId];
+        if (subLocationIndex >= 0)
+            this.subLocationCounts[this.subLocationOffsets[locationId] + subLocationIndex]--;
+        this.personLocations[personId] = -1;
+    }
+
+    /**
+     * @param locationId int; the (dense) id of the location
+     * @return the number of persons at the location; 0 for a location that is not registered
+     */
+    public int getLocationCount(final int locationId)
+    {
+        return locationId < 0 || locationId >= this.locationCounts.length ? 0 : this.locationCounts[locationId];
+    }
+
+    /**
+     * @param locationId int; the (dense) id of the location
+     * @param subLocationIndex int; the index of the sublocation
+     * @return the number of persons in the sublocation; 0 for a sublocation that is not counted
+     */
+    public int getSubLocationCount(final int locationId, final int subLocationIndex)
+    {
+        if (locationId < 0 || locationId >= this.nrSubLocations.length || subLocationIndex < 0
+                || subLocationIndex >= this.nrSubLocations[locationId])
+            return 0;
+        return this.subLocationCounts[this.subLocationOffsets[locationId] + subLocationIndex];
+    }
+
+    /**
+     * @return the number of persons per location id; the array should not be changed, and can be longer than the number of
+     *         locations
+     */
+    public int[] getLocationCounts()
+    {
+        return this.locationCounts;
+    }
+
+}
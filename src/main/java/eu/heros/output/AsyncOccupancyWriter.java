@@ -0,0 +1,231 @@
+package eu.heros.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * AsyncOccupancyWriter moves the formatting, compression and disk I/O of another OccupancyWriter to a dedicated writer thread.
+ * The simulation thread copies the counts of a dump into a free buffer from a fixed pool, and hands the buffer to the writer
+ * thread; the writer thread writes the dump and returns the buffer to the pool. When the writer thread falls behind and all
+ * buffers are in use, the simulation thread waits for a free buffer (back-pressure), so the memory use is bounded. The time
+ * that the simulation thread spent waiting is recorded and reported when the writer is closed. Closing the writer drains the
+ * buffered dumps before the underlying writer is closed.
+ * <p>
+ * When the underlying writer fails, the writer thread stops writing but keeps returning buffers, and the next call of write or
+ * close on the simulation thread throws the exception.
+ * <p>
+ * The output of the medlabs ResultWriter is not moved to a writer thread. The ResultWriter writes from simulation events that
+ * it schedules itself, its writes sample the state of the persons at the time of the event, and its output streams are
+ * internal to medlabs.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class AsyncOccupancyWriter implements OccupancyWriter
+{
+    /** the marker that tells the writer thread to stop. */
+    private static final Dump END = new Dump(0, 0);
+
+    /** the underlying writer, only used on the writer thread until it has stopped. */
+    private final OccupancyWriter writer;
+
+    /** the free buffers. */
+    private final BlockingQueue<Dump> free;
+
+    /** the buffers with a dump to write, in order of time. */
+    private final BlockingQueue<Dump> filled;
+
+    /** the writer thread. */
+    private final Thread thread;
+
+    /** the first failure of the underlying writer, or null. */
+    private volatile Throwable failure = null;
+
+    /** the number of dumps. */
+    private long nrDumps = 0;
+
+    /** the number of dumps for which the simulation thread had to wait for a free buffer. */
+    private long nrBlocked = 0;
+
+    /** the total time that the simulation thread waited for a free buffer, in ns. */
+    private long blockedNanos = 0;
+
+    /** whether the writer has been closed. */
+    private boolean closed = false;
+
+    /**
+     * Create the buffer pool and start the writer thread.
+     * @param writer OccupancyWriter; the underlying writer
+     * @param layout OccupancyLayout; the layout of the dump, to size the buffers
+     * @param nrBuffers int; the number of buffers in the pool, at least 1
+     */
+    public AsyncOccupancyWriter(final OccupancyWriter writer, final OccupancyLayout layout, final int nrBuffers)
+    {
+        this(writer, layout.getNumberOfLocations(), layout.getTotalSubLocations(), nrBuffers);
+    }
+
+    /**
+     * Create the buffer pool and start the writer thread, for a writer that is not based on an OccupancyLayout, such as the
+     * OccupancyAggregator. Only the first nrLocations location counts and nrSubLocations sublocation counts of a dump are
+     * copied.
+     * @param writer OccupancyWriter; the underlying writer
+     * @param nrLocations int; the number of location counts per dump
+     * @param nrSubLocations int; the number of sublocation counts per dump
+     * @param nrBuffers int; the number of buffers in the pool, at least 1
+     */
+    public AsyncOccupancyWriter(final OccupancyWriter writer, final int nrLocations, final int nrSubLocations,
+            final int nrBuffers)
+    {
+        this.writer = writer;
+        int n = Math.max(1, nrBuffers);
+        this.free = new ArrayBlockingQueue<>(n);
+        this.filled = new ArrayBlockingQueue<>(n + 1);
+        for (int i = 0; i < n; i++)
+            this.free.add(new Dump(nrLocations, nrSubLocations));
+        this.thread = new Thread(() -> run(), "occupancy-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final double time, final int[] locationCounts, final int[] subLocationCounts) throws IOException
+    {
+        checkFailure();
+        try
+        {
+            Dump dump = this.free.poll();
+            if (dump == null)
+            {
+                long start = System.nanoTime();
+                dump = this.free.take();
+                this.blockedNanos += System.nanoTime() - start;
+                this.nrBlocked++;
+            }
+            dump.time = time;
+            System.arraycopy(locationCounts, 0, dump.locationCounts, 0, dump.locationCounts.length);
+            System.arraycopy(subLocationCounts, 0, dump.subLocationCounts, 0, dump.subLocationCounts.length);
+            this.filled.put(dump);
+            this.nrDumps++;
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("interrupted while waiting for the occupancy writer");
+        }
+    }
+
+    /**
+     * Write the dumps on the writer thread until the end marker arrives.
+     */
+    private void run()
+    {
+        try
+        {
+            while (true)
+            {
+                Dump dump = this.filled.take();
+                if (dump == END)
+                    return;
+                if (this.failure == null)
+                {
+                    try
+                    {
+                        this.writer.write(dump.time, dump.locationCounts, dump.subLocationCounts);
+                    }
+                    catch (Throwable exception)
+                    {
+                        this.failure = exception;
+                    }
+                }
+                this.free.put(dump);
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            this.failure = exception;
+        }
+    }
+
+    /**
+     * Throw the failure of the writer thread, if any.
+     * @throws IOException when the underlying writer failed
+     */
+    private void checkFailure() throws IOException
+    {
+        Throwable exception = this.failure;
+        if (exception instanceof IOException)
+            throw (IOException) exception;
+        if (exception != null)
+            throw new IOException("occupancy writer failed", exception);
+    }
+
+    /**
+     * Drain the buffered dumps, stop the writer thread, close the underlying writer, and report the time that the simulation
+     * thread waited for the writer thread.
+     * @throws IOException when the underlying writer failed, or on error closing it
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed)
+            return;
+        this.closed = true;
+        try
+        {
+            this.filled.put(END);
+            this.thread.join();
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("interrupted while draining the occupancy writer");
+        }
+        finally
+        {
+            this.writer.close();
+        }
+        System.out.println(
+                String.format("Occupancy output: %d dumps; simulation thread waited for the writer %d times, %.0f ms",
+                        this.nrDumps, this.nrBlocked, this.blockedNanos / 1.0E6));
+        checkFailure();
+    }
+
+    /**
+     * @return the total time that the simulation thread waited for a free buffer, in ns
+     */
+    public long getBlockedNanos()
+    {
+        return this.blockedNanos;
+    }
+
+    /** A buffer with the counts of one dump. */
+    private static class Dump
+    {
+        /** the time of the dump. */
+        private double time;
+
+        /** the location counts. */
+        private final int[] locationCounts;
+
+        /** the sublocation counts. */
+        private final int[] subLocationCounts;
+
+        /**
+         * @param nrLocations int; the number of locations
+         * @param nrSubLocations int; the number of sublocations
+         */
+        Dump(final int nrLocations, final int nrSubLocations)
+        {
+            this.locationCounts = new int[nrLocations];
+            this.subLocationCounts = new int[nrSubLocations];
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package eu.heros.output;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * BinaryOccupancyWriter writes the occupancy as fixed-width int arrays, one deflate-compressed block per dump. The location
+ * numbers and the number of sublocations per location are declared once in the header, so a dump only contains the counts.
+ * The layout of the file is:
+ *
+ * <pre>
+ * int    magic "HOCC"
+ * int    version
+ * int    number of locations
+ * int    total number of sublocations
+ * per location:
+ *   int  location number
+ *   int  number of dumped sublocations (the sublocations 1 to n-1)
+ * per dump:
+ *   byte   record type (F = full, D = delta)
+ *   double time in hours
+ *   int    compressed length of the block
+ *   byte[] compressed block, with big-endian ints:
+ *     F: the location counts followed by the sublocation counts
+ *     D: the number of changed locations, followed by (index gap, count) per changed location, and the number of changed
+ *        sublocations, followed by (index gap, count) per changed sublocation; the index gap is the difference with the index
+ *        of the previous changed entry (or with -1 for the first one)
+ * </pre>
+ *
+ * Delta records are only written in delta mode, where a full record (a keyframe) is written every keyframeInterval dumps. No
+ * String is made per location or sublocation, and the buffers are reused between dumps. OccupancyReader rebuilds the full
+ * counts of every dump, and converts the file back to the csv files of the CsvOccupancyWriter.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class BinaryOccupancyWriter implements OccupancyWriter
+{
+    /** the magic number at the start of an occupancy file ("HOCC"). */
+    public static final int MAGIC = 0x484F4343;
+
+    /** the version of the file format. */
+    public static final int VERSION = 1;
+
+    /** the name of the occupancy file. */
+    public static final String FILE = "occupancy.hocc";
+
+    /** record type for a dump with all counts. */
+    public static final byte RECORD_FULL = 'F';
+
+    /** record type for a dump with the changed counts. */
+    public static final byte RECORD_DELTA = 'D';
+
+    /** the layout of the dump. */
+    private final OccupancyLayout layout;
+
+    /** the output stream. */
+    private final DataOutputStream out;
+
+    /** the uncompressed block, reused for every dump; large enough for a full and for a delta record. */
+    private final ByteBuffer block;
+
+    /** the last written counts in delta mode; null when every dump is written in full. */
+    private final OccupancyDelta delta;
+
+    /** the compressed block, grown when needed. */
+    private byte[] compressed;
+
+    /** the compressor, reused for every dump. */
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    /**
+     * Create the occupancy file and write its header.
+     * @param outputPath String; the directory to write the file to
+     * @param layout OccupancyLayout; the layout of the dump
+     * @param keyframeInterval int; the number of dumps between keyframes in delta mode; 0 means that every dump is written in
+     *            full
+     * @throws IOException on error creating the file
+     */
+    public BinaryOccupancyWriter(final String outputPath, final OccupancyLayout layout, final int keyframeInterval)
+            throws IOException
+    {
+        this.layout = layout;
+        this.delta = keyframeInterval > 0 ? new OccupancyDelta(keyframeInterval, layout) : null;
+        this.out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(new File(outputPath + "/" + FILE)), 128 * 1024));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(layout.getNumberOfLocations());
+        this.out.writeInt(layout.getTotalSubLocations());
+        for (int i = 0; i < layout.getNumberOfLocations(); i++)
+        {
+            this.out.writeInt(layout.getLocationNr(i));
+            this.out.writeInt(layout.getNrSubLocations(i));
+        }
+        int entries = layout.getNumberOfLocations() + layout.getTotalSubLocations();
+        this.block = ByteBuffer.allocate(4 * (this.delta == null ? entries : 2 * entries + 2));
+        this.compressed = new byte[Math.max(64, this.block.capacity() / 4)];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final double time, final int[] locationCounts, final int[] subLocationCounts) throws IOException
+    {
+        this.block.clear();
+        if (this.delta == null || this.delta.isKeyframe())
+        {
+            this.block.asIntBuffer().put(locationCounts, 0, this.layout.getNumberOfLocations()).put(subLocationCounts, 0,
+                    this.layout.getTotalSubLocations());
+            writeRecord(RECORD_FULL, time, this.block.array(),
+                    4 * (this.layout.getNumberOfLocations() + this.layout.getTotalSubLocations()));
+        }
+        else
+        {
+            putChanges(locationCounts, this.delta.getLastLocationCounts(), this.layout.getNumberOfLocations());
+            putChanges(subLocationCounts, this.delta.getLastSubLocationCounts(), this.layout.getTotalSubLocations());
+            writeRecord(RECORD_DELTA, time, this.block.array(), this.block.position());
+        }
+        if (this.delta != null)
+            this.delta.written(locationCounts, subLocationCounts);
+        this.out.flush();
+    }
+
+    /**
+     * Put the number of changed counts, followed by the index gap and the count of each changed entry, in the block.
+     * @param counts int[]; the current counts
+     * @param lastCounts int[]; the last written counts
+     * @param size int; the number of entries
+     */
+    private void putChanges(final int[] counts, final int[] lastCounts, final int size)
+    {
+        int countPosition = this.block.position();
+        this.block.putInt(0);
+        int changed = 0;
+        int previous = -1;
+        for (int i = 0; i < size; i++)
+        {
+            if (counts[i] != lastCounts[i])
+            {
+                this.block.putInt(i - previous);
+                this.block.putInt(counts[i]);
+                previous = i;
+                changed++;
+            }
+        }
+        this.block.putInt(countPosition, changed);
+    }
+
+    /**
+     * Compress a block and write it as a record.
+     * @param type byte; the record type
+     * @param time double; the simulation time in hours
+     * @param data byte[]; the uncompressed block
+     * @param length int; the length of the uncompressed block
+     * @throws IOException on error writing the record
+     */
+    private void writeRecord(final byte type, final double time, final byte[] data, final int length) throws IOException
+    {
+        this.deflater.reset();
+        this.deflater.setInput(data, 0, length);
+        this.deflater.finish();
+        int n = 0;
+        while (!this.deflater.finished())
+        {
+            if (n == this.compressed.length)
+                this.compressed = Arrays.copyOf(this.compressed, 2 * this.compressed.length);
+            n += this.deflater.deflate(this.compressed, n, this.compressed.length - n);
+        }
+        this.out.writeByte(type);
+        this.out.writeDouble(time);
+        this.out.writeInt(n);
+        this.out.write(this.compressed, 0, n);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            this.out.close();
+        }
+        finally
+        {
+            this.deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package eu.heros.output;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * CsvOccupancyDecoder rebuilds the full time series from the occupancy csv files that were written in delta mode by the
+ * CsvOccupancyWriter. The first dump of a file is a keyframe, and defines the locations (or sublocations) and their order;
+ * every later dump updates the counts that changed, and is written with all counts. The decoded files have the same content as
+ * a csv dump without delta mode. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.output.CsvOccupancyDecoder input-directory output-directory
+ * </pre>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class CsvOccupancyDecoder
+{
+    /** */
+    private CsvOccupancyDecoder()
+    {
+        // utility class
+    }
+
+    /**
+     * Decode one delta csv file. A line consists of the time, a key (the location number, or the location number and the
+     * sublocation index), and the count. The lines of one dump have the same time, and are consecutive.
+     * @param deltaFile File; the gzipped csv file in delta mode
+     * @param fullFile File; the gzipped csv file with all counts to write
+     * @return int; the number of decoded dumps
+     * @throws IOException on I/O error, or when a line is not valid
+     */
+    public static int decode(final File deltaFile, final File fullFile) throws IOException
+    {
+        Map<String, Integer> index = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        TIntArrayList counts = new TIntArrayList();
+        int dumps = 0;
+        try (
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new GZIPInputStream(new FileInputStream(deltaFile), 64 * 1024), "UTF-8"),
+                        128 * 1024);
+                Writer writer = CsvOccupancyWriter.open(fullFile))
+        {
+            String header = reader.readLine();
+            if (header == null)
+                return 0;
+            writer.write(header);
+            writer.write('\n');
+            String time = null;
+            long lineNr = 1;
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNr++;
+                int firstComma = line.indexOf(',');
+                int lastComma = line.lastIndexOf(',');
+                if (firstComma < 0 || lastComma <= firstComma)
+                    throw new IOException("line " + lineNr + " of " + deltaFile + " is not valid: " + line);
+                String lineTime = line.substring(0, firstComma);
+                if (time != null && !lineTime.equals(time))
+                {
+                    writeDump(writer, time, keys, counts);
+                    dumps++;
+                }
+                time = lineTime;
+                String key = line.substring(firstComma + 1, lastComma);
+                int count;
+                try
+                {
+                    count = Integer.parseInt(line.substring(lastComma + 1));
+                }
+                catch (NumberFormatException exception)
+                {
+                    throw new IOException("line " + lineNr + " of " + deltaFile + " is not valid: " + line);
+                }
+                Integer i = index.get(key);
+                if (i == null)
+                {
+                    if (dumps > 0)
+                        throw new IOException(
+                                "line " + lineNr + " of " + deltaFile + " has a key that is not in the first dump: " + line);
+                    index.put(key, keys.size());
+                    keys.add(key);
+                    counts.add(count);
+                }
+                else
+                    counts.set(i, count);
+            }
+            if (time != null)
+            {
+                writeDump(writer, time, keys, counts);
+                dumps++;
+            }
+        }
+        return dumps;
+    }
+
+    /**
+     * Write the lines of one dump with all counts.
+     * @param writer Writer; the writer
+     * @param time String; the time as written in the delta file
+     * @param keys List&lt;String&gt;; the keys in the order of the first dump
+     * @param counts TIntArrayList; the current counts per key
+     * @throws IOException on error writing the lines
+     */
+    private static void writeDump(final Writer writer, final String time, final List<String> keys, final TIntArrayList counts)
+            throws IOException
+    {
+        for (int i = 0; i < keys.size(); i++)
+        {
+            writer.write(time);
+            writer.write(',');
+            writer.write(keys.get(i));
+            writer.write(',');
+            writer.write(Integer.toString(counts.get(i)));
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * @param args String[]; args[0]: the directory with the delta csv files; args[1]: the directory to write the full csv files
+     * @throws IOException on I/O error, or when a file is not valid
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: CsvOccupancyDecoder input-directory output-directory");
+            System.exit(-1);
+        }
+        for (String name : new String[] {CsvOccupancyWriter.LOCATION_FILE, CsvOccupancyWriter.SUBLOCATION_FILE})
+        {
+            long start = System.currentTimeMillis();
+            int dumps = decode(new File(args[0], name), new File(args[1], name));
+            System.out.println("Decoded " + dumps + " dumps from " + name + " in " + (System.currentTimeMillis() - start)
+                    + " ms");
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package eu.heros.output;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * CsvOccupancyWriter writes the occupancy as two gzipped csv files: locationNrPersons.csv.gz with a line per location, and
+ * sublocationNrPersons.csv.gz with a line per sublocation, for every dump. In delta mode, only the lines of which the count
+ * differs from the last written count are written, except for the keyframes, which have all lines. When no count changed, the
+ * line of the first location or sublocation is repeated, so every dump time is present in both files. CsvOccupancyDecoder
+ * rebuilds the full time series from a delta file.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class CsvOccupancyWriter implements OccupancyWriter
+{
+    /** the name of the location occupancy file. */
+    public static final String LOCATION_FILE = "locationNrPersons.csv.gz";
+
+    /** the name of the sublocation occupancy file. */
+    public static final String SUBLOCATION_FILE = "sublocationNrPersons.csv.gz";
+
+    /** the header of the location occupancy file. */
+    static final String LOCATION_HEADER = "\"Time(h)\",\"LocationNr\",\"NrPersons\"\n";
+
+    /** the header of the sublocation occupancy file. */
+    static final String SUBLOCATION_HEADER = "\"Time(h)\",\"LocationNr\",\"SubLocationNr\",\"NrPersons\"\n";
+
+    /** the layout of the dump. */
+    private final OccupancyLayout layout;
+
+    /** The file with nr of persons per location. */
+    private final Writer locationNrWriter;
+
+    /** The file with nr of persons per sublocation. */
+    private final Writer sublocationNrWriter;
+
+    /** the last written counts in delta mode; null when every dump is written in full. */
+    private final OccupancyDelta delta;
+
+    /**
+     * Create the csv files and write their headers.
+     * @param outputPath String; the directory to write the files to
+     * @param layout OccupancyLayout; the layout of the dump
+     * @param keyframeInterval int; the number of dumps between keyframes in delta mode; 0 means that every dump is written in
+     *            full
+     * @param gzipThreads int; the number of compression threads; 0 for standard gzip
+     * @param gzipBlockSize int; the block size in bytes for parallel compression
+     * @throws IOException on error creating the files
+     */
+    public CsvOccupancyWriter(final String outputPath, final OccupancyLayout layout, final int keyframeInterval,
+            final int gzipThreads, final int gzipBlockSize) throws IOException
+    {
+        this.layout = layout;
+        this.delta = keyframeInterval > 0 ? new OccupancyDelta(keyframeInterval, layout) : null;
+        this.locationNrWriter = open(new File(outputPath + "/" + LOCATION_FILE), gzipThreads, gzipBlockSize);
+        this.locationNrWriter.write(LOCATION_HEADER);
+        this.locationNrWriter.flush();
+        this.sublocationNrWriter = open(new File(outputPath + "/" + SUBLOCATION_FILE), gzipThreads, gzipBlockSize);
+        this.sublocationNrWriter.write(SUBLOCATION_HEADER);
+        this.sublocationNrWriter.flush();
+    }
+
+    /**
+     * Open a gzipped csv file for writing, with standard gzip compression.
+     * @param file File; the file
+     * @return Writer; a buffered writer for the file
+     * @throws IOException on error creating the file
+     */
+    static Writer open(final File file) throws IOException
+    {
+        return open(file, 0, 0);
+    }
+
+    /**
+     * Open a gzipped csv file for writing.
+     * @param file File; the file
+     * @param gzipThreads int; the number of compression threads; 0 for standard gzip
+     * @param gzipBlockSize int; the block size in bytes for parallel compression
+     * @return Writer; a buffered writer for the file
+     * @throws IOException on error creating the file
+     */
+    static Writer open(final File file, final int gzipThreads, final int gzipBlockSize) throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(file);
+        BufferedOutputStream bos = new BufferedOutputStream(fos, 128 * 1024);
+        OutputStream gos = ParallelGzipOutputStream.create(bos, gzipThreads, gzipBlockSize);
+        OutputStreamWriter osw = new OutputStreamWriter(gos, "UTF-8");
+        return new BufferedWriter(osw, 128 * 1024);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final double time, final int[] locationCounts, final int[] subLocationCounts) throws IOException
+    {
+        if (this.delta == null || this.delta.isKeyframe())
+            writeLines(this.locationNrWriter, this.sublocationNrWriter, this.layout, time, locationCounts, subLocationCounts,
+                    null, null);
+        else
+            writeLines(this.locationNrWriter, this.sublocationNrWriter, this.layout, time, locationCounts, subLocationCounts,
+                    this.delta.getLastLocationCounts(), this.delta.getLastSubLocationCounts());
+        if (this.delta != null)
+            this.delta.written(locationCounts, subLocationCounts);
+        this.locationNrWriter.flush();
+        this.sublocationNrWriter.flush();
+    }
+
+    /**
+     * Write the csv lines of one dump. When the last written counts are given, only the lines with a changed count are written;
+     * when no count changed, the line of the first location or sublocation is written.
+     * @param locationWriter Writer; the writer for the location lines
+     * @param sublocationWriter Writer; the writer for the sublocation lines
+     * @param layout OccupancyLayout; the layout of the dump
+     * @param time double; the simulation time in hours
+     * @param locationCounts int[]; the number of persons per location, in the order of the layout
+     * @param subLocationCounts int[]; the number of persons per dumped sublocation, in the order of the layout
+     * @param lastLocationCounts int[]; the last written location counts, or null to write all location lines
+     * @param lastSubLocationCounts int[]; the last written sublocation counts, or null to write all sublocation lines
+     * @throws IOException on error writing the lines
+     */
+    static void writeLines(final Writer locationWriter, final Writer sublocationWriter, final OccupancyLayout layout,
+            final double time, final int[] locationCounts, final int[] subLocationCounts, final int[] lastLocationCounts,
+            final int[] lastSubLocationCounts) throws IOException
+    {
+        String timeString = Double.toString(time);
+        boolean locationWritten = false;
+        boolean subLocationWritten = false;
+        int s = 0;
+        for (int i = 0; i < layout.getNumberOfLocations(); i++)
+        {
+            if (lastLocationCounts == null || locationCounts[i] != lastLocationCounts[i])
+            {
+                writeLine(locationWriter, timeString, layout.getLocationNr(i), -1, locationCounts[i]);
+                locationWritten = true;
+            }
+            for (int subLocationIndex = 1; subLocationIndex <= layout.getNrSubLocations(i); subLocationIndex++)
+            {
+                if (lastSubLocationCounts == null || subLocationCounts[s] != lastSubLocationCounts[s])
+                {
+                    writeLine(sublocationWriter, timeString, layout.getLocationNr(i), subLocationIndex, subLocationCounts[s]);
+                    subLocationWritten = true;
+                }
+                s++;
+            }
+        }
+        if (!locationWritten && layout.getNumberOfLocations() > 0)
+            writeLine(locationWriter, timeString, layout.getLocationNr(0), -1, locationCounts[0]);
+        if (!subLocationWritten && layout.getTotalSubLocations() > 0)
+        {
+            int i = 0;
+            while (layout.getNrSubLocations(i) == 0)
+                i++;
+            writeLine(sublocationWriter, timeString, layout.getLocationNr(i), 1, subLocationCounts[0]);
+        }
+    }
+
+    /**
+     * Write one csv line.
+     * @param writer Writer; the writer
+     * @param timeString String; the formatted time
+     * @param locationNr int; the location number
+     * @param subLocationIndex int; the sublocation index, or -1 for a location line
+     * @param count int; the number of persons
+     * @throws IOException on error writing the line
+     */
+    private static void writeLine(final Writer writer, final String timeString, final int locationNr,
+            final int subLocationIndex, final int count) throws IOException
+    {
+        writer.write(timeString);
+        writer.write(',');
+        writer.write(Integer.toString(locationNr));
+        writer.write(',');
+        if (subLocationIndex >= 0)
+        {
+            writer.write(Integer.toString(subLocationIndex));
+            writer.write(',');
+        }
+        writer.write(Integer.toString(count));
+        writer.write('\n');
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            this.locationNrWriter.close();
+        }
+        finally
+        {
+            this.sublocationNrWriter.close();
+        }
+    }
+
+}
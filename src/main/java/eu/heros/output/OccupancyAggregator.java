@@ -0,0 +1,276 @@
+package eu.heros.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import nl.tudelft.simulation.medlabs.location.Location;
+
+/**
+ * OccupancyAggregator writes the occupancy aggregated per location type, per district and/or per cell of a square spatial
+ * grid, instead of per location. The aggregation is computed on the fly from the location counts of a dump. The groups are
+ * fixed when the aggregator is made: per location, the index of its location type, of its district and of its grid cell are
+ * stored, so a dump is one pass over the location counts. As an OccupancyWriter, the aggregator can be wrapped in an
+ * AsyncOccupancyWriter to write on another thread; it only uses the location counts of a dump. The output files are:
+ * <ul>
+ * <li>locationTypeNrPersons.csv.gz: "Time(h)","LocationType","NrPersons"</li>
+ * <li>districtNrPersons.csv.gz: "Time(h)","District","NrPersons"; locations without a district are not counted</li>
+ * <li>gridNrPersons.csv.gz: "Time(h)","CellX","CellY","Lat","Lon","NrPersons", where (CellX, CellY) is the cell index and
+ * (Lat, Lon) the center of the cell; only cells that contain a location are written</li>
+ * </ul>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class OccupancyAggregator implements OccupancyWriter
+{
+    /** the name of the file with the occupancy per location type. */
+    public static final String TYPE_FILE = "locationTypeNrPersons.csv.gz";
+
+    /** the name of the file with the occupancy per district. */
+    public static final String DISTRICT_FILE = "districtNrPersons.csv.gz";
+
+    /** the name of the file with the occupancy per grid cell. */
+    public static final String GRID_FILE = "gridNrPersons.csv.gz";
+
+    /** meters per degree latitude. */
+    private static final double METERS_PER_DEGREE = 111319.24;
+
+    /** the names of the location types. */
+    private final String[] typeNames;
+
+    /** the location type index per location id, -1 for no location. */
+    private final int[] typeIndex;
+
+    /** the names of the districts, empty when not aggregated per district. */
+    private final String[] districtNames;
+
+    /** the district index per location id, -1 for no location or district; null when not aggregated per district. */
+    private final int[] districtIndex;
+
+    /** the grid cell index per location id, -1 for no location or a location without coordinates. */
+    private final int[] cellIndex;
+
+    /** the csv fields for cell x, cell y, and the latitude and longitude of the center, per grid cell index. */
+    private final String[] cellFields;
+
+    /** the writer for the occupancy per location type, null when not aggregated per type. */
+    private final Writer typeWriter;
+
+    /** the writer for the occupancy per district, null when not aggregated per district. */
+    private final Writer districtWriter;
+
+    /** the writer for the occupancy per grid cell, null when not aggregated per grid cell. */
+    private final Writer gridWriter;
+
+    /** the sums per location type, reused for every dump. */
+    private final int[] typeSums;
+
+    /** the sums per district, reused for every dump. */
+    private final int[] districtSums;
+
+    /** the sums per grid cell, reused for every dump. */
+    private final int[] cellSums;
+
+    /**
+     * Create the aggregator, fix the groups, and create the output files.
+     * @param outputPath String; the directory to write the files to
+     * @param locations Location[]; the locations, indexed by their (dense) id; null entries are allowed
+     * @param perType boolean; whether to aggregate per location type
+     * @param districtIndex int[]; the district index per location id, -1 for a location without a district; null for no
+     *            aggregation per district
+     * @param districtNames String[]; the names of the districts, in order of the district index; null for no aggregation per
+     *            district
+     * @param gridSize double; the size of a grid cell in meters; 0 or less for no aggregation per grid cell
+     * @param gzipThreads int; the number of compression threads; 0 for standard gzip
+     * @param gzipBlockSize int; the block size in bytes for parallel compression
+     * @throws IOException on error creating the files
+     */
+    public OccupancyAggregator(final String outputPath, final Location[] locations, final boolean perType,
+            final int[] districtIndex, final String[] districtNames, final double gridSize, final int gzipThreads,
+            final int gzipBlockSize) throws IOException
+    {
+        // location types, in order of first occurrence
+        Map<String, Integer> typeMap = new LinkedHashMap<>();
+        this.typeIndex = new int[locations.length];
+        for (int id = 0; id < locations.length; id++)
+        {
+            if (locations[id] == null)
+                this.typeIndex[id] = -1;
+            else
+            {
+                String name = locations[id].getLocationType().getName();
+                Integer index = typeMap.get(name);
+                if (index == null)
+                {
+                    index = typeMap.size();
+                    typeMap.put(name, index);
+                }
+                this.typeIndex[id] = index;
+            }
+        }
+        this.typeNames = typeMap.keySet().toArray(new String[typeMap.size()]);
+        this.typeSums = new int[this.typeNames.length];
+
+        // districts, as numbered by the id mapping
+        if (districtIndex == null)
+        {
+            this.districtIndex = null;
+            this.districtNames = new String[0];
+        }
+        else
+        {
+            this.districtIndex = new int[locations.length];
+            for (int id = 0; id < locations.length; id++)
+                this.districtIndex[id] = locations[id] == null ? -1 : districtIndex[id];
+            this.districtNames = districtNames;
+        }
+        this.districtSums = new int[this.districtNames.length];
+
+        // grid cells, based on an equirectangular projection around the mean latitude
+        this.cellIndex = new int[locations.length];
+        List<String> fields = new ArrayList<>();
+        if (gridSize > 0.0)
+        {
+            double sumLat = 0.0;
+            int n = 0;
+            for (Location location : locations)
+            {
+                if (location != null && location.getLatitude() != 0.0 && location.getLongitude() != 0.0)
+                {
+                    sumLat += location.getLatitude();
+                    n++;
+                }
+            }
+            double cosLat = Math.cos(Math.toRadians(n == 0 ? 0.0 : sumLat / n));
+            double degreesLat = gridSize / METERS_PER_DEGREE;
+            double degreesLon = gridSize / (METERS_PER_DEGREE * cosLat);
+            TLongIntMap cellMap = new TLongIntHashMap(1024, 0.5f, Long.MIN_VALUE, -1);
+            for (int id = 0; id < locations.length; id++)
+            {
+                Location location = locations[id];
+                this.cellIndex[id] = -1;
+                if (location == null || location.getLatitude() == 0.0 || location.getLongitude() == 0.0)
+                    continue;
+                int x = (int) Math.floor(location.getLongitude() / degreesLon);
+                int y = (int) Math.floor(location.getLatitude() / degreesLat);
+                long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+                int index = cellMap.get(key);
+                if (index < 0)
+                {
+                    index = fields.size();
+                    cellMap.put(key, index);
+                    fields.add(String.format(Locale.US, "%d,%d,%.6f,%.6f", x, y, (y + 0.5) * degreesLat,
+                            (x + 0.5) * degreesLon));
+                }
+                this.cellIndex[id] = index;
+            }
+        }
+        this.cellFields = fields.toArray(new String[fields.size()]);
+        this.cellSums = new int[this.cellFields.length];
+
+        this.typeWriter =
+                perType ? CsvOccupancyWriter.open(new File(outputPath + "/" + TYPE_FILE), gzipThreads, gzipBlockSize) : null;
+        if (this.typeWriter != null)
+            this.typeWriter.write("\"Time(h)\",\"LocationType\",\"NrPersons\"\n");
+        this.districtWriter = districtIndex != null
+                ? CsvOccupancyWriter.open(new File(outputPath + "/" + DISTRICT_FILE), gzipThreads, gzipBlockSize) : null;
+        if (this.districtWriter != null)
+            this.districtWriter.write("\"Time(h)\",\"District\",\"NrPersons\"\n");
+        this.gridWriter = gridSize > 0.0
+                ? CsvOccupancyWriter.open(new File(outputPath + "/" + GRID_FILE), gzipThreads, gzipBlockSize) : null;
+        if (this.gridWriter != null)
+            this.gridWriter.write("\"Time(h)\",\"CellX\",\"CellY\",\"Lat\",\"Lon\",\"NrPersons\"\n");
+    }
+
+    /**
+     * Aggregate and write the occupancy of one dump.
+     * @param time double; the simulation time in hours
+     * @param locationCounts int[]; the number of persons per location id
+     * @param subLocationCounts int[]; not used; the aggregation is based on the location counts
+     * @throws IOException on error writing the files
+     */
+    @Override
+    public void write(final double time, final int[] locationCounts, final int[] subLocationCounts) throws IOException
+    {
+        String timeString = Double.toString(time);
+        if (this.typeWriter != null)
+        {
+            Arrays.fill(this.typeSums, 0);
+            for (int id = 0; id < this.typeIndex.length; id++)
+            {
+                if (this.typeIndex[id] >= 0)
+                    this.typeSums[this.typeIndex[id]] += locationCounts[id];
+            }
+            for (int t = 0; t < this.typeNames.length; t++)
+                this.typeWriter.write(timeString + ",\"" + this.typeNames[t] + "\"," + this.typeSums[t] + "\n");
+            this.typeWriter.flush();
+        }
+        if (this.districtWriter != null)
+        {
+            Arrays.fill(this.districtSums, 0);
+            for (int id = 0; id < this.districtIndex.length; id++)
+            {
+                if (this.districtIndex[id] >= 0)
+                    this.districtSums[this.districtIndex[id]] += locationCounts[id];
+            }
+            for (int d = 0; d < this.districtNames.length; d++)
+                this.districtWriter.write(timeString + ",\"" + this.districtNames[d] + "\"," + this.districtSums[d] + "\n");
+            this.districtWriter.flush();
+        }
+        if (this.gridWriter != null)
+        {
+            Arrays.fill(this.cellSums, 0);
+            for (int id = 0; id < this.cellIndex.length; id++)
+            {
+                if (this.cellIndex[id] >= 0)
+                    this.cellSums[this.cellIndex[id]] += locationCounts[id];
+            }
+            for (int c = 0; c < this.cellFields.length; c++)
+                this.gridWriter.write(timeString + "," + this.cellFields[c] + "," + this.cellSums[c] + "\n");
+            this.gridWriter.flush();
+        }
+    }
+
+    /**
+     * Close the output files.
+     * @throws IOException on error closing the files
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if (this.typeWriter != null)
+                this.typeWriter.close();
+        }
+        finally
+        {
+            try
+            {
+                if (this.districtWriter != null)
+                    this.districtWriter.close();
+            }
+            finally
+            {
+                if (this.gridWriter != null)
+                    this.gridWriter.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package eu.heros.output;
+
+/**
+ * OccupancyDelta keeps the last written counts of an occupancy writer in delta mode, and decides which dumps are keyframes. In
+ * delta mode, a dump only contains the locations and sublocations of which the count differs from the last written value. Every
+ * keyframeInterval dumps, starting with the first dump, a keyframe with all counts is written, so a reader can start decoding
+ * from any keyframe, and errors do not propagate beyond the next keyframe.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+class OccupancyDelta
+{
+    /** the number of dumps between keyframes; 0 or less means that every dump is a keyframe (no delta mode). */
+    private final int keyframeInterval;
+
+    /** the number of dumps so far. */
+    private int nrDumps = 0;
+
+    /** the last written location counts. */
+    private final int[] lastLocationCounts;
+
+    /** the last written sublocation counts. */
+    private final int[] lastSubLocationCounts;
+
+    /**
+     * @param keyframeInterval int; the number of dumps between keyframes; 0 or less for no delta mode
+     * @param layout OccupancyLayout; the layout of the dump
+     */
+    OccupancyDelta(final int keyframeInterval, final OccupancyLayout layout)
+    {
+        this.keyframeInterval = keyframeInterval;
+        this.lastLocationCounts = new int[layout.getNumberOfLocations()];
+        this.lastSubLocationCounts = new int[layout.getTotalSubLocations()];
+    }
+
+    /**
+     * @return whether the next dump is a keyframe
+     */
+    boolean isKeyframe()
+    {
+        return this.keyframeInterval <= 0 || this.nrDumps % this.keyframeInterval == 0;
+    }
+
+    /**
+     * Register that a dump has been written, and remember its counts.
+     * @param locationCounts int[]; the written location counts
+     * @param subLocationCounts int[]; the written sublocation counts
+     */
+    void written(final int[] locationCounts, final int[] subLocationCounts)
+    {
+        System.arraycopy(locationCounts, 0, this.lastLocationCounts, 0, this.lastLocationCounts.length);
+        System.arraycopy(subLocationCounts, 0, this.lastSubLocationCounts, 0, this.lastSubLocationCounts.length);
+        this.nrDumps++;
+    }
+
+    /**
+     * @return the last written location counts
+     */
+    int[] getLastLocationCounts()
+    {
+        return this.lastLocationCounts;
+    }
+
+    /**
+     * @return the last written sublocation counts
+     */
+    int[] getLastSubLocationCounts()
+    {
+        return this.lastSubLocationCounts;
+    }
+
+}
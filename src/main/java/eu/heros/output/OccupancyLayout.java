@@ -0,0 +1,143 @@
+package eu.heros.output;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import nl.tudelft.simulation.medlabs.location.Location;
+import nl.tudelft.simulation.medlabs.location.LocationType;
+
+/**
+ * OccupancyLayout fixes the order of the locations and sublocations in the occupancy dumps. The layout is made once, at the
+ * first dump; every hour, the number of persons per location and per sublocation is then collected in two int arrays in this
+ * order. The locations are ordered by location type, as in the location type list of the model. The dump can be limited to a
+ * selection of location types. Per location, the sublocations 1 to n-1 are dumped; sublocation 0 is not part of the
+ * sublocation dump.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class OccupancyLayout
+{
+    /** the locations in dump order. */
+    private final Location[] locations;
+
+    /** the location numbers that are written in the dump, in dump order. */
+    private final int[] locationNrs;
+
+    /** the number of dumped sublocations per location, in dump order. */
+    private final int[] nrSubLocations;
+
+    /** the total number of dumped sublocations. */
+    private final int totalSubLocations;
+
+    /**
+     * Make the layout from the locations of the model; the special locations with a negative id are skipped.
+     * @param locationTypes List&lt;LocationType&gt;; the location types of the model
+     * @param selectedTypes Set&lt;String&gt;; the names of the location types to dump (lower case); empty to dump all types
+     * @param locationNrMapper LocationNrMapper; maps the id of a location to the number that is written in the dump
+     */
+    public OccupancyLayout(final List<LocationType> locationTypes, final Set<String> selectedTypes,
+            final LocationNrMapper locationNrMapper)
+    {
+        List<Location> list = new ArrayList<>();
+        for (LocationType locationType : locationTypes)
+        {
+            if (!selectedTypes.isEmpty() && !selectedTypes.contains(locationType.getName().toLowerCase()))
+                continue;
+            for (Location location : locationType.getLocationMap().valueCollection())
+            {
+                if (location.getId() >= 0)
+                    list.add(location);
+            }
+        }
+        this.locations = list.toArray(new Location[list.size()]);
+        this.locationNrs = new int[this.locations.length];
+        this.nrSubLocations = new int[this.locations.length];
+        int total = 0;
+        for (int i = 0; i < this.locations.length; i++)
+        {
+            this.locationNrs[i] = locationNrMapper.getLocationNr(this.locations[i].getId());
+            this.nrSubLocations[i] = Math.max(0, this.locations[i].getNumberOfSubLocations() - 1);
+            total += this.nrSubLocations[i];
+        }
+        this.totalSubLocations = total;
+    }
+
+    /**
+     * Make a layout from the location numbers and sublocation counts that were read back from a dump.
+     * @param locationNrs int[]; the location numbers in dump order
+     * @param nrSubLocations int[]; the number of dumped sublocations per location, in dump order
+     */
+    public OccupancyLayout(final int[] locationNrs, final int[] nrSubLocations)
+    {
+        this.locations = null;
+        this.locationNrs = locationNrs;
+        this.nrSubLocations = nrSubLocations;
+        int total = 0;
+        for (int n : nrSubLocations)
+            total += n;
+        this.totalSubLocations = total;
+    }
+
+    /**
+     * @return the number of locations in the dump
+     */
+    public int getNumberOfLocations()
+    {
+        return this.locationNrs.length;
+    }
+
+    /**
+     * @return the total number of sublocations in the dump
+     */
+    public int getTotalSubLocations()
+    {
+        return this.totalSubLocations;
+    }
+
+    /**
+     * @param index int; the index of the location in dump order
+     * @return the location; only available for a layout that was made from the model
+     */
+    public Location getLocation(final int index)
+    {
+        return this.locations[index];
+    }
+
+    /**
+     * @param index int; the index of the location in dump order
+     * @return the location number that is written in the dump
+     */
+    public int getLocationNr(final int index)
+    {
+        return this.locationNrs[index];
+    }
+
+    /**
+     * @param index int; the index of the location in dump order
+     * @return the number of dumped sublocations of the location (the sublocations 1 to n-1)
+     */
+    public int getNrSubLocations(final int index)
+    {
+        return this.nrSubLocations[index];
+    }
+
+    /** Maps the id of a location in the model to the number that is written in the dump. */
+    @FunctionalInterface
+    public interface LocationNrMapper
+    {
+        /**
+         * @param locationId int; the id of the location in the model
+         * @return the number that is written in the dump for the location
+         */
+        int getLocationNr(int locationId);
+    }
+
+}
@@ -0,0 +1,283 @@
+package eu.heros.output;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * OccupancyReader reads an occupancy file of the BinaryOccupancyWriter, dump by dump. Delta records are applied to the counts
+ * of the previous dump, so every dump has the full counts. Used as a program, it converts the file to the csv files
+ * locationNrPersons.csv.gz and sublocationNrPersons.csv.gz, with the same content as a csv dump without delta mode. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.output.OccupancyReader occupancy.hocc output-directory
+ * </pre>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class OccupancyReader implements AutoCloseable
+{
+    /** the file, for the error messages. */
+    private final File file;
+
+    /** the input stream. */
+    private final DataInputStream in;
+
+    /** the layout of the dump. */
+    private final OccupancyLayout layout;
+
+    /** the time of the current dump. */
+    private double time = Double.NaN;
+
+    /** the location counts of the current dump. */
+    private final int[] locationCounts;
+
+    /** the sublocation counts of the current dump. */
+    private final int[] subLocationCounts;
+
+    /** the uncompressed block for a full or a delta record, plus one byte to detect blocks that are too long. */
+    private final byte[] block;
+
+    /** the decompressor, reused for every dump. */
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Open an occupancy file and read its header.
+     * @param file File; the occupancy file
+     * @throws IOException on I/O error, or when the file is not an occupancy file
+     */
+    public OccupancyReader(final File file) throws IOException
+    {
+        this.file = file;
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 128 * 1024));
+        if (this.in.readInt() != BinaryOccupancyWriter.MAGIC)
+        {
+            this.in.close();
+            throw new IOException("not an occupancy file: " + file);
+        }
+        int version = this.in.readInt();
+        if (version != BinaryOccupancyWriter.VERSION)
+        {
+            this.in.close();
+            throw new IOException("occupancy file " + file + " has version " + version + "; expected "
+                    + BinaryOccupancyWriter.VERSION);
+        }
+        int nrLocations = this.in.readInt();
+        int totalSubLocations = this.in.readInt();
+        int[] locationNrs = new int[nrLocations];
+        int[] nrSubLocations = new int[nrLocations];
+        for (int i = 0; i < nrLocations; i++)
+        {
+            locationNrs[i] = this.in.readInt();
+            nrSubLocations[i] = this.in.readInt();
+        }
+        this.layout = new OccupancyLayout(locationNrs, nrSubLocations);
+        if (this.layout.getTotalSubLocations() != totalSubLocations)
+        {
+            this.in.close();
+            throw new IOException("occupancy file " + file + " has an inconsistent header");
+        }
+        this.locationCounts = new int[nrLocations];
+        this.subLocationCounts = new int[totalSubLocations];
+        this.block = new byte[4 * (2 * (nrLocations + totalSubLocations) + 2) + 1];
+    }
+
+    /**
+     * Read the next dump.
+     * @return boolean; true when a dump was read, false at the end of the file
+     * @throws IOException on I/O error, or when the dump is corrupt
+     */
+    public boolean next() throws IOException
+    {
+        byte type;
+        try
+        {
+            type = this.in.readByte();
+        }
+        catch (EOFException exception)
+        {
+            return false;
+        }
+        if (type != BinaryOccupancyWriter.RECORD_FULL && type != BinaryOccupancyWriter.RECORD_DELTA)
+            throw new IOException("unknown record type " + (char) type + " in occupancy file " + this.file);
+        if (type == BinaryOccupancyWriter.RECORD_DELTA && Double.isNaN(this.time))
+            throw new IOException("occupancy file " + this.file + " starts with a delta record");
+        this.time = this.in.readDouble();
+        byte[] compressed = new byte[this.in.readInt()];
+        this.in.readFully(compressed);
+        int length = inflate(compressed);
+        if (length < 0 || length == this.block.length)
+            throw new IOException("corrupt dump at time " + this.time + " in occupancy file " + this.file);
+        ByteBuffer buffer = ByteBuffer.wrap(this.block, 0, length);
+        try
+        {
+            if (type == BinaryOccupancyWriter.RECORD_FULL)
+            {
+                if (length != 4 * (this.locationCounts.length + this.subLocationCounts.length))
+                    throw new IOException("corrupt dump at time " + this.time + " in occupancy file " + this.file);
+                buffer.asIntBuffer().get(this.locationCounts).get(this.subLocationCounts);
+            }
+            else
+            {
+                applyChanges(buffer, this.locationCounts);
+                applyChanges(buffer, this.subLocationCounts);
+                if (buffer.hasRemaining())
+                    throw new IOException("corrupt dump at time " + this.time + " in occupancy file " + this.file);
+            }
+        }
+        catch (RuntimeException exception)
+        {
+            throw new IOException("corrupt dump at time " + this.time + " in occupancy file " + this.file, exception);
+        }
+        return true;
+    }
+
+    /**
+     * Apply the changed counts of a delta record to the counts.
+     * @param buffer ByteBuffer; the buffer, positioned at the number of changes
+     * @param counts int[]; the counts to update
+     */
+    private static void applyChanges(final ByteBuffer buffer, final int[] counts)
+    {
+        int changed = buffer.getInt();
+        int index = -1;
+        for (int c = 0; c < changed; c++)
+        {
+            index += buffer.getInt();
+            counts[index] = buffer.getInt();
+        }
+    }
+
+    /**
+     * Decompress a block into the block array.
+     * @param compressed byte[]; the compressed block
+     * @return the length of the uncompressed block
+     * @throws IOException when the block is corrupt
+     */
+    private int inflate(final byte[] compressed) throws IOException
+    {
+        this.inflater.reset();
+        this.inflater.setInput(compressed);
+        try
+        {
+            int n = 0;
+            while (n < this.block.length && !this.inflater.finished())
+            {
+                int read = this.inflater.inflate(this.block, n, this.block.length - n);
+                if (read == 0 && (this.inflater.needsInput() || this.inflater.needsDictionary()))
+                    break;
+                n += read;
+            }
+            return this.inflater.finished() ? n : -1;
+        }
+        catch (DataFormatException exception)
+        {
+            throw new IOException("corrupt dump in occupancy file " + this.file, exception);
+        }
+    }
+
+    /**
+     * @return the layout of the dump
+     */
+    public OccupancyLayout getLayout()
+    {
+        return this.layout;
+    }
+
+    /**
+     * @return the time of the current dump in hours
+     */
+    public double getTime()
+    {
+        return this.time;
+    }
+
+    /**
+     * @return the location counts of the current dump in the order of the layout; the array is reused for the next dump
+     */
+    public int[] getLocationCounts()
+    {
+        return this.locationCounts;
+    }
+
+    /**
+     * @return the sublocation counts of the current dump in the order of the layout; the array is reused for the next dump
+     */
+    public int[] getSubLocationCounts()
+    {
+        return this.subLocationCounts;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            this.in.close();
+        }
+        finally
+        {
+            this.inflater.end();
+        }
+    }
+
+    /**
+     * Convert an occupancy file to the csv files of the CsvOccupancyWriter.
+     * @param occupancyFile File; the occupancy file
+     * @param outputPath String; the directory to write the csv files to
+     * @return int; the number of converted dumps
+     * @throws IOException on I/O error, or when the occupancy file is not valid
+     */
+    public static int toCsv(final File occupancyFile, final String outputPath) throws IOException
+    {
+        int dumps = 0;
+        try (OccupancyReader reader = new OccupancyReader(occupancyFile);
+                Writer locationWriter = CsvOccupancyWriter.open(new File(outputPath + "/" + CsvOccupancyWriter.LOCATION_FILE));
+                Writer sublocationWriter =
+                        CsvOccupancyWriter.open(new File(outputPath + "/" + CsvOccupancyWriter.SUBLOCATION_FILE)))
+        {
+            locationWriter.write(CsvOccupancyWriter.LOCATION_HEADER);
+            sublocationWriter.write(CsvOccupancyWriter.SUBLOCATION_HEADER);
+            while (reader.next())
+            {
+                CsvOccupancyWriter.writeLines(locationWriter, sublocationWriter, reader.getLayout(), reader.getTime(),
+                        reader.getLocationCounts(), reader.getSubLocationCounts(), null, null);
+                dumps++;
+            }
+        }
+        return dumps;
+    }
+
+    /**
+     * @param args String[]; args[0]: the occupancy file; args[1]: the directory to write the csv files to
+     * @throws IOException on I/O error, or when the occupancy file is not valid
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: OccupancyReader occupancy.hocc output-directory");
+            System.exit(-1);
+        }
+        long start = System.currentTimeMillis();
+        int dumps = toCsv(new File(args[0]), args[1]);
+        System.out.println("Converted " + dumps + " dumps from " + args[0] + " in " + (System.currentTimeMillis() - start)
+                + " ms");
+    }
+
+}
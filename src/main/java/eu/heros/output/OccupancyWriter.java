@@ -0,0 +1,36 @@
+package eu.heros.output;
+
+import java.io.IOException;
+
+/**
+ * OccupancyWriter writes the number of persons per location and per sublocation at a point in time. The counts are offered as
+ * int arrays in the order of the OccupancyLayout of the writer. The arrays are owned by the caller and can be reused after the
+ * call returns.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public interface OccupancyWriter
+{
+    /**
+     * Write the occupancy at a point in time.
+     * @param time double; the simulation time in hours
+     * @param locationCounts int[]; the number of persons per location, in the order of the layout
+     * @param subLocationCounts int[]; the number of persons per dumped sublocation, in the order of the layout
+     * @throws IOException on error writing the occupancy
+     */
+    void write(double time, int[] locationCounts, int[] subLocationCounts) throws IOException;
+
+    /**
+     * Flush and close the output.
+     * @throws IOException on error closing the output
+     */
+    void close() throws IOException;
+
+}
@@ -0,0 +1,269 @@
+package eu.heros.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ParallelGzipOutputStream compresses blocks of the output in parallel, and writes every block as a separate gzip member. The
+ * result is a standard multi-member gzip stream, which can be read by gunzip, zcat, and the GZIPInputStream of Java. The blocks
+ * are compressed by a pool of compression threads that is shared by all streams of the JVM, and are written in order. The
+ * number of blocks that are being compressed per stream is bounded, so the memory use is bounded as well.
+ * <p>
+ * The number of threads and the block size are given per stream, e.g., from the parameters of the model that writes the file;
+ * the create method returns a ParallelGzipOutputStream, or a standard GZIPOutputStream when the number of threads is 0.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream
+{
+    /** the gzip member header: magic, deflate, no flags, no time, no extra flags, unknown OS. */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    /** the shared pool of compression threads, made when the first stream is created. */
+    private static ExecutorService executor = null;
+
+    /** the number of threads of the shared pool. */
+    private static int executorThreads = 0;
+
+    /** the deflater per compression thread. */
+    private static final ThreadLocal<Deflater> DEFLATER =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    /** the pool to compress the blocks of this stream. */
+    private final ExecutorService pool;
+
+    /** the maximum number of blocks that are being compressed at the same time. */
+    private final int maxPending;
+
+    /** the compressed blocks that have not yet been written, in order. */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /** the block that is being filled. */
+    private byte[] block;
+
+    /** the number of bytes in the block. */
+    private int blockLength = 0;
+
+    /** whether a member has been submitted; an empty stream still gets one (empty) member. */
+    private boolean anyMember = false;
+
+    /** whether the stream has been closed. */
+    private boolean closed = false;
+
+    /**
+     * Create a stream that compresses blocks of the given size on the shared pool.
+     * @param out OutputStream; the underlying stream
+     * @param nrThreads int; the number of compression threads, at least 1
+     * @param blockSize int; the size of the blocks in bytes
+     */
+    public ParallelGzipOutputStream(final OutputStream out, final int nrThreads, final int blockSize)
+    {
+        super(out);
+        this.pool = getExecutor(Math.max(1, nrThreads));
+        this.maxPending = 2 * Math.max(1, nrThreads);
+        this.block = new byte[Math.max(1024, blockSize)];
+    }
+
+    /**
+     * Make a gzip stream.
+     * @param out OutputStream; the underlying stream
+     * @param nrThreads int; the number of compression threads; 0 for a standard single-threaded GZIPOutputStream
+     * @param blockSize int; the size of the blocks in bytes
+     * @return OutputStream; a ParallelGzipOutputStream, or a GZIPOutputStream when the number of threads is 0
+     * @throws IOException on error writing the gzip header
+     */
+    public static OutputStream create(final OutputStream out, final int nrThreads, final int blockSize) throws IOException
+    {
+        if (nrThreads <= 0)
+            return new GZIPOutputStream(out, 64 * 1024);
+        return new ParallelGzipOutputStream(out, nrThreads, blockSize);
+    }
+
+    /**
+     * Return the shared pool; a new pool is made when the number of threads changed. Streams that use the old pool keep using
+     * it; its threads stop when they have been idle for a minute.
+     * @param nrThreads int; the number of threads
+     * @return ExecutorService; the shared pool
+     */
+    private static synchronized ExecutorService getExecutor(final int nrThreads)
+    {
+        if (executor == null || executorThreads != nrThreads)
+        {
+            AtomicInteger threadNr = new AtomicInteger(0);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(nrThreads, nrThreads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), (runnable) ->
+                    {
+                        Thread thread = new Thread(runnable, "gzip-" + threadNr.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            executorThreads = nrThreads;
+        }
+        return executor;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final int b) throws IOException
+    {
+        if (this.blockLength == this.block.length)
+            submitBlock();
+        this.block[this.blockLength++] = (byte) b;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException
+    {
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0)
+        {
+            if (this.blockLength == this.block.length)
+                submitBlock();
+            int n = Math.min(remaining, this.block.length - this.blockLength);
+            System.arraycopy(b, offset, this.block, this.blockLength, n);
+            this.blockLength += n;
+            offset += n;
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Hand the current block to the pool, and write the compressed blocks that are done. When too many blocks are pending,
+     * wait for the oldest one.
+     * @throws IOException on error compressing or writing a block
+     */
+    private void submitBlock() throws IOException
+    {
+        final byte[] data = this.block;
+        final int length = this.blockLength;
+        this.pending.addLast(this.pool.submit(() -> compress(data, length)));
+        this.anyMember = true;
+        this.block = new byte[data.length];
+        this.blockLength = 0;
+        while (!this.pending.isEmpty() && (this.pending.size() >= this.maxPending || this.pending.peekFirst().isDone()))
+            writeFirst();
+    }
+
+    /**
+     * Wait for the oldest pending block, and write it.
+     * @throws IOException on error compressing or writing the block
+     */
+    private void writeFirst() throws IOException
+    {
+        try
+        {
+            this.out.write(this.pending.removeFirst().get());
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("interrupted while waiting for gzip compression");
+        }
+        catch (ExecutionException exception)
+        {
+            throw new IOException("gzip compression failed", exception.getCause());
+        }
+    }
+
+    /**
+     * Compress a block into a complete gzip member.
+     * @param data byte[]; the data
+     * @param length int; the number of bytes of the data to compress
+     * @return byte[]; the gzip member
+     */
+    private static byte[] compress(final byte[] data, final int length)
+    {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+        member.write(HEADER, 0, HEADER.length);
+        byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished())
+        {
+            int n = deflater.deflate(buffer);
+            member.write(buffer, 0, n);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeIntLE(member, (int) crc.getValue());
+        writeIntLE(member, length);
+        return member.toByteArray();
+    }
+
+    /**
+     * @param stream ByteArrayOutputStream; the stream to write to
+     * @param value int; the value to write in little-endian order
+     */
+    private static void writeIntLE(final ByteArrayOutputStream stream, final int value)
+    {
+        stream.write(value & 0xff);
+        stream.write((value >>> 8) & 0xff);
+        stream.write((value >>> 16) & 0xff);
+        stream.write((value >>> 24) & 0xff);
+    }
+
+    /**
+     * Write the compressed blocks that are done and flush the underlying stream. As with a GZIPOutputStream, the data of the
+     * block that is being filled is not flushed.
+     * @throws IOException on error compressing or writing a block
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        while (!this.pending.isEmpty() && this.pending.peekFirst().isDone())
+            writeFirst();
+        this.out.flush();
+    }
+
+    /**
+     * Compress the last block, write all pending blocks, and close the underlying stream.
+     * @throws IOException on error compressing or writing a block, or on error closing the underlying stream
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed)
+            return;
+        this.closed = true;
+        try
+        {
+            if (this.blockLength > 0 || !this.anyMember)
+                submitBlock();
+            while (!this.pending.isEmpty())
+                writeFirst();
+        }
+        finally
+        {
+            this.pending.forEach((future) -> future.cancel(false));
+            this.out.close();
+        }
+    }
+
+}
@@ -0,0 +1,273 @@
+package eu.heros.output;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * PersonSnapshotReader reads a person snapshot file of the PersonSnapshotWriter through a memory-mapped buffer; the values of
+ * a person are read from the columns on request. Used as a program, it exports snapshot files to csv. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.output.PersonSnapshotReader snapshot.hsnp [snapshot.hsnp ...]
+ * </pre>
+ *
+ * Every snapshot file is written as a gzipped csv file with the same name and the extension .csv.gz, with the columns
+ * "PersonId","Phase","ExposureTime","LocationId","SubLocation","WeekPattern". The person and location ids are the original
+ * ids of the input files; the rows of the snapshot are indexed by the dense person ids of the model.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class PersonSnapshotReader
+{
+    /** the mapped file. */
+    private final MappedByteBuffer buffer;
+
+    /** the simulation time of the snapshot in hours. */
+    private final double time;
+
+    /** the number of persons. */
+    private final int nrPersons;
+
+    /** the names of the disease phases per phase code. */
+    private final String[] phaseNames;
+
+    /** the names of the week patterns per week pattern code. */
+    private final String[] weekPatternNames;
+
+    /** the start of the person id column. */
+    private final int personStart;
+
+    /** the start of the phase column. */
+    private final int phaseStart;
+
+    /** the start of the exposure time column. */
+    private final int exposureStart;
+
+    /** the start of the location column. */
+    private final int locationStart;
+
+    /** the start of the sublocation column. */
+    private final int subLocationStart;
+
+    /** the start of the week pattern column. */
+    private final int weekPatternStart;
+
+    /**
+     * Open a snapshot file and read its header.
+     * @param file File; the snapshot file
+     * @throws IOException on error reading the file, or when the file is not a snapshot file
+     */
+    public PersonSnapshotReader(final File file) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+        {
+            // the mapping stays valid after the channel has been closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        DataInputStream header = new DataInputStream(new BufferInputStream(this.buffer.duplicate()));
+        if (header.readInt() != PersonSnapshotWriter.MAGIC)
+            throw new IOException("file " + file + " is not a person snapshot file");
+        int version = header.readInt();
+        if (version != PersonSnapshotWriter.VERSION)
+            throw new IOException("person snapshot file " + file + " has unknown version " + version);
+        this.time = header.readDouble();
+        this.nrPersons = header.readInt();
+        this.phaseNames = new String[header.readInt()];
+        for (int i = 0; i < this.phaseNames.length; i++)
+            this.phaseNames[i] = header.readUTF();
+        this.weekPatternNames = new String[header.readInt()];
+        for (int i = 0; i < this.weekPatternNames.length; i++)
+            this.weekPatternNames[i] = header.readUTF();
+        int headerLength = this.buffer.capacity() - header.available();
+        this.personStart = (headerLength + 7) / 8 * 8;
+        this.phaseStart = this.personStart + 4 * this.nrPersons;
+        this.exposureStart = this.phaseStart + this.nrPersons;
+        this.locationStart = this.exposureStart + 4 * this.nrPersons;
+        this.subLocationStart = this.locationStart + 4 * this.nrPersons;
+        this.weekPatternStart = this.subLocationStart + 2 * this.nrPersons;
+        if (this.weekPatternStart + 2L * this.nrPersons != this.buffer.capacity())
+            throw new IOException("person snapshot file " + file + " has the wrong length");
+    }
+
+    /**
+     * @return the simulation time of the snapshot in hours
+     */
+    public double getTime()
+    {
+        return this.time;
+    }
+
+    /**
+     * @return the number of persons (rows) in the snapshot, including unused person ids
+     */
+    public int getNumberOfPersons()
+    {
+        return this.nrPersons;
+    }
+
+    /**
+     * @param personId int; the (dense) id of the person
+     * @return the original id of the person in the input file, -1 for an unused person id
+     */
+    public int getOriginalPersonId(final int personId)
+    {
+        return this.buffer.getInt(this.personStart + 4 * personId);
+    }
+
+    /**
+     * @param personId int; the (dense) id of the person
+     * @return the phase code of the person, -1 for an unused person id
+     */
+    public int getPhaseCode(final int personId)
+    {
+        return this.buffer.get(this.phaseStart + personId);
+    }
+
+    /**
+     * @param phaseCode int; the phase code
+     * @return the name of the disease phase, or the empty string for an unknown phase code
+     */
+    public String getPhaseName(final int phaseCode)
+    {
+        return phaseCode < 0 || phaseCode >= this.phaseNames.length ? "" : this.phaseNames[phaseCode];
+    }
+
+    /**
+     * @param personId int; the (dense) id of the person
+     * @return the exposure time of the person in hours
+     */
+    public float getExposureTime(final int personId)
+    {
+        return this.buffer.getFloat(this.exposureStart + 4 * personId);
+    }
+
+    /**
+     * @param personId int; the (dense) id of the person
+     * @return the original id of the current location of the person, -1 for an unused person id or no location
+     */
+    public int getLocationId(final int personId)
+    {
+        return this.buffer.getInt(this.locationStart + 4 * personId);
+    }
+
+    /**
+     * @param personId int; the (dense) id of the person
+     * @return the current sublocation index of the person
+     */
+    public short getSubLocationIndex(final int personId)
+    {
+        return this.buffer.getShort(this.subLocationStart + 2 * personId);
+    }
+
+    /**
+     * @param personId int; the (dense) id of the person
+     * @return the week pattern code of the person, -1 for no week pattern
+     */
+    public int getWeekPatternCode(final int personId)
+    {
+        return this.buffer.getShort(this.weekPatternStart + 2 * personId);
+    }
+
+    /**
+     * @param weekPatternCode int; the week pattern code
+     * @return the name of the week pattern, or the empty string for an unknown week pattern code
+     */
+    public String getWeekPatternName(final int weekPatternCode)
+    {
+        return weekPatternCode < 0 || weekPatternCode >= this.weekPatternNames.length ? ""
+                : this.weekPatternNames[weekPatternCode];
+    }
+
+    /**
+     * Export a snapshot file to a gzipped csv file; unused person ids are skipped.
+     * @param snapshotFile File; the snapshot file
+     * @param csvFile File; the gzipped csv file to write
+     * @return int; the number of exported persons
+     * @throws IOException on error reading or writing the files
+     */
+    public static int toCsv(final File snapshotFile, final File csvFile) throws IOException
+    {
+        PersonSnapshotReader reader = new PersonSnapshotReader(snapshotFile);
+        int count = 0;
+        try (Writer writer = CsvOccupancyWriter.open(csvFile))
+        {
+            writer.write("\"PersonId\",\"Phase\",\"ExposureTime\",\"LocationId\",\"SubLocation\",\"WeekPattern\"\n");
+            for (int i = 0; i < reader.getNumberOfPersons(); i++)
+            {
+                int phase = reader.getPhaseCode(i);
+                if (phase < 0)
+                    continue;
+                writer.write(reader.getOriginalPersonId(i) + ",\"" + reader.getPhaseName(phase) + "\","
+                        + reader.getExposureTime(i) + "," + reader.getLocationId(i) + "," + reader.getSubLocationIndex(i)
+                        + ",\"" + reader.getWeekPatternName(reader.getWeekPatternCode(i)) + "\"\n");
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param args String[]; the snapshot files to export
+     * @throws IOException on error reading or writing the files
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: PersonSnapshotReader snapshot.hsnp [snapshot.hsnp ...]");
+            System.exit(-1);
+        }
+        for (String name : args)
+        {
+            long start = System.currentTimeMillis();
+            String csvName = (name.endsWith(".hsnp") ? name.substring(0, name.length() - 5) : name) + ".csv.gz";
+            int count = toCsv(new File(name), new File(csvName));
+            System.out.println("Exported " + count + " persons from " + name + " in " + (System.currentTimeMillis() - start)
+                    + " ms");
+        }
+    }
+
+    /** An InputStream on a ByteBuffer, to read the header with a DataInputStream. */
+    private static class BufferInputStream extends InputStream
+    {
+        /** the buffer. */
+        private final ByteBuffer buffer;
+
+        /**
+         * @param buffer ByteBuffer; the buffer to read from
+         */
+        BufferInputStream(final ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read()
+        {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int available()
+        {
+            return this.buffer.remaining();
+        }
+    }
+
+}
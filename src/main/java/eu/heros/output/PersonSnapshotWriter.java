@@ -0,0 +1,170 @@
+package eu.heros.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.heros.model.IdMapping;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
+import nl.tudelft.simulation.medlabs.activity.pattern.WeekPattern;
+import nl.tudelft.simulation.medlabs.disease.DiseasePhase;
+import nl.tudelft.simulation.medlabs.location.Location;
+import nl.tudelft.simulation.medlabs.person.Person;
+
+/**
+ * PersonSnapshotWriter writes the state of all persons to a binary snapshot file. The file is written column-wise through a
+ * memory-mapped buffer, so a snapshot of a million persons is a few sequential array stores per person. Row i of every column
+ * belongs to the person with (dense) id i; the file contains the original person and location ids of the input files, so it
+ * can be used without the id maps. The layout of the file, in big-endian byte order as for a DataOutputStream, is:
+ *
+ * <pre>
+ * int    magic "HSNP"
+ * int    version
+ * double simulation time in hours
+ * int    number of persons n
+ * int    number of disease phases, followed by the phase names as UTF, in order of the phase code
+ * int    number of week patterns, followed by the week pattern names as UTF, in order of the week pattern code
+ * [padding to a multiple of 8 bytes]
+ * int[n]   original person id, -1 for an unused person id
+ * byte[n]  phase code, -1 for an unused person id
+ * float[n] exposure time in hours
+ * int[n]   original id of the current location, -1 for an unused person id or no location
+ * short[n] current sublocation index
+ * short[n] week pattern code, -1 for no week pattern
+ * </pre>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class PersonSnapshotWriter
+{
+    /** the magic number at the start of a snapshot file ("HSNP"). */
+    public static final int MAGIC = 0x48534E50;
+
+    /** the version of the file format. */
+    public static final int VERSION = 1;
+
+    /** the mapping to the original person and location ids. */
+    private final IdMapping idMapping;
+
+    /** the disease phases, in order of the phase code. */
+    private final List<DiseasePhase> diseasePhases;
+
+    /** the week patterns, in order of the week pattern code. */
+    private final List<WeekPattern> weekPatterns;
+
+    /** the phase code per disease phase. */
+    private final Map<DiseasePhase, Integer> phaseCodes = new IdentityHashMap<>();
+
+    /** the week pattern code per week pattern. */
+    private final Map<WeekPattern, Integer> weekPatternCodes = new IdentityHashMap<>();
+
+    /**
+     * Create a snapshot writer; the codes of the disease phases and week patterns are fixed here.
+     * @param diseasePhases List&lt;DiseasePhase&gt;; the disease phases of the model
+     * @param weekPatterns List&lt;WeekPattern&gt;; the week patterns of the model
+     * @param idMapping IdMapping; the mapping to the original person and location ids
+     */
+    public PersonSnapshotWriter(final List<DiseasePhase> diseasePhases, final List<WeekPattern> weekPatterns,
+            final IdMapping idMapping)
+    {
+        if (diseasePhases.size() > Byte.MAX_VALUE || weekPatterns.size() > Short.MAX_VALUE)
+            throw new MedlabsRuntimeException("too many disease phases or week patterns for a person snapshot");
+        this.diseasePhases = diseasePhases;
+        this.weekPatterns = weekPatterns;
+        this.idMapping = idMapping;
+        for (int i = 0; i < diseasePhases.size(); i++)
+            this.phaseCodes.put(diseasePhases.get(i), i);
+        for (int i = 0; i < weekPatterns.size(); i++)
+            this.weekPatternCodes.put(weekPatterns.get(i), i);
+    }
+
+    /**
+     * Write a snapshot of the persons.
+     * @param file File; the snapshot file to write
+     * @param time double; the simulation time in hours
+     * @param persons Person[]; the persons, indexed by their (dense) id; null entries are allowed
+     * @throws IOException on error writing the file
+     */
+    public void write(final File file, final double time, final Person[] persons) throws IOException
+    {
+        byte[] header = makeHeader(time, persons.length);
+        int n = persons.length;
+        long size = header.length + (long) n * (4 + 1 + 4 + 4 + 2 + 2);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel())
+        {
+            raf.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.put(header);
+            int personStart = header.length;
+            int phaseStart = personStart + 4 * n;
+            int exposureStart = phaseStart + n;
+            int locationStart = exposureStart + 4 * n;
+            int subLocationStart = locationStart + 4 * n;
+            int weekPatternStart = subLocationStart + 2 * n;
+            for (int i = 0; i < n; i++)
+            {
+                Person person = persons[i];
+                if (person == null)
+                {
+                    buffer.putInt(personStart + 4 * i, -1);
+                    buffer.put(phaseStart + i, (byte) -1);
+                    buffer.putInt(locationStart + 4 * i, -1);
+                    buffer.putShort(weekPatternStart + 2 * i, (short) -1);
+                    continue;
+                }
+                buffer.putInt(personStart + 4 * i, this.idMapping.getOriginalPersonId(i));
+                Integer phase = this.phaseCodes.get(person.getDiseasePhase());
+                buffer.put(phaseStart + i, phase == null ? (byte) -1 : phase.byteValue());
+                buffer.putFloat(exposureStart + 4 * i, person.getExposureTime());
+                Location location = person.getCurrentLocation();
+                buffer.putInt(locationStart + 4 * i,
+                        location == null ? -1 : this.idMapping.getOriginalLocationId(location.getId()));
+                buffer.putShort(subLocationStart + 2 * i, person.getCurrentSubLocationIndex());
+                Integer weekPattern = this.weekPatternCodes.get(person.getCurrentWeekPattern());
+                buffer.putShort(weekPatternStart + 2 * i, weekPattern == null ? (short) -1 : weekPattern.shortValue());
+            }
+        }
+    }
+
+    /**
+     * Make the header of the snapshot file, padded to a multiple of 8 bytes.
+     * @param time double; the simulation time in hours
+     * @param nrPersons int; the number of persons
+     * @return byte[]; the header
+     * @throws IOException on error writing the header
+     */
+    private byte[] makeHeader(final double time, final int nrPersons) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeDouble(time);
+        header.writeInt(nrPersons);
+        header.writeInt(this.diseasePhases.size());
+        for (DiseasePhase phase : this.diseasePhases)
+            header.writeUTF(phase.getName());
+        header.writeInt(this.weekPatterns.size());
+        for (WeekPattern weekPattern : this.weekPatterns)
+            header.writeUTF(weekPattern.getName());
+        while (header.size() % 8 != 0)
+            header.writeByte(0);
+        header.flush();
+        return bytes.toByteArray();
+    }
+
+}
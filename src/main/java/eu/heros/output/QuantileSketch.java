@@ -0,0 +1,148 @@
+package eu.heros.output;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * QuantileSketch is a small mergeable summary of a stream of values, from which approximate quantiles can be estimated. The
+ * values are kept in levels; a value at level h stands for 2<sup>h</sup> original values. When a level holds more than the
+ * capacity, it is sorted, and every other value is promoted to the next level. As long as no more values than the capacity
+ * have been added, the quantiles are exact; with the 10 to 50 replications of a scenario that is the normal case. Sketches of
+ * different replications can be merged, so the sketch can be stored and extended as replications finish.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class QuantileSketch implements Serializable
+{
+    /** */
+    private static final long serialVersionUID = 20241019L;
+
+    /** the maximum number of values per level. */
+    private final int capacity;
+
+    /** the values per level. */
+    private final List<TDoubleArrayList> levels = new ArrayList<>();
+
+    /** whether the next compaction keeps the odd (instead of the even) positions, to avoid a systematic bias. */
+    private boolean oddCompaction = false;
+
+    /**
+     * Create an empty sketch.
+     * @param capacity int; the maximum number of values per level, at least 2
+     */
+    public QuantileSketch(final int capacity)
+    {
+        this.capacity = Math.max(2, capacity);
+        this.levels.add(new TDoubleArrayList());
+    }
+
+    /**
+     * Add a value.
+     * @param value double; the value to add
+     */
+    public void add(final double value)
+    {
+        this.levels.get(0).add(value);
+        compact();
+    }
+
+    /**
+     * Add the values of another sketch to this sketch.
+     * @param other QuantileSketch; the sketch to merge into this sketch
+     */
+    public void merge(final QuantileSketch other)
+    {
+        for (int h = 0; h < other.levels.size(); h++)
+        {
+            if (h == this.levels.size())
+                this.levels.add(new TDoubleArrayList());
+            this.levels.get(h).addAll(other.levels.get(h));
+        }
+        compact();
+    }
+
+    /**
+     * Promote every other value of the levels that are over capacity to the next level.
+     */
+    private void compact()
+    {
+        for (int h = 0; h < this.levels.size(); h++)
+        {
+            TDoubleArrayList level = this.levels.get(h);
+            if (level.size() <= this.capacity)
+                continue;
+            if (h + 1 == this.levels.size())
+                this.levels.add(new TDoubleArrayList());
+            TDoubleArrayList next = this.levels.get(h + 1);
+            level.sort();
+            // an odd number of values leaves the largest value at this level
+            int n = level.size() - level.size() % 2;
+            for (int i = this.oddCompaction ? 1 : 0; i < n; i += 2)
+                next.add(level.get(i));
+            this.oddCompaction = !this.oddCompaction;
+            level.remove(0, n);
+        }
+    }
+
+    /**
+     * @return the number of values that were added
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for (int h = 0; h < this.levels.size(); h++)
+            count += (long) this.levels.get(h).size() << h;
+        return count;
+    }
+
+    /**
+     * Estimate a quantile of the added values.
+     * @param q double; the quantile, between 0 and 1
+     * @return the estimated quantile, or NaN when no values were added
+     */
+    public double getQuantile(final double q)
+    {
+        int size = 0;
+        for (TDoubleArrayList level : this.levels)
+            size += level.size();
+        if (size == 0)
+            return Double.NaN;
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        Integer[] order = new Integer[size];
+        int i = 0;
+        for (int h = 0; h < this.levels.size(); h++)
+        {
+            TDoubleArrayList level = this.levels.get(h);
+            for (int j = 0; j < level.size(); j++)
+            {
+                values[i] = level.get(j);
+                weights[i] = 1L << h;
+                order[i] = i;
+                i++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double rank = q * (getCount() - 1);
+        long cumulative = 0;
+        for (int k = 0; k < size; k++)
+        {
+            cumulative += weights[order[k]];
+            if (cumulative > rank)
+                return values[order[k]];
+        }
+        return values[order[size - 1]];
+    }
+
+}
@@ -0,0 +1,123 @@
+package eu.heros.output;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * ReplicationSeries collects the time series of one replication, such as the number of persons per disease phase or the
+ * occupancy per location type. Every sample has a time, and a value per named series; the names are fixed by the first sample.
+ * At the end of the replication, the series are merged into the ReplicationStatistics of the scenario.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ReplicationSeries implements Serializable
+{
+    /** */
+    private static final long serialVersionUID = 20241019L;
+
+    /** the seed of the replication. */
+    private final long seed;
+
+    /** the times of the samples in hours. */
+    private final TDoubleArrayList times = new TDoubleArrayList();
+
+    /** the values per series name, one value per sample. */
+    private final Map<String, TDoubleArrayList> series = new LinkedHashMap<>();
+
+    /**
+     * Create an empty collection of series for a replication.
+     * @param seed long; the seed of the replication
+     */
+    public ReplicationSeries(final long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Start a new sample; the values of the sample are then set with set().
+     * @param time double; the simulation time of the sample in hours
+     */
+    public void startSample(final double time)
+    {
+        this.times.add(time);
+    }
+
+    /**
+     * Set the value of a series for the current sample.
+     * @param name String; the name of the series
+     * @param value double; the value
+     */
+    public void set(final String name, final double value)
+    {
+        TDoubleArrayList values = this.series.get(name);
+        if (values == null)
+        {
+            values = new TDoubleArrayList();
+            this.series.put(name, values);
+        }
+        // a series that appears after the first sample gets NaN for the earlier samples
+        while (values.size() < this.times.size() - 1)
+            values.add(Double.NaN);
+        if (values.size() == this.times.size())
+            values.set(values.size() - 1, value);
+        else
+            values.add(value);
+    }
+
+    /**
+     * @return the seed of the replication
+     */
+    public long getSeed()
+    {
+        return this.seed;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int getNumberOfSamples()
+    {
+        return this.times.size();
+    }
+
+    /**
+     * @param sample int; the index of the sample
+     * @return the time of the sample in hours
+     */
+    public double getTime(final int sample)
+    {
+        return this.times.get(sample);
+    }
+
+    /**
+     * @return the names of the series, in order of first occurrence
+     */
+    public Iterable<String> getSeriesNames()
+    {
+        return this.series.keySet();
+    }
+
+    /**
+     * @param name String; the name of the series
+     * @param sample int; the index of the sample
+     * @return the value of the series for the sample, or NaN when the series has no value for the sample
+     */
+    public double getValue(final String name, final int sample)
+    {
+        TDoubleArrayList values = this.series.get(name);
+        if (values == null || sample >= values.size())
+            return Double.NaN;
+        return values.get(sample);
+    }
+
+}
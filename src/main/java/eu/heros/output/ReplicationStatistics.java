@@ -0,0 +1,302 @@
+package eu.heros.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * ReplicationStatistics keeps running statistics over the replications of a scenario, per series and per sample time: the
+ * number of replications, the mean and variance (with Welford's method), the minimum and maximum, and a QuantileSketch. The
+ * statistics of a scenario are stored in a state file. When a replication ends, its series are merged into the state file,
+ * and the summary csv file is rewritten; a file lock makes this safe for replications that run in parallel JVMs. The summary
+ * file has the columns "Time(h)","Series","N","Mean","StdDev","Min","P05","P25","P50","P75","P95","Max", so the raw output of
+ * the separate replications is not needed for the comparison of scenarios. Within one JVM, the merges are serialized as well,
+ * since a file lock is held per JVM.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ReplicationStatistics implements Serializable
+{
+    /** */
+    private static final long serialVersionUID = 20241019L;
+
+    /** the extension of the state file. */
+    public static final String STATE_EXTENSION = ".stats";
+
+    /** the extension of the summary file. */
+    public static final String SUMMARY_EXTENSION = ".csv.gz";
+
+    /** the capacity of the quantile sketches. */
+    private static final int SKETCH_CAPACITY = 64;
+
+    /** the quantiles in the summary file. */
+    private static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+
+    /** the sample times in hours. */
+    private final TDoubleArrayList times = new TDoubleArrayList();
+
+    /** the statistics per series name, one per sample time. */
+    private final Map<String, List<Cell>> series = new LinkedHashMap<>();
+
+    /** the seeds of the replications that have been merged. */
+    private final TLongSet seeds = new TLongHashSet();
+
+    /**
+     * Add the series of a replication to the statistics. The sample times of the replication have to be the same as the sample
+     * times of the replications that were added before; a replication can have more samples than the earlier ones.
+     * @param replication ReplicationSeries; the series of the replication
+     * @return boolean; false when a replication with the same seed had already been added, in which case nothing is added
+     * @throws IOException when a sample time of the replication differs from the sample time in the statistics, in which case
+     *             nothing is added
+     */
+    public boolean add(final ReplicationSeries replication) throws IOException
+    {
+        if (this.seeds.contains(replication.getSeed()))
+            return false;
+        for (int sample = 0; sample < Math.min(this.times.size(), replication.getNumberOfSamples()); sample++)
+        {
+            if (this.times.get(sample) != replication.getTime(sample))
+                throw new IOException("ReplicationStatistics: sample " + sample + " of seed " + replication.getSeed()
+                        + " is at t=" + replication.getTime(sample) + " instead of t=" + this.times.get(sample));
+        }
+        this.seeds.add(replication.getSeed());
+        for (int sample = this.times.size(); sample < replication.getNumberOfSamples(); sample++)
+            this.times.add(replication.getTime(sample));
+        for (String name : replication.getSeriesNames())
+        {
+            List<Cell> cells = this.series.get(name);
+            if (cells == null)
+            {
+                cells = new ArrayList<>();
+                this.series.put(name, cells);
+            }
+            for (int sample = 0; sample < replication.getNumberOfSamples(); sample++)
+            {
+                if (sample == cells.size())
+                    cells.add(new Cell());
+                double value = replication.getValue(name, sample);
+                if (!Double.isNaN(value))
+                    cells.get(sample).add(value);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of replications that have been added
+     */
+    public int getNumberOfReplications()
+    {
+        return this.seeds.size();
+    }
+
+    /**
+     * @param name String; the name of the series
+     * @param sample int; the index of the sample
+     * @return the number of replications with a value for the series at the sample
+     */
+    public int getCount(final String name, final int sample)
+    {
+        Cell cell = getCell(name, sample);
+        return cell == null ? 0 : cell.n;
+    }
+
+    /**
+     * @param name String; the name of the series
+     * @param sample int; the index of the sample
+     * @return the mean over the replications of the series at the sample, or NaN when there are no values
+     */
+    public double getMean(final String name, final int sample)
+    {
+        Cell cell = getCell(name, sample);
+        return cell == null || cell.n == 0 ? Double.NaN : cell.mean;
+    }
+
+    /**
+     * @param name String; the name of the series
+     * @param sample int; the index of the sample
+     * @return the sample standard deviation over the replications of the series at the sample, or 0 for less than 2 values
+     */
+    public double getStdDev(final String name, final int sample)
+    {
+        Cell cell = getCell(name, sample);
+        return cell == null ? 0.0 : cell.getStdDev();
+    }
+
+    /**
+     * @param name String; the name of the series
+     * @param sample int; the index of the sample
+     * @return the statistics of the series at the sample, or null when there are none
+     */
+    private Cell getCell(final String name, final int sample)
+    {
+        List<Cell> cells = this.series.get(name);
+        return cells == null || sample >= cells.size() ? null : cells.get(sample);
+    }
+
+    /**
+     * Write the summary csv file.
+     * @param summaryFile File; the gzipped csv file to write
+     * @throws IOException on error writing the file
+     */
+    public void writeSummary(final File summaryFile) throws IOException
+    {
+        try (Writer writer = CsvOccupancyWriter.open(summaryFile))
+        {
+            writer.write("\"Time(h)\",\"Series\",\"N\",\"Mean\",\"StdDev\",\"Min\",\"P05\",\"P25\",\"P50\",\"P75\",\"P95\","
+                    + "\"Max\"\n");
+            for (int sample = 0; sample < this.times.size(); sample++)
+            {
+                for (Map.Entry<String, List<Cell>> entry : this.series.entrySet())
+                {
+                    if (sample >= entry.getValue().size() || entry.getValue().get(sample).n == 0)
+                        continue;
+                    Cell cell = entry.getValue().get(sample);
+                    StringBuilder line = new StringBuilder();
+                    line.append(this.times.get(sample)).append(",\"").append(entry.getKey()).append("\",").append(cell.n);
+                    line.append(String.format(Locale.US, ",%.4f,%.4f,%.4f", cell.mean, cell.getStdDev(), cell.min));
+                    for (double q : QUANTILES)
+                        line.append(String.format(Locale.US, ",%.4f", cell.sketch.getQuantile(q)));
+                    line.append(String.format(Locale.US, ",%.4f\n", cell.max));
+                    writer.write(line.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the series of a replication into the statistics of the scenario. The state file and the summary file are named
+     * after the summary base path, with the STATE_EXTENSION and SUMMARY_EXTENSION. The merge holds a lock on a lock file next
+     * to the state file, so replications that end at the same time in different JVMs do not overwrite each other's results.
+     * @param summaryBasePath String; the path and name of the summary files without extension
+     * @param replication ReplicationSeries; the series of the replication
+     * @return ReplicationStatistics; the merged statistics
+     * @throws IOException on error reading or writing the files, or when the sample times of the replication differ from
+     *             those in the state file, in which case the state file is not changed
+     */
+    public static synchronized ReplicationStatistics merge(final String summaryBasePath,
+            final ReplicationSeries replication) throws IOException
+    {
+        File stateFile = new File(summaryBasePath + STATE_EXTENSION);
+        if (stateFile.getAbsoluteFile().getParentFile() != null)
+            stateFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (RandomAccessFile lockFile = new RandomAccessFile(summaryBasePath + STATE_EXTENSION + ".lock", "rw");
+                FileChannel channel = lockFile.getChannel(); FileLock lock = channel.lock())
+        {
+            ReplicationStatistics statistics = stateFile.exists() ? read(stateFile) : new ReplicationStatistics();
+            if (!statistics.add(replication))
+            {
+                System.err.println("ReplicationStatistics: seed " + replication.getSeed() + " was already merged into "
+                        + stateFile + " -- not added again");
+                return statistics;
+            }
+            File tempFile = new File(summaryBasePath + STATE_EXTENSION + ".tmp");
+            try (ObjectOutputStream oos = new ObjectOutputStream(
+                    new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)), 64 * 1024)))
+            {
+                oos.writeObject(statistics);
+            }
+            Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            statistics.writeSummary(new File(summaryBasePath + SUMMARY_EXTENSION));
+            return statistics;
+        }
+    }
+
+    /**
+     * Read the statistics from a state file.
+     * @param stateFile File; the state file
+     * @return ReplicationStatistics; the statistics
+     * @throws IOException on error reading the file, or when the file does not contain statistics
+     */
+    public static ReplicationStatistics read(final File stateFile) throws IOException
+    {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new GZIPInputStream(new BufferedInputStream(new FileInputStream(stateFile)), 64 * 1024)))
+        {
+            return (ReplicationStatistics) ois.readObject();
+        }
+        catch (ClassNotFoundException | ClassCastException exception)
+        {
+            throw new IOException("file " + stateFile + " does not contain replication statistics", exception);
+        }
+    }
+
+    /** The running statistics of one series at one sample time. */
+    private static class Cell implements Serializable
+    {
+        /** */
+        private static final long serialVersionUID = 20241019L;
+
+        /** the number of values. */
+        private int n = 0;
+
+        /** the running mean. */
+        private double mean = 0.0;
+
+        /** the running sum of squared differences from the mean. */
+        private double m2 = 0.0;
+
+        /** the minimum. */
+        private double min = Double.POSITIVE_INFINITY;
+
+        /** the maximum. */
+        private double max = Double.NEGATIVE_INFINITY;
+
+        /** the sketch for the quantiles. */
+        private final QuantileSketch sketch = new QuantileSketch(SKETCH_CAPACITY);
+
+        /**
+         * Add a value, using Welford's method for the mean and variance.
+         * @param value double; the value
+         */
+        void add(final double value)
+        {
+            this.n++;
+            double delta = value - this.mean;
+            this.mean += delta / this.n;
+            this.m2 += delta * (value - this.mean);
+            this.min = Math.min(this.min, value);
+            this.max = Math.max(this.max, value);
+            this.sketch.add(value);
+        }
+
+        /**
+         * @return the sample standard deviation, or 0 for less than 2 values
+         */
+        double getStdDev()
+        {
+            return this.n < 2 ? 0.0 : Math.sqrt(this.m2 / (this.n - 1));
+        }
+    }
+
+}
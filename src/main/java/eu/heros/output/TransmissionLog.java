@@ -0,0 +1,166 @@
+package eu.heros.output;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
+import nl.tudelft.simulation.medlabs.location.Location;
+import nl.tudelft.simulation.medlabs.location.LocationType;
+
+/**
+ * TransmissionLog writes an append-only binary log of the infection events. For every infection, the log holds the infectee,
+ * the location and sublocation, the time, the location type, and the candidate infectors that were infectious in the
+ * (sub)location, each with their share of the infection pressure. The disease transmission calls startContact before it
+ * computes the infection pressure in a (sub)location, addCandidate for every infectious person with their contribution, and
+ * logInfection for every person that gets infected. Only infections cost a write, so the log can stay on in production runs.
+ * The TransmissionTree reads the log back. The layout of the file, in big-endian byte order as for a DataOutputStream, is:
+ *
+ * <pre>
+ * int    magic "HTRN"
+ * int    version
+ * int    number of location types, followed per location type by: byte location type id, UTF name
+ * per infection:
+ *   float  time in hours
+ *   int    infectee (dense person id)
+ *   int    location (dense location id)
+ *   short  sublocation index
+ *   byte   location type id
+ *   short  number of candidate infectors k
+ *   k times: int infector (dense person id), float share of the infection pressure
+ * </pre>
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TransmissionLog
+{
+    /** the magic number at the start of a transmission log ("HTRN"). */
+    public static final int MAGIC = 0x4854524E;
+
+    /** the version of the file format. */
+    public static final int VERSION = 1;
+
+    /** the name of the log file. */
+    public static final String FILE = "transmission.htrn";
+
+    /** the output stream. */
+    private final DataOutputStream out;
+
+    /** the candidate infectors of the current contact. */
+    private final TIntArrayList candidates = new TIntArrayList();
+
+    /** the contributions of the candidate infectors of the current contact. */
+    private final TDoubleArrayList contributions = new TDoubleArrayList();
+
+    /** the sum of the contributions of the current contact. */
+    private double sumContributions = 0.0;
+
+    /** the number of logged infections. */
+    private long nrInfections = 0;
+
+    /**
+     * Create the log file and write the header.
+     * @param outputPath String; the directory to write the log to
+     * @param locationTypes List&lt;LocationType&gt;; the location types of the model
+     * @throws IOException on error creating the file
+     */
+    public TransmissionLog(final String outputPath, final List<LocationType> locationTypes) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(outputPath, FILE)), 64 * 1024));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(locationTypes.size());
+        for (LocationType locationType : locationTypes)
+        {
+            this.out.writeByte(locationType.getLocationTypeId());
+            this.out.writeUTF(locationType.getName());
+        }
+    }
+
+    /**
+     * Start the calculation of the infection pressure in a (sub)location; forget the candidates of the previous contact.
+     */
+    public void startContact()
+    {
+        this.candidates.resetQuick();
+        this.contributions.resetQuick();
+        this.sumContributions = 0.0;
+    }
+
+    /**
+     * Register an infectious person in the (sub)location; persons without a contribution are not candidates.
+     * @param personId int; the (dense) id of the infectious person
+     * @param contribution double; the contribution of the person to the infection pressure
+     */
+    public void addCandidate(final int personId, final double contribution)
+    {
+        if (contribution > 0.0)
+        {
+            this.candidates.add(personId);
+            this.contributions.add(contribution);
+            this.sumContributions += contribution;
+        }
+    }
+
+    /**
+     * Log the infection of a person by the candidates of the current contact.
+     * @param time double; the simulation time in hours
+     * @param infecteeId int; the (dense) id of the infected person
+     * @param location Location; the location of the infection
+     * @param subLocationIndex short; the sublocation of the infection
+     * @throws MedlabsRuntimeException on error writing the log
+     */
+    public void logInfection(final double time, final int infecteeId, final Location location, final short subLocationIndex)
+    {
+        int k = Math.min(this.candidates.size(), Short.MAX_VALUE);
+        try
+        {
+            this.out.writeFloat((float) time);
+            this.out.writeInt(infecteeId);
+            this.out.writeInt(location.getId());
+            this.out.writeShort(subLocationIndex);
+            this.out.writeByte(location.getLocationType().getLocationTypeId());
+            this.out.writeShort(k);
+            for (int i = 0; i < k; i++)
+            {
+                this.out.writeInt(this.candidates.get(i));
+                this.out.writeFloat((float) (this.contributions.get(i) / this.sumContributions));
+            }
+        }
+        catch (IOException ioe)
+        {
+            throw new MedlabsRuntimeException(ioe);
+        }
+        this.nrInfections++;
+    }
+
+    /**
+     * @return the number of logged infections
+     */
+    public long getNumberOfInfections()
+    {
+        return this.nrInfections;
+    }
+
+    /**
+     * Close the log file.
+     * @throws IOException on error closing the file
+     */
+    public void close() throws IOException
+    {
+        this.out.close();
+    }
+
+}
@@ -0,0 +1,401 @@
+package eu.heros.output;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.heros.model.IdMapping;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * TransmissionTree reads a TransmissionLog and reconstructs the transmission trees. The most likely infector of an infectee is
+ * the candidate with the largest share of the infection pressure; persons that were infected without a logged infection (such
+ * as the initially infected persons) are the roots of the trees. Usage:
+ *
+ * <pre>
+ * java -cp heros.jar eu.heros.output.TransmissionTree transmission.htrn                     (summary)
+ * java -cp heros.jar eu.heros.output.TransmissionTree transmission.htrn person personId     (ancestors and descendants)
+ * java -cp heros.jar eu.heros.output.TransmissionTree transmission.htrn edges edges.csv.gz  (all weighted edges)
+ * </pre>
+ *
+ * The log contains the dense ids of the model. The tree translates them to the ids of the input files with the
+ * personIdMap.csv.gz and locationIdMap.csv.gz files that the model writes next to the log, so the queries and the output use
+ * the original person and location ids.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TransmissionTree
+{
+    /** the names of the location types per location type id. */
+    private final Map<Byte, String> locationTypeNames = new TreeMap<>();
+
+    /** the time of the infection per event. */
+    private final TFloatArrayList times = new TFloatArrayList();
+
+    /** the infectee per event. */
+    private final TIntArrayList infectees = new TIntArrayList();
+
+    /** the location per event. */
+    private final TIntArrayList locations = new TIntArrayList();
+
+    /** the sublocation per event. */
+    private final TIntArrayList subLocations = new TIntArrayList();
+
+    /** the location type id per event. */
+    private final TIntArrayList locationTypes = new TIntArrayList();
+
+    /** the start of the candidates of each event in candidates and shares; one more entry than the number of events. */
+    private final TIntArrayList candidateOffsets = new TIntArrayList();
+
+    /** the candidate infectors of all events. */
+    private final TIntArrayList candidates = new TIntArrayList();
+
+    /** the shares of the candidate infectors of all events. */
+    private final TFloatArrayList shares = new TFloatArrayList();
+
+    /** the event per infectee. */
+    private final TIntIntMap eventByInfectee = new TIntIntHashMap(1024, 0.5f, -1, -1);
+
+    /** the infectees per most likely infector, in order of time. */
+    private final TIntObjectMap<TIntArrayList> children = new TIntObjectHashMap<>();
+
+    /**
+     * Read a transmission log, and the id maps in the same directory. A log that ends in the middle of an event (for instance
+     * after a crash) is read up to the last complete event.
+     * @param logFile File; the transmission log
+     * @throws IOException on error reading the files, when the file is not a transmission log, or when the log contains an
+     *             id that is not in the id maps
+     */
+    public TransmissionTree(final File logFile) throws IOException
+    {
+        IdMapping idMapping = IdMapping.read(logFile.getAbsoluteFile().getParent());
+        this.candidateOffsets.add(0);
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 64 * 1024)))
+        {
+            if (in.readInt() != TransmissionLog.MAGIC)
+                throw new IOException("file " + logFile + " is not a transmission log");
+            int version = in.readInt();
+            if (version != TransmissionLog.VERSION)
+                throw new IOException("transmission log " + logFile + " has unknown version " + version);
+            int nrLocationTypes = in.readInt();
+            for (int i = 0; i < nrLocationTypes; i++)
+            {
+                byte id = in.readByte();
+                this.locationTypeNames.put(id, in.readUTF());
+            }
+            while (true)
+            {
+                float time;
+                try
+                {
+                    time = in.readFloat();
+                }
+                catch (EOFException eof)
+                {
+                    break;
+                }
+                try
+                {
+                    int infectee = getOriginalPersonId(idMapping, in.readInt(), logFile);
+                    int location = getOriginalLocationId(idMapping, in.readInt(), logFile);
+                    int subLocation = in.readShort();
+                    int locationType = in.readByte();
+                    int k = in.readShort();
+                    int[] eventCandidates = new int[k];
+                    float[] eventShares = new float[k];
+                    for (int i = 0; i < k; i++)
+                    {
+                        eventCandidates[i] = getOriginalPersonId(idMapping, in.readInt(), logFile);
+                        eventShares[i] = in.readFloat();
+                    }
+                    addEvent(time, infectee, location, subLocation, locationType, eventCandidates, eventShares);
+                }
+                catch (EOFException eof)
+                {
+                    System.err.println("TransmissionTree: incomplete last event in " + logFile + " -- ignored");
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param idMapping IdMapping; the id maps of the run
+     * @param personIndex int; the dense id of a person in the log
+     * @param logFile File; the transmission log, for the error message
+     * @return the person id in the input file
+     * @throws IOException when the person index is not in the person id map
+     */
+    private static int getOriginalPersonId(final IdMapping idMapping, final int personIndex, final File logFile)
+            throws IOException
+    {
+        if (personIndex < 0 || personIndex >= idMapping.getNumberOfPersons())
+            throw new IOException(
+                    "person " + personIndex + " in transmission log " + logFile + " is not in personIdMap.csv.gz");
+        return idMapping.getOriginalPersonId(personIndex);
+    }
+
+    /**
+     * @param idMapping IdMapping; the id maps of the run
+     * @param locationIndex int; the dense id of a location in the log; negative for the special locations of medlabs
+     * @param logFile File; the transmission log, for the error message
+     * @return the location id in the input file, or the negative id of a special location
+     * @throws IOException when the location index is not in the location id map
+     */
+    private static int getOriginalLocationId(final IdMapping idMapping, final int locationIndex, final File logFile)
+            throws IOException
+    {
+        if (locationIndex >= idMapping.getNumberOfLocations())
+            throw new IOException(
+                    "location " + locationIndex + " in transmission log " + logFile + " is not in locationIdMap.csv.gz");
+        return idMapping.getOriginalLocationId(locationIndex);
+    }
+
+    /**
+     * Store an event, and link the infectee to its most likely infector.
+     * @param time float; the time of the infection
+     * @param infectee int; the infectee
+     * @param location int; the location
+     * @param subLocation int; the sublocation
+     * @param locationType int; the location type id
+     * @param eventCandidates int[]; the candidate infectors
+     * @param eventShares float[]; the shares of the candidate infectors
+     */
+    private void addEvent(final float time, final int infectee, final int location, final int subLocation,
+            final int locationType, final int[] eventCandidates, final float[] eventShares)
+    {
+        int event = this.times.size();
+        this.times.add(time);
+        this.infectees.add(infectee);
+        this.locations.add(location);
+        this.subLocations.add(subLocation);
+        this.locationTypes.add(locationType);
+        this.candidates.add(eventCandidates);
+        this.shares.add(eventShares);
+        this.candidateOffsets.add(this.candidates.size());
+        if (this.eventByInfectee.containsKey(infectee))
+            System.err.println("TransmissionTree: person " + infectee + " is infected more than once; last infection is used");
+        this.eventByInfectee.put(infectee, event);
+        int infector = getMostLikelyInfector(infectee);
+        if (infector >= 0)
+        {
+            TIntArrayList list = this.children.get(infector);
+            if (list == null)
+            {
+                list = new TIntArrayList();
+                this.children.put(infector, list);
+            }
+            list.add(infectee);
+        }
+    }
+
+    /**
+     * @return the number of infection events in the log
+     */
+    public int getNumberOfEvents()
+    {
+        return this.times.size();
+    }
+
+    /**
+     * @param personId int; the id (in the input file) of a person
+     * @return the most likely infector of the person, or -1 when the infection of the person is not in the log
+     */
+    public int getMostLikelyInfector(final int personId)
+    {
+        int event = this.eventByInfectee.get(personId);
+        if (event < 0)
+            return -1;
+        int best = -1;
+        float bestShare = -1.0f;
+        for (int i = this.candidateOffsets.get(event); i < this.candidateOffsets.get(event + 1); i++)
+        {
+            if (this.shares.get(i) > bestShare)
+            {
+                bestShare = this.shares.get(i);
+                best = this.candidates.get(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param personId int; the id (in the input file) of a person
+     * @return the persons for which this person is the most likely infector, in order of time; empty when there are none
+     */
+    public TIntArrayList getInfectees(final int personId)
+    {
+        TIntArrayList list = this.children.get(personId);
+        return list == null ? new TIntArrayList() : list;
+    }
+
+    /**
+     * @param personId int; the id (in the input file) of a person
+     * @return the chain of most likely infectors of the person, from the person itself to the root of the tree
+     */
+    public TIntArrayList getAncestors(final int personId)
+    {
+        TIntArrayList chain = new TIntArrayList();
+        int person = personId;
+        while (person >= 0 && !chain.contains(person))
+        {
+            chain.add(person);
+            person = getMostLikelyInfector(person);
+        }
+        return chain;
+    }
+
+    /**
+     * @param personId int; the id (in the input file) of a person
+     * @return the generation of the person: 0 for a root, 1 for a person infected by a root, etc.
+     */
+    public int getGeneration(final int personId)
+    {
+        return getAncestors(personId).size() - 1;
+    }
+
+    /**
+     * Write all candidate edges as a gzipped csv file.
+     * @param csvFile File; the file to write
+     * @throws IOException on error writing the file
+     */
+    public void writeEdges(final File csvFile) throws IOException
+    {
+        try (Writer writer = CsvOccupancyWriter.open(csvFile))
+        {
+            writer.write(
+                    "\"Time(h)\",\"Infectee\",\"Infector\",\"Share\",\"LocationId\",\"SubLocation\",\"LocationType\"\n");
+            for (int event = 0; event < this.times.size(); event++)
+            {
+                String prefix = this.times.get(event) + "," + this.infectees.get(event) + ",";
+                String suffix = "," + this.locations.get(event) + "," + this.subLocations.get(event) + ",\""
+                        + getLocationTypeName(this.locationTypes.get(event)) + "\"\n";
+                for (int i = this.candidateOffsets.get(event); i < this.candidateOffsets.get(event + 1); i++)
+                    writer.write(prefix + this.candidates.get(i) + "," + this.shares.get(i) + suffix);
+            }
+        }
+    }
+
+    /**
+     * @param locationTypeId int; the location type id
+     * @return the name of the location type, or the id when the name is not known
+     */
+    public String getLocationTypeName(final int locationTypeId)
+    {
+        String name = this.locationTypeNames.get((byte) locationTypeId);
+        return name == null ? Integer.toString(locationTypeId) : name;
+    }
+
+    /**
+     * Print the number of events, the number of roots, the generations, and the infections per location type.
+     */
+    public void printSummary()
+    {
+        TIntIntMap generations = new TIntIntHashMap();
+        Map<String, Integer> perType = new TreeMap<>();
+        int maxGeneration = 0;
+        for (int event = 0; event < this.times.size(); event++)
+        {
+            int generation = getGeneration(this.infectees.get(event));
+            generations.adjustOrPutValue(generation, 1, 1);
+            maxGeneration = Math.max(maxGeneration, generation);
+            perType.merge(getLocationTypeName(this.locationTypes.get(event)), 1, Integer::sum);
+        }
+        int roots = 0;
+        for (int infector : this.children.keys())
+        {
+            if (this.eventByInfectee.get(infector) < 0)
+                roots++;
+        }
+        System.out.println("Infection events:  " + this.times.size());
+        System.out.println("Roots (infectors without a logged infection): " + roots);
+        System.out.println("Infectors:         " + this.children.size() + ", mean number of infectees "
+                + String.format("%.2f", this.children.isEmpty() ? 0.0 : (double) this.times.size() / this.children.size()));
+        for (int generation = 1; generation <= maxGeneration; generation++)
+            System.out.println("Generation " + generation + ": " + generations.get(generation) + " infections");
+        for (Map.Entry<String, Integer> entry : perType.entrySet())
+            System.out.println("Location type " + entry.getKey() + ": " + entry.getValue() + " infections");
+    }
+
+    /**
+     * Print the ancestors and the descendants of a person.
+     * @param personId int; the id (in the input file) of the person
+     */
+    public void printPerson(final int personId)
+    {
+        int event = this.eventByInfectee.get(personId);
+        if (event < 0)
+            System.out.println("Person " + personId + ": infection not in the log");
+        else
+        {
+            System.out.println("Person " + personId + ": infected at t=" + this.times.get(event) + " h in location "
+                    + this.locations.get(event) + " (" + getLocationTypeName(this.locationTypes.get(event)) + "), sublocation "
+                    + this.subLocations.get(event));
+            for (int i = this.candidateOffsets.get(event); i < this.candidateOffsets.get(event + 1); i++)
+                System.out.println("  candidate infector " + this.candidates.get(i) + ", share " + this.shares.get(i));
+        }
+        System.out.println("Ancestors: " + getAncestors(personId));
+        System.out.println("Descendants:");
+        printDescendants(personId, 1);
+    }
+
+    /**
+     * Print the descendants of a person as an indented tree.
+     * @param personId int; the id (in the input file) of the person
+     * @param depth int; the depth of the infectees of the person in the tree
+     */
+    private void printDescendants(final int personId, final int depth)
+    {
+        TIntArrayList list = getInfectees(personId);
+        for (int i = 0; i < list.size(); i++)
+        {
+            int infectee = list.get(i);
+            int event = this.eventByInfectee.get(infectee);
+            System.out.println("  ".repeat(depth) + infectee + " (t=" + this.times.get(event) + " h, "
+                    + getLocationTypeName(this.locationTypes.get(event)) + ")");
+            if (depth < 100)
+                printDescendants(infectee, depth + 1);
+        }
+    }
+
+    /**
+     * @param args String[]; args[0]: the transmission log; optionally followed by "person" and a person id, or by "edges"
+     *            and the csv.gz file to write
+     * @throws IOException on error reading or writing the files
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length != 1 && !(args.length == 3 && (args[1].equals("person") || args[1].equals("edges"))))
+        {
+            System.err.println("Usage: TransmissionTree transmission.htrn [person personId | edges edges.csv.gz]");
+            System.exit(-1);
+        }
+        TransmissionTree tree = new TransmissionTree(new File(args[0]));
+        if (args.length == 1)
+            tree.printSummary();
+        else if (args[1].equals("person"))
+            tree.printPerson(Integer.parseInt(args[2]));
+        else
+            tree.writeEdges(new File(args[2]));
+    }
+
+}
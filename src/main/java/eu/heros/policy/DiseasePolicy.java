@@ -1,5 +1,7 @@
 package eu.heros.policy;
 
+import java.io.Serializable;
+
 import eu.heros.model.HerosModel;
 
 /**
@@ -11,8 +13,11 @@ import eu.heros.model.HerosModel;
  * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
  * @author <a href="https://www.tudelft.nl/tbm/resiliencelab/people/mikhail-sirenko">Mikhail Sirenko</a>
  */
-public class DiseasePolicy
+public class DiseasePolicy implements Serializable
 {
+    /** */
+    private static final long serialVersionUID = 20241019L;
+
     private final HerosModel model;
 
     public DiseasePolicy(final HerosModel model, final double time, final String parameterName, final double value)
@@ -1,5 +1,7 @@
 package eu.heros.policy;
 
+import java.io.Serializable;
+
 import eu.heros.model.HerosModel;
 import nl.tudelft.simulation.medlabs.location.LocationType;
 
@@ -12,8 +14,11 @@ import nl.tudelft.simulation.medlabs.location.LocationType;
  * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
  * @author <a href="https://www.tudelft.nl/tbm/resiliencelab/people/mikhail-sirenko">Mikhail Sirenko</a>
  */
-public class LocationPolicy
+public class LocationPolicy implements Serializable
 {
+    /** */
+    private static final long serialVersionUID = 20241019L;
+
     private final HerosModel model;
 
     public LocationPolicy(final HerosModel model, final double time, final String locationTypeName, final double fractionOpen,
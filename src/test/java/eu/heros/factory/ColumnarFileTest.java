@@ -0,0 +1,151 @@
+package eu.heros.factory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import nl.tudelft.simulation.medlabs.common.MedlabsException;
+
+/**
+ * ColumnarFileTest checks that persons and locations parsed from csv text survive a round trip through the columnar format.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ColumnarFileTest
+{
+    /** the header of the person file. */
+    private static final List<String> PERSON_HEADER =
+            Arrays.asList("person_id", "household_id", "age", "home_id", "workplace_id", "social_role");
+
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Parse a chunk of csv text.
+     * @param text String; the rows, without header
+     * @return CsvChunk; the chunk
+     */
+    private static CsvChunk chunk(final String text)
+    {
+        return new CsvChunk(text.toCharArray(), text.length(), 2);
+    }
+
+    /**
+     * Write persons in two chunks, read them back, and compare every field.
+     * @throws Exception on error
+     */
+    @Test
+    public void testPersonRoundTrip() throws Exception
+    {
+        int[] columns = PersonColumns.mapHeader(PERSON_HEADER);
+        PersonColumns part1 = PersonColumns.parse(chunk("1,10,34,100,200,3\n2,10,7,100,,1\n"), columns);
+        PersonColumns part2 = PersonColumns.parse(chunk("3,11,81,101,,5\r\n100000,12,0,5000000,300,2\r\n"), columns);
+        File file = this.tempDir.resolve("persons.hcol").toFile();
+        ColumnarFile.writePersons(file, List.of(part1, part2));
+        assertTrue(ColumnarFile.isColumnar(file));
+
+        PersonColumns pc = ColumnarFile.readPersons(file);
+        assertEquals(4, pc.size());
+        int[][] expected = {{1, 10, 34, 100, 200, 3}, {2, 10, 7, 100, -1, 1}, {3, 11, 81, 101, -1, 5},
+                {100000, 12, 0, 5000000, 300, 2}};
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals(expected[i][0], pc.getPersonId(i));
+            assertEquals(expected[i][1], pc.getHouseholdId(i));
+            assertEquals(expected[i][2], pc.getAge(i));
+            assertEquals(expected[i][3], pc.getHomeId(i));
+            assertEquals(expected[i][4], pc.getWorkplaceId(i));
+            assertEquals(expected[i][5], pc.getSocialRole(i));
+            assertEquals(i + 1, pc.getLineNumber(i));
+        }
+    }
+
+    /**
+     * Write locations with a dictionary-encoded category and district, read them back, and compare every field.
+     * @throws Exception on error
+     */
+    @Test
+    public void testLocationRoundTrip() throws Exception
+    {
+        int[] columns = LocationColumns.mapHeader(
+                Arrays.asList("location_id", "nb_sublocations", "lon", "lat", "area", "location_category", "district"));
+        LocationColumns lc = LocationColumns.parse(
+                chunk("7,3,4.30,52.07,12.5,home,WK0518\n9,1,4.31,52.08,100.25,\"shop, food\",WK0518\n12,0,-1.5,0,0,home,\n"),
+                columns);
+        File file = this.tempDir.resolve("locations.hcol").toFile();
+        ColumnarFile.writeLocations(file, List.of(lc));
+
+        LocationColumns read = ColumnarFile.readLocations(file);
+        assertEquals(3, read.size());
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(lc.getLocationId(i), read.getLocationId(i));
+            assertEquals(lc.getNbSublocations(i), read.getNbSublocations(i));
+            assertEquals(lc.getLon(i), read.getLon(i));
+            assertEquals(lc.getLat(i), read.getLat(i));
+            assertEquals(lc.getArea(i), read.getArea(i));
+            assertEquals(lc.getLocationCategory(i), read.getLocationCategory(i));
+            assertEquals(lc.getDistrict(i), read.getDistrict(i));
+        }
+        assertEquals("shop, food", read.getLocationCategory(1));
+        assertEquals(-1.5f, read.getLon(2));
+        assertEquals("", read.getDistrict(2));
+    }
+
+    /**
+     * A truncated file is reported, and not read as a shorter file.
+     * @throws Exception on error
+     */
+    @Test
+    public void testTruncated() throws Exception
+    {
+        int[] columns = PersonColumns.mapHeader(PERSON_HEADER);
+        File file = this.tempDir.resolve("persons.hcol").toFile();
+        ColumnarFile.writePersons(file, List.of(PersonColumns.parse(chunk("1,10,34,100,200,3\n2,10,7,100,,1\n"), columns)));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+        assertThrows(MedlabsException.class, () -> ColumnarFile.readPersons(file));
+    }
+
+    /**
+     * A csv file is not columnar, and a person file cannot be read as a location file.
+     * @throws Exception on error
+     */
+    @Test
+    public void testWrongKind() throws Exception
+    {
+        File csv = this.tempDir.resolve("persons.csv").toFile();
+        try (Writer writer = new FileWriter(csv))
+        {
+            writer.write("person_id,household_id,age,home_id,workplace_id,social_role\n");
+        }
+        assertFalse(ColumnarFile.isColumnar(csv));
+        assertThrows(MedlabsException.class, () -> ColumnarFile.readPersons(csv));
+
+        File file = this.tempDir.resolve("persons.hcol").toFile();
+        ColumnarFile.writePersons(file, List.of(new PersonColumns(16, null)));
+        assertEquals(0, ColumnarFile.readPersons(file).size());
+        assertThrows(MedlabsException.class, () -> ColumnarFile.readLocations(file));
+    }
+
+}
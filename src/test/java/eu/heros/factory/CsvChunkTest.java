@@ -0,0 +1,322 @@
+package eu.heros.factory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.siegmar.fastcsv.reader.CsvReader;
+import de.siegmar.fastcsv.reader.CsvRow;
+import nl.tudelft.simulation.medlabs.common.MedlabsException;
+
+/**
+ * CsvChunkTest checks that the PipelinedCsvReader and the CsvChunk cursor give the same rows and fields as the fastcsv reader
+ * that was used before, also for rows and quoted fields that span a chunk boundary, and that the person fields are parsed as
+ * before.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class CsvChunkTest
+{
+    /** the header of the person file. */
+    private static final List<String> PERSON_HEADER =
+            Arrays.asList("person_id", "household_id", "age", "home_id", "workplace_id", "social_role");
+
+    /** the maximum number of fields per row in the generated files. */
+    private static final int MAX_FIELDS = 8;
+
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Parse a chunk of csv text.
+     * @param text String; the rows, without header
+     * @return CsvChunk; the chunk
+     */
+    private static CsvChunk chunk(final String text)
+    {
+        return new CsvChunk(text.toCharArray(), text.length(), 2);
+    }
+
+    /**
+     * Write a text to a file in the temporary directory.
+     * @param name String; the file name
+     * @param text String; the contents
+     * @return File; the file
+     * @throws Exception on I/O error
+     */
+    private File write(final String name, final String text) throws Exception
+    {
+        File file = this.tempDir.resolve(name).toFile();
+        try (Writer writer = new FileWriter(file))
+        {
+            writer.write(text);
+        }
+        return file;
+    }
+
+    /**
+     * Read all rows of a file with fastcsv, as the model did before the pipelined reader.
+     * @param file File; the csv file
+     * @return List&lt;List&lt;String&gt;&gt;; the rows, including the header row
+     * @throws Exception on I/O error
+     */
+    private static List<List<String>> readFastCsv(final File file) throws Exception
+    {
+        List<List<String>> rows = new ArrayList<>();
+        try (Reader reader = new FileReader(file))
+        {
+            CsvReader csvReader = CsvReader.builder().fieldSeparator(',').quoteCharacter('"').build(reader);
+            for (CsvRow row : csvReader)
+                rows.add(row.getFields());
+        }
+        return rows;
+    }
+
+    /**
+     * Read all rows of a file with the pipelined reader, in small chunks so many rows span a chunk boundary.
+     * @param file File; the csv file
+     * @param chunkSize int; the (minimum) number of characters per chunk
+     * @return List&lt;List&lt;String&gt;&gt;; the rows, including the header row
+     * @throws Exception on I/O error
+     */
+    private static List<List<String>> readPipelined(final File file, final int chunkSize) throws Exception
+    {
+        List<List<String>> rows = new ArrayList<>();
+        new PipelinedCsvReader(file, chunkSize, 3).read(header ->
+        {
+            rows.add(header);
+            return chunk ->
+            {
+                List<List<String>> parsed = new ArrayList<>();
+                CsvChunk.Cursor cursor = chunk.cursor(MAX_FIELDS);
+                while (cursor.next())
+                {
+                    List<String> fields = new ArrayList<>();
+                    for (int field = 0; field < cursor.getNrFields(); field++)
+                        fields.add(cursor.getString(field));
+                    parsed.add(fields);
+                }
+                return parsed;
+            };
+        }, rows::addAll);
+        return rows;
+    }
+
+    /**
+     * Make a random field: a number, a word, or a quoted field with a separator, a doubled quote or a line break.
+     * @param random Random; the random generator
+     * @return String; the field as it is written in the file
+     */
+    private static String randomField(final Random random)
+    {
+        switch (random.nextInt(6))
+        {
+            case 0:
+                return Integer.toString(random.nextInt(1000000));
+            case 1:
+                return String.format("%.6f", random.nextDouble() * 100.0).replace(',', '.');
+            case 2:
+                return "word" + random.nextInt(100);
+            case 3:
+                return "\"a, b\"";
+            case 4:
+                return "\"say \"\"hi\"\"\"";
+            default:
+                return random.nextBoolean() ? "\"line\nbreak\"" : "\"line\r\nbreak\"";
+        }
+    }
+
+    /**
+     * Generate a file with random rows, and compare the rows of the pipelined reader with those of fastcsv for different chunk
+     * sizes, with LF and CRLF line endings, and with and without a trailing line break.
+     * @throws Exception on error
+     */
+    @Test
+    public void testAgainstFastCsv() throws Exception
+    {
+        Random random = new Random(20241019L);
+        for (String newline : new String[] {"\n", "\r\n"})
+        {
+            for (boolean trailingNewline : new boolean[] {true, false})
+            {
+                StringBuilder text = new StringBuilder("id,name,value,remark");
+                for (int row = 0; row < 2000; row++)
+                {
+                    text.append(newline).append(row);
+                    int nrFields = 1 + random.nextInt(MAX_FIELDS - 1);
+                    for (int field = 0; field < nrFields; field++)
+                        text.append(',').append(randomField(random));
+                }
+                if (trailingNewline)
+                    text.append(newline);
+                File file = write("random.csv", text.toString());
+                List<List<String>> expected = readFastCsv(file);
+                assertEquals(2001, expected.size());
+                for (int chunkSize : new int[] {16, 100, 4096})
+                    assertEquals(expected, readPipelined(file, chunkSize),
+                            "chunk size " + chunkSize + ", newline " + newline.length() + ", trailing " + trailingNewline);
+            }
+        }
+    }
+
+    /**
+     * Parse a person file with the pipelined reader and PersonColumns, and compare the values with the values that the model
+     * parsed from the fastcsv rows before, using (int) Double.parseDouble for the numeric fields.
+     * @throws Exception on error
+     */
+    @Test
+    public void testPersonColumnsAgainstFastCsv() throws Exception
+    {
+        Random random = new Random(111L);
+        StringBuilder text = new StringBuilder(String.join(",", PERSON_HEADER));
+        for (int row = 0; row < 5000; row++)
+        {
+            String workplace = random.nextInt(3) == 0 ? "" : Integer.toString(random.nextInt(100000));
+            String age = random.nextBoolean() ? Integer.toString(random.nextInt(100)) : random.nextInt(100) + ".0";
+            text.append("\r\n").append(row + 1).append(',').append(random.nextInt(2000)).append(',').append(age).append(',')
+                    .append(random.nextInt(50000)).append(',').append(workplace).append(',').append(random.nextInt(15))
+                    .append(".0");
+        }
+        File file = write("persons.csv", text.toString());
+
+        List<List<String>> rows = readFastCsv(file);
+        List<PersonColumns> parts = new ArrayList<>();
+        new PipelinedCsvReader(file, 1000, 3).read(header ->
+        {
+            int[] columns = PersonColumns.mapHeader(header);
+            return chunk -> PersonColumns.parse(chunk, columns);
+        }, parts::add);
+        int i = 1;
+        for (PersonColumns pc : parts)
+        {
+            for (int p = 0; p < pc.size(); p++, i++)
+            {
+                List<String> data = rows.get(i);
+                assertEquals((int) Double.parseDouble(data.get(0)), pc.getPersonId(p));
+                assertEquals((int) Double.parseDouble(data.get(1)), pc.getHouseholdId(p));
+                assertEquals((byte) Double.parseDouble(data.get(2)), pc.getAge(p));
+                assertEquals((int) Double.parseDouble(data.get(3)), pc.getHomeId(p));
+                assertEquals(data.get(4).isEmpty() ? -1 : (int) Double.parseDouble(data.get(4)), pc.getWorkplaceId(p));
+                assertEquals((int) Double.parseDouble(data.get(5)), pc.getSocialRole(p));
+                assertEquals(i + 1, pc.getLineNumber(p));
+            }
+        }
+        assertEquals(rows.size(), i);
+    }
+
+    /**
+     * Integer fields with a decimal part, such as 12.0, and other notations give the same value as (int) Double.parseDouble.
+     */
+    @Test
+    public void testIntegerNotations()
+    {
+        String[] values = {"12", "12.0", "-12.0", "12.", "+7", " 8 ", "-3.7", "1e3", "2147483648", "0.5", "007"};
+        CsvChunk.Cursor cursor = chunk(String.join(",", values) + "\n").cursor(values.length);
+        assertTrue(cursor.next());
+        for (int field = 0; field < values.length; field++)
+            assertEquals((int) Double.parseDouble(values[field]), cursor.getInt(field, -1), values[field]);
+        CsvChunk.Cursor bad = chunk("x\n").cursor(1);
+        assertTrue(bad.next());
+        assertThrows(NumberFormatException.class, () -> bad.getInt(0, -1));
+    }
+
+    /**
+     * Empty or non-numeric required location fields are reported with the row.
+     * @throws Exception on error
+     */
+    @Test
+    public void testLocationFieldErrors() throws Exception
+    {
+        int[] columns = LocationColumns.mapHeader(
+                Arrays.asList("location_id", "nb_sublocations", "lon", "lat", "area", "location_category"));
+        assertEquals(1, LocationColumns.parse(chunk("7,1,4.3,52.07,12.5,home\n"), columns).size());
+        MedlabsException exception = assertThrows(MedlabsException.class,
+                () -> LocationColumns.parse(chunk("7,1,4.3,52.07,12.5,home\n,1,4.3,52.07,12.5,home\n"), columns));
+        assertTrue(exception.getMessage().contains("location_id is empty on row 3"), exception.getMessage());
+        assertTrue(exception.getMessage().contains(",1,4.3,52.07,12.5,home"), exception.getMessage());
+        exception = assertThrows(MedlabsException.class,
+                () -> LocationColumns.parse(chunk("7,,4.3,52.07,12.5,home\n"), columns));
+        assertTrue(exception.getMessage().contains("nb_sublocations is empty on row 2"), exception.getMessage());
+        exception = assertThrows(MedlabsException.class, () -> LocationColumns.parse(chunk("7,1,,52.07,12.5,home\n"), columns));
+        assertTrue(exception.getMessage().contains("lon is empty on row 2"), exception.getMessage());
+        exception = assertThrows(MedlabsException.class,
+                () -> LocationColumns.parse(chunk("7,1,4.3,n/a,12.5,home\n"), columns));
+        assertTrue(exception.getMessage().contains("lat is not a number on row 2"), exception.getMessage());
+        exception = assertThrows(MedlabsException.class,
+                () -> LocationColumns.parse(chunk("7,1,4.3,52.07,,home\n"), columns));
+        assertTrue(exception.getMessage().contains("area is empty on row 2"), exception.getMessage());
+    }
+
+    /**
+     * Float fields give the same value as Float.parseFloat, also for values that lie just next to the point halfway between
+     * two floats, where rounding to a double first and then to a float gives another result.
+     */
+    @Test
+    public void testFloatRounding()
+    {
+        Random random = new Random(5L);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            float f = (float) (random.nextDouble() * 180.0 - 90.0);
+            BigDecimal halfway = new BigDecimal(f).add(new BigDecimal(Math.nextUp(f))).divide(BigDecimal.valueOf(2));
+            BigDecimal tiny = BigDecimal.ONE.movePointLeft(30);
+            values.add(halfway.add(tiny).toPlainString());
+            values.add(halfway.subtract(tiny).toPlainString());
+            values.add(halfway.toPlainString());
+            values.add(String.format("%.7f", random.nextDouble() * 100.0).replace(',', '.'));
+        }
+        values.add("1e-45");
+        values.add("0.0");
+        values.add("-0");
+        CsvChunk.Cursor cursor = chunk(String.join("\n", values) + "\n").cursor(1);
+        for (String value : values)
+        {
+            assertTrue(cursor.next());
+            assertEquals(Float.parseFloat(value), cursor.getFloat(0), value);
+        }
+    }
+
+    /**
+     * Empty or non-numeric required person fields are reported with the row; an empty workplace_id is stored as -1.
+     * @throws Exception on error
+     */
+    @Test
+    public void testPersonFieldErrors() throws Exception
+    {
+        int[] columns = PersonColumns.mapHeader(PERSON_HEADER);
+        assertEquals(-1, PersonColumns.parse(chunk("1,10,34,100,,3\n"), columns).getWorkplaceId(0));
+        MedlabsException exception = assertThrows(MedlabsException.class,
+                () -> PersonColumns.parse(chunk("1,10,34,100,,3\n2,10,,100,,1\n"), columns));
+        assertTrue(exception.getMessage().contains("age is empty on row 3"), exception.getMessage());
+        assertTrue(exception.getMessage().contains("2,10,,100,,1"), exception.getMessage());
+        exception = assertThrows(MedlabsException.class, () -> PersonColumns.parse(chunk("1,10,34,,200,3\n"), columns));
+        assertTrue(exception.getMessage().contains("home_id is empty on row 2"), exception.getMessage());
+        exception = assertThrows(MedlabsException.class, () -> PersonColumns.parse(chunk("1,10,34,100,x,3\n"), columns));
+        assertTrue(exception.getMessage().contains("workplace_id is not a number on row 2"), exception.getMessage());
+    }
+
+}
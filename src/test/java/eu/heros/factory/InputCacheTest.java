@@ -0,0 +1,102 @@
+package eu.heros.factory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * InputCacheTest checks that the parsed contents are shared until the last model has been constructed, and that compacted
+ * columns keep their records, line numbers and a row text for error messages.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class InputCacheTest
+{
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The cache parses a file once, and forgets it when the last of the announced models has been constructed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testForgetAfterLastModel() throws Exception
+    {
+        File file = this.tempDir.resolve("input.csv").toFile();
+        Files.write(file.toPath(), new byte[] {1});
+        AtomicInteger nrParses = new AtomicInteger();
+        InputCache cache = new InputCache();
+        cache.setNumberOfModels(2);
+        Object first = cache.get("kind", file, () -> "parse " + nrParses.incrementAndGet());
+        cache.modelConstructed();
+        assertSame(first, cache.get("kind", file, () -> "parse " + nrParses.incrementAndGet()));
+        assertEquals(1, nrParses.get());
+        cache.modelConstructed();
+        assertEquals("parse 2", cache.get("kind", file, () -> "parse " + nrParses.incrementAndGet()));
+
+        // without a number of models, the contents are kept
+        cache = new InputCache();
+        cache.get("kind", file, () -> "parse");
+        cache.modelConstructed();
+        assertEquals("parse", cache.get("kind", file, () -> "parse again"));
+        cache.clear();
+        assertEquals("parse again", cache.get("kind", file, () -> "parse again"));
+    }
+
+    /**
+     * Compacted person columns keep their records and line numbers, and make the row text from the fields.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCompactPersons() throws Exception
+    {
+        int[] columns = PersonColumns.mapHeader(
+                Arrays.asList("person_id", "household_id", "age", "home_id", "workplace_id", "social_role"));
+        String text = "1,10,34,100,200,3\n2,10,7,100,,1\n3,11,81,101,,5\n";
+        PersonColumns pc = PersonColumns.parse(new CsvChunk(text.toCharArray(), text.length(), 5), columns);
+        assertEquals("2,10,7,100,,1", pc.getRowText(1));
+        assertSame(pc, pc.compact());
+        assertEquals(3, pc.size());
+        assertEquals(2, pc.getPersonId(1));
+        assertEquals(-1, pc.getWorkplaceId(2));
+        assertEquals(5, pc.getLineNumber(0));
+        assertEquals(7, pc.getLineNumber(2));
+        assertEquals("[2,10,7,100,-1,1]", pc.getRowText(1));
+    }
+
+    /**
+     * Compacted location columns keep the line numbers of records that are not on consecutive lines.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCompactLocations() throws Exception
+    {
+        int[] columns = LocationColumns
+                .mapHeader(Arrays.asList("location_id", "nb_sublocations", "lon", "lat", "area", "location_category"));
+        String text = "8,1,4.3,52.1,20.0,home\n\n9,2,4.4,52.0,15.5,\"shop,\nfood\"\n10,1,4.2,52.2,30.0,home\n";
+        LocationColumns lc = LocationColumns.parse(new CsvChunk(text.toCharArray(), text.length(), 2), columns).compact();
+        assertEquals(3, lc.size());
+        assertEquals("shop,\nfood", lc.getLocationCategory(1));
+        assertEquals(2, lc.getLineNumber(0));
+        assertEquals(4, lc.getLineNumber(1));
+        assertEquals(6, lc.getLineNumber(2));
+        assertEquals("[10,52.2,4.2,30.0,1,home]", lc.getRowText(2));
+    }
+
+}
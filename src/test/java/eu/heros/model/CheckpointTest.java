@@ -0,0 +1,94 @@
+package eu.heros.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.heros.output.ReplicationSeries;
+import nl.tudelft.simulation.medlabs.simulation.SimpleDevsSimulator;
+
+/**
+ * CheckpointTest checks on The Hague scenario that a replication that is restored from a checkpoint continues exactly as the
+ * replication from which the checkpoint was made: the numbers of persons in the disease phases are the same at every sample.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class CheckpointTest
+{
+    /** the scenario. */
+    private static final String PROPERTIES = "/flip-normal-area.properties";
+
+    /** the run length in days. */
+    private static final int RUN_LENGTH = 4;
+
+    /** the day of the checkpoint. */
+    private static final int CHECKPOINT_DAY = 2;
+
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Run the same seed straight through while writing a checkpoint, and from the restored checkpoint to the end; the disease
+     * phases of both runs are the same.
+     * @throws Exception on error
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        File file = this.tempDir.resolve("checkpoint" + Checkpoint.EXTENSION).toFile();
+        String[] args = new String[] {"generic.RunLength=" + RUN_LENGTH, "generic.WriteOutput=false",
+                "generic.OutputPath=" + this.tempDir.resolve("out"), "generic.CheckpointDay=" + CHECKPOINT_DAY,
+                "generic.CheckpointFile=" + file.getAbsolutePath(), "generic.SummaryPath=" + this.tempDir.resolve("summary")};
+        HerosModel model = new HerosModel(HerosBatchRunner.newSimulator("SimHERoS-straight"), PROPERTIES);
+        model.setInteractive(false);
+        HerosApplication.loadInputParameters(model, PROPERTIES, args);
+        long seed = HerosApplication.applySeed(model, 111L);
+        model.getSimulator().initialize(0.0, 0.0, 24.0 * RUN_LENGTH, model, seed);
+        model.getSimulator().start();
+        model.awaitEndOfReplication();
+        ReplicationSeries straight = model.getReplicationSeries();
+        assertTrue(file.exists());
+
+        SimpleDevsSimulator simulator = HerosBatchRunner.newSimulator("SimHERoS-restored");
+        HerosModel restored = Checkpoint.read(file, simulator).restore(null);
+        assertNotSame(model, restored);
+        assertSame(simulator, restored.getSimulator());
+        assertEquals(24.0 * CHECKPOINT_DAY, simulator.getSimulatorTime(), 1E-6);
+        restored.setInteractive(false);
+        simulator.start();
+        restored.awaitEndOfReplication();
+        ReplicationSeries fromCheckpoint = restored.getReplicationSeries();
+
+        assertEquals(straight.getNumberOfSamples(), fromCheckpoint.getNumberOfSamples());
+        int nrPhaseSeries = 0;
+        for (String name : straight.getSeriesNames())
+        {
+            if (!name.startsWith("phase:"))
+                continue;
+            nrPhaseSeries++;
+            for (int sample = 0; sample < straight.getNumberOfSamples(); sample++)
+            {
+                assertEquals(straight.getTime(sample), fromCheckpoint.getTime(sample), 1E-6);
+                assertEquals(straight.getValue(name, sample), fromCheckpoint.getValue(name, sample),
+                        name + " at " + straight.getTime(sample) + " h");
+            }
+        }
+        assertTrue(nrPhaseSeries > 0);
+    }
+
+}
@@ -0,0 +1,115 @@
+package eu.heros.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.rmi.RemoteException;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import nl.tudelft.simulation.dsol.SimRuntimeException;
+import nl.tudelft.simulation.dsol.experiment.Replication;
+import nl.tudelft.simulation.medlabs.MedlabsRuntimeException;
+import nl.tudelft.simulation.medlabs.simulation.SimpleDevsSimulatorInterface;
+
+/**
+ * HerosBatchRunnerTest checks that a replication on the simulator of the batch runners ends, and releases the thread that waits
+ * for it, both when it runs to the end and when one of its events throws an exception.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class HerosBatchRunnerTest
+{
+    /** the maximum time to wait for the end of a replication. */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * A replication without failing events ends normally.
+     * @throws Exception on error
+     */
+    @Test
+    public void testReplicationEnds() throws Exception
+    {
+        EventModel model = new EventModel(HerosBatchRunner.newSimulator("SimHERoS-ends"), -1.0);
+        model.getSimulator().initialize(0.0, 0.0, 95.0, model, 1L);
+        model.getSimulator().start();
+        assertTimeoutPreemptively(TIMEOUT, model::awaitEndOfReplication);
+        assertEquals(9, model.nrEvents);
+    }
+
+    /**
+     * A replication in which an event throws an exception ends, and the exception is passed to the waiting thread.
+     * @throws Exception on error
+     */
+    @Test
+    public void testFailingEvent() throws Exception
+    {
+        EventModel model = new EventModel(HerosBatchRunner.newSimulator("SimHERoS-fails"), 35.0);
+        model.getSimulator().initialize(0.0, 0.0, 95.0, model, 1L);
+        model.getSimulator().start();
+        SimRuntimeException exception =
+                assertThrows(SimRuntimeException.class, () -> assertTimeoutPreemptively(TIMEOUT, model::awaitEndOfReplication));
+        assertTrue(exception.getMessage().contains("event fails"), exception.getMessage());
+        assertEquals(3, model.nrEvents);
+    }
+
+    /** Model without persons and locations that only executes an event every 10 hours, which can be made to fail. */
+    private static class EventModel extends HerosModel
+    {
+        /** */
+        private static final long serialVersionUID = 20241019L;
+
+        /** the time from which the events throw an exception; negative when the events do not fail. */
+        private final double failTime;
+
+        /** the number of events that have been executed without failing. */
+        private int nrEvents = 0;
+
+        /**
+         * @param simulator SimpleDevsSimulatorInterface; the simulator
+         * @param failTime double; the time from which the events throw an exception; negative when the events do not fail
+         */
+        EventModel(final SimpleDevsSimulatorInterface simulator, final double failTime)
+        {
+            super(simulator, "");
+            this.failTime = failTime;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void constructModel() throws SimRuntimeException
+        {
+            getSimulator().scheduleEventRel(10.0, this, "event", null);
+            try
+            {
+                getSimulator().addListener(this, Replication.END_REPLICATION_EVENT);
+            }
+            catch (RemoteException e)
+            {
+                throw new MedlabsRuntimeException(e);
+            }
+        }
+
+        /**
+         * Execute an event, and schedule the next event.
+         */
+        public void event()
+        {
+            if (this.failTime >= 0.0 && getSimulator().getSimulatorTime() >= this.failTime)
+                throw new IllegalStateException("event fails at " + getSimulator().getSimulatorTime());
+            this.nrEvents++;
+            getSimulator().scheduleEventRel(10.0, this, "event", null);
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package eu.heros.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.heros.model.HerosFarmCoordinator.Job;
+import eu.heros.model.HerosFarmCoordinator.Result;
+import eu.heros.output.ReplicationSeries;
+
+/**
+ * HerosFarmCoordinatorTest checks that the connections of the farm only accept the jobs and the results, and that a job of a
+ * worker that does not return a result is retried and counted as failed after the job timeout.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class HerosFarmCoordinatorTest
+{
+    /** a temporary directory for the files. */
+    @TempDir
+    File tempDir;
+
+    /**
+     * Serialize an object and read it back through the filter of the farm.
+     * @param object Object; the object to send
+     * @return Object; the object as read by the other side
+     * @throws Exception on error
+     */
+    private static Object send(final Object object) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            in.setObjectInputFilter(HerosFarmCoordinator.FILTER);
+            return in.readObject();
+        }
+    }
+
+    /**
+     * Jobs and results pass the filter; other classes are rejected.
+     * @throws Exception on error
+     */
+    @Test
+    public void testFilter() throws Exception
+    {
+        Job job = (Job) send(new Job(3, "scenario", "/scenario.properties", 111L, new String[] {"a=1", "b=2"}, 2));
+        assertEquals(3, job.id);
+        assertEquals(111L, job.seed);
+        assertArrayEquals(new String[] {"a=1", "b=2"}, job.args);
+
+        ReplicationSeries series = new ReplicationSeries(111L);
+        series.startSample(0.0);
+        series.set("phase:Exposed", 10.0);
+        series.startSample(24.0);
+        series.set("phase:Exposed", 12.5);
+        Map<String, Double> outputs = new LinkedHashMap<>();
+        outputs.put("peakInfected", 12.5);
+        outputs.put("attackRate", Double.NaN);
+        Result result = (Result) send(new Result(series, outputs, 1000L, null));
+        assertEquals(2, result.series.getNumberOfSamples());
+        assertEquals(12.5, result.series.getValue("phase:Exposed", 1));
+        assertEquals(Arrays.asList("peakInfected", "attackRate"), new ArrayList<>(result.outputs.keySet()));
+        assertNull(result.error);
+
+        assertThrows(InvalidClassException.class, () -> send(new File("other")));
+        assertThrows(InvalidClassException.class, () -> send(new ArrayList<>(Arrays.asList("a", "b"))));
+        assertThrows(InvalidClassException.class, () -> send(new Object[] {"a"}));
+    }
+
+    /**
+     * A worker that never returns its result makes every attempt of the job time out, after which the job fails.
+     * @throws Exception on error
+     */
+    @Test
+    public void testJobTimeout() throws Exception
+    {
+        int port;
+        try (ServerSocket free = new ServerSocket(0))
+        {
+            port = free.getLocalPort();
+        }
+        HerosFarmCoordinator coordinator =
+                new HerosFarmCoordinator(this.tempDir, Arrays.asList("scenario.properties"), new long[] {111L}, 2, 1);
+        AtomicInteger nrJobsReceived = new AtomicInteger();
+        Thread worker = new Thread(() ->
+        {
+            // a worker that takes jobs but never answers, and connects again when the coordinator gives up on it
+            for (int attempt = 0; attempt < 100; attempt++)
+            {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                        ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream()))
+                {
+                    out.flush();
+                    ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+                    if (in.readObject() == null)
+                        return;
+                    nrJobsReceived.incrementAndGet();
+                    in.readObject();
+                }
+                catch (ConnectException | EOFException exception)
+                {
+                    sleep(100);
+                }
+                catch (IOException | ClassNotFoundException exception)
+                {
+                    // connection closed by the coordinator after the timeout
+                }
+            }
+        }, "silent-worker");
+        worker.setDaemon(true);
+        worker.start();
+        int nrFailed = assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> coordinator.run(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0));
+        assertEquals(1, nrFailed);
+        assertEquals(2, nrJobsReceived.get());
+    }
+
+    /**
+     * Sleep without being interrupted.
+     * @param millis long; the time to sleep in ms
+     */
+    private static void sleep(final long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException exception)
+        {
+            // ignore
+        }
+    }
+
+}
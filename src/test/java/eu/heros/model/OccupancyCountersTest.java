@@ -0,0 +1,116 @@
+package eu.heros.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * OccupancyCountersTest moves persons between locations and sublocations, and checks the incremental counts against counts
+ * that are recomputed from the position of every person, also when a person is added to a new location before it is removed
+ * from the old one.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class OccupancyCountersTest
+{
+    /** the number of locations. */
+    private static final int NR_LOCATIONS = 3000;
+
+    /** the number of persons. */
+    private static final int NR_PERSONS = 5000;
+
+    /**
+     * Move the persons around at random and compare the counters with recomputed counts.
+     */
+    @Test
+    public void testRandomMoves()
+    {
+        Random random = new Random(17L);
+        OccupancyCounters counters = new OccupancyCounters();
+        short[] nrSub = new short[NR_LOCATIONS];
+        for (int id = 0; id < NR_LOCATIONS; id++)
+        {
+            nrSub[id] = (short) random.nextInt(4);
+            counters.addLocation(id, nrSub[id]);
+        }
+        int[] location = new int[NR_PERSONS];
+        short[] subLocation = new short[NR_PERSONS];
+        Arrays.fill(location, -1);
+        for (int step = 0; step < 50000; step++)
+        {
+            int person = random.nextInt(NR_PERSONS);
+            int newLocation = random.nextInt(NR_LOCATIONS + 10) - 10; // some moves to special locations with a negative id
+            short newSub = (short) random.nextInt(Math.max(1, nrSub[Math.max(0, newLocation)]) + 1); // sometimes out of range
+            if (random.nextBoolean())
+            {
+                if (location[person] >= 0)
+                    counters.leave(location[person], person);
+                counters.enter(newLocation, person, newSub);
+            }
+            else
+            {
+                // add to the new location first, then remove from the old one
+                int oldLocation = location[person];
+                counters.enter(newLocation, person, newSub);
+                if (oldLocation >= 0)
+                    counters.leave(oldLocation, person);
+            }
+            location[person] = newLocation;
+            subLocation[person] = newSub;
+        }
+
+        int[] locationCounts = new int[NR_LOCATIONS];
+        int[][] subLocationCounts = new int[NR_LOCATIONS][4];
+        for (int person = 0; person < NR_PERSONS; person++)
+        {
+            int id = location[person];
+            if (id < 0)
+                continue;
+            locationCounts[id]++;
+            if (subLocation[person] < Math.max(1, nrSub[id]))
+                subLocationCounts[id][subLocation[person]]++;
+        }
+        for (int id = 0; id < NR_LOCATIONS; id++)
+        {
+            assertEquals(locationCounts[id], counters.getLocationCount(id), "location " + id);
+            assertEquals(locationCounts[id], counters.getLocationCounts()[id], "location " + id);
+            for (int sub = 0; sub < 4; sub++)
+                assertEquals(subLocationCounts[id][sub], counters.getSubLocationCount(id, sub), "location " + id + "." + sub);
+        }
+        assertEquals(0, counters.getLocationCount(-5));
+        assertEquals(0, counters.getLocationCount(NR_LOCATIONS + 100000));
+    }
+
+    /**
+     * A location that is defined twice gets new counters.
+     */
+    @Test
+    public void testRedefinedLocation()
+    {
+        OccupancyCounters counters = new OccupancyCounters();
+        counters.addLocation(0, (short) 2);
+        counters.addLocation(1, (short) 1);
+        counters.enter(1, 0, (short) 0);
+        counters.addLocation(0, (short) 5);
+        counters.enter(0, 1, (short) 4);
+        assertEquals(1, counters.getLocationCount(0));
+        assertEquals(1, counters.getSubLocationCount(0, 4));
+        assertEquals(1, counters.getLocationCount(1));
+        assertEquals(1, counters.getSubLocationCount(1, 0));
+        counters.leave(0, 1);
+        counters.leave(0, 0); // person 0 is not in location 0
+        assertEquals(0, counters.getLocationCount(0));
+        assertEquals(1, counters.getLocationCount(1));
+    }
+
+}
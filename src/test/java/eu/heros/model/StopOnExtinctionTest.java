@@ -0,0 +1,166 @@
+package eu.heros.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.heros.output.ReplicationSeries;
+import nl.tudelft.simulation.medlabs.disease.DiseasePhase;
+
+/**
+ * StopOnExtinctionTest checks on The Hague scenario that a replication ends early when the epidemic is extinct, with the
+ * disease phase series continued up to the run length, and that it is not ended as extinct while exposed persons still have
+ * to become ill, nor while locations infect their visitors at a fixed rate.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class StopOnExtinctionTest
+{
+    /** the scenario, with locations that infect at a fixed rate in its infection rates file. */
+    private static final String PROPERTIES = "/flip-normal-area.properties";
+
+    /** the run length in days. */
+    private static final int RUN_LENGTH = 2;
+
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Build the model for the scenario, without starting it.
+     * @param args List&lt;String&gt;; extra parameters of the form name=value
+     * @return HerosModel; the constructed model
+     * @throws Exception on error
+     */
+    private HerosModel construct(final List<String> args) throws Exception
+    {
+        List<String> allArgs = new ArrayList<>(args);
+        allArgs.add("generic.RunLength=" + RUN_LENGTH);
+        allArgs.add("generic.StopOnExtinction=true");
+        allArgs.add("generic.WriteOutput=false");
+        allArgs.add("generic.OutputPath=" + this.tempDir.resolve("out"));
+        HerosModel model = new HerosModel(HerosBatchRunner.newSimulator("SimHERoS-extinction"), PROPERTIES);
+        model.setInteractive(false);
+        model.setCollectReplicationSeries(true);
+        HerosApplication.loadInputParameters(model, PROPERTIES, allArgs.toArray(new String[0]));
+        long seed = HerosApplication.applySeed(model, 111L);
+        model.getSimulator().initialize(0.0, 0.0, 24.0 * RUN_LENGTH, model, seed);
+        return model;
+    }
+
+    /**
+     * Run the model to the end of the replication.
+     * @param model HerosModel; the constructed model
+     * @return double; the time at which the replication ended
+     * @throws Exception on error
+     */
+    private static double run(final HerosModel model) throws Exception
+    {
+        model.getSimulator().start();
+        model.awaitEndOfReplication();
+        return model.getSimulator().getSimulatorTime();
+    }
+
+    /**
+     * Write the infection rates file of the scenario without fixed rates, so no location infects its visitors at a fixed rate.
+     * @return String; the parameter that replaces the infection rates file of the scenario
+     * @throws Exception on error
+     */
+    private String withoutFixedRates() throws Exception
+    {
+        File rates = this.tempDir.resolve("infection_rates.csv").toFile();
+        List<String> lines = Files.readAllLines(new File("data/thehague/epidemiology/infection_rates.csv").toPath(),
+                StandardCharsets.UTF_8);
+        for (int i = 1; i < lines.size(); i++)
+        {
+            String[] fields = lines.get(i).split(",", -1);
+            fields[2] = "-1.0";
+            lines.set(i, String.join(",", fields));
+        }
+        Files.write(rates.toPath(), lines, StandardCharsets.UTF_8);
+        return "generic.ProbRatioFilePath=" + rates.getAbsolutePath();
+    }
+
+    /**
+     * Without infected persons and without fixed-rate locations the epidemic is extinct from the start: the replication ends
+     * at the first check, and the disease phase series are continued with constant values up to the run length.
+     * @throws Exception on error
+     */
+    @Test
+    public void testExtinctionEndsEarly() throws Exception
+    {
+        List<String> args = new ArrayList<>();
+        args.add(withoutFixedRates());
+        args.add("policies.NumberInfected=0");
+        HerosModel model = construct(args);
+        assertEquals(0, model.getNumberOfFixedRateLocations());
+        assertTrue(model.isExtinct());
+        double endTime = run(model);
+        assertTrue(endTime < 24.0 * RUN_LENGTH, "the replication ended at t=" + endTime);
+
+        ReplicationSeries series = model.getReplicationSeries();
+        int interval = model.getParameterValueInt("generic.SummaryIntervalHours");
+        assertEquals(24 * RUN_LENGTH / interval + 1, series.getNumberOfSamples());
+        for (int sample = 0; sample < series.getNumberOfSamples(); sample++)
+            assertEquals(sample * interval, series.getTime(sample), 1E-6);
+        int nrPhaseSeries = 0;
+        for (String name : series.getSeriesNames())
+        {
+            if (!name.startsWith("phase:"))
+                continue;
+            nrPhaseSeries++;
+            for (int sample = 1; sample < series.getNumberOfSamples(); sample++)
+                assertEquals(series.getValue(name, 0), series.getValue(name, sample), name + " at sample " + sample);
+        }
+        assertTrue(nrPhaseSeries > 0);
+    }
+
+    /**
+     * The initial infections are exposed, not yet ill; with pending progression events the epidemic is not extinct.
+     * @throws Exception on error
+     */
+    @Test
+    public void testExposedPersonsAreNotExtinct() throws Exception
+    {
+        List<String> args = new ArrayList<>();
+        args.add(withoutFixedRates());
+        HerosModel model = construct(args);
+        assertEquals(0, model.getNumberOfFixedRateLocations());
+        int nrIll = 0;
+        for (DiseasePhase phase : model.getDiseaseProgression().getDiseasePhases())
+            nrIll += phase.isIll() ? phase.getNumberOfPersons() : 0;
+        assertEquals(0, nrIll, "the initial infections should be exposed, not ill");
+        assertFalse(model.isExtinct());
+        assertEquals(24.0 * RUN_LENGTH, run(model), 1E-6);
+    }
+
+    /**
+     * A scenario with locations that infect at a fixed rate runs to the end, also when nobody is ill.
+     * @throws Exception on error
+     */
+    @Test
+    public void testFixedRateLocations() throws Exception
+    {
+        HerosModel model = construct(new ArrayList<>());
+        assertEquals(4, model.getNumberOfFixedRateLocations());
+        assertEquals(24.0 * RUN_LENGTH, run(model), 1E-6);
+    }
+
+}
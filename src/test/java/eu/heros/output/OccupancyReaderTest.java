@@ -0,0 +1,194 @@
+package eu.heros.output;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * OccupancyReaderTest writes occupancy dumps with the BinaryOccupancyWriter, with and without delta records, and checks that
+ * the OccupancyReader rebuilds the full counts of every dump.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class OccupancyReaderTest
+{
+    /** the location numbers of the layout. */
+    private static final int[] LOCATION_NRS = {3, 8, 15, 16, 42};
+
+    /** the number of dumped sublocations per location of the layout. */
+    private static final int[] NR_SUBLOCATIONS = {0, 4, 1, 0, 3};
+
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Write dumps in which a few counts change per dump, and return the written counts.
+     * @param keyframeInterval int; the keyframe interval of the writer, 0 for full dumps only
+     * @param nrDumps int; the number of dumps
+     * @return List&lt;int[][]&gt;; per dump the location counts and the sublocation counts
+     * @throws IOException on error writing the file
+     */
+    private List<int[][]> writeDumps(final int keyframeInterval, final int nrDumps) throws IOException
+    {
+        OccupancyLayout layout = new OccupancyLayout(LOCATION_NRS, NR_SUBLOCATIONS);
+        int[] locationCounts = new int[layout.getNumberOfLocations()];
+        int[] subLocationCounts = new int[layout.getTotalSubLocations()];
+        List<int[][]> written = new ArrayList<>();
+        Random random = new Random(20241019L);
+        BinaryOccupancyWriter writer = new BinaryOccupancyWriter(this.tempDir.toString(), layout, keyframeInterval);
+        for (int dump = 0; dump < nrDumps; dump++)
+        {
+            // dump 4 has no changes at all, which gives an empty delta record
+            if (dump != 4)
+            {
+                locationCounts[random.nextInt(locationCounts.length)] = random.nextInt(1000);
+                subLocationCounts[random.nextInt(subLocationCounts.length)] = random.nextInt(100);
+                // the first and the last entry change as well, to test the index gaps at the boundaries
+                locationCounts[0] = dump;
+                subLocationCounts[subLocationCounts.length - 1] = 2 * dump;
+            }
+            writer.write(dump * 0.5, locationCounts, subLocationCounts);
+            written.add(new int[][] {locationCounts.clone(), subLocationCounts.clone()});
+        }
+        writer.close();
+        return written;
+    }
+
+    /**
+     * Read all dumps and compare them with the written counts.
+     * @param written List&lt;int[][]&gt;; the written counts
+     * @throws IOException on error reading the file
+     */
+    private void assertDumps(final List<int[][]> written) throws IOException
+    {
+        try (OccupancyReader reader = new OccupancyReader(new File(this.tempDir.toFile(), BinaryOccupancyWriter.FILE)))
+        {
+            assertArrayEquals(NR_SUBLOCATIONS, nrSubLocations(reader.getLayout()));
+            for (int dump = 0; dump < written.size(); dump++)
+            {
+                assertTrue(reader.next(), "dump " + dump);
+                assertEquals(dump * 0.5, reader.getTime());
+                assertArrayEquals(written.get(dump)[0], reader.getLocationCounts(), "locations of dump " + dump);
+                assertArrayEquals(written.get(dump)[1], reader.getSubLocationCounts(), "sublocations of dump " + dump);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    /**
+     * @param layout OccupancyLayout; a layout
+     * @return the number of sublocations per location of the layout
+     */
+    private static int[] nrSubLocations(final OccupancyLayout layout)
+    {
+        int[] result = new int[layout.getNumberOfLocations()];
+        for (int i = 0; i < result.length; i++)
+        {
+            assertEquals(LOCATION_NRS[i], layout.getLocationNr(i));
+            result[i] = layout.getNrSubLocations(i);
+        }
+        return result;
+    }
+
+    /**
+     * Return the record types of the occupancy file in the temporary directory.
+     * @return String; one character per record
+     * @throws IOException on error reading the file
+     */
+    private String recordTypes() throws IOException
+    {
+        StringBuilder types = new StringBuilder();
+        try (DataInputStream in =
+                new DataInputStream(new FileInputStream(new File(this.tempDir.toFile(), BinaryOccupancyWriter.FILE))))
+        {
+            in.skipBytes(16 + 8 * LOCATION_NRS.length);
+            while (in.available() > 0)
+            {
+                types.append((char) in.readByte());
+                in.readDouble();
+                in.skipBytes(in.readInt());
+            }
+        }
+        return types.toString();
+    }
+
+    /**
+     * Full dumps only.
+     * @throws IOException on error
+     */
+    @Test
+    public void testFullDumps() throws IOException
+    {
+        List<int[][]> written = writeDumps(0, 7);
+        assertEquals("FFFFFFF", recordTypes());
+        assertDumps(written);
+    }
+
+    /**
+     * Delta records between keyframes.
+     * @throws IOException on error
+     */
+    @Test
+    public void testKeyframes() throws IOException
+    {
+        List<int[][]> written = writeDumps(3, 10);
+        assertEquals("FDDFDDFDDF", recordTypes());
+        assertDumps(written);
+    }
+
+    /**
+     * A file that is cut off in the middle of a dump is reported as an error, and not read as a shorter file.
+     * @throws IOException on error
+     */
+    @Test
+    public void testTruncatedFile() throws IOException
+    {
+        writeDumps(3, 5);
+        File file = new File(this.tempDir.toFile(), BinaryOccupancyWriter.FILE);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+        try (OccupancyReader reader = new OccupancyReader(file))
+        {
+            for (int dump = 0; dump < 4; dump++)
+                assertTrue(reader.next());
+            assertThrows(IOException.class, () -> reader.next());
+        }
+    }
+
+    /**
+     * A file that is not an occupancy file is rejected.
+     * @throws IOException on error
+     */
+    @Test
+    public void testNotAnOccupancyFile() throws IOException
+    {
+        File file = new File(this.tempDir.toFile(), "other.hocc");
+        Files.write(file.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> new OccupancyReader(file));
+    }
+
+}
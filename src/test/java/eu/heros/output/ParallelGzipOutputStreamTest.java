@@ -0,0 +1,130 @@
+package eu.heros.output;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ParallelGzipOutputStreamTest checks that the output of the ParallelGzipOutputStream is read back by a standard
+ * GZIPInputStream, for block boundaries at every possible place in the written data.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ParallelGzipOutputStreamTest
+{
+    /** the smallest block size of the stream. */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Decompress gzip data with a standard GZIPInputStream.
+     * @param gzip byte[]; the gzip data, possibly with several members
+     * @return byte[]; the decompressed data
+     * @throws IOException on error decompressing the data
+     */
+    private static byte[] gunzip(final byte[] gzip) throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip)))
+        {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Make csv-like test data that compresses, with some random content.
+     * @param length int; the number of bytes
+     * @return byte[]; the data
+     */
+    private static byte[] data(final int length)
+    {
+        Random random = new Random(length);
+        StringBuilder s = new StringBuilder();
+        while (s.length() < length)
+            s.append(random.nextInt(100)).append(',').append(random.nextInt(1000000)).append(",\"home\"\n");
+        return s.substring(0, length).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Data of lengths around multiples of the block size, written in one call.
+     * @throws IOException on error
+     */
+    @Test
+    public void testBlockBoundaries() throws IOException
+    {
+        for (int length : new int[] {1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 5 * BLOCK_SIZE, 37 * BLOCK_SIZE + 11})
+        {
+            byte[] data = data(length);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(bytes, 3, BLOCK_SIZE))
+            {
+                out.write(data);
+            }
+            assertArrayEquals(data, gunzip(bytes.toByteArray()), "length " + length);
+        }
+    }
+
+    /**
+     * Data written in pieces of varying size and byte by byte, with flushes in between.
+     * @throws IOException on error
+     */
+    @Test
+    public void testMixedWrites() throws IOException
+    {
+        byte[] data = data(20 * BLOCK_SIZE + 123);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Random random = new Random(1L);
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(bytes, 2, BLOCK_SIZE))
+        {
+            int position = 0;
+            while (position < data.length)
+            {
+                int n = Math.min(data.length - position, random.nextInt(3 * BLOCK_SIZE));
+                if (n < 10)
+                {
+                    for (int i = 0; i < n; i++)
+                        out.write(data[position + i]);
+                }
+                else
+                {
+                    out.write(data, position, n);
+                }
+                position += n;
+                if (random.nextInt(4) == 0)
+                    out.flush();
+            }
+        }
+        assertArrayEquals(data, gunzip(bytes.toByteArray()));
+    }
+
+    /**
+     * An empty stream is still a valid gzip file, and closing twice writes nothing more.
+     * @throws IOException on error
+     */
+    @Test
+    public void testEmptyStream() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(bytes, 1, BLOCK_SIZE);
+        out.close();
+        int size = bytes.size();
+        out.close();
+        assertEquals(size, bytes.size());
+        assertEquals(0, gunzip(bytes.toByteArray()).length);
+    }
+
+}
@@ -0,0 +1,169 @@
+package eu.heros.output;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ReplicationStatisticsTest checks the QuantileSketch against exact quantiles, and the merge of replications into the state
+ * and summary files of a scenario.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ReplicationStatisticsTest
+{
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Small sketches are exact; large sketches stay within a few percent of rank, also when they are merged.
+     */
+    @Test
+    public void testQuantileSketch()
+    {
+        QuantileSketch exact = new QuantileSketch(64);
+        assertTrue(Double.isNaN(exact.getQuantile(0.5)));
+        for (int i = 1; i <= 9; i++)
+            exact.add(10 - i);
+        assertEquals(9, exact.getCount());
+        assertEquals(1.0, exact.getQuantile(0.0));
+        assertEquals(5.0, exact.getQuantile(0.5));
+        assertEquals(9.0, exact.getQuantile(1.0));
+
+        Random random = new Random(20241019L);
+        int n = 100000;
+        double[] values = new double[n];
+        QuantileSketch first = new QuantileSketch(64);
+        QuantileSketch second = new QuantileSketch(64);
+        for (int i = 0; i < n; i++)
+        {
+            values[i] = random.nextGaussian() * 10.0 + 50.0;
+            (i % 3 == 0 ? first : second).add(values[i]);
+        }
+        first.merge(second);
+        assertEquals(n, first.getCount());
+        Arrays.sort(values);
+        for (double q : new double[] {0.05, 0.25, 0.5, 0.75, 0.95})
+        {
+            double estimate = first.getQuantile(q);
+            int rank = Arrays.binarySearch(values, estimate);
+            rank = rank < 0 ? -rank - 1 : rank;
+            assertEquals(q, (double) rank / n, 0.03, "quantile " + q);
+        }
+    }
+
+    /**
+     * Make the series of a replication with one phase series.
+     * @param seed long; the seed of the replication
+     * @param values double[]; the values at t = 0, 24, 48, ...
+     * @return ReplicationSeries; the series
+     */
+    private static ReplicationSeries replication(final long seed, final double... values)
+    {
+        ReplicationSeries series = new ReplicationSeries(seed);
+        for (int sample = 0; sample < values.length; sample++)
+        {
+            series.startSample(24.0 * sample);
+            series.set("phase:Exposed", values[sample]);
+        }
+        return series;
+    }
+
+    /**
+     * Merge replications through the state file, and check the statistics, the duplicate seed, and the summary file.
+     * @throws IOException on error
+     */
+    @Test
+    public void testMerge() throws IOException
+    {
+        String basePath = new File(this.tempDir.toFile(), "summary/scenario").getPath();
+        ReplicationStatistics.merge(basePath, replication(1L, 0.0, 10.0, 20.0));
+        ReplicationStatistics.merge(basePath, replication(2L, 0.0, 20.0, 40.0));
+        ReplicationStatistics statistics = ReplicationStatistics.merge(basePath, replication(3L, 0.0, 30.0, 60.0));
+        assertEquals(3, statistics.getNumberOfReplications());
+        assertEquals(3, statistics.getCount("phase:Exposed", 1));
+        assertEquals(20.0, statistics.getMean("phase:Exposed", 1), 1E-9);
+        assertEquals(10.0, statistics.getStdDev("phase:Exposed", 1), 1E-9);
+        assertEquals(40.0, statistics.getMean("phase:Exposed", 2), 1E-9);
+        assertEquals(0, statistics.getCount("phase:Dead", 1));
+        assertTrue(Double.isNaN(statistics.getMean("phase:Dead", 1)));
+
+        // the same seed again is not added
+        statistics = ReplicationStatistics.merge(basePath, replication(2L, 0.0, 99.0, 99.0));
+        assertEquals(3, statistics.getNumberOfReplications());
+        assertEquals(20.0, statistics.getMean("phase:Exposed", 1), 1E-9);
+        ReplicationStatistics read = ReplicationStatistics.read(new File(basePath + ReplicationStatistics.STATE_EXTENSION));
+        assertEquals(3, read.getNumberOfReplications());
+        assertFalse(read.add(replication(3L, 1.0)));
+
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(basePath + ReplicationStatistics.SUMMARY_EXTENSION)))))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("\"Time(h)\",\"Series\",\"N\",\"Mean\""));
+        // the quantiles of the sketch are the lower order statistic at rank q * (n - 1)
+        assertEquals("24.0,\"phase:Exposed\",3,20.0000,10.0000,10.0000,10.0000,10.0000,20.0000,20.0000,20.0000,30.0000",
+                lines.get(2));
+    }
+
+    /**
+     * A replication with other sample times is refused, and the state file is not changed.
+     * @throws IOException on error
+     */
+    @Test
+    public void testSampleTimeMismatch() throws IOException
+    {
+        String basePath = new File(this.tempDir.toFile(), "scenario").getPath();
+        File stateFile = new File(basePath + ReplicationStatistics.STATE_EXTENSION);
+        ReplicationStatistics.merge(basePath, replication(1L, 0.0, 10.0, 20.0));
+        byte[] state = Files.readAllBytes(stateFile.toPath());
+
+        ReplicationSeries shifted = new ReplicationSeries(2L);
+        for (int sample = 0; sample < 3; sample++)
+        {
+            shifted.startSample(12.0 * sample);
+            shifted.set("phase:Exposed", 5.0);
+        }
+        assertThrows(IOException.class, () -> ReplicationStatistics.merge(basePath, shifted));
+        assertArrayEquals(state, Files.readAllBytes(stateFile.toPath()));
+        ReplicationStatistics statistics = ReplicationStatistics.read(stateFile);
+        assertEquals(1, statistics.getNumberOfReplications());
+
+        // a longer replication with the same sample times is added
+        statistics = ReplicationStatistics.merge(basePath, replication(3L, 0.0, 30.0, 60.0, 90.0));
+        assertEquals(2, statistics.getNumberOfReplications());
+        assertEquals(1, statistics.getCount("phase:Exposed", 3));
+    }
+
+}
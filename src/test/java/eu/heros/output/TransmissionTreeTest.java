@@ -0,0 +1,205 @@
+package eu.heros.output;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.heros.model.IdMapping;
+
+/**
+ * TransmissionTreeTest reads transmission logs in the layout of the TransmissionLog, complete and cut off in the middle of an
+ * event, and checks the most likely infectors, the infectees, the ancestors and the generations. The log contains the dense
+ * ids of the model; the tree answers in the original ids of the id maps next to the log.
+ * <p>
+ * Copyright (c) 2020-2024 Delft University of Technology, Jaffalaan 5, 2628 BX Delft, the Netherlands. All rights reserved. The
+ * code is part of the HERoS project (Health Emergency Response in Interconnected Systems), which builds on the MEDLABS project.
+ * The simulation tools are aimed at providing policy analysis tools to predict and help contain the spread of epidemics. They
+ * make use of the DSOL simulation engine and the agent-based modeling formalism. This software is licensed under the BSD
+ * license. See license.txt in the main project.
+ * </p>
+ * @author <a href="https://www.linkedin.com/in/mikhailsirenko">Mikhail Sirenko</a>
+ * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TransmissionTreeTest
+{
+    /** a temporary directory for the files. */
+    @TempDir
+    Path tempDir;
+
+    /** the original id of person index i is PERSON + i. */
+    private static final int PERSON = 500;
+
+    /** the original id of location index i is LOCATION + i. */
+    private static final int LOCATION = 9000;
+
+    /**
+     * Write the id maps for the persons 0..7 and the locations 0..4 in the temporary directory.
+     * @throws IOException on error writing
+     */
+    private void writeIdMaps() throws IOException
+    {
+        IdMapping idMapping = new IdMapping();
+        for (int i = 0; i < 8; i++)
+            idMapping.addPerson(PERSON + i);
+        for (int i = 0; i < 5; i++)
+            idMapping.addLocation(LOCATION + i);
+        idMapping.write(this.tempDir.toString(), 0, 0);
+    }
+
+    /**
+     * Write one infection event in the layout of the TransmissionLog, in the location with the same index as the infectee.
+     * @param out DataOutputStream; the stream
+     * @param time float; the time in hours
+     * @param infectee int; the infectee
+     * @param candidates int[]; the candidate infectors
+     * @param shares float[]; the shares of the candidates
+     * @throws IOException on error writing
+     */
+    private static void writeEvent(final DataOutputStream out, final float time, final int infectee, final int[] candidates,
+            final float[] shares) throws IOException
+    {
+        out.writeFloat(time);
+        out.writeInt(infectee);
+        out.writeInt(infectee);
+        out.writeShort(1);
+        out.writeByte(2);
+        out.writeShort(candidates.length);
+        for (int i = 0; i < candidates.length; i++)
+        {
+            out.writeInt(candidates[i]);
+            out.writeFloat(shares[i]);
+        }
+    }
+
+    /**
+     * Make a log with the chain 1 -&gt; 2 -&gt; {3, 4} and a seed infection of 1 without candidates.
+     * @return byte[]; the log
+     * @throws IOException on error writing
+     */
+    private static byte[] log() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(TransmissionLog.MAGIC);
+            out.writeInt(TransmissionLog.VERSION);
+            out.writeInt(2);
+            out.writeByte(1);
+            out.writeUTF("Home");
+            out.writeByte(2);
+            out.writeUTF("Workplace");
+            writeEvent(out, 0.0f, 1, new int[0], new float[0]);
+            writeEvent(out, 5.0f, 2, new int[] {1}, new float[] {1.0f});
+            writeEvent(out, 9.5f, 3, new int[] {1, 2}, new float[] {0.25f, 0.75f});
+            writeEvent(out, 12.0f, 4, new int[] {2, 7, 1}, new float[] {0.5f, 0.1f, 0.4f});
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a complete log.
+     * @throws IOException on error
+     */
+    @Test
+    public void testCompleteLog() throws IOException
+    {
+        writeIdMaps();
+        File file = this.tempDir.resolve(TransmissionLog.FILE).toFile();
+        Files.write(file.toPath(), log());
+        TransmissionTree tree = new TransmissionTree(file);
+        assertEquals(4, tree.getNumberOfEvents());
+        assertEquals(-1, tree.getMostLikelyInfector(PERSON + 1));
+        assertEquals(PERSON + 1, tree.getMostLikelyInfector(PERSON + 2));
+        assertEquals(PERSON + 2, tree.getMostLikelyInfector(PERSON + 3));
+        assertEquals(PERSON + 2, tree.getMostLikelyInfector(PERSON + 4));
+        assertEquals(-1, tree.getMostLikelyInfector(2));
+        assertArrayEquals(new int[] {PERSON + 3, PERSON + 4}, tree.getInfectees(PERSON + 2).toArray());
+        assertArrayEquals(new int[] {PERSON + 4, PERSON + 2, PERSON + 1}, tree.getAncestors(PERSON + 4).toArray());
+        assertEquals(0, tree.getGeneration(PERSON + 1));
+        assertEquals(2, tree.getGeneration(PERSON + 3));
+        assertEquals("Workplace", tree.getLocationTypeName(2));
+
+        File edges = this.tempDir.resolve("edges.csv.gz").toFile();
+        tree.writeEdges(edges);
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(edges)), "UTF-8")))
+        {
+            assertEquals("\"Time(h)\",\"Infectee\",\"Infector\",\"Share\",\"LocationId\",\"SubLocation\",\"LocationType\"",
+                    reader.readLine());
+            assertEquals("5.0," + (PERSON + 2) + "," + (PERSON + 1) + ",1.0," + (LOCATION + 2) + ",1,\"Workplace\"",
+                    reader.readLine());
+        }
+    }
+
+    /**
+     * A log that ends in the middle of an event is read up to the last complete event, wherever it is cut off.
+     * @throws IOException on error
+     */
+    @Test
+    public void testTruncatedLog() throws IOException
+    {
+        byte[] log = log();
+        // the last event has 4+4+4+2+1+2 bytes and three candidates of 8 bytes
+        int lastEventStart = log.length - 17 - 3 * 8;
+        writeIdMaps();
+        File file = this.tempDir.resolve(TransmissionLog.FILE).toFile();
+        for (int cut = lastEventStart + 1; cut < log.length; cut++)
+        {
+            Files.write(file.toPath(), Arrays.copyOf(log, cut));
+            TransmissionTree tree = new TransmissionTree(file);
+            assertEquals(3, tree.getNumberOfEvents(), "cut at " + cut);
+            assertEquals(-1, tree.getMostLikelyInfector(PERSON + 4));
+            assertArrayEquals(new int[] {PERSON + 3}, tree.getInfectees(PERSON + 2).toArray());
+        }
+        Files.write(file.toPath(), Arrays.copyOf(log, lastEventStart));
+        assertEquals(3, new TransmissionTree(file).getNumberOfEvents());
+    }
+
+    /**
+     * A file that is not a transmission log is rejected.
+     * @throws IOException on error
+     */
+    @Test
+    public void testNotALog() throws IOException
+    {
+        File file = this.tempDir.resolve("other.htrn").toFile();
+        Files.write(file.toPath(), new byte[] {0, 1, 2, 3, 4, 5, 6, 7});
+        assertThrows(IOException.class, () -> new TransmissionTree(file));
+    }
+
+    /**
+     * A log without id maps, or with an id that is not in the maps, is rejected.
+     * @throws IOException on error
+     */
+    @Test
+    public void testIdMaps() throws IOException
+    {
+        File file = this.tempDir.resolve(TransmissionLog.FILE).toFile();
+        Files.write(file.toPath(), log());
+        assertThrows(IOException.class, () -> new TransmissionTree(file));
+
+        IdMapping idMapping = new IdMapping();
+        for (int i = 0; i < 4; i++)
+            idMapping.addPerson(PERSON + i);
+        for (int i = 0; i < 5; i++)
+            idMapping.addLocation(LOCATION + i);
+        idMapping.write(this.tempDir.toString(), 0, 0);
+        assertThrows(IOException.class, () -> new TransmissionTree(file));
+    }
+
+}